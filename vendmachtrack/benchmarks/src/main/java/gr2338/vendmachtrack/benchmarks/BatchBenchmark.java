@@ -0,0 +1,125 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares applying inventory changes through {@link MachineTrackerService#applyBatch(List, boolean)}
+ * with making the same changes through one {@code addItem} or {@code removeItem} call each, as
+ * clients did before the batch endpoint existed.
+ * <p>
+ * Every change is added to a machine and later removed again, so the tracker stays the same
+ * between invocations. The repository forces written data to disk as the server does by default,
+ * so journal mode shows the saving of forcing a batch once instead of once per change.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class BatchBenchmark {
+
+    private static final String FILE_NAME = "vendmachtrack-batch-benchmark.json";
+    private static final int FLEET_SIZE = 1000;
+    private static final int MACHINES_PER_BATCH = 10;
+    private static final int STRIDE = 97;
+
+    /**
+     * The number of changes, half of them additions and half removals.
+     */
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    /**
+     * How the repository stores the tracker.
+     */
+    @Param({"SNAPSHOT", "JOURNAL", "MAPPED"})
+    private Storage storage;
+
+    private MachineTrackerRepository repository;
+    private MachineTrackerService service;
+    private List<InventoryOperation> operations;
+
+    /**
+     * Writes the tracker file, opens the repository on it and creates the changes. The changes
+     * are spread over a few machines, with every addition followed later by a matching removal.
+     *
+     * @throws IOException If files left by an earlier run can't be deleted.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Fleets.writeTrackerFile(FILE_NAME, FLEET_SIZE);
+        repository = storage.open(FILE_NAME, "always");
+        service = new MachineTrackerService(repository);
+
+        List<InventoryOperation> additions = new ArrayList<>();
+        List<InventoryOperation> removals = new ArrayList<>();
+        for (int i = 0; i < batchSize / 2; i++) {
+            int id = (i % MACHINES_PER_BATCH) * STRIDE % FLEET_SIZE + 1;
+            String item = Fleets.item(i % Fleets.ITEMS_PER_MACHINE);
+            additions.add(new InventoryOperation(id, item, 1));
+            removals.add(new InventoryOperation(id, item, -1));
+        }
+        operations = new ArrayList<>(additions);
+        operations.addAll(removals);
+    }
+
+    /**
+     * Closes the repository and deletes its files.
+     *
+     * @throws IOException If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        Fleets.deleteTrackerFiles(FILE_NAME);
+    }
+
+    /**
+     * Applies the changes as one batch.
+     *
+     * @return The results of the changes.
+     */
+    @Benchmark
+    public List<InventoryOperationResult> batch() {
+        return service.applyBatch(operations, false);
+    }
+
+    /**
+     * Applies the changes one call at a time.
+     *
+     * @return The number of changes made.
+     */
+    @Benchmark
+    public int singleCalls() {
+        for (InventoryOperation operation : operations) {
+            if (operation.delta() > 0) {
+                service.addItem(operation.id(), operation.item(), operation.delta());
+            } else {
+                service.removeItem(operation.id(), operation.item(), -operation.delta());
+            }
+        }
+        return operations.size();
+    }
+}
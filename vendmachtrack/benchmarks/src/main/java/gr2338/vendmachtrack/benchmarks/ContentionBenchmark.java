@@ -0,0 +1,131 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the throughput of {@link MachineTrackerService} when many request threads change
+ * machines at once, with all threads on one machine and with the threads spread over several
+ * machines.
+ * <p>
+ * Operations on different machines only share the read lock of the repository, so spreading the
+ * threads should raise the throughput, while threads on the same machine wait for each other.
+ * The slow operation holds the lock of its machine while waiting for a fixed time, standing in for
+ * a request waiting for something else, so the difference shows even on few cores.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(ContentionBenchmark.THREADS)
+public class ContentionBenchmark {
+
+    /**
+     * The number of request threads.
+     */
+    static final int THREADS = 16;
+
+    private static final String FILE_NAME = "vendmachtrack-contention-benchmark.json";
+    private static final int FLEET_SIZE = 1000;
+    private static final long WAIT_NANOS = 100_000;
+
+    /**
+     * The number of machines the threads are spread over.
+     */
+    @Param({"1", "8"})
+    private int machines;
+
+    private MachineTrackerRepository repository;
+    private MachineTrackerService service;
+    private String item;
+
+    /**
+     * The machine changed by one thread.
+     */
+    @State(Scope.Thread)
+    public static class Target {
+
+        private int id;
+
+        /**
+         * Picks the machine of the thread from its index.
+         *
+         * @param benchmark The shared state.
+         * @param threads   The thread index given by JMH.
+         */
+        @Setup
+        public void setUp(final ContentionBenchmark benchmark, final ThreadParams threads) {
+            id = threads.getThreadIndex() % benchmark.machines + 1;
+        }
+    }
+
+    /**
+     * Writes the tracker file and opens the repository on it.
+     *
+     * @throws IOException If files left by an earlier run can't be deleted.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Fleets.writeTrackerFile(FILE_NAME, FLEET_SIZE);
+        repository = Storage.SNAPSHOT.open(FILE_NAME, "never");
+        service = new MachineTrackerService(repository);
+        item = Fleets.item(0);
+    }
+
+    /**
+     * Closes the repository and deletes its files.
+     *
+     * @throws IOException If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        Fleets.deleteTrackerFiles(FILE_NAME);
+    }
+
+    /**
+     * Refills the machine of the thread.
+     *
+     * @param target The machine of the thread.
+     * @return The inventory after the refill.
+     */
+    @Benchmark
+    public HashMap<String, Integer> addItem(final Target target) {
+        return service.addItem(target.id, item, 1);
+    }
+
+    /**
+     * Holds the lock of the machine of the thread while waiting for a fixed time.
+     *
+     * @param target The machine of the thread.
+     */
+    @Benchmark
+    public void slowOperation(final Target target) {
+        repository.withMachineLock(target.id, () -> {
+            LockSupport.parkNanos(WAIT_NANOS);
+            return null;
+        });
+    }
+}
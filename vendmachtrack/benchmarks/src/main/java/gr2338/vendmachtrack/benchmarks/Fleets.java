@@ -0,0 +1,119 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.MappedMachineStore;
+import gr2338.vendmachtrack.jsonio.internal.Journal;
+import gr2338.vendmachtrack.jsonio.internal.ToJson;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+/**
+ * Builds the trackers the benchmarks run against.
+ * <p>
+ * Machines get the IDs 1 to the fleet size, a location shared with every thousandth machine, and
+ * {@value #ITEMS_PER_MACHINE} items with quantities between 0 and 49 unless another number of items
+ * is given, so the same fleet size always gives the same tracker.
+ * </p>
+ */
+final class Fleets {
+
+    /**
+     * The number of items stocked in every machine.
+     */
+    static final int ITEMS_PER_MACHINE = 8;
+
+    private Fleets() {
+    }
+
+    /**
+     * Creates a vending machine stocked with {@value #ITEMS_PER_MACHINE} items.
+     *
+     * @param id The ID of the machine.
+     * @return The vending machine.
+     */
+    static VendingMachine machine(final int id) {
+        return machine(id, ITEMS_PER_MACHINE);
+    }
+
+    /**
+     * Creates a vending machine stocked with the given number of items.
+     *
+     * @param id    The ID of the machine.
+     * @param items The number of items.
+     * @return The vending machine.
+     */
+    static VendingMachine machine(final int id, final int items) {
+        HashMap<String, Integer> inventory = new HashMap<>();
+        for (int item = 0; item < items; item++) {
+            inventory.put(item(item), (id + item) % 50);
+        }
+        return new VendingMachine(id, inventory, "Location " + (id % 1000));
+    }
+
+    /**
+     * Creates a tracker with the given number of machines.
+     *
+     * @param fleetSize The number of machines.
+     * @return The tracker.
+     */
+    static MachineTracker create(final int fleetSize) {
+        return create(fleetSize, ITEMS_PER_MACHINE);
+    }
+
+    /**
+     * Creates a tracker with the given number of machines, each stocked with the given number of items.
+     *
+     * @param fleetSize The number of machines.
+     * @param items     The number of items in every machine.
+     * @return The tracker.
+     */
+    static MachineTracker create(final int fleetSize, final int items) {
+        MachineTracker machineTracker = new MachineTracker();
+        for (int id = 1; id <= fleetSize; id++) {
+            machineTracker.addVendingMachine(machine(id, items));
+        }
+        return machineTracker;
+    }
+
+    /**
+     * Retrieves the name of an item stocked by {@link #machine(int)}.
+     *
+     * @param index The index of the item, from 0 to the number of items minus one.
+     * @return The name of the item.
+     */
+    static String item(final int index) {
+        return "Item " + index;
+    }
+
+    /**
+     * Writes a tracker file in the home directory, replacing any files left by an earlier run.
+     *
+     * @param fileName  The name of the tracker file.
+     * @param fleetSize The number of machines.
+     * @throws IOException If files left by an earlier run can't be deleted.
+     */
+    static void writeTrackerFile(final String fileName, final int fleetSize) throws IOException {
+        deleteTrackerFiles(fileName);
+        if (!new ToJson(fileName, FsyncPolicy.NEVER).writeToFile(create(fleetSize))) {
+            throw new IllegalStateException("Couldn't write " + fileName);
+        }
+    }
+
+    /**
+     * Deletes a tracker file in the home directory and the files kept next to it.
+     *
+     * @param fileName The name of the tracker file.
+     * @throws IOException If a file can't be deleted.
+     */
+    static void deleteTrackerFiles(final String fileName) throws IOException {
+        String home = System.getProperty("user.home");
+        Files.deleteIfExists(Paths.get(home, fileName));
+        Files.deleteIfExists(Paths.get(home, fileName + Journal.JOURNAL_SUFFIX));
+        Files.deleteIfExists(Paths.get(home, fileName + MappedMachineStore.STORE_SUFFIX));
+    }
+}
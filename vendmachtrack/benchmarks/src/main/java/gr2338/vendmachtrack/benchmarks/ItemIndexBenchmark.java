@@ -0,0 +1,143 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.ItemIndex;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the item index of a {@link MachineTracker} with 100 000 machines stocking 50 items each,
+ * against scanning the inventories of the fleet.
+ * <p>
+ * The queried items walk through the 50 items, and the restocked machines walk through the fleet with
+ * a stride, so the measurements don't keep hitting the same part of the index.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ItemIndexBenchmark {
+
+    private static final int STRIDE = 7919;
+
+    /**
+     * The number of items stocked in every machine.
+     */
+    private static final int ITEMS = 50;
+
+    /**
+     * The number of machines in the tracker.
+     */
+    @Param({"100000"})
+    private int fleetSize;
+
+    /**
+     * The number of machines ranked by {@link #getTopMachines()}.
+     */
+    @Param({"10"})
+    private int count;
+
+    private MachineTracker machineTracker;
+    private List<VendingMachine> machines;
+    private ItemIndex index;
+    private int nextItem;
+    private int nextId;
+
+    /**
+     * Creates the tracker and builds its item index.
+     */
+    @Setup
+    public void setUp() {
+        machineTracker = Fleets.create(fleetSize, ITEMS);
+        machines = machineTracker.getMachines();
+        index = machineTracker.getItemIndex();
+        nextItem = 0;
+        nextId = 1;
+    }
+
+    /**
+     * Retrieves the next item to query.
+     *
+     * @return The name of an item stocked in the fleet.
+     */
+    private String nextItem() {
+        nextItem = (nextItem + 1) % ITEMS;
+        return Fleets.item(nextItem);
+    }
+
+    /**
+     * Retrieves the next machine to restock.
+     *
+     * @return A machine in the tracker.
+     */
+    private VendingMachine nextMachine() {
+        nextId = (nextId + STRIDE) % fleetSize + 1;
+        return machineTracker.getMachine(nextId);
+    }
+
+    /**
+     * Finds the machines with the most of an item through the index.
+     *
+     * @return The machines and their quantities.
+     */
+    @Benchmark
+    public LinkedHashMap<Integer, Integer> getTopMachines() {
+        return index.getTopMachines(nextItem(), count);
+    }
+
+    /**
+     * Finds the total quantity of an item through the index.
+     *
+     * @return The total quantity.
+     */
+    @Benchmark
+    public long getTotalQuantity() {
+        return index.getTotalQuantity(nextItem());
+    }
+
+    /**
+     * Finds the total quantity of an item by scanning the inventory of every machine, as was done
+     * before the index.
+     *
+     * @return The total quantity.
+     */
+    @Benchmark
+    public long getTotalQuantityByScan() {
+        String item = nextItem();
+        long total = 0;
+        for (VendingMachine vendMach : machines) {
+            total += vendMach.getQuantity(item);
+        }
+        return total;
+    }
+
+    /**
+     * Adds an item to a machine and removes it again, updating the index twice.
+     *
+     * @return Whether the item was removed, which it always is.
+     */
+    @Benchmark
+    public boolean restock() {
+        VendingMachine vendMach = nextMachine();
+        String item = nextItem();
+        vendMach.addItem(item, 1);
+        return vendMach.removeItem(item, 1);
+    }
+}
@@ -0,0 +1,212 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.springboot.SpringbootApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test comparing the backend with requests on Tomcat's platform thread pool against requests on virtual
+ * threads, see the {@code vendmachtrack.threads} property of {@link SpringbootApplication}.
+ * <p>
+ * For each thread mode, the server is started in this process on a random port, with the tracker stored in journal
+ * mode and every change forced to disk, so that requests spend their time in blocking file I/O. For each number of
+ * concurrent clients, every client sends its requests one after the other over its own connection and waits for
+ * each response before sending the next. Every tenth request adds an item, the others read an inventory. The test
+ * prints the median and 99th percentile latency and the throughput for every combination.
+ * </p>
+ * <p>
+ * Virtual threads need Java 21, so the virtual mode is skipped with a message on older Java versions. Each client
+ * holds a socket open at both ends, so the limit on open files has to be above twice the number of clients.
+ * </p>
+ * Options are given as {@code name=value} arguments, for instance:
+ * <pre>
+ * java -cp ... gr2338.vendmachtrack.benchmarks.LoadTest clients=1000,5000,10000 requests=20 modes=platform,virtual
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String FILE_NAME = "vendmachtrack-load-test.json";
+    private static final int WRITE_EVERY = 10;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private LoadTest() {
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args Options as {@code name=value}: {@code clients}, a comma separated list of the numbers of
+     *             concurrent clients, {@code requests}, the number of requests sent by each client, {@code modes},
+     *             the thread modes to test, and {@code fleet}, the number of machines in the tracker.
+     * @throws Exception If the tracker file can't be written or the test is interrupted.
+     */
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "clients", "1000,5000,10000",
+                "requests", "20",
+                "modes", "platform,virtual",
+                "fleet", "1000"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !options.containsKey(option[0])) {
+                throw new IllegalArgumentException("Unknown option: " + arg + ", expected one of " + options.keySet());
+            }
+            options.put(option[0], option[1]);
+        }
+        int[] clientCounts = Arrays.stream(options.get("clients").split(",")).mapToInt(Integer::parseInt).toArray();
+        int requests = Integer.parseInt(options.get("requests"));
+        int fleetSize = Integer.parseInt(options.get("fleet"));
+        int maxClients = Arrays.stream(clientCounts).max().orElse(0);
+
+        System.out.printf("%-9s %8s %9s %10s %10s %10s %7s%n",
+                "mode", "clients", "requests", "p50 (ms)", "p99 (ms)", "req/s", "errors");
+        for (String mode : options.get("modes").split(",")) {
+            if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+                System.out.println("Skipping virtual threads, they need Java 21 or later");
+                continue;
+            }
+            Fleets.writeTrackerFile(FILE_NAME, fleetSize);
+            try (ConfigurableApplicationContext context = start(mode, maxClients)) {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                // Warms up the server before measuring.
+                run(port, Math.min(maxClients, 100), requests, fleetSize);
+                for (int clients : clientCounts) {
+                    Result result = run(port, clients, requests, fleetSize);
+                    System.out.printf("%-9s %8d %9d %10.2f %10.2f %10.0f %7d%n", mode, clients, clients * requests,
+                            result.p50Millis(), result.p99Millis(), result.throughput(), result.errors());
+                }
+            } finally {
+                Fleets.deleteTrackerFiles(FILE_NAME);
+            }
+        }
+    }
+
+    /**
+     * Starts the server on a random port.
+     *
+     * @param mode       The thread mode, {@code platform} or {@code virtual}.
+     * @param maxClients The largest number of concurrent clients, which Tomcat has to accept connections for.
+     * @return The application context of the server.
+     */
+    private static ConfigurableApplicationContext start(final String mode, final int maxClients) {
+        return new SpringApplicationBuilder(SpringbootApplication.class)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run("--server.port=0",
+                        "--logging.level.root=warn",
+                        "--server.tomcat.max-connections=" + (maxClients + 100),
+                        "--server.tomcat.accept-count=" + maxClients,
+                        "--vendmachtrack.threads=" + mode,
+                        "--vendmachtrack.persistence.file=" + FILE_NAME,
+                        "--vendmachtrack.persistence.journal-compact-after=1000",
+                        "--vendmachtrack.persistence.fsync=always");
+    }
+
+    /**
+     * Lets a number of clients send requests at the same time, and measures the latency of every request.
+     *
+     * @param port      The port of the server.
+     * @param clients   The number of concurrent clients.
+     * @param requests  The number of requests sent by each client.
+     * @param fleetSize The number of machines in the tracker.
+     * @return The latencies and throughput.
+     */
+    private static Result run(final int port, final int clients, final int requests, final int fleetSize) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT)
+                .build();
+        long[] latencies = new long[clients * requests];
+        AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] running = new CompletableFuture<?>[clients];
+        for (int client = 0; client < clients; client++) {
+            running[client] = send(httpClient, port, client, 0, requests, fleetSize, latencies, errors);
+        }
+        CompletableFuture.allOf(running).join();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies.length / (elapsed / 1e9), errors.get());
+    }
+
+    /**
+     * Sends the requests of a client one after the other, starting with the given request.
+     *
+     * @param httpClient The HTTP client.
+     * @param port       The port of the server.
+     * @param client     The number of the client.
+     * @param request    The number of the request to send.
+     * @param requests   The number of requests sent by each client.
+     * @param fleetSize  The number of machines in the tracker.
+     * @param latencies  The latencies of all requests, in nanoseconds.
+     * @param errors     The number of failed requests.
+     * @return A future completed when the client has sent its last request.
+     */
+    private static CompletableFuture<Void> send(final HttpClient httpClient, final int port, final int client,
+                                                final int request, final int requests, final int fleetSize,
+                                                final long[] latencies, final AtomicInteger errors) {
+        if (request == requests) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int id = 1 + (client * requests + request) % fleetSize;
+        String base = "http://localhost:" + port + "/vendmachtrack/" + id;
+        HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(TIMEOUT);
+        if ((client + request) % WRITE_EVERY == 0) {
+            builder.uri(URI.create(base + "/add?item=Load&quantity=1"))
+                    .PUT(HttpRequest.BodyPublishers.noBody());
+        } else {
+            builder.uri(URI.create(base)).GET();
+        }
+
+        long start = System.nanoTime();
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    latencies[client * requests + request] = System.nanoTime() - start;
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> send(httpClient, port, client, request + 1, requests, fleetSize,
+                        latencies, errors));
+    }
+
+    /**
+     * Finds a percentile of sorted latencies.
+     *
+     * @param sortedLatencies The latencies in nanoseconds, sorted.
+     * @param fraction        The percentile as a fraction, for instance 0.99.
+     * @return The percentile in milliseconds.
+     */
+    private static double percentile(final long[] sortedLatencies, final double fraction) {
+        int index = (int) Math.ceil(fraction * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * The outcome of one run.
+     *
+     * @param p50Millis  The median latency in milliseconds.
+     * @param p99Millis  The 99th percentile latency in milliseconds.
+     * @param throughput The number of requests completed per second.
+     * @param errors     The number of failed requests.
+     */
+    private record Result(double p50Millis, double p99Millis, double throughput, int errors) {
+    }
+}
@@ -0,0 +1,93 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up machines in a {@link MachineTracker} at different fleet sizes.
+ * <p>
+ * The looked up IDs walk through the fleet with a stride, so lookups don't keep hitting the same
+ * machine in the CPU cache.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineTrackerBenchmark {
+
+    private static final int STRIDE = 7919;
+
+    /**
+     * The number of machines in the tracker.
+     */
+    @Param({"100", "10000", "100000"})
+    private int fleetSize;
+
+    private MachineTracker machineTracker;
+    private int nextId;
+
+    /**
+     * Creates the tracker.
+     */
+    @Setup
+    public void setUp() {
+        machineTracker = Fleets.create(fleetSize);
+        nextId = 1;
+    }
+
+    /**
+     * Retrieves the next ID to look up.
+     *
+     * @return An ID in the tracker.
+     */
+    private int nextId() {
+        nextId = (nextId + STRIDE) % fleetSize + 1;
+        return nextId;
+    }
+
+    /**
+     * Looks up a machine that is in the tracker.
+     *
+     * @return The machine.
+     */
+    @Benchmark
+    public VendingMachine getMachine() {
+        return machineTracker.getMachine(nextId());
+    }
+
+    /**
+     * Looks up a machine that isn't in the tracker.
+     *
+     * @return The machine, which is always null.
+     */
+    @Benchmark
+    public VendingMachine getMissingMachine() {
+        return machineTracker.getMachine(-nextId());
+    }
+
+    /**
+     * Checks whether a machine is in the tracker.
+     *
+     * @return Whether it is, which it always is.
+     */
+    @Benchmark
+    public boolean containsMachine() {
+        return machineTracker.containsMachine(nextId());
+    }
+}
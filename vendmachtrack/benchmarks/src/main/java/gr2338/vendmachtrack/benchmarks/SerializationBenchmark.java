@@ -0,0 +1,123 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.internal.FromJson;
+import gr2338.vendmachtrack.jsonio.internal.ToJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing and reading tracker JSON with {@link ToJson} and {@link FromJson} at different
+ * fleet sizes, both in memory and through a file in the home directory.
+ * <p>
+ * The file is written without forcing it to disk, so the numbers show the cost of serializing
+ * rather than the speed of the disk. See {@link SnapshotFormatBenchmark} for a comparison with the
+ * binary snapshot format.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    private static final String FILE_NAME = "vendmachtrack-serialization-benchmark.json";
+
+    /**
+     * The number of machines in the tracker.
+     */
+    @Param({"100", "10000", "100000"})
+    private int fleetSize;
+
+    private MachineTracker machineTracker;
+    private byte[] json;
+    private ToJson toJson;
+    private FromJson fromJson;
+
+    /**
+     * Creates the tracker, serializes it once to have something to read, and writes the file.
+     */
+    @Setup
+    public void setUp() {
+        machineTracker = Fleets.create(fleetSize);
+        toJson = new ToJson(FILE_NAME, FsyncPolicy.NEVER);
+        fromJson = new FromJson(FILE_NAME);
+        json = ((ByteArrayOutputStream) toJson.toOutputStream(machineTracker)).toByteArray();
+        if (!toJson.writeToFile(machineTracker)) {
+            throw new IllegalStateException("Couldn't write " + FILE_NAME);
+        }
+    }
+
+    /**
+     * Deletes the file.
+     *
+     * @throws IOException If the file can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Path path = Paths.get(System.getProperty("user.home"), FILE_NAME);
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Serializes the tracker into memory.
+     *
+     * @return The stream holding the JSON.
+     */
+    @Benchmark
+    public OutputStream toOutputStream() {
+        return toJson.toOutputStream(machineTracker);
+    }
+
+    /**
+     * Deserializes the tracker from memory.
+     *
+     * @return The tracker.
+     */
+    @Benchmark
+    public MachineTracker fromInputStream() {
+        return fromJson.fromInputStream(new ByteArrayInputStream(json));
+    }
+
+    /**
+     * Writes the tracker to the file, replacing it.
+     *
+     * @return Whether the file was written.
+     */
+    @Benchmark
+    public boolean writeToFile() {
+        return toJson.writeToFile(machineTracker);
+    }
+
+    /**
+     * Reads the tracker from the file.
+     *
+     * @return The tracker.
+     */
+    @Benchmark
+    public MachineTracker readFromFile() {
+        return fromJson.readFromFile();
+    }
+}
@@ -0,0 +1,136 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of {@link MachineTrackerService} against a
+ * {@link MachineTrackerRepository} backed by a file in the home directory, for each of the ways
+ * the repository can store the tracker.
+ * <p>
+ * Written data isn't forced to disk, so the numbers show the cost of the service and repository
+ * rather than the speed of the disk. Flushes happen in the background as they do in the server.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ServiceBenchmark {
+
+    private static final String FILE_NAME = "vendmachtrack-service-benchmark.json";
+    private static final int STRIDE = 7919;
+
+    /**
+     * The number of machines in the tracker.
+     */
+    @Param({"1000", "10000"})
+    private int fleetSize;
+
+    /**
+     * How the repository stores the tracker.
+     */
+    @Param({"SNAPSHOT", "JOURNAL", "MAPPED"})
+    private Storage storage;
+
+    private MachineTrackerRepository repository;
+    private MachineTrackerService service;
+    private String item;
+    private int nextId;
+
+    /**
+     * Writes the tracker file and opens the repository on it.
+     *
+     * @throws IOException If files left by an earlier run can't be deleted.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Fleets.writeTrackerFile(FILE_NAME, fleetSize);
+        repository = storage.open(FILE_NAME, "never");
+        service = new MachineTrackerService(repository);
+        item = Fleets.item(0);
+        nextId = 1;
+    }
+
+    /**
+     * Closes the repository and deletes its files.
+     *
+     * @throws IOException If the files can't be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        Fleets.deleteTrackerFiles(FILE_NAME);
+    }
+
+    /**
+     * Retrieves the next ID to use.
+     *
+     * @return An ID in the tracker.
+     */
+    private int nextId() {
+        nextId = (nextId + STRIDE) % fleetSize + 1;
+        return nextId;
+    }
+
+    /**
+     * Retrieves the inventory of a machine.
+     *
+     * @return The inventory.
+     */
+    @Benchmark
+    public HashMap<String, Integer> getInventory() {
+        return service.getInventory(nextId());
+    }
+
+    /**
+     * Adds an item to a machine and removes it again, leaving the machine as it was.
+     *
+     * @return The inventory after removing the item.
+     */
+    @Benchmark
+    public HashMap<String, Integer> addAndRemoveItem() {
+        int id = nextId();
+        service.addItem(id, item, 3);
+        return service.removeItem(id, item, 3);
+    }
+
+    /**
+     * Changes the location of a machine.
+     *
+     * @return The machines and their locations.
+     */
+    @Benchmark
+    public HashMap<Integer, String> changeLocation() {
+        int id = nextId();
+        return service.changeLocation(id, "Location " + (id % 1000));
+    }
+
+    /**
+     * Lists every machine with its location.
+     *
+     * @return The machines and their locations.
+     */
+    @Benchmark
+    public HashMap<Integer, String> getVendMachList() {
+        return service.getVendMachList();
+    }
+}
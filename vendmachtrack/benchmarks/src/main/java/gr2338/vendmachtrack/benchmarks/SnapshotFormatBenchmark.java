@@ -0,0 +1,84 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+import gr2338.vendmachtrack.jsonio.internal.SnapshotFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing and reading snapshots in the JSON and binary formats at different fleet sizes.
+ * Everything happens in memory, so only the cost of encoding and decoding is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SnapshotFormatBenchmark {
+
+    /**
+     * The number of machines in the tracker.
+     */
+    @Param({"100", "10000", "100000"})
+    private int fleetSize;
+
+    /**
+     * The snapshot format.
+     */
+    @Param({"JSON", "BINARY"})
+    private SnapshotFormat format;
+
+    private MachineTracker machineTracker;
+    private byte[] snapshot;
+
+    /**
+     * Creates the tracker and writes it once to have something to read.
+     *
+     * @throws IOException If the snapshot can't be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        machineTracker = Fleets.create(fleetSize);
+        snapshot = write().toByteArray();
+    }
+
+    /**
+     * Writes the tracker to memory.
+     *
+     * @return The stream holding the snapshot.
+     * @throws IOException If the snapshot can't be written.
+     */
+    @Benchmark
+    public ByteArrayOutputStream write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SnapshotFile.write(machineTracker, 1, out, format);
+        return out;
+    }
+
+    /**
+     * Reads the tracker from memory.
+     *
+     * @return The contents of the snapshot.
+     * @throws IOException If the snapshot can't be read.
+     */
+    @Benchmark
+    public SnapshotFile.Contents read() throws IOException {
+        return SnapshotFile.read(new ByteArrayInputStream(snapshot), format);
+    }
+}
@@ -0,0 +1,77 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.StockMonitor;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a {@link StockMonitor} adds to selling an item from a machine in a tracker.
+ * <p>
+ * A sale is measured as a removal followed by restocking the same quantity, which stays above the
+ * threshold, so the monitor checks every change without publishing alerts. The machine is compared
+ * without a monitor, with a monitor that has no thresholds, and with a threshold on the sold item.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockMonitorBenchmark {
+
+    private static final int FLEET_SIZE = 1000;
+
+    /**
+     * How the tracker is monitored: {@code none} without a monitor, {@code idle} with a monitor
+     * without thresholds, and {@code watching} with a threshold on the sold item.
+     */
+    @Param({"none", "idle", "watching"})
+    private String monitoring;
+
+    private VendingMachine machine;
+    private String item;
+
+    /**
+     * Creates the tracker and sets up the monitor.
+     */
+    @Setup
+    public void setUp() {
+        MachineTracker machineTracker = Fleets.create(FLEET_SIZE);
+        machine = machineTracker.getMachine(1);
+        item = Fleets.item(3);
+        machine.addItem(item, 100);
+        if (!"none".equals(monitoring)) {
+            StockMonitor monitor = new StockMonitor();
+            if ("watching".equals(monitoring)) {
+                monitor.setItemThreshold(item, 10);
+            }
+            machineTracker.setStockMonitor(monitor);
+        }
+    }
+
+    /**
+     * Sells one of the item and restocks it.
+     *
+     * @return Whether the sale succeeded.
+     */
+    @Benchmark
+    public boolean sellAndRestock() {
+        boolean sold = machine.removeItem(item, 1);
+        machine.addItem(item, 1);
+        return sold;
+    }
+}
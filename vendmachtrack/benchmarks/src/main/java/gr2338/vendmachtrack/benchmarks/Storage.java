@@ -0,0 +1,38 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+
+/**
+ * The ways a {@link MachineTrackerRepository} can store the tracker, used as a benchmark parameter.
+ */
+public enum Storage {
+    /**
+     * The whole tracker is kept in memory and written on flush.
+     */
+    SNAPSHOT,
+    /**
+     * The whole tracker is kept in memory and changes are appended to a journal.
+     */
+    JOURNAL,
+    /**
+     * The machines are kept in a memory-mapped store.
+     */
+    MAPPED;
+
+    private static final int FLUSH_AFTER_CHANGES = 50;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int JOURNAL_COMPACT_AFTER = 1000;
+    private static final int MAPPED_CACHE_SIZE = 1000;
+
+    /**
+     * Opens a repository on a tracker file, storing it this way.
+     *
+     * @param fileName    The name of the tracker file in the home directory.
+     * @param fsyncPolicy When written data is forced to disk.
+     * @return The repository.
+     */
+    MachineTrackerRepository open(final String fileName, final String fsyncPolicy) {
+        return new MachineTrackerRepository(fileName, FLUSH_AFTER_CHANGES, FLUSH_INTERVAL_MILLIS,
+                this == JOURNAL ? JOURNAL_COMPACT_AFTER : 0, fsyncPolicy, this == MAPPED ? MAPPED_CACHE_SIZE : 0);
+    }
+}
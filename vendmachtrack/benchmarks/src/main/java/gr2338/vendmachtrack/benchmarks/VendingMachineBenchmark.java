@@ -0,0 +1,115 @@
+package gr2338.vendmachtrack.benchmarks;
+
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the inventory operations of {@link VendingMachine}, which every request to the server
+ * ends up calling.
+ * <p>
+ * Adding and removing are measured as pairs that leave the inventory as it was, so the machine
+ * doesn't grow or run empty during a run.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VendingMachineBenchmark {
+
+    private VendingMachine machine;
+    private String existingItem;
+    private String newItem;
+
+    /**
+     * Creates a stocked machine.
+     */
+    @Setup
+    public void setUp() {
+        machine = Fleets.machine(1);
+        existingItem = Fleets.item(3);
+        newItem = "Not stocked";
+    }
+
+    /**
+     * Adds to an item the machine holds and removes it again.
+     *
+     * @return Whether the removal succeeded.
+     */
+    @Benchmark
+    public boolean addAndRemoveExisting() {
+        machine.addItem(existingItem, 5);
+        return machine.removeItem(existingItem, 5);
+    }
+
+    /**
+     * Adds an item the machine doesn't hold and removes all of it again, which adds and removes the
+     * inventory entry.
+     *
+     * @return Whether the removal succeeded.
+     */
+    @Benchmark
+    public boolean addAndRemoveNew() {
+        machine.addItem(newItem, 1);
+        return machine.removeItem(newItem, 1);
+    }
+
+    /**
+     * Tries to remove more of an item than the machine holds.
+     *
+     * @return Whether the removal succeeded, which it never does.
+     */
+    @Benchmark
+    public boolean tryRemoveTooMany() {
+        return machine.tryRemove(existingItem, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Looks up the quantity of an item.
+     *
+     * @return The quantity.
+     */
+    @Benchmark
+    public int getQuantity() {
+        return machine.getQuantity(existingItem);
+    }
+
+    /**
+     * Copies the inventory, as the service does for every response.
+     *
+     * @return The copy.
+     */
+    @Benchmark
+    public HashMap<String, Integer> getStatus() {
+        return machine.getStatus();
+    }
+
+    /**
+     * Sums the quantities through the read-only view of the inventory.
+     *
+     * @return The sum of the quantities.
+     */
+    @Benchmark
+    public int iterateStatusView() {
+        int sum = 0;
+        for (Map.Entry<String, Integer> entry : machine.getStatusView().entrySet()) {
+            sum += entry.getValue();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,394 @@
+package gr2338.vendmachtrack.core.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Holds the inventory of a vending machine as item names mapped to quantities.
+ * <p>
+ * The names and quantities are kept in two parallel arrays in the order the items were first
+ * added, and an open addressing hash table with linear probing maps each name to its position in
+ * the arrays. Quantities are stored as plain ints, so looking up, adding and removing items
+ * doesn't box or allocate anything once the arrays are large enough. Iterating follows the order
+ * the items were added, which keeps serialized inventories stable. A read-only {@link Map} view
+ * is available for code that needs one.
+ * </p>
+ */
+final class InventoryMap {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Default capacity and load factor of {@link HashMap}, used to size copies so they don't
+     * grow while being filled.
+     */
+    private static final int HASH_MAP_CAPACITY = 16;
+    private static final float HASH_MAP_LOAD_FACTOR = 0.75f;
+
+    /**
+     * Multiplier spreading the hash codes of item names over the slots, the golden ratio as a
+     * fraction of 2<sup>32</sup>.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Shift folding the high bits of a hash into the low bits used as the slot.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    /**
+     * Item names in the order they were added, with null where an item has been removed.
+     */
+    private String[] items;
+    private int[] quantities;
+
+    /**
+     * Hash table holding the position of every item in {@link #items} plus one, or 0 for an
+     * empty slot. It has twice as many slots as {@link #items}, so it is at most half full.
+     */
+    private int[] table;
+
+    /**
+     * Number of positions in {@link #items} that have been used, including removed items.
+     */
+    private int used;
+    private int size;
+    private transient Map<String, Integer> view;
+
+    /**
+     * Creates an empty inventory.
+     */
+    InventoryMap() {
+        this.items = new String[INITIAL_CAPACITY];
+        this.quantities = new int[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Creates a copy of another inventory.
+     *
+     * @param other The inventory to copy.
+     */
+    InventoryMap(final InventoryMap other) {
+        this.items = other.items.clone();
+        this.quantities = other.quantities.clone();
+        this.table = other.table.clone();
+        this.used = other.used;
+        this.size = other.size;
+    }
+
+    /**
+     * Creates an inventory holding the entries of a map, in the order the map iterates them.
+     * Entries with a null quantity are left out.
+     *
+     * @param map The map to copy.
+     */
+    InventoryMap(final Map<String, Integer> map) {
+        this();
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the quantity of an item.
+     *
+     * @param item The name of the item.
+     * @return The quantity, or 0 if the item isn't in the inventory.
+     */
+    int get(final String item) {
+        int slot = slotOf(item);
+        return slot < 0 ? 0 : quantities[table[slot] - 1];
+    }
+
+    /**
+     * Checks whether an item is in the inventory.
+     *
+     * @param item The name of the item.
+     * @return {@code true} if the item is in the inventory, even with a quantity of 0.
+     */
+    boolean contains(final String item) {
+        return slotOf(item) >= 0;
+    }
+
+    /**
+     * Adds a quantity to an item, adding the item if it isn't in the inventory.
+     *
+     * @param item   The name of the item.
+     * @param number The quantity to add.
+     * @throws NullPointerException If the item is null.
+     */
+    void add(final String item, final int number) {
+        int position = positionFor(item);
+        quantities[position] += number;
+    }
+
+    /**
+     * Sets the quantity of an item, adding the item if it isn't in the inventory.
+     *
+     * @param item     The name of the item.
+     * @param quantity The new quantity.
+     * @throws NullPointerException If the item is null.
+     */
+    void put(final String item, final int quantity) {
+        int position = positionFor(item);
+        quantities[position] = quantity;
+    }
+
+    /**
+     * Removes a quantity of an item. The item is removed from the inventory when its quantity
+     * reaches zero. Nothing is removed if the inventory holds less than the given quantity.
+     *
+     * @param item   The name of the item.
+     * @param number The quantity to remove.
+     * @return {@code true} if the quantity was removed, {@code false} otherwise.
+     */
+    boolean tryRemove(final String item, final int number) {
+        int slot = slotOf(item);
+        if (slot < 0) {
+            return false;
+        }
+        int position = table[slot] - 1;
+        if (quantities[position] < number) {
+            return false;
+        }
+        if (quantities[position] == number) {
+            removeSlot(slot);
+        } else {
+            quantities[position] -= number;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of items in the inventory.
+     *
+     * @return The number of items.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the inventory into a new {@code HashMap}.
+     *
+     * @return A map with item names as keys and their quantities as values.
+     */
+    HashMap<String, Integer> toHashMap() {
+        HashMap<String, Integer> map = new HashMap<>(
+                Math.max(HASH_MAP_CAPACITY, (int) (size / HASH_MAP_LOAD_FACTOR) + 1));
+        for (int position = 0; position < used; position++) {
+            if (items[position] != null) {
+                map.put(items[position], quantities[position]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Retrieves a read-only view of the inventory, which follows later changes.
+     *
+     * @return An unmodifiable map with item names as keys and their quantities as values.
+     */
+    Map<String, Integer> view() {
+        if (view == null) {
+            view = new View();
+        }
+        return view;
+    }
+
+    /**
+     * Finds the hash table slot of an item.
+     *
+     * @param item The name of the item, may be null.
+     * @return The slot, or -1 if the item isn't in the inventory.
+     */
+    private int slotOf(final Object item) {
+        if (item == null) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = slotFor(item, mask); table[slot] != 0; slot = (slot + 1) & mask) {
+            if (items[table[slot] - 1].equals(item)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the position of an item in the arrays, adding it with a quantity of 0 if it isn't in
+     * the inventory.
+     *
+     * @param item The name of the item.
+     * @return The position.
+     * @throws NullPointerException If the item is null.
+     */
+    private int positionFor(final String item) {
+        Objects.requireNonNull(item, "The item can't be null");
+        int slot = slotOf(item);
+        if (slot >= 0) {
+            return table[slot] - 1;
+        }
+
+        if (used == items.length) {
+            // Grows the arrays if they are mostly in use, otherwise only drops removed items.
+            rebuild(size * 2 >= items.length ? items.length * 2 : items.length);
+        }
+        int mask = table.length - 1;
+        slot = slotFor(item, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        int position = used++;
+        items[position] = item;
+        quantities[position] = 0;
+        table[slot] = position + 1;
+        size++;
+        return position;
+    }
+
+    /**
+     * Removes the item in a hash table slot, moving later entries of the probe sequence back so
+     * lookups never stop at a hole.
+     *
+     * @param slot The slot to empty.
+     */
+    private void removeSlot(final int slot) {
+        int position = table[slot] - 1;
+        items[position] = null;
+        quantities[position] = 0;
+
+        int mask = table.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = slotFor(items[table[next] - 1], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+        size--;
+        if (size == 0) {
+            used = 0;
+        }
+    }
+
+    /**
+     * Moves the items into new arrays without the removed ones, and rebuilds the hash table.
+     *
+     * @param capacity The new length of the arrays, a power of two.
+     */
+    private void rebuild(final int capacity) {
+        String[] oldItems = items;
+        int[] oldQuantities = quantities;
+        int oldUsed = used;
+        items = new String[capacity];
+        quantities = new int[capacity];
+        table = new int[capacity * 2];
+        used = 0;
+
+        int mask = table.length - 1;
+        for (int i = 0; i < oldUsed; i++) {
+            if (oldItems[i] != null) {
+                int slot = slotFor(oldItems[i], mask);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                items[used] = oldItems[i];
+                quantities[used] = oldQuantities[i];
+                table[slot] = ++used;
+            }
+        }
+    }
+
+    /**
+     * Finds the first slot to probe for an item.
+     *
+     * @param item The name of the item.
+     * @param mask The number of slots minus one.
+     * @return The slot.
+     */
+    private static int slotFor(final Object item, final int mask) {
+        int hash = item.hashCode() * HASH_MULTIPLIER;
+        return (hash ^ (hash >>> HASH_SHIFT)) & mask;
+    }
+
+    /**
+     * Read-only {@link Map} view of the inventory. Quantities are boxed when they are read.
+     */
+    private final class View extends AbstractMap<String, Integer> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return slotOf(key) >= 0;
+        }
+
+        @Override
+        public Integer get(final Object key) {
+            int slot = slotOf(key);
+            return slot < 0 ? null : quantities[table[slot] - 1];
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    return new Iterator<>() {
+                        private int next = advance(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < used;
+                        }
+
+                        @Override
+                        public Entry<String, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Integer> entry = new SimpleImmutableEntry<>(items[next], quantities[next]);
+                            next = advance(next + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+
+        /**
+         * Finds the next position holding an item.
+         *
+         * @param from The position to start at.
+         * @return The position, or the number of used positions if there are no more items.
+         */
+        private int advance(final int from) {
+            int position = from;
+            while (position < used && items[position] == null) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
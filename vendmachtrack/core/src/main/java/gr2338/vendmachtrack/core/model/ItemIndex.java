@@ -0,0 +1,184 @@
+package gr2338.vendmachtrack.core.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index from item name to the vending machines stocking the item and their
+ * quantities.
+ * <p>
+ * For every item, the index keeps the total quantity in the fleet and the
+ * machines stocking it, ranked by quantity. A change to the quantity of an item
+ * in one machine updates the total in constant time and the ranking in time
+ * logarithmic in the number of machines stocking the item, so neither the
+ * fleet nor the inventories are ever scanned. The machines with the most of an
+ * item are found by walking the ranking from the top, and the machines stocking
+ * an item by walking all of it.
+ * </p>
+ * <p>
+ * The ranking holds one {@code long} per machine and item, combining the
+ * quantity and the ID, so an entry costs a tree node and a boxed key instead of
+ * a map entry with a boxed key and value.
+ * </p>
+ * <p>
+ * The class is thread-safe. Every item has its own lock, so changes to
+ * different items don't wait for each other.
+ * </p>
+ */
+public final class ItemIndex {
+
+    private final ConcurrentHashMap<String, Stock> stockByItem = new ConcurrentHashMap<>();
+
+    /**
+     * The machines stocking an item.
+     */
+    private static final class Stock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The machines stocking the item, encoded with {@link #key(int, int)} so
+         * that the machine with the highest quantity comes first.
+         */
+        private final TreeSet<Long> ranking = new TreeSet<>();
+
+        /**
+         * The total quantity of the item in the fleet.
+         */
+        private long total;
+    }
+
+    /**
+     * Registers that the quantity of an item in a machine changed.
+     *
+     * @param id     The ID of the machine.
+     * @param item   The name of the item.
+     * @param before The quantity before the change, zero if the machine didn't
+     *               stock the item.
+     * @param after  The quantity after the change, zero if the machine no longer
+     *               stocks the item.
+     */
+    public void update(final int id, final String item, final int before, final int after) {
+        if (before == after) {
+            return;
+        }
+        Stock stock = stockByItem.computeIfAbsent(item, name -> new Stock());
+        stock.lock.lock();
+        try {
+            if (before > 0) {
+                stock.ranking.remove(key(id, before));
+            }
+            if (after > 0) {
+                stock.ranking.add(key(id, after));
+            }
+            stock.total += (long) after - before;
+        } finally {
+            stock.lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the machines stocking an item.
+     *
+     * @param item The name of the item.
+     * @return The IDs of the machines mapped to their quantities of the item, in
+     * order of ascending ID.
+     */
+    public SortedMap<Integer, Integer> getMachinesStocking(final String item) {
+        SortedMap<Integer, Integer> machines = new TreeMap<>();
+        Stock stock = stockByItem.get(item);
+        if (stock != null) {
+            stock.lock.lock();
+            try {
+                for (long key : stock.ranking) {
+                    machines.put(idOf(key), quantityOf(key));
+                }
+            } finally {
+                stock.lock.unlock();
+            }
+        }
+        return machines;
+    }
+
+    /**
+     * Retrieves the total quantity of an item in the fleet.
+     *
+     * @param item The name of the item.
+     * @return The total quantity.
+     */
+    public long getTotalQuantity(final String item) {
+        Stock stock = stockByItem.get(item);
+        if (stock == null) {
+            return 0;
+        }
+        stock.lock.lock();
+        try {
+            return stock.total;
+        } finally {
+            stock.lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the machines with the highest quantities of an item.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of machines to retrieve.
+     * @return The IDs of the machines mapped to their quantities of the item, in
+     * order of descending quantity, and ascending ID for equal quantities.
+     */
+    public LinkedHashMap<Integer, Integer> getTopMachines(final String item, final int count) {
+        LinkedHashMap<Integer, Integer> machines = new LinkedHashMap<>();
+        Stock stock = stockByItem.get(item);
+        if (stock != null) {
+            stock.lock.lock();
+            try {
+                Iterator<Long> ranked = stock.ranking.iterator();
+                while (machines.size() < count && ranked.hasNext()) {
+                    long key = ranked.next();
+                    machines.put(idOf(key), quantityOf(key));
+                }
+            } finally {
+                stock.lock.unlock();
+            }
+        }
+        return machines;
+    }
+
+    /**
+     * Combines a quantity and a machine ID into a key that sorts by descending
+     * quantity, then by ascending ID.
+     *
+     * @param id       The ID of the machine.
+     * @param quantity The quantity, which has to be positive.
+     * @return The key.
+     */
+    private static long key(final int id, final int quantity) {
+        return ((long) (Integer.MAX_VALUE - quantity) << Integer.SIZE) | Integer.toUnsignedLong(id ^ Integer.MIN_VALUE);
+    }
+
+    /**
+     * Retrieves the machine ID of a key.
+     *
+     * @param key The key.
+     * @return The ID.
+     */
+    private static int idOf(final long key) {
+        return (int) key ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Retrieves the quantity of a key.
+     *
+     * @param key The key.
+     * @return The quantity.
+     */
+    private static int quantityOf(final long key) {
+        return Integer.MAX_VALUE - (int) (key >>> Integer.SIZE);
+    }
+}
@@ -0,0 +1,200 @@
+package gr2338.vendmachtrack.core.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index from location to the IDs of the vending machines placed there.
+ * <p>
+ * The locations are kept in a sorted map that ignores case, so the machines at
+ * a location, or at every location starting with a prefix, are found in
+ * logarithmic time plus the number of machines found, and the number of
+ * machines at a location in logarithmic time. The index is updated one machine
+ * at a time as machines are added, moved and removed, and is never rebuilt from
+ * the whole fleet.
+ * </p>
+ * <p>
+ * The class is thread-safe, so machines in different places can be moved in
+ * parallel while the index is queried.
+ * </p>
+ */
+public final class LocationIndex {
+
+    /**
+     * The location of every indexed machine, by ID.
+     */
+    private final Map<Integer, String> locationById = new HashMap<>();
+
+    /**
+     * The IDs of the machines at every location, ignoring case, in ascending order.
+     */
+    private final NavigableMap<String, TreeSet<Integer>> idsByLocation =
+            new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Indexes a machine at a location, replacing the location it was indexed at
+     * before. A null location removes the machine from the index.
+     *
+     * @param id       The ID of the machine.
+     * @param location The location of the machine, or null.
+     */
+    public void put(final int id, final String location) {
+        lock.lock();
+        try {
+            String previous = location == null ? locationById.remove(id) : locationById.put(id, location);
+            if (previous != null) {
+                TreeSet<Integer> ids = idsByLocation.get(previous);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    idsByLocation.remove(previous);
+                }
+            }
+            if (location != null) {
+                idsByLocation.computeIfAbsent(location, key -> new TreeSet<>()).add(id);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a machine from the index.
+     *
+     * @param id The ID of the machine.
+     */
+    public void remove(final int id) {
+        put(id, null);
+    }
+
+    /**
+     * Retrieves the machines at a location, ignoring case.
+     *
+     * @param location The location.
+     * @return The IDs of the machines mapped to their locations, in order of
+     * ascending ID.
+     */
+    public SortedMap<Integer, String> getMachinesAt(final String location) {
+        lock.lock();
+        try {
+            SortedMap<Integer, String> machines = new TreeMap<>();
+            TreeSet<Integer> ids = idsByLocation.get(location);
+            if (ids != null) {
+                for (int id : ids) {
+                    machines.put(id, locationById.get(id));
+                }
+            }
+            return machines;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the machines at every location starting with a prefix, ignoring
+     * case.
+     *
+     * @param prefix The start of the location.
+     * @return The IDs of the machines mapped to their locations, in order of
+     * ascending ID.
+     */
+    public SortedMap<Integer, String> getMachinesWithPrefix(final String prefix) {
+        lock.lock();
+        try {
+            SortedMap<Integer, String> machines = new TreeMap<>();
+            for (TreeSet<Integer> ids : withPrefix(prefix).values()) {
+                for (int id : ids) {
+                    machines.put(id, locationById.get(id));
+                }
+            }
+            return machines;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of machines at a location, ignoring case.
+     *
+     * @param location The location.
+     * @return The number of machines.
+     */
+    public int countAt(final String location) {
+        lock.lock();
+        try {
+            TreeSet<Integer> ids = idsByLocation.get(location);
+            return ids == null ? 0 : ids.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of machines at every location starting with a prefix,
+     * ignoring case. Locations that only differ in case are counted together,
+     * under the spelling of one of them.
+     *
+     * @param prefix The start of the location, or an empty string for every
+     *               location.
+     * @return The locations mapped to the number of machines there, in
+     * alphabetical order ignoring case.
+     */
+    public SortedMap<String, Integer> countByLocation(final String prefix) {
+        lock.lock();
+        try {
+            SortedMap<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, TreeSet<Integer>> entry : withPrefix(prefix).entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().size());
+            }
+            return counts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the location of every machine in the index.
+     *
+     * @return The IDs of the machines mapped to their locations.
+     */
+    public HashMap<Integer, String> getAllMachines() {
+        lock.lock();
+        try {
+            return new HashMap<>(locationById);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of machines in the index.
+     *
+     * @return The number of machines.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return locationById.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the part of the index with locations starting with a prefix. Must
+     * be called while holding the lock.
+     *
+     * @param prefix The start of the location.
+     * @return A view of the locations starting with the prefix.
+     */
+    private NavigableMap<String, TreeSet<Integer>> withPrefix(final String prefix) {
+        // No location starting with the prefix sorts after the prefix followed by the highest character.
+        return idsByLocation.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+}
@@ -1,7 +1,10 @@
 package gr2338.vendmachtrack.core.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a collection of vending machines and provides methods to manage
@@ -14,6 +17,24 @@ import java.util.List;
  * unique within its list and throws an exception if any operation violates this
  * constraint.
  * </p>
+ * <p>
+ * Alongside the list, the tracker maintains an index from machine ID to vending
+ * machine, so machines can be looked up by ID in constant time. The ID of a
+ * vending machine must therefore not be changed while it is part of a tracker.
+ * The index also holds the position of each machine in the list, so a machine
+ * is removed in constant time by moving the last machine of the list into its
+ * place. The list is therefore in the order the machines were added only until
+ * one is removed.
+ * </p>
+ * <p>
+ * The tracker also maintains a {@link LocationIndex} of its machines. Machines
+ * report changes to their location to the tracker they were last added to, so
+ * the index is kept up to date one machine at a time, see
+ * {@link #getLocationIndex()}. Likewise, machines report changes to their
+ * inventory, which keep the {@link ItemIndex} up to date once it has been
+ * requested, see {@link #getItemIndex()}, and are checked by the
+ * {@link StockMonitor} set with {@link #setStockMonitor(StockMonitor)}.
+ * </p>
  */
 public class MachineTracker {
 
@@ -22,6 +43,41 @@ public class MachineTracker {
      */
     private List<VendingMachine> machines = new ArrayList<>();
 
+    /**
+     * Index from machine ID to vending machine. Not serialized, and built lazily
+     * since deserialization sets the list directly.
+     */
+    private transient Map<Integer, VendingMachine> machinesById;
+
+    /**
+     * Position in the list of each machine in the ID index. Built together with
+     * the ID index.
+     */
+    private transient Map<Integer, Integer> positions;
+
+    /**
+     * Number of machines in the list that aren't in the ID index, since another
+     * machine with the same ID comes before them. Only lists set with
+     * {@link #setMachines(List)} can have any.
+     */
+    private transient int shadowed;
+
+    /**
+     * Index from location to the machines there. Built together with the ID index.
+     */
+    private transient LocationIndex locations;
+
+    /**
+     * Index from item to the machines stocking it, or null until it is requested.
+     * Not built up front, since it holds an entry for every item in every machine.
+     */
+    private transient ItemIndex items;
+
+    /**
+     * The monitor told about changes to the inventories, or null.
+     */
+    private transient StockMonitor stockMonitor;
+
     /**
      * Removes the specified vending machine from the machine tracker.
      *
@@ -29,12 +85,53 @@ public class MachineTracker {
      * @throws IllegalArgumentException If the machine is not found in the tracker.
      */
     public void removeVendingMachine(final VendingMachine vendMach) {
-        if (!machines.contains(vendMach)) {
+        if (vendMach != null && getMachine(vendMach.getId()) == vendMach) {
+            removeVendingMachine(vendMach.getId());
+            return;
+        }
+        int position = shadowed > 0 ? machines.indexOf(vendMach) : -1;
+        if (position < 0) {
             throw new IllegalArgumentException(
                     "The specified vending machine is not part of this tracker");
+        }
+        removeAt(position);
+        shadowed--;
+    }
+
+    /**
+     * Removes the vending machine with the specified ID from the machine tracker.
+     *
+     * @param id The ID of the vending machine to be removed from the tracker.
+     * @return The removed vending machine.
+     * @throws IllegalArgumentException If no machine with the ID is found in the tracker.
+     */
+    public VendingMachine removeVendingMachine(final int id) {
+        VendingMachine vendMach = index().remove(id);
+
+        if (vendMach == null) {
+            throw new IllegalArgumentException(
+                    "The specified vending machine is not part of this tracker");
+        }
+
+        removeAt(positions.remove(id));
+        if (vendMach.getTracker() == this) {
+            vendMach.setTracker(null);
+        }
+        indexInventory(vendMach, -1);
+        int duplicatePosition = shadowed > 0 ? findShadowed(id) : -1;
+        if (duplicatePosition >= 0) {
+            VendingMachine duplicate = machines.get(duplicatePosition);
+            shadowed--;
+            machinesById.put(id, duplicate);
+            positions.put(id, duplicatePosition);
+            duplicate.setTracker(this);
+            locations.put(id, duplicate.getLocation());
+            indexInventory(duplicate, 1);
         } else {
-            machines.remove(vendMach);
+            locations.remove(id);
         }
+
+        return vendMach;
     }
 
     /**
@@ -43,18 +140,133 @@ public class MachineTracker {
      * The method ensures that each vending machine in the tracker is unique.
      *
      * @param vendMach The vending machine to be added to the tracker.
-     * @throws IllegalArgumentException If the vending machine is already in the
-     *                                  tracker.
+     * @throws IllegalArgumentException If the vending machine, or another machine
+     *                                  with the same ID, is already in the tracker.
      */
     public void addVendingMachine(final VendingMachine vendMach) {
-        if (machines.contains(vendMach)) {
+        if (containsMachine(vendMach.getId())) {
             throw new IllegalArgumentException(
                     "The vending machine is already part of this tracker");
         } else {
+            positions.put(vendMach.getId(), machines.size());
             machines.add(vendMach);
+            index().put(vendMach.getId(), vendMach);
+            vendMach.setTracker(this);
+            locations.put(vendMach.getId(), vendMach.getLocation());
+            indexInventory(vendMach, 1);
+        }
+    }
+
+    /**
+     * Retrieves the vending machine with the specified ID.
+     *
+     * @param id The ID of the vending machine.
+     * @return The vending machine with the ID, or null if it isn't in the tracker.
+     */
+    public VendingMachine getMachine(final int id) {
+        return index().get(id);
+    }
+
+    /**
+     * Checks whether a vending machine with the specified ID is in the tracker.
+     *
+     * @param id The ID of the vending machine.
+     * @return True if the tracker contains a machine with the ID, false otherwise.
+     */
+    public boolean containsMachine(final int id) {
+        return index().containsKey(id);
+    }
+
+    /**
+     * Retrieves the index from location to the vending machines there, which
+     * answers exact-match and prefix queries on the location without scanning the
+     * tracker. The index is kept up to date as machines are added, removed and
+     * moved with {@link VendingMachine#setLocation(String)}.
+     *
+     * @return The location index of the tracker.
+     */
+    public LocationIndex getLocationIndex() {
+        index();
+        return locations;
+    }
+
+    /**
+     * Retrieves the index from item to the vending machines stocking it, which
+     * answers which machines stock an item, how much of it there is in total and
+     * which machines have the most of it without scanning the inventories. The
+     * index is built the first time it is requested, and kept up to date after
+     * that as machines are added, removed and restocked.
+     * <p>
+     * Building the index reads every machine, so the first call must not be made
+     * while other threads change the tracker.
+     * </p>
+     *
+     * @return The item index of the tracker.
+     */
+    public ItemIndex getItemIndex() {
+        index();
+        if (items == null) {
+            ItemIndex itemIndex = new ItemIndex();
+            for (VendingMachine vendMach : machinesById.values()) {
+                for (Map.Entry<String, Integer> entry : vendMach.getStatusView().entrySet()) {
+                    itemIndex.update(vendMach.getId(), entry.getKey(), 0, entry.getValue());
+                }
+            }
+            items = itemIndex;
+        }
+        return items;
+    }
+
+    /**
+     * Sets the monitor told about every change to the quantity of an item in a
+     * machine in the tracker, so items dropping below their thresholds are found
+     * as they are sold instead of by scanning the inventories. The machines
+     * already in the tracker are checked against the thresholds of the monitor
+     * right away.
+     *
+     * @param monitor The monitor, or null to stop telling it.
+     */
+    public void setStockMonitor(final StockMonitor monitor) {
+        index();
+        this.stockMonitor = monitor;
+        if (monitor != null && monitor.isActive()) {
+            for (VendingMachine vendMach : machinesById.values()) {
+                for (Map.Entry<String, Integer> entry : vendMach.getStatusView().entrySet()) {
+                    monitor.update(vendMach.getId(), entry.getKey(), entry.getValue());
+                }
+            }
         }
     }
 
+    /**
+     * Checks whether the item index has been built.
+     *
+     * @return True if {@link #getItemIndex()} has been called since the machines
+     * were last set, false otherwise.
+     */
+    public boolean isItemIndexed() {
+        return items != null;
+    }
+
+    /**
+     * Retrieves the number of vending machines in the tracker.
+     *
+     * @return The number of vending machines.
+     */
+    public int getMachineCount() {
+        return machines.size();
+    }
+
+    /**
+     * Retrieves a read-only view of the vending machines in the tracker, without
+     * copying the list.
+     *
+     * @return An unmodifiable view of the vending machines in the tracker.
+     */
+    public List<VendingMachine> getMachinesView() {
+        return Collections.unmodifiableList(machines);
+    }
+
     /**
      * Retrieves a defensive copy of the list of vending machines in the tracker.
      * <p>
@@ -78,5 +290,165 @@ public class MachineTracker {
      */
     public void setMachines(final List<VendingMachine> newMachines) {
         this.machines = new ArrayList<>(newMachines);
+        this.machinesById = null;
+        this.positions = null;
+        this.shadowed = 0;
+        this.locations = null;
+        this.items = null;
+    }
+
+    /**
+     * Updates the location index after a machine in the tracker was moved. Changes
+     * to machines that aren't indexed by this tracker are ignored.
+     *
+     * @param vendMach The moved vending machine.
+     */
+    void locationChanged(final VendingMachine vendMach) {
+        Map<Integer, VendingMachine> index = machinesById;
+        if (index != null && index.get(vendMach.getId()) == vendMach) {
+            locations.put(vendMach.getId(), vendMach.getLocation());
+        }
+    }
+
+    /**
+     * Updates the item index and tells the stock monitor after the quantity of an
+     * item in a machine in the tracker changed. Changes to machines that aren't
+     * indexed by this tracker are ignored, and so are changes made before the item
+     * index is built or while the monitor has no thresholds. The ID index is
+     * rebuilt first if the machines were set since it was last built.
+     *
+     * @param vendMach The changed vending machine.
+     * @param item     The name of the item.
+     * @param before   The quantity before the change.
+     * @param after    The quantity after the change.
+     */
+    void inventoryChanged(final VendingMachine vendMach, final String item, final int before, final int after) {
+        ItemIndex itemIndex = items;
+        StockMonitor monitor = stockMonitor;
+        boolean watched = monitor != null && monitor.isActive();
+        if ((itemIndex != null || watched) && index().get(vendMach.getId()) == vendMach) {
+            if (itemIndex != null) {
+                itemIndex.update(vendMach.getId(), item, before, after);
+            }
+            if (watched) {
+                monitor.update(vendMach.getId(), item, after);
+            }
+        }
+    }
+
+    /**
+     * Updates the item index and tells the stock monitor after the whole inventory
+     * of a machine in the tracker was replaced.
+     *
+     * @param vendMach The changed vending machine.
+     * @param previous The inventory before it was replaced.
+     */
+    void inventoryReplaced(final VendingMachine vendMach, final Map<String, Integer> previous) {
+        ItemIndex itemIndex = items;
+        StockMonitor monitor = stockMonitor;
+        if ((itemIndex != null || monitor != null) && index().get(vendMach.getId()) == vendMach) {
+            if (itemIndex != null) {
+                for (Map.Entry<String, Integer> entry : previous.entrySet()) {
+                    itemIndex.update(vendMach.getId(), entry.getKey(), entry.getValue(), 0);
+                }
+            }
+            if (monitor != null) {
+                monitor.forget(vendMach.getId());
+            }
+            indexInventory(vendMach, 1);
+        }
+    }
+
+    /**
+     * Adds the inventory of a machine to the item index, or removes it, if the
+     * index has been built, and checks it with the stock monitor, or makes the
+     * monitor forget it.
+     *
+     * @param vendMach The vending machine.
+     * @param sign     1 to add the inventory, -1 to remove it.
+     */
+    private void indexInventory(final VendingMachine vendMach, final int sign) {
+        ItemIndex itemIndex = items;
+        StockMonitor monitor = stockMonitor;
+        if (monitor != null && sign < 0) {
+            monitor.forget(vendMach.getId());
+        }
+        boolean watched = monitor != null && monitor.isActive() && sign > 0;
+        if (itemIndex != null || watched) {
+            for (Map.Entry<String, Integer> entry : vendMach.getStatusView().entrySet()) {
+                int quantity = entry.getValue();
+                if (itemIndex != null) {
+                    itemIndex.update(vendMach.getId(), entry.getKey(),
+                            sign > 0 ? 0 : quantity, sign > 0 ? quantity : 0);
+                }
+                if (watched) {
+                    monitor.update(vendMach.getId(), entry.getKey(), quantity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the machine at a position in the list by moving the last machine of
+     * the list into its place, and updates the position of the moved machine.
+     *
+     * @param position The position of the machine to remove.
+     */
+    private void removeAt(final int position) {
+        VendingMachine last = machines.remove(machines.size() - 1);
+        if (position < machines.size()) {
+            machines.set(position, last);
+            if (machinesById.get(last.getId()) == last) {
+                positions.put(last.getId(), position);
+            }
+        }
+    }
+
+    /**
+     * Finds the first machine in the list with an ID whose indexed machine was
+     * just removed. Scans the list, so it is only called while the list has
+     * machines that aren't indexed.
+     *
+     * @param id The ID.
+     * @return The position of the machine, or -1 if there is none.
+     */
+    private int findShadowed(final int id) {
+        for (int position = 0; position < machines.size(); position++) {
+            if (machines.get(position).getId() == id) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ID index, building it, the positions and the location index from
+     * the list if needed. If the list contains several machines with the same ID,
+     * the first one is indexed, which matches the result of scanning the list.
+     *
+     * @return The index from machine ID to vending machine.
+     */
+    private Map<Integer, VendingMachine> index() {
+        if (machinesById == null) {
+            Map<Integer, VendingMachine> index = new HashMap<>();
+            Map<Integer, Integer> indexPositions = new HashMap<>();
+            LocationIndex locationIndex = new LocationIndex();
+            int duplicates = 0;
+            for (int position = 0; position < machines.size(); position++) {
+                VendingMachine vendMach = machines.get(position);
+                if (index.putIfAbsent(vendMach.getId(), vendMach) == null) {
+                    indexPositions.put(vendMach.getId(), position);
+                    vendMach.setTracker(this);
+                    locationIndex.put(vendMach.getId(), vendMach.getLocation());
+                } else {
+                    duplicates++;
+                }
+            }
+            locations = locationIndex;
+            positions = indexPositions;
+            shadowed = duplicates;
+            machinesById = index;
+        }
+        return machinesById;
     }
 }
@@ -0,0 +1,254 @@
+package gr2338.vendmachtrack.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Watches the quantities of items in vending machines for drops below a
+ * threshold.
+ * <p>
+ * Thresholds are set per item, for every machine, or per machine, for every
+ * item in it. A machine threshold takes precedence over an item threshold. An
+ * item is low in a machine while its quantity is below the threshold, and a
+ * sold out item stays low until it is restocked.
+ * </p>
+ * <p>
+ * Every change to a quantity is checked against the threshold in constant time,
+ * and the items that are currently low are kept in a set, so they are found
+ * without reading any inventory. Listeners are told when an item becomes low and
+ * when it is restocked to at least the threshold, on the thread that made the
+ * change, so they must return quickly. Changes that don't cross a threshold
+ * cost a couple of map lookups, and nothing at all while no thresholds are set.
+ * </p>
+ * <p>
+ * The class is thread-safe, provided that changes to the same machine aren't
+ * reported from several threads at once.
+ * </p>
+ */
+public final class StockMonitor {
+
+    /**
+     * An item becoming low in a machine, or being restocked.
+     *
+     * @param id        The ID of the machine.
+     * @param item      The name of the item.
+     * @param quantity  The quantity of the item after the change.
+     * @param threshold The threshold the quantity was compared to.
+     * @param low       True if the item became low, false if it was restocked.
+     */
+    public record StockAlert(int id, String item, int quantity, int threshold, boolean low) {
+    }
+
+    private final Map<String, Integer> itemThresholds = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> machineThresholds = new ConcurrentHashMap<>();
+
+    /**
+     * The quantity of every item that is currently low, by machine.
+     */
+    private final Map<Integer, Map<String, Integer>> lowByMachine = new ConcurrentHashMap<>();
+
+    private final List<Consumer<StockAlert>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether any threshold is set, checked first so changes cost nothing while
+     * none is.
+     */
+    private volatile boolean active;
+
+    /**
+     * Adds a listener told about every item becoming low or being restocked.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(final Consumer<StockAlert> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(final Consumer<StockAlert> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the threshold of an item in every machine without a threshold of its
+     * own. The items already low are checked against the new threshold; the
+     * caller has to {@link #update(int, String, int)} the other machines stocking
+     * the item.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     */
+    public void setItemThreshold(final String item, final int threshold) {
+        if (threshold > 0) {
+            itemThresholds.put(item, threshold);
+        } else {
+            itemThresholds.remove(item);
+        }
+        refreshActive();
+        for (Map.Entry<Integer, Map<String, Integer>> machine : lowByMachine.entrySet()) {
+            Integer quantity = machine.getValue().get(item);
+            if (quantity != null) {
+                check(machine.getKey(), item, quantity);
+            }
+        }
+    }
+
+    /**
+     * Sets the threshold of every item in a machine, which takes precedence over
+     * the item thresholds. The items already low are checked against the new
+     * threshold; the caller has to {@link #update(int, String, int)} the other
+     * items in the machine.
+     *
+     * @param id        The ID of the machine.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     */
+    public void setMachineThreshold(final int id, final int threshold) {
+        if (threshold > 0) {
+            machineThresholds.put(id, threshold);
+        } else {
+            machineThresholds.remove(id);
+        }
+        refreshActive();
+        Map<String, Integer> low = lowByMachine.get(id);
+        if (low != null) {
+            for (Map.Entry<String, Integer> entry : List.copyOf(low.entrySet())) {
+                check(id, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the threshold an item in a machine is compared to.
+     *
+     * @param id   The ID of the machine.
+     * @param item The name of the item.
+     * @return The threshold, or zero if the item isn't watched in the machine.
+     */
+    public int getThreshold(final int id, final String item) {
+        Integer threshold = machineThresholds.get(id);
+        if (threshold == null) {
+            threshold = itemThresholds.get(item);
+        }
+        return threshold == null ? 0 : threshold;
+    }
+
+    /**
+     * Checks whether any threshold is set.
+     *
+     * @return True if changes are being watched.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Registers the quantity of an item in a machine after a change, and tells
+     * the listeners if the item became low or was restocked.
+     *
+     * @param id       The ID of the machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity after the change, zero if sold out.
+     */
+    public void update(final int id, final String item, final int quantity) {
+        if (active) {
+            check(id, item, quantity);
+        }
+    }
+
+    /**
+     * Stops watching a machine that was removed, without telling the listeners.
+     *
+     * @param id The ID of the machine.
+     */
+    public void forget(final int id) {
+        lowByMachine.remove(id);
+    }
+
+    /**
+     * Stops watching every machine, without telling the listeners. The
+     * thresholds are kept, for when all machines are replaced.
+     */
+    public void forgetAll() {
+        lowByMachine.clear();
+    }
+
+    /**
+     * Retrieves the items that are currently low.
+     *
+     * @return The low items in order of machine ID and item name, with their
+     * quantities and thresholds.
+     */
+    public List<StockAlert> getLowStock() {
+        List<StockAlert> lowStock = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Integer>> machine : new TreeMap<>(lowByMachine).entrySet()) {
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(machine.getValue()).entrySet()) {
+                lowStock.add(new StockAlert(machine.getKey(), entry.getKey(), entry.getValue(),
+                        getThreshold(machine.getKey(), entry.getKey()), true));
+            }
+        }
+        return lowStock;
+    }
+
+    /**
+     * Checks whether an item is currently low in a machine.
+     *
+     * @param id   The ID of the machine.
+     * @param item The name of the item.
+     * @return True if the item is low.
+     */
+    public boolean isLow(final int id, final String item) {
+        Map<String, Integer> low = lowByMachine.get(id);
+        return low != null && low.containsKey(item);
+    }
+
+    /**
+     * Compares the quantity of an item in a machine to its threshold, and tells
+     * the listeners if the item became low or was restocked.
+     *
+     * @param id       The ID of the machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity of the item.
+     */
+    private void check(final int id, final String item, final int quantity) {
+        int threshold = getThreshold(id, item);
+        Map<String, Integer> low = lowByMachine.get(id);
+        if (quantity < threshold) {
+            if (low == null) {
+                low = lowByMachine.computeIfAbsent(id, key -> new ConcurrentHashMap<>());
+            }
+            if (low.put(item, quantity) == null) {
+                alert(new StockAlert(id, item, quantity, threshold, true));
+            }
+        } else if (low != null && low.remove(item) != null) {
+            lowByMachine.remove(id, Map.of());
+            alert(new StockAlert(id, item, quantity, threshold, false));
+        }
+    }
+
+    /**
+     * Updates whether any threshold is set.
+     */
+    private void refreshActive() {
+        active = !itemThresholds.isEmpty() || !machineThresholds.isEmpty();
+    }
+
+    /**
+     * Tells the listeners about an alert.
+     *
+     * @param alert The alert.
+     */
+    private void alert(final StockAlert alert) {
+        for (Consumer<StockAlert> listener : listeners) {
+            listener.accept(alert);
+        }
+    }
+}
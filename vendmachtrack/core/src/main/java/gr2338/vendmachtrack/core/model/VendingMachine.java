@@ -1,22 +1,23 @@
 package gr2338.vendmachtrack.core.model;
 
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Represents a vending machine with its essential attributes and behaviors.
  * <p>
  * The VendingMachine class captures the core characteristics of a vending machine including
- * its unique identifier, location, and the inventory status. The inventory is managed using a
- * hashmap where the items are keys and their quantities serve as values. The class provides
- * methods to manipulate and query these attributes.
+ * its unique identifier, location, and the inventory status. The inventory maps items to their
+ * quantities, and is stored without boxing the quantities, so querying and changing it doesn't
+ * allocate. The class provides methods to manipulate and query these attributes.
  * </p>
  */
 public class VendingMachine {
 
     /**
-     * A HashMap holding the inventory status of the vending machine.
+     * The inventory status of the vending machine.
      */
-    private HashMap<String, Integer> status;
+    private InventoryMap status;
 
     /**
      * A unique identifier for the vending machine.
@@ -28,11 +29,18 @@ public class VendingMachine {
      */
     private String location;
 
+    /**
+     * The tracker told about changes to the location and inventory, see
+     * {@link MachineTracker#getLocationIndex()} and
+     * {@link MachineTracker#getItemIndex()}. Not copied or serialized.
+     */
+    private transient MachineTracker tracker;
+
     /**
      * Default constructor for VendingMachine.
      */
     public VendingMachine() {
-        this.status = new HashMap<>();
+        this.status = new InventoryMap();
     }
 
     /**
@@ -44,11 +52,22 @@ public class VendingMachine {
      * @param newLocation  The physical location where the vending machine is placed.
      */
     public VendingMachine(final int newId, final HashMap<String, Integer> newInventory, final String newLocation) {
-        this.status = new HashMap<>(newInventory);
+        this.status = new InventoryMap(newInventory);
         this.id = newId;
         this.location = newLocation;
     }
 
+    /**
+     * Initializes a new vending machine as a copy of another one.
+     *
+     * @param other The vending machine to copy.
+     */
+    public VendingMachine(final VendingMachine other) {
+        this.status = new InventoryMap(other.status);
+        this.id = other.id;
+        this.location = other.location;
+    }
+
     /**
      * Returns a defensive copy of the vending machine's inventory status.
      *
@@ -56,7 +75,28 @@ public class VendingMachine {
      * quantities as values.
      */
     public HashMap<String, Integer> getStatus() {
-        return new HashMap<>(this.status);
+        return this.status.toHashMap();
+    }
+
+    /**
+     * Returns a read-only view of the vending machine's inventory status, without
+     * copying it.
+     *
+     * @return An unmodifiable map with item names as keys and their quantities as
+     * values.
+     */
+    public Map<String, Integer> getStatusView() {
+        return this.status.view();
+    }
+
+    /**
+     * Returns the quantity of an item in the inventory, without allocating.
+     *
+     * @param item The name of the item.
+     * @return The quantity of the item, or 0 if it isn't in the inventory.
+     */
+    public int getQuantity(final String item) {
+        return this.status.get(item);
     }
 
     /**
@@ -85,11 +125,14 @@ public class VendingMachine {
      * @param number The quantity of the item to be added.
      */
     public void addItem(final String item, final int number) {
-        if (!status.containsKey(item)) {
-            status.put(item, number);
-        } else {
-            status.put(item, status.get(item) + number);
+        MachineTracker owner = this.tracker;
+        if (owner == null) {
+            status.add(item, number);
+            return;
         }
+        int before = status.get(item);
+        status.add(item, number);
+        owner.inventoryChanged(this, item, before, status.get(item));
     }
 
     /**
@@ -102,21 +145,29 @@ public class VendingMachine {
      * @return True if removal was successful, false otherwise.
      */
     public boolean removeItem(final String item, final int number) {
-        Integer itemCount = status.get(item);
+        return tryRemove(item, number);
+    }
 
-        if (itemCount == null) {
-            return false;
+    /**
+     * Removes a specified quantity of an item if the inventory holds at least that much, without
+     * allocating. If the remaining quantity becomes zero, the item is removed from the inventory.
+     *
+     * @param item   The name of the item.
+     * @param number The quantity of the item to be removed.
+     * @return True if the quantity was removed, false if the item does not exist or the inventory
+     * holds less than the quantity.
+     */
+    public boolean tryRemove(final String item, final int number) {
+        MachineTracker owner = this.tracker;
+        if (owner == null) {
+            return status.tryRemove(item, number);
         }
-
-        if (itemCount == number) {
-            status.remove(item);
-            return true;
-        } else if (itemCount > number) {
-            status.put(item, itemCount - number);
-            return true;
-        } else {
+        int before = status.get(item);
+        if (!status.tryRemove(item, number)) {
             return false;
         }
+        owner.inventoryChanged(this, item, before, status.get(item));
+        return true;
     }
 
     /**
@@ -126,7 +177,12 @@ public class VendingMachine {
      *                  as values.
      */
     public void setStatus(final HashMap<String, Integer> newStatus) {
-        this.status = new HashMap<>(newStatus);
+        InventoryMap previous = this.status;
+        this.status = new InventoryMap(newStatus);
+        MachineTracker owner = this.tracker;
+        if (owner != null) {
+            owner.inventoryReplaced(this, previous.view());
+        }
     }
 
     /**
@@ -145,5 +201,28 @@ public class VendingMachine {
      */
     public void setLocation(final String newLocation) {
         this.location = newLocation;
+        MachineTracker owner = this.tracker;
+        if (owner != null) {
+            owner.locationChanged(this);
+        }
+    }
+
+    /**
+     * Sets the tracker told about changes to the location. A machine reports to
+     * the tracker it was last added to.
+     *
+     * @param newTracker The tracker, or null to stop reporting.
+     */
+    void setTracker(final MachineTracker newTracker) {
+        this.tracker = newTracker;
+    }
+
+    /**
+     * Retrieves the tracker told about changes to the location.
+     *
+     * @return The tracker, or null.
+     */
+    MachineTracker getTracker() {
+        return this.tracker;
     }
 }
@@ -0,0 +1,77 @@
+package gr2338.vendmachtrack.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class contains test methods for the {@link InventoryMap} class. It compares the inventory with a {@link HashMap}
+ * going through the same changes.
+ */
+public class InventoryMapTest {
+
+    /**
+     * Tests that a random mix of additions and removals gives the same result as a {@link HashMap} following the rules
+     * of {@link VendingMachine#removeItem(String, int)}.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create an inventory and a map, and a random generator with a fixed seed.</li>
+     *   <li>Act: Add and remove random quantities of items from a small set of names, so that items are removed and
+     *   added again many times.</li>
+     *   <li>Assert: Verify that every removal gives the same result, and that the inventory, its copy and its view
+     *   equal the map.</li>
+     * </ol>
+     */
+    @Test
+    public void InventoryMap_testMatchesHashMap() {
+
+        // Arrange
+        InventoryMap inventory = new InventoryMap();
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(2338);
+
+        // Act
+        for (int i = 0; i < 100_000; i++) {
+            String item = "Item" + random.nextInt(100);
+            int number = random.nextInt(5) + 1;
+            if (random.nextBoolean()) {
+                inventory.add(item, number);
+                expected.merge(item, number, Integer::sum);
+            } else {
+                Integer count = expected.get(item);
+                boolean removed = count != null && count >= number;
+                if (removed && count == number) {
+                    expected.remove(item);
+                } else if (removed) {
+                    expected.put(item, count - number);
+                }
+                assertEquals(removed, inventory.tryRemove(item, number));
+            }
+        }
+
+        // Assert
+        assertEquals(expected.size(), inventory.size());
+        assertEquals(expected, inventory.toHashMap());
+        assertEquals(expected, inventory.view());
+        assertEquals(expected, new InventoryMap(inventory).view());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(expected.getOrDefault("Item" + i, 0), inventory.get("Item" + i));
+        }
+    }
+
+    /**
+     * Tests that items can't be null, since null marks an empty slot.
+     */
+    @Test
+    public void InventoryMap_testRejectsNullItem() {
+        assertThrows(NullPointerException.class, () -> new InventoryMap().add(null, 1));
+    }
+}
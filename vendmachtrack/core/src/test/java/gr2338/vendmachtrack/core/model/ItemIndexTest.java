@@ -0,0 +1,65 @@
+package gr2338.vendmachtrack.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains test methods for testing the functionality of the {@link ItemIndex} class.
+ */
+public class ItemIndexTest {
+
+    /**
+     * Tests that the machines stocking an item, the total quantity and the top machines follow the updates.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Stock "Cola" in three machines, with machines 2 and 7 holding the same quantity.</li>
+     *   <li>Act: Restock machine 3 and empty machine 7.</li>
+     *   <li>Assert: Verify that the queries return the remaining machines, the new total and the new ranking.</li>
+     * </ol>
+     */
+    @Test
+    public void ItemIndex_updates_followQuantities() {
+        // Arrange
+        ItemIndex index = new ItemIndex();
+        index.update(7, "Cola", 0, 5);
+        index.update(3, "Cola", 0, 2);
+        index.update(2, "Cola", 0, 5);
+        index.update(2, "Fanta", 0, 1);
+        assertEquals(List.of(2, 7), List.copyOf(index.getTopMachines("Cola", 2).keySet()));
+
+        // Act
+        index.update(3, "Cola", 2, 9);
+        index.update(7, "Cola", 5, 0);
+
+        // Assert
+        assertEquals(Map.of(2, 5, 3, 9), index.getMachinesStocking("Cola"));
+        assertEquals(14, index.getTotalQuantity("Cola"));
+        assertEquals(List.of(3, 2), List.copyOf(index.getTopMachines("Cola", 10).keySet()));
+        assertEquals(Map.of(3, 9), index.getTopMachines("Cola", 1));
+        assertEquals(1, index.getTotalQuantity("Fanta"));
+    }
+
+    /**
+     * Tests that items nobody stocks give empty answers, and that negative IDs are ranked in order.
+     */
+    @Test
+    public void ItemIndex_unknownItemAndNegativeIds() {
+        ItemIndex index = new ItemIndex();
+        index.update(-4, "Solo", 0, 3);
+        index.update(4, "Solo", 0, 3);
+
+        assertTrue(index.getMachinesStocking("Pepsi").isEmpty());
+        assertEquals(0, index.getTotalQuantity("Pepsi"));
+        assertTrue(index.getTopMachines("Pepsi", 3).isEmpty());
+        assertEquals(List.of(-4, 4), List.copyOf(index.getTopMachines("Solo", 3).keySet()));
+        assertEquals(3, index.getMachinesStocking("Solo").get(-4));
+    }
+}
@@ -0,0 +1,73 @@
+package gr2338.vendmachtrack.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains test methods for testing the functionality of the {@link LocationIndex} class.
+ */
+public class LocationIndexTest {
+
+    /**
+     * Tests that machines are found by exact location and by prefix, ignoring case, in order of ID.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Index machines in "Gløshaugen", "Glasgow" and "Dragvoll", out of ID order.</li>
+     *   <li>Act: Query the machines at "gløshaugen", the machines at locations starting with "gl", and the counts of
+     *   every location.</li>
+     *   <li>Assert: Verify that each query returns the matching machines with their locations, in order of ID.</li>
+     * </ol>
+     */
+    @Test
+    public void LocationIndex_queries_matchIgnoringCase() {
+        // Arrange
+        LocationIndex index = new LocationIndex();
+        index.put(9, "Gløshaugen");
+        index.put(3, "Glasgow");
+        index.put(5, "Gløshaugen");
+        index.put(1, "Dragvoll");
+
+        // Act
+        SortedMap<Integer, String> exact = index.getMachinesAt("gløshaugen");
+        SortedMap<Integer, String> prefixed = index.getMachinesWithPrefix("gl");
+        SortedMap<String, Integer> counts = index.countByLocation("");
+
+        // Assert
+        assertEquals(Map.of(5, "Gløshaugen", 9, "Gløshaugen"), exact);
+        assertEquals(List.of(3, 5, 9), List.copyOf(prefixed.keySet()));
+        assertEquals(List.of("Dragvoll", "Glasgow", "Gløshaugen"), List.copyOf(counts.keySet()));
+        assertEquals(2, counts.get("Gløshaugen"));
+        assertEquals(2, index.countAt("GLØSHAUGEN"));
+        assertEquals(1, index.countByLocation("d").size());
+    }
+
+    /**
+     * Tests that moving a machine replaces its old location, and that removing the last machine at a location
+     * removes the location.
+     */
+    @Test
+    public void LocationIndex_putAndRemove_replaceOldLocation() {
+        LocationIndex index = new LocationIndex();
+        index.put(1, "Oslo");
+        index.put(2, "Oslo");
+
+        index.put(1, "Bergen");
+        index.remove(2);
+        index.remove(7);
+
+        assertEquals(Map.of(1, "Bergen"), index.getMachinesWithPrefix(""));
+        assertEquals(Map.of(1, "Bergen"), index.getAllMachines());
+        assertEquals(0, index.countAt("Oslo"));
+        assertTrue(index.countByLocation("O").isEmpty());
+        assertEquals(1, index.size());
+    }
+}
@@ -4,7 +4,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -183,5 +185,295 @@ public class MachineTrackerTest {
         assertTrue(machines.contains(machine2));
         assertEquals(2, machines.size());
     }
-}
 
+    /**
+     * Tests the {@link MachineTracker#getMachine(int)} and {@link MachineTracker#containsMachine(int)} methods to ensure vending machines can be found by ID.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Give machine1 and machine2 different IDs and add them to the tracker.</li>
+     *   <li>Act & Assert: Verify that both machines are found by their IDs, and that an unknown ID is not found.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testGetMachineById() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(2);
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+
+        // Act & Assert
+        assertSame(machine1, tracker.getMachine(1));
+        assertSame(machine2, tracker.getMachine(2));
+        assertTrue(tracker.containsMachine(2));
+        assertNull(tracker.getMachine(3));
+        assertFalse(tracker.containsMachine(3));
+    }
+
+    /**
+     * Tests the {@link MachineTracker#addVendingMachine(VendingMachine)} method to ensure it throws an {@link IllegalArgumentException} when another vending machine with the same ID is already in the tracker.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Give machine1 and machine2 the same ID and add machine1 to the tracker.</li>
+     *   <li>Act & Assert: Attempt to add machine2 and assert that it throws an {@link IllegalArgumentException}.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testAddVendingMachineDuplicateId() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(1);
+        tracker.addVendingMachine(machine1);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tracker.addVendingMachine(machine2));
+    }
+
+    /**
+     * Tests the {@link MachineTracker#removeVendingMachine(int)} method to ensure it removes the vending machine with the given ID from both the list and the index.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Give machine1 and machine2 different IDs and add them to the tracker.</li>
+     *   <li>Act: Remove machine1 by its ID.</li>
+     *   <li>Assert: Verify that machine1 is returned and no longer found, and that machine2 is still in the tracker.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testRemoveVendingMachineById() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(2);
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+
+        // Act
+        VendingMachine removed = tracker.removeVendingMachine(1);
+
+        // Assert
+        assertSame(machine1, removed);
+        assertFalse(tracker.containsMachine(1));
+        assertFalse(tracker.getMachines().contains(machine1));
+        assertSame(machine2, tracker.getMachine(2));
+        assertEquals(1, tracker.getMachineCount());
+    }
+
+    /**
+     * Tests the {@link MachineTracker#removeVendingMachine(int)} method to ensure the machine moved into the place of a removed machine can still be removed.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add three machines with the IDs 1, 2 and 3 to the tracker.</li>
+     *   <li>Act: Remove machine 1, which moves machine 3 into its place, then machine 3 and machine 2.</li>
+     *   <li>Assert: Verify that each removal returns the right machine and that the tracker ends up empty.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testRemoveVendingMachineByIdMovesLast() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(2);
+        VendingMachine machine3 = new VendingMachine();
+        machine3.setId(3);
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+        tracker.addVendingMachine(machine3);
+
+        // Act
+        VendingMachine first = tracker.removeVendingMachine(1);
+        List<VendingMachine> afterFirst = tracker.getMachines();
+        VendingMachine second = tracker.removeVendingMachine(3);
+        VendingMachine third = tracker.removeVendingMachine(machine2.getId());
+
+        // Assert
+        assertSame(machine1, first);
+        assertEquals(List.of(machine3, machine2), afterFirst);
+        assertSame(machine3, second);
+        assertSame(machine2, third);
+        assertEquals(0, tracker.getMachineCount());
+    }
+
+    /**
+     * Tests the {@link MachineTracker#removeVendingMachine(int)} and {@link MachineTracker#removeVendingMachine(VendingMachine)} methods on a list set with two machines with the same ID.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Give machine1 and machine2 the same ID and set them as the machines of the tracker.</li>
+     *   <li>Act: Remove the ID once, then remove machine2 itself.</li>
+     *   <li>Assert: Verify that machine1 was removed first and machine2 took its place in the index, and that the tracker ends up empty.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testRemoveVendingMachineWithDuplicateId() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(1);
+        tracker.setMachines(List.of(machine1, machine2));
+
+        // Act
+        VendingMachine removed = tracker.removeVendingMachine(1);
+        VendingMachine promoted = tracker.getMachine(1);
+        tracker.removeVendingMachine(machine2);
+
+        // Assert
+        assertSame(machine1, removed);
+        assertSame(machine2, promoted);
+        assertFalse(tracker.containsMachine(1));
+        assertEquals(0, tracker.getMachineCount());
+    }
+
+    /**
+     * Tests the {@link MachineTracker#removeVendingMachine(int)} method to ensure it throws an {@link IllegalArgumentException} when no vending machine has the given ID.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Act & Assert: Attempt to remove an unknown ID from an empty tracker and assert that it throws an {@link IllegalArgumentException}.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testRemoveVendingMachineByIdNotExists() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tracker.removeVendingMachine(1));
+    }
+
+    /**
+     * Tests the {@link MachineTracker#setMachines(List)} method to ensure the ID index is rebuilt from the new list.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add machine1 to the tracker, and give machine2 another ID.</li>
+     *   <li>Act: Replace the machines in the tracker with a list containing only machine2.</li>
+     *   <li>Assert: Verify that machine1 is no longer found by ID, while machine2 is.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testSetMachinesRebuildsIndex() {
+        // Arrange
+        machine1.setId(1);
+        machine2.setId(2);
+        tracker.addVendingMachine(machine1);
+
+        // Act
+        tracker.setMachines(List.of(machine2));
+
+        // Assert
+        assertFalse(tracker.containsMachine(1));
+        assertSame(machine2, tracker.getMachine(2));
+    }
+
+    /**
+     * Tests that the location index of the tracker follows machines as they are added, moved and removed.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Place both machines in "Gløshaugen", and add them to the tracker.</li>
+     *   <li>Act: Move machine2 to "Dragvoll" through the machine itself, then remove machine1.</li>
+     *   <li>Assert: Verify that the index finds the machines at their new locations, and no longer finds the removed
+     *   machine, nor a machine moved after it was removed.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testLocationIndexFollowsMachines() {
+        // Arrange
+        machine1.setId(1);
+        machine1.setLocation("Gløshaugen");
+        machine2.setId(2);
+        machine2.setLocation("Gløshaugen");
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+        assertEquals(2, tracker.getLocationIndex().countAt("gløshaugen"));
+
+        // Act
+        machine2.setLocation("Dragvoll");
+        tracker.removeVendingMachine(1);
+        machine1.setLocation("Dragvoll");
+
+        // Assert
+        LocationIndex index = tracker.getLocationIndex();
+        assertEquals(0, index.countAt("Gløshaugen"));
+        assertEquals(List.of(2), List.copyOf(index.getMachinesAt("Dragvoll").keySet()));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Tests that the item index follows items added to and removed from machines in the tracker, and machines
+     * added to and removed from the tracker.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add two machines stocking "Cola" and build the item index.</li>
+     *   <li>Act: Add and remove items, replace an inventory and remove a machine.</li>
+     *   <li>Assert: Verify that the index holds the remaining quantities.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTracker_testItemIndexFollowsInventories() {
+        // Arrange
+        machine1.setId(1);
+        machine1.setStatus(new HashMap<>(Map.of("Cola", 2)));
+        machine2.setId(2);
+        machine2.setStatus(new HashMap<>(Map.of("Cola", 4)));
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+        assertFalse(tracker.isItemIndexed());
+        assertEquals(6, tracker.getItemIndex().getTotalQuantity("Cola"));
+
+        // Act
+        machine1.addItem("Cola", 5);
+        machine2.removeItem("Cola", 1);
+        machine2.setStatus(new HashMap<>(Map.of("Fanta", 3)));
+        machine2.addItem("Cola", 1);
+        tracker.removeVendingMachine(1);
+
+        // Assert
+        ItemIndex index = tracker.getItemIndex();
+        assertTrue(tracker.isItemIndexed());
+        assertEquals(Map.of(2, 1), index.getMachinesStocking("Cola"));
+        assertEquals(1, index.getTotalQuantity("Cola"));
+        assertEquals(Map.of(2, 3), index.getTopMachines("Fanta", 5));
+    }
+
+    /**
+     * Tests that the stock monitor is told about items sold from machines in the tracker, and that machines already
+     * low are found when the monitor is set.
+     */
+    @Test
+    public void MachineTracker_testStockMonitorFollowsInventories() {
+        machine1.setId(1);
+        machine1.setStatus(new HashMap<>(Map.of("Cola", 1)));
+        machine2.setId(2);
+        machine2.setStatus(new HashMap<>(Map.of("Cola", 4)));
+        tracker.addVendingMachine(machine1);
+        tracker.addVendingMachine(machine2);
+        StockMonitor monitor = new StockMonitor();
+        monitor.setItemThreshold("Cola", 3);
+
+        tracker.setStockMonitor(monitor);
+        machine2.removeItem("Cola", 2);
+        tracker.removeVendingMachine(1);
+
+        assertTrue(monitor.isLow(2, "Cola"));
+        assertFalse(monitor.isLow(1, "Cola"));
+        assertEquals(1, monitor.getLowStock().size());
+    }
+}
@@ -0,0 +1,120 @@
+package gr2338.vendmachtrack.core.model;
+
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains test methods for testing the functionality of the {@link StockMonitor} class.
+ */
+public class StockMonitorTest {
+
+    /**
+     * Tests that listeners are told only when an item crosses its threshold, and that the low items can be queried.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Set a threshold of 5 for "Cola" and a threshold of 2 for machine 3, and add a listener.</li>
+     *   <li>Act: Lower "Cola" in machines 1 and 3 step by step, and restock machine 1.</li>
+     *   <li>Assert: Verify that one alert is published per crossing, and that only machine 3 is still low.</li>
+     * </ol>
+     */
+    @Test
+    public void StockMonitor_update_alertsOnCrossings() {
+        // Arrange
+        StockMonitor monitor = new StockMonitor();
+        List<StockAlert> alerts = new ArrayList<>();
+        monitor.addListener(alerts::add);
+        monitor.setItemThreshold("Cola", 5);
+        monitor.setMachineThreshold(3, 2);
+
+        // Act
+        monitor.update(1, "Cola", 6);
+        monitor.update(1, "Cola", 4);
+        monitor.update(1, "Cola", 3);
+        monitor.update(3, "Cola", 4);
+        monitor.update(3, "Cola", 0);
+        monitor.update(1, "Cola", 8);
+
+        // Assert
+        assertEquals(List.of(
+                new StockAlert(1, "Cola", 4, 5, true),
+                new StockAlert(3, "Cola", 0, 2, true),
+                new StockAlert(1, "Cola", 8, 5, false)), alerts);
+        assertEquals(List.of(new StockAlert(3, "Cola", 0, 2, true)), monitor.getLowStock());
+        assertTrue(monitor.isLow(3, "Cola"));
+        assertFalse(monitor.isLow(1, "Cola"));
+    }
+
+    /**
+     * Tests that changing a threshold checks the items already low against it, and that changes are ignored while no
+     * threshold is set.
+     */
+    @Test
+    public void StockMonitor_thresholdChanges_recheckLowItems() {
+        StockMonitor monitor = new StockMonitor();
+        List<StockAlert> alerts = new ArrayList<>();
+        monitor.addListener(alerts::add);
+        monitor.update(1, "Cola", 0);
+        assertFalse(monitor.isActive());
+
+        monitor.setItemThreshold("Cola", 3);
+        monitor.update(1, "Cola", 2);
+        monitor.update(2, "Cola", 1);
+        monitor.setItemThreshold("Cola", 2);
+        monitor.forget(2);
+
+        assertEquals(List.of(
+                new StockAlert(1, "Cola", 2, 3, true),
+                new StockAlert(2, "Cola", 1, 3, true),
+                new StockAlert(1, "Cola", 2, 2, false)), alerts);
+        assertTrue(monitor.getLowStock().isEmpty());
+        monitor.setItemThreshold("Cola", 0);
+        assertFalse(monitor.isActive());
+    }
+
+    /**
+     * Tests that a tracker keeps telling its monitor about sold items after its machines were set, which drops the
+     * ID index until it is needed again.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Watch a tracker with one machine holding 6 "Cola" with a threshold of 5, then set its
+     *   machines.</li>
+     *   <li>Act: Remove 2 "Cola" from the machine.</li>
+     *   <li>Assert: Verify that the machine is reported low.</li>
+     * </ol>
+     */
+    @Test
+    public void StockMonitor_trackerAfterSetMachines_alertsOnRemoveItem() {
+        // Arrange
+        VendingMachine vendMach = new VendingMachine(1, new HashMap<>(Map.of("Cola", 6)), "Oslo");
+        MachineTracker tracker = new MachineTracker();
+        tracker.addVendingMachine(vendMach);
+        StockMonitor monitor = new StockMonitor();
+        List<StockAlert> alerts = new ArrayList<>();
+        monitor.addListener(alerts::add);
+        monitor.setItemThreshold("Cola", 5);
+        tracker.setStockMonitor(monitor);
+        tracker.setMachines(List.of(vendMach));
+
+        // Act
+        vendMach.removeItem("Cola", 2);
+
+        // Assert
+        assertEquals(List.of(new StockAlert(1, "Cola", 4, 5, true)), alerts);
+        assertTrue(monitor.isLow(1, "Cola"));
+    }
+}
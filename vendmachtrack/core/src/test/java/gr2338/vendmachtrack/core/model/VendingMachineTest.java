@@ -254,4 +254,85 @@ public class VendingMachineTest {
         // Assert
         assertEquals("Office", machine.getLocation());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the {@link VendingMachine#getQuantity(String)} and {@link VendingMachine#tryRemove(String, int)} methods.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Act: Remove 2 "Soda", try to remove 11 "Chips", and remove all 10 "Chips".</li>
+     *   <li>Assert: Verify that the quantities are updated, that the failed removal changed nothing, and that a missing item has a quantity of 0.</li>
+     * </ol>
+     */
+    @Test
+    public void VendingMachine_testGetQuantityAndTryRemove() {
+
+        // Act & Assert
+        assertTrue(machine.tryRemove("Soda", 2));
+        assertEquals(3, machine.getQuantity("Soda"));
+        assertFalse(machine.tryRemove("Chips", 11));
+        assertEquals(10, machine.getQuantity("Chips"));
+        assertTrue(machine.tryRemove("Chips", 10));
+        assertEquals(0, machine.getQuantity("Chips"));
+        assertFalse(machine.getStatusView().containsKey("Chips"));
+        assertEquals(0, machine.getQuantity("Candy"));
+    }
+
+    /**
+     * Tests that {@link VendingMachine#getStatusView()} follows changes to the inventory and can't be modified.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Get the status view.</li>
+     *   <li>Act: Add an item to the machine.</li>
+     *   <li>Assert: Verify that the view shows the new item, equals the copied status, and rejects changes.</li>
+     * </ol>
+     */
+    @Test
+    public void VendingMachine_testStatusView() {
+
+        // Arrange
+        Map<String, Integer> view = machine.getStatusView();
+
+        // Act
+        machine.addItem("Candy", 7);
+
+        // Assert
+        assertEquals(7, view.get("Candy"));
+        assertEquals(3, view.size());
+        assertEquals(machine.getStatus(), view);
+        assertThrows(UnsupportedOperationException.class, () -> view.put("Candy", 1));
+    }
+
+    /**
+     * Tests that the copy constructor creates an independent copy.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Copy the machine.</li>
+     *   <li>Act: Add an item to the copy.</li>
+     *   <li>Assert: Verify that the copy has the same ID and location, and that the original is unchanged.</li>
+     * </ol>
+     */
+    @Test
+    public void VendingMachine_testCopyConstructor() {
+
+        // Arrange
+        VendingMachine copy = new VendingMachine(machine);
+
+        // Act
+        copy.addItem("Soda", 1);
+
+        // Assert
+        assertEquals(1, copy.getId());
+        assertEquals("Lobby", copy.getLocation());
+        assertEquals(6, copy.getQuantity("Soda"));
+        assertEquals(5, machine.getQuantity("Soda"));
+    }
+}
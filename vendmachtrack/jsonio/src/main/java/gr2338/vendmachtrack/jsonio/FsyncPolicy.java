@@ -0,0 +1,37 @@
+package gr2338.vendmachtrack.jsonio;
+
+/**
+ * The {@code FsyncPolicy} enum decides how often written data is forced to disk, trading
+ * durability against write latency.
+ * <p>
+ * Files are always replaced atomically, so a crash never leaves a torn file behind. The policy
+ * only decides how much recently written data may be lost if the machine itself goes down,
+ * since data that hasn't been forced may still be in the operating system's cache.
+ * </p>
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Forces every write to disk before returning. Nothing is lost on power failure, but every
+     * write waits for the disk.
+     */
+    ALWAYS,
+
+    /**
+     * Forces a write to disk if the last forced write was more than
+     * {@value #BATCH_INTERVAL_MILLIS} milliseconds ago. At most that much data is lost on power
+     * failure.
+     */
+    BATCHED,
+
+    /**
+     * Leaves it to the operating system to write data to disk. Fastest, but recent writes can be
+     * lost on power failure.
+     */
+    NEVER;
+
+    /**
+     * The longest time in milliseconds between forced writes with the {@link #BATCHED} policy.
+     */
+    public static final long BATCH_INTERVAL_MILLIS = 1000;
+}
@@ -0,0 +1,947 @@
+package gr2338.vendmachtrack.jsonio;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.internal.IdOffsetIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * The {@code MappedMachineStore} class keeps vending machines in a memory-mapped file instead of
+ * on the heap, for fleets too large to load as a whole {@link MachineTracker}.
+ * <p>
+ * The file is a log of machine records. Changing a machine appends a new record for it, and
+ * removing one appends a removal record. Only an index from machine ID to the offset of its
+ * latest record is kept in memory, which is rebuilt on startup by reading the record headers.
+ * A machine is decoded from the mapped file when it is accessed, and a bounded number of
+ * recently used machines are kept decoded in a cache. Once most of the file is outdated
+ * records, it is compacted into a new file.
+ * </p>
+ * <p>
+ * The file is stored in the user's home directory next to the tracker file, with the suffix
+ * {@value #STORE_SUFFIX}. It is mapped in regions of up to a gigabyte, and records never cross
+ * the border between two regions. Written records are forced to disk according to an
+ * {@link FsyncPolicy}. The store is safe to use from several threads.
+ * </p>
+ * Example usage:
+ * <pre>
+ * try (MappedMachineStore store = new MappedMachineStore("tracker.json", FsyncPolicy.BATCHED, 10_000)) {
+ *     VendingMachine vendMach = store.get(1);
+ *     vendMach.addItem("Cola", 3);
+ *     store.put(vendMach);
+ * }
+ * </pre>
+ */
+public class MappedMachineStore implements AutoCloseable {
+
+    /**
+     * Suffix added to the tracker file name to get the name of the store file.
+     */
+    public static final String STORE_SUFFIX = ".store";
+
+    /**
+     * Default size in bytes of the regions the file is mapped in.
+     */
+    static final int DEFAULT_REGION_SIZE = 1024 * 1024 * 1024;
+
+    private static final byte[] MAGIC = {'V', 'M', 'T', 'S'};
+    private static final int VERSION = 1;
+
+    /**
+     * The header holds the magic bytes, the version and the offset where the records end.
+     */
+    private static final int HEADER_SIZE = 16;
+    private static final int DATA_END_OFFSET = 8;
+
+    /**
+     * Records start with their length, followed by the machine ID and the kind of record.
+     */
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private static final int MIN_RECORD_LENGTH = Integer.BYTES + 1;
+    private static final byte MACHINE = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int INITIAL_MAPPED_SIZE = 64 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    /**
+     * Initial capacity and load factor of the cache of read machines, the defaults of a hash map.
+     */
+    private static final int CACHE_CAPACITY = 16;
+    private static final float CACHE_LOAD_FACTOR = 0.75f;
+
+    private final Path path;
+    private final Path temp;
+    private final FsyncPolicy fsyncPolicy;
+    private final int regionSize;
+    private final int regionShift;
+    private final Map<Integer, VendingMachine> cache;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    private FileChannel channel;
+    private volatile MappedByteBuffer[] regions;
+    private IdOffsetIndex index;
+    private long dataEnd;
+    private long liveBytes;
+    private long dirtyFrom = -1;
+    private long lastSyncNanos = System.nanoTime();
+
+    /**
+     * Opens the store belonging to a tracker file, creating an empty one if it doesn't exist.
+     *
+     * @param fileName    Name of the tracker file in the user's home directory.
+     * @param fsyncPolicy The policy deciding when written records are forced to disk.
+     * @param cacheSize   The number of decoded machines to keep in memory, or 0 for none.
+     * @throws IOException If the file can't be opened or isn't a valid store.
+     */
+    public MappedMachineStore(final String fileName, final FsyncPolicy fsyncPolicy, final int cacheSize)
+            throws IOException {
+        this(fileName, fsyncPolicy, cacheSize, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Opens the store belonging to a tracker file with a given region size.
+     *
+     * @param fileName    Name of the tracker file in the user's home directory.
+     * @param fsyncPolicy The policy deciding when written records are forced to disk.
+     * @param cacheSize   The number of decoded machines to keep in memory, or 0 for none.
+     * @param regionSize  The size of the mapped regions, a power of two.
+     * @throws IOException If the file can't be opened or isn't a valid store.
+     */
+    MappedMachineStore(final String fileName, final FsyncPolicy fsyncPolicy, final int cacheSize,
+                       final int regionSize) throws IOException {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("The cache size can't be negative");
+        }
+        if (Integer.bitCount(regionSize) != 1 || regionSize < 2 * HEADER_SIZE) {
+            throw new IllegalArgumentException("The region size has to be a power of two");
+        }
+        this.path = storePath(fileName);
+        this.temp = Paths.get(path + ".tmp");
+        this.fsyncPolicy = fsyncPolicy;
+        this.regionSize = regionSize;
+        this.regionShift = Integer.numberOfTrailingZeros(regionSize);
+        this.cache = new LinkedHashMap<>(CACHE_CAPACITY, CACHE_LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, VendingMachine> eldest) {
+                return super.size() > cacheSize;
+            }
+        };
+
+        if (!Files.exists(path)) {
+            rewrite(List.<byte[]>of().iterator());
+        }
+        open();
+    }
+
+    /**
+     * Checks whether the store belonging to a tracker file exists.
+     *
+     * @param fileName Name of the tracker file in the user's home directory.
+     * @return {@code true} if the store file exists.
+     */
+    public static boolean exists(final String fileName) {
+        return Files.exists(storePath(fileName));
+    }
+
+    /**
+     * Retrieves a vending machine by its ID.
+     *
+     * @param id The ID of the vending machine.
+     * @return A copy of the vending machine, or null if it isn't in the store.
+     */
+    public VendingMachine get(final int id) {
+        lock.readLock().lock();
+        try {
+            VendingMachine vendMach;
+            synchronized (cache) {
+                vendMach = cache.get(id);
+            }
+            if (vendMach == null) {
+                long offset = index.get(id);
+                if (offset < 0) {
+                    return null;
+                }
+                vendMach = decode(offset);
+                synchronized (cache) {
+                    cache.put(id, vendMach);
+                }
+            }
+            return copyOf(vendMach);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a vending machine is in the store.
+     *
+     * @param id The ID of the vending machine.
+     * @return {@code true} if the store holds a machine with the ID.
+     */
+    public boolean contains(final int id) {
+        lock.readLock().lock();
+        try {
+            return index.get(id) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the IDs of the vending machines in the store, without decoding
+     * the machines.
+     *
+     * @return The IDs, in no particular order.
+     */
+    public int[] ids() {
+        lock.readLock().lock();
+        try {
+            return index.ids();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of vending machines in the store.
+     *
+     * @return The number of machines.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a vending machine to the store, or replaces the stored machine with the same ID.
+     * <p>
+     * If the record can't be written, an error is printed to the standard error stream, the
+     * failed write is counted and the store is left as it was.
+     *
+     * @param vendMach The vending machine to store.
+     * @return {@code true} if the machine was written, {@code false} otherwise.
+     */
+    public boolean put(final VendingMachine vendMach) {
+        lock.writeLock().lock();
+        try {
+            long offset = append(encode(vendMach));
+            long previous = index.put(vendMach.getId(), offset);
+            if (previous > 0) {
+                liveBytes -= recordSize(previous);
+            }
+            liveBytes += recordSize(offset);
+            synchronized (cache) {
+                cache.put(vendMach.getId(), copyOf(vendMach));
+            }
+            compactIfWasteful();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return failed(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a vending machine from the store.
+     *
+     * @param id The ID of the vending machine.
+     * @return {@code true} if the machine was removed, {@code false} if it wasn't in the store or
+     * the removal couldn't be written.
+     */
+    public boolean remove(final int id) {
+        lock.writeLock().lock();
+        try {
+            long previous = index.get(id);
+            if (previous < 0) {
+                return false;
+            }
+            append(encodeRemoval(id));
+            index.remove(id);
+            liveBytes -= recordSize(previous);
+            synchronized (cache) {
+                cache.remove(id);
+            }
+            compactIfWasteful();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return failed(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole content of the store with the machines of a tracker.
+     *
+     * @param machtrack The tracker to store.
+     * @return {@code true} if the store was written, {@code false} otherwise.
+     */
+    public boolean replaceAll(final MachineTracker machtrack) {
+        lock.writeLock().lock();
+        try {
+            Iterator<VendingMachine> machines = machtrack.getMachinesView().iterator();
+            rewrite(mapped(machines, MappedMachineStore::encode));
+            synchronized (cache) {
+                cache.clear();
+            }
+            open();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return failed(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes every machine in the store into a tracker. This reads the whole file, so it should
+     * only be used when all machines are needed.
+     *
+     * @return A tracker holding copies of all machines.
+     */
+    public MachineTracker toTracker() {
+        MachineTracker machtrack = new MachineTracker();
+        machtrack.setMachines(new ArrayList<>(snapshot()));
+        return machtrack;
+    }
+
+    /**
+     * Takes a snapshot of the machines in the store, without decoding them. Only the offsets of
+     * the latest records are copied, in the order they were written, and every machine is
+     * decoded when the snapshot reaches it, so iterating over the snapshot keeps one machine at a
+     * time on the heap. Later changes to the store aren't seen by the snapshot, and it stays
+     * readable after the store is compacted or closed, as the records it points to are never
+     * overwritten.
+     *
+     * @return The machines in the store, as an unmodifiable collection that can be iterated
+     * several times.
+     */
+    public Collection<VendingMachine> snapshot() {
+        lock.readLock().lock();
+        try {
+            MappedByteBuffer[] mapped = regions;
+            long[] offsets = new long[index.size()];
+            int count = 0;
+            for (long p = skipPadding(HEADER_SIZE); p < dataEnd; p = skipPadding(p + recordSize(p))) {
+                int id = region(p).getInt(offsetIn(p) + LENGTH_SIZE);
+                if (index.get(id) == p) {
+                    offsets[count++] = p;
+                }
+            }
+            int size = count;
+
+            return new AbstractCollection<>() {
+                @Override
+                public Iterator<VendingMachine> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public VendingMachine next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            return decode(mapped, offsets[next++]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces records that haven't been forced yet to disk, unless the fsync policy is
+     * {@link FsyncPolicy#NEVER}.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                forceDirty();
+            }
+        } catch (RuntimeException e) {
+            failed(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of writes that have failed since the store was opened.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * Flushes the store and closes the file.
+     */
+    @Override
+    public void close() {
+        flush();
+        lock.writeLock().lock();
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            System.err.println("Error closing file: " + path + "\n" + e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps the store file and builds the index by reading the header of every record.
+     *
+     * @throws IOException If the file can't be read or isn't a valid store.
+     */
+    private void open() throws IOException {
+        closeChannel();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            throw new IOException("Not a vending machine store: " + path);
+        }
+
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((fileSize - 1) >>> regionShift) + 1];
+        for (int i = 0; i < mapped.length; i++) {
+            long start = (long) i << regionShift;
+            mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(regionSize, fileSize - start));
+        }
+        regions = mapped;
+
+        ByteBuffer header = mapped[0];
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new IOException("Not a vending machine store: " + path);
+            }
+        }
+        if (header.getInt(MAGIC.length) != VERSION) {
+            throw new IOException("Unsupported store version: " + header.getInt(MAGIC.length));
+        }
+        dataEnd = header.getLong(DATA_END_OFFSET);
+        if (dataEnd < HEADER_SIZE || dataEnd > fileSize) {
+            throw new IOException("Corrupt store header: " + path);
+        }
+
+        index = new IdOffsetIndex();
+        liveBytes = 0;
+        dirtyFrom = -1;
+        for (long p = skipPadding(HEADER_SIZE); p < dataEnd; p = skipPadding(p + recordSize(p))) {
+            ByteBuffer region = region(p);
+            int length = region.getInt(offsetIn(p));
+            if (length < MIN_RECORD_LENGTH || offsetIn(p) + LENGTH_SIZE + (long) length > region.capacity()
+                    || p + LENGTH_SIZE + length > dataEnd) {
+                throw new IOException("Corrupt store record at offset " + p + " in " + path);
+            }
+
+            int id = region.getInt(offsetIn(p) + LENGTH_SIZE);
+            long previous = region.get(offsetIn(p) + LENGTH_SIZE + Integer.BYTES) == MACHINE
+                    ? index.put(id, p)
+                    : index.remove(id);
+            if (previous > 0) {
+                liveBytes -= recordSize(previous);
+            }
+            if (index.get(id) == p) {
+                liveBytes += recordSize(p);
+            }
+        }
+    }
+
+    /**
+     * Closes the file, if it is open. The mapped regions stay valid until they are collected.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Appends a record after the last one, starting a new region if it doesn't fit in the
+     * current one, and moves the end of the records past it.
+     *
+     * @param record The encoded record, including its length.
+     * @return The offset of the record.
+     * @throws IOException If the file can't be grown.
+     */
+    private long append(final byte[] record) throws IOException {
+        if (record.length > regionSize - HEADER_SIZE) {
+            throw new IOException("Vending machine is too large for the store: " + record.length + " bytes");
+        }
+
+        long offset = dataEnd;
+        int remaining = regionSize - offsetIn(offset);
+        if (record.length > remaining) {
+            if (remaining >= LENGTH_SIZE) {
+                ensureMapped(offset + LENGTH_SIZE);
+                region(offset).putInt(offsetIn(offset), 0);
+            }
+            offset += remaining;
+        }
+
+        ensureMapped(offset + record.length);
+        region(offset).put(offsetIn(offset), record);
+        long start = dataEnd;
+        dataEnd = offset + record.length;
+        regions[0].putLong(DATA_END_OFFSET, dataEnd);
+        sync(start);
+        return offset;
+    }
+
+    /**
+     * Makes sure the file is mapped up to a given offset, growing the last region or mapping a
+     * new one as needed. The mapped size of the last region is doubled each time, so small
+     * stores keep small files.
+     *
+     * @param end The offset that has to be mapped.
+     * @throws IOException If the file can't be mapped.
+     */
+    private void ensureMapped(final long end) throws IOException {
+        MappedByteBuffer[] mapped = regions;
+        int last = mapped.length - 1;
+        int needed = (int) ((end - 1) >>> regionShift);
+        long lastEnd = ((long) last << regionShift) + mapped[last].capacity();
+        if (needed == last && end <= lastEnd) {
+            return;
+        }
+
+        mapped = Arrays.copyOf(mapped, Math.max(mapped.length, needed + 1));
+        for (int i = last; i <= needed; i++) {
+            long start = (long) i << regionShift;
+            long size = regionSize;
+            if (i == needed) {
+                size = Math.max(INITIAL_MAPPED_SIZE, mapped[i] == null ? 0 : mapped[i].capacity() * 2L);
+                while (start + size < end) {
+                    size *= 2;
+                }
+                size = Math.min(regionSize, size);
+            }
+            if (mapped[i] == null || mapped[i].capacity() < size) {
+                mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            }
+        }
+        regions = mapped;
+    }
+
+    /**
+     * Forces written records to disk if the fsync policy asks for it.
+     *
+     * @param from The offset where the written data starts.
+     */
+    private void sync(final long from) {
+        dirtyFrom = dirtyFrom < 0 ? from : Math.min(dirtyFrom, from);
+        switch (fsyncPolicy) {
+            case ALWAYS:
+                break;
+            case BATCHED:
+                long sinceSyncMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSyncNanos);
+                if (sinceSyncMillis < FsyncPolicy.BATCH_INTERVAL_MILLIS) {
+                    return;
+                }
+                break;
+            default:
+                return;
+        }
+        forceDirty();
+    }
+
+    /**
+     * Forces the records written since the last forced write, and the header, to disk.
+     */
+    private void forceDirty() {
+        if (dirtyFrom < 0) {
+            return;
+        }
+        MappedByteBuffer[] mapped = regions;
+        for (int i = (int) (dirtyFrom >>> regionShift); i <= (int) ((dataEnd - 1) >>> regionShift); i++) {
+            long start = (long) i << regionShift;
+            int from = (int) Math.max(0, dirtyFrom - start);
+            int to = (int) Math.min(mapped[i].capacity(), dataEnd - start);
+            if (to > from) {
+                mapped[i].force(from, to - from);
+            }
+        }
+        mapped[0].force(0, HEADER_SIZE);
+        dirtyFrom = -1;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Compacts the file once outdated records take up more than half of it.
+     *
+     * @throws IOException If the file can't be compacted.
+     */
+    private void compactIfWasteful() throws IOException {
+        long used = dataEnd - HEADER_SIZE;
+        if (used >= MIN_COMPACTION_BYTES && used > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest record of every machine, copying the records
+     * without decoding them.
+     *
+     * @throws IOException If the file can't be rewritten.
+     */
+    void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Iterator<Long> offsets = new Iterator<>() {
+                private long next = findLive(skipPadding(HEADER_SIZE));
+
+                @Override
+                public boolean hasNext() {
+                    return next < dataEnd;
+                }
+
+                @Override
+                public Long next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long current = next;
+                    next = findLive(skipPadding(current + recordSize(current)));
+                    return current;
+                }
+            };
+            rewrite(mapped(offsets, this::readRecord));
+            open();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a new store file holding the given records, forces it to disk and moves it over
+     * the current file. The current file stays mapped until {@link #open()} is called.
+     *
+     * @param records The encoded records to write.
+     * @throws IOException If the file can't be written.
+     */
+    private void rewrite(final Iterator<byte[]> records) throws IOException {
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)))) {
+            data.write(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(0);
+
+            long end = HEADER_SIZE;
+            while (records.hasNext()) {
+                byte[] record = records.next();
+                int remaining = regionSize - offsetIn(end);
+                if (record.length > remaining) {
+                    data.write(new byte[remaining]);
+                    end += remaining;
+                }
+                data.write(record);
+                end += record.length;
+            }
+            data.flush();
+
+            out.write(ByteBuffer.allocate(Long.BYTES).putLong(0, end), DATA_END_OFFSET);
+            out.force(true);
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Finds the first record at or after an offset that is the latest record of its machine.
+     *
+     * @param from The offset of a record.
+     * @return The offset of the live record, or the end of the records if there is none.
+     */
+    private long findLive(final long from) {
+        long p = from;
+        while (p < dataEnd && index.get(region(p).getInt(offsetIn(p) + LENGTH_SIZE)) != p) {
+            p = skipPadding(p + recordSize(p));
+        }
+        return p;
+    }
+
+    /**
+     * Skips the unused space at the end of a region if a record starts there.
+     *
+     * @param p The offset following a record.
+     * @return The offset of the next record, or the end of the records.
+     */
+    private long skipPadding(final long p) {
+        if (p >= dataEnd) {
+            return dataEnd;
+        }
+        int offset = offsetIn(p);
+        if (regionSize - offset < LENGTH_SIZE || region(p).getInt(offset) == 0) {
+            return Math.min(dataEnd, ((p >>> regionShift) + 1) << regionShift);
+        }
+        return p;
+    }
+
+    /**
+     * Retrieves the size of the record at an offset, including its length.
+     *
+     * @param p The offset of the record.
+     * @return The size in bytes.
+     */
+    private int recordSize(final long p) {
+        return LENGTH_SIZE + region(p).getInt(offsetIn(p));
+    }
+
+    /**
+     * Copies the record at an offset out of the mapped file.
+     *
+     * @param p The offset of the record.
+     * @return The record, including its length.
+     */
+    private byte[] readRecord(final long p) {
+        byte[] record = new byte[recordSize(p)];
+        region(p).get(offsetIn(p), record);
+        return record;
+    }
+
+    /**
+     * Decodes the machine record at an offset.
+     *
+     * @param p The offset of the record.
+     * @return The vending machine.
+     */
+    private VendingMachine decode(final long p) {
+        return decode(regions, p);
+    }
+
+    /**
+     * Decodes the machine record at an offset in a set of mapped regions, which may be regions
+     * the store has since replaced.
+     *
+     * @param mapped The mapped regions of the file.
+     * @param p      The offset of the record.
+     * @return The vending machine.
+     */
+    private VendingMachine decode(final MappedByteBuffer[] mapped, final long p) {
+        ByteBuffer record = mapped[(int) (p >>> regionShift)].duplicate();
+        record.position(offsetIn(p) + LENGTH_SIZE);
+
+        VendingMachine vendMach = new VendingMachine();
+        vendMach.setId(record.getInt());
+        record.get();
+        vendMach.setLocation(readString(record));
+        int itemCount = record.getInt();
+        for (int i = 0; i < itemCount; i++) {
+            String item = readString(record);
+            vendMach.addItem(item, record.getInt());
+        }
+        return vendMach;
+    }
+
+    /**
+     * Encodes a machine record.
+     *
+     * @param vendMach The vending machine.
+     * @return The record, including its length.
+     */
+    private static byte[] encode(final VendingMachine vendMach) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0);
+            data.writeInt(vendMach.getId());
+            data.writeByte(MACHINE);
+            writeString(data, vendMach.getLocation());
+            Map<String, Integer> status = vendMach.getStatusView();
+            data.writeInt(status.size());
+            for (Map.Entry<String, Integer> entry : status.entrySet()) {
+                writeString(data, entry.getKey());
+                data.writeInt(entry.getValue() == null ? 0 : entry.getValue());
+            }
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to a byte array can't fail", e);
+        }
+    }
+
+    /**
+     * Encodes a removal record.
+     *
+     * @param id The ID of the removed machine.
+     * @return The record, including its length.
+     */
+    private static byte[] encodeRemoval(final int id) {
+        return withLength(ByteBuffer.allocate(LENGTH_SIZE + MIN_RECORD_LENGTH)
+                .putInt(0).putInt(id).put(REMOVED).array());
+    }
+
+    /**
+     * Fills in the length at the start of an encoded record.
+     *
+     * @param record The record, starting with room for its length.
+     * @return The same record.
+     */
+    private static byte[] withLength(final byte[] record) {
+        ByteBuffer.wrap(record).putInt(0, record.length - LENGTH_SIZE);
+        return record;
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes, or -1 for null.
+     *
+     * @param data   The stream to write to.
+     * @param string The string, may be null.
+     * @throws IOException If writing fails.
+     */
+    private static void writeString(final DataOutputStream data, final String string) throws IOException {
+        if (string == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param record The buffer to read from.
+     * @return The string, or null.
+     */
+    private static String readString(final ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the mapped region holding an offset.
+     *
+     * @param p The offset in the file.
+     * @return The region.
+     */
+    private MappedByteBuffer region(final long p) {
+        return regions[(int) (p >>> regionShift)];
+    }
+
+    /**
+     * Converts an offset in the file to an offset in its region.
+     *
+     * @param p The offset in the file.
+     * @return The offset in the region.
+     */
+    private int offsetIn(final long p) {
+        return (int) (p & (regionSize - 1));
+    }
+
+    /**
+     * Counts and reports a failed write.
+     *
+     * @param e The reason the write failed.
+     * @return Always {@code false}.
+     */
+    private boolean failed(final Exception e) {
+        failedWrites.incrementAndGet();
+        System.err.println("Error writing to file: " + path + "\n" + e);
+        return false;
+    }
+
+    /**
+     * Creates a copy of a vending machine.
+     *
+     * @param vendMach The vending machine to copy.
+     * @return A copy with the same ID, location and inventory.
+     */
+    private static VendingMachine copyOf(final VendingMachine vendMach) {
+        return new VendingMachine(vendMach);
+    }
+
+    /**
+     * Applies a function lazily to every element of an iterator.
+     *
+     * @param source   The iterator.
+     * @param function The function to apply.
+     * @param <T>      The type of the elements.
+     * @return An iterator over the results.
+     */
+    private static <T> Iterator<byte[]> mapped(final Iterator<T> source, final Function<T, byte[]> function) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return function.apply(source.next());
+            }
+        };
+    }
+
+    /**
+     * Resolves the path of the store belonging to a tracker file.
+     *
+     * @param fileName Name of the tracker file in the user's home directory.
+     * @return The path of the store file.
+     */
+    private static Path storePath(final String fileName) {
+        return Paths.get(System.getProperty("user.home") + "/" + fileName + STORE_SUFFIX);
+    }
+}
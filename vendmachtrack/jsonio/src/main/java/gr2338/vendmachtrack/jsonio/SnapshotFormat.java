@@ -0,0 +1,36 @@
+package gr2338.vendmachtrack.jsonio;
+
+import java.util.Locale;
+
+/**
+ * The {@code SnapshotFormat} enum lists the formats a {@code MachineTracker} snapshot can be
+ * stored in.
+ */
+public enum SnapshotFormat {
+
+    /**
+     * The JSON format, readable by people and by older versions of the application.
+     */
+    JSON,
+
+    /**
+     * A compact, versioned binary format that is faster to read and write for large fleets.
+     */
+    BINARY;
+
+    /**
+     * File name extension that selects the binary format.
+     */
+    public static final String BINARY_EXTENSION = ".bin";
+
+    /**
+     * Chooses the format from the extension of a file name. Files ending in
+     * {@value #BINARY_EXTENSION} use the binary format, all others JSON.
+     *
+     * @param fileName The name of the snapshot file.
+     * @return The format of the file.
+     */
+    public static SnapshotFormat forFileName(final String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(BINARY_EXTENSION) ? BINARY : JSON;
+    }
+}
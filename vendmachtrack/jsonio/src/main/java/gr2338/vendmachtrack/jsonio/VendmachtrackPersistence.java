@@ -1,58 +1,616 @@
 package gr2338.vendmachtrack.jsonio;
 
 import gr2338.vendmachtrack.core.model.MachineTracker;
-import gr2338.vendmachtrack.jsonio.internal.FromJson;
-import gr2338.vendmachtrack.jsonio.internal.ToJson;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.internal.CachedSnapshot;
+import gr2338.vendmachtrack.jsonio.internal.FileLocker;
+import gr2338.vendmachtrack.jsonio.internal.Journal;
+import gr2338.vendmachtrack.jsonio.internal.JournalEntry;
+import gr2338.vendmachtrack.jsonio.internal.SnapshotFile;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The {@code VendmachtrackPersistence} class offers a high-level interface for persisting
- * and retrieving {@link MachineTracker} objects to and from a specified file in JSON format.
+ * and retrieving {@link MachineTracker} objects to and from a specified file.
  * <p>
- * Internally, this class utilizes the {@code FromJson} and {@code ToJson} classes from
- * the {@code vendmachtrack.jsonio.internal} package to handle the serialization
+ * The file is stored in JSON format, or in a compact binary format if its name ends with
+ * {@value SnapshotFormat#BINARY_EXTENSION}. Internally, this class utilizes the {@code SnapshotFile}
+ * class from the {@code vendmachtrack.jsonio.internal} package to handle the serialization
  * and deserialization processes.
  * </p>
+ * <p>
+ * In journal mode, single changes such as adding an item are appended to a journal through
+ * the {@code record} methods instead of rewriting the whole file. Once the journal holds a given
+ * number of entries, {@link #needsCompaction()} tells the caller to compact it into a new snapshot
+ * with {@link #compact(MachineTracker, long)}. The caller writes the tracker it keeps in memory, so
+ * compacting doesn't read the file, and can do so on a background thread while changes are still
+ * recorded. Loading replays the journal on top of the snapshot, see {@link Journal}.
+ * </p>
+ * <p>
+ * A persistence created with {@link #cached(String)} keeps the tracker it last read or saved, and
+ * only parses the file again when another process has changed it, see {@link CachedSnapshot}. This
+ * suits callers that read the whole tracker for every small change, at the cost of a copy of the
+ * tracker on every read and save.
+ * </p>
+ * <p>
+ * Several processes, such as the server and desktop clients, may share the file. Every write takes
+ * an advisory lock on a lock file next to it, see {@link FileLocker}, while reads take no lock and
+ * see either the old or the new file. Every snapshot written gets the next revision number, so a
+ * save based on a stale read is rejected by {@link #saveIfUnchanged(MachineTracker, long)}, and
+ * {@link #update(Function)} applies a change to the latest tracker so it is never lost.
+ * {@link #saveVendmachtrack(MachineTracker)} still replaces whatever is in the file, for a caller
+ * that owns the data while it runs.
+ * </p>
  * Example usage:
  * <pre>
  * VendmachtrackPersistence persistence = new VendmachtrackPersistence("machineTracker.json");
  * MachineTracker savedTracker = persistence.saveVendmachtrack(machineTrackerInstance);
  * MachineTracker loadedTracker = persistence.getVendmachtrack();
+ *
+ * VendmachtrackPersistence journaled = new VendmachtrackPersistence("machineTracker.bin", 1000);
+ * journaled.recordAddItem(1, "Cola", 3);
+ * if (journaled.needsCompaction()) {
+ *     journaled.compact(inMemoryTracker, sequenceOfInMemoryTracker);
+ * }
+ *
+ * VendmachtrackPersistence cached = VendmachtrackPersistence.cached("machineTracker.json");
+ * cached.update(tracker -> tracker.getMachine(1).addItem("Cola", 3));
  * </pre>
  */
 public class VendmachtrackPersistence {
 
-    private final FromJson fromJson;
-    private final ToJson toJson;
+    /**
+     * A tracker read from the file, together with the revision of the file it was read from.
+     *
+     * @param tracker  The tracker.
+     * @param revision The revision of the file, or 0 if it has none.
+     */
+    public record Snapshot(MachineTracker tracker, long revision) {
+    }
+
+    private final SnapshotFile snapshotFile;
+    private final Journal journal;
+    private final int compactAfter;
+    private final CachedSnapshot cache;
 
     /**
-     * Constructor that initializes internal {@code FromJson} and {@code ToJson} objects
-     * using the provided file name.
+     * Guards every write to the file and every append to the journal against other threads and
+     * processes, except compactions, see {@link #compact(MachineTracker, long)}.
+     */
+    private final FileLocker locker;
+
+    private final AtomicLong failedLocks = new AtomicLong();
+
+    /**
+     * Constructor that initializes the persistence using the provided file name. The format is
+     * chosen from the file name.
      *
      * @param fileName Name of the file for reading/writing the {@link MachineTracker} object.
      */
     public VendmachtrackPersistence(final String fileName) {
-        this.fromJson = new FromJson(fileName);
-        this.toJson = new ToJson(fileName);
+        this(fileName, FsyncPolicy.ALWAYS);
+    }
+
+    /**
+     * Constructor that initializes the persistence using the provided file name and fsync policy.
+     * The format is chosen from the file name.
+     *
+     * @param fileName    Name of the file for reading/writing the {@link MachineTracker} object.
+     * @param fsyncPolicy The policy deciding when written data is forced to disk.
+     */
+    public VendmachtrackPersistence(final String fileName, final FsyncPolicy fsyncPolicy) {
+        this(fileName, SnapshotFormat.forFileName(fileName), fsyncPolicy, 0);
+    }
+
+    /**
+     * Constructor that initializes the persistence in journal mode, where single changes are
+     * appended to a journal next to the specified file.
+     *
+     * @param fileName     Name of the file for reading/writing the {@link MachineTracker} object.
+     * @param compactAfter Number of journal entries after which the journal needs to be
+     *                     compacted into a new snapshot.
+     * @throws IllegalArgumentException If {@code compactAfter} is lower than one.
+     */
+    public VendmachtrackPersistence(final String fileName, final int compactAfter) {
+        this(fileName, FsyncPolicy.ALWAYS, compactAfter);
+    }
+
+    /**
+     * Constructor that initializes the persistence in journal mode with the given fsync policy
+     * for journal entries. Snapshots are always forced to disk.
+     *
+     * @param fileName     Name of the file for reading/writing the {@link MachineTracker} object.
+     * @param fsyncPolicy  The policy deciding when journal entries are forced to disk.
+     * @param compactAfter Number of journal entries after which the journal needs to be
+     *                     compacted into a new snapshot.
+     * @throws IllegalArgumentException If {@code compactAfter} is lower than one.
+     */
+    public VendmachtrackPersistence(final String fileName, final FsyncPolicy fsyncPolicy, final int compactAfter) {
+        this(fileName, SnapshotFormat.forFileName(fileName), fsyncPolicy, requireCompaction(compactAfter));
+    }
+
+    /**
+     * Constructor that initializes the persistence with every setting given explicitly.
+     *
+     * @param fileName     Name of the file for reading/writing the {@link MachineTracker} object.
+     * @param format       The format of the file, regardless of its name.
+     * @param fsyncPolicy  The policy deciding when written data is forced to disk.
+     * @param compactAfter Number of journal entries after which the journal needs to be
+     *                     compacted into a new snapshot, or 0 to write the whole file on every
+     *                     save without a journal.
+     * @throws IllegalArgumentException If {@code compactAfter} is negative.
+     */
+    public VendmachtrackPersistence(final String fileName, final SnapshotFormat format,
+                                    final FsyncPolicy fsyncPolicy, final int compactAfter) {
+        this(fileName, format, fsyncPolicy, compactAfter, false);
+    }
+
+    /**
+     * Constructor that initializes the persistence with every setting given explicitly, and
+     * optionally with a cache of the last tracker read or saved.
+     *
+     * @param fileName     Name of the file for reading/writing the {@link MachineTracker} object.
+     * @param format       The format of the file, regardless of its name.
+     * @param fsyncPolicy  The policy deciding when written data is forced to disk.
+     * @param compactAfter Number of journal entries after which the journal needs to be
+     *                     compacted, or 0 for no journal.
+     * @param cached       Whether to cache the tracker, which requires that there is no journal.
+     * @throws IllegalArgumentException If {@code compactAfter} is negative.
+     */
+    private VendmachtrackPersistence(final String fileName, final SnapshotFormat format,
+                                     final FsyncPolicy fsyncPolicy, final int compactAfter, final boolean cached) {
+        if (compactAfter < 0) {
+            throw new IllegalArgumentException("The journal compaction threshold can't be negative");
+        }
+        this.snapshotFile = new SnapshotFile(fileName, format, fsyncPolicy);
+        this.journal = compactAfter == 0 ? null : new Journal(fileName, fsyncPolicy, format);
+        this.compactAfter = compactAfter;
+        this.cache = cached ? new CachedSnapshot(snapshotFile) : null;
+        this.locker = FileLocker.forFile(snapshotFile.getPath());
+    }
+
+    /**
+     * Creates a persistence that caches the tracker it last read or saved, and only parses the
+     * file again when its content was changed by someone else. The format is chosen from the file
+     * name. Changes can't be journaled.
+     *
+     * @param fileName Name of the file for reading/writing the {@link MachineTracker} object.
+     * @return The persistence.
+     */
+    public static VendmachtrackPersistence cached(final String fileName) {
+        return new VendmachtrackPersistence(fileName, SnapshotFormat.forFileName(fileName), FsyncPolicy.ALWAYS, 0,
+                true);
     }
 
     /**
-     * Retrieves the {@link MachineTracker} object from the specified file.
+     * Retrieves the {@link MachineTracker} object from the specified file. In journal mode,
+     * the journaled changes are applied to it. If the persistence is cached, the file is only
+     * parsed if it changed since it was last read or saved.
      *
      * @return The deserialized {@link MachineTracker} object.
      */
     public MachineTracker getVendmachtrack() {
-        return fromJson.readFromFile();
+        if (isJournaled()) {
+            return journal.load();
+        }
+        if (cache != null) {
+            SnapshotFile.Contents contents = cache.read();
+            return contents == null ? null : contents.tracker();
+        }
+        return snapshotFile.readFromFile();
+    }
+
+    /**
+     * Retrieves the {@link MachineTracker} object from the specified file together with the
+     * revision of the file, for a later {@link #saveIfUnchanged(MachineTracker, long)}. Like
+     * {@link #getVendmachtrack()}, this takes no lock.
+     *
+     * @return The tracker and revision, or {@code null} if the file could not be read.
+     * @throws IllegalStateException If the persistence is in journal mode.
+     */
+    public Snapshot getSnapshot() {
+        requireSnapshotMode();
+        SnapshotFile.Contents contents = cache != null ? cache.read() : snapshotFile.read();
+        return contents == null ? null : new Snapshot(contents.tracker(), contents.revision());
+    }
+
+    /**
+     * Retrieves the revision of the file without reading the machines in it, so a caller keeping
+     * the tracker in memory can tell whether another process wrote the file, and save with
+     * {@link #saveIfUnchanged(MachineTracker, long)}. Like {@link #getVendmachtrack()}, this takes
+     * no lock.
+     *
+     * @return The revision, or 0 if the file doesn't exist, has no revision or can't be read.
+     * @throws IllegalStateException If the persistence is in journal mode.
+     */
+    public long getRevision() {
+        requireSnapshotMode();
+        return snapshotFile.readRevision();
     }
 
     /**
-     * Saves the given {@link MachineTracker} object to the specified file in JSON format.
+     * Saves the given {@link MachineTracker} object to the specified file, replacing whatever
+     * another process may have written since it was read. In journal mode, the object is written
+     * as a new snapshot and the journal is emptied.
      *
      * @param vendmachtrack The {@link MachineTracker} object to be saved.
      * @return The same {@link MachineTracker} object that was saved.
      */
     public MachineTracker saveVendmachtrack(final MachineTracker vendmachtrack) {
-        toJson.writeToFile(vendmachtrack);
+        try {
+            locked(() -> write(vendmachtrack));
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage() + "\n" + e.getCause());
+        }
         return vendmachtrack;
     }
 
+    /**
+     * Saves the given {@link MachineTracker} object to the specified file, unless the file was
+     * written since the tracker was read.
+     *
+     * @param vendmachtrack The {@link MachineTracker} object to be saved.
+     * @param revision      The revision of the file the tracker was read from, see
+     *                      {@link #getSnapshot()}.
+     * @return {@code true} if the file was written, {@code false} if writing failed.
+     * @throws ConcurrentModificationException If the file has another revision, so the tracker is
+     *                                         stale. It can be read again and changed once more, or
+     *                                         the change can be made with {@link #update(Function)}.
+     * @throws IllegalStateException           If the persistence is in journal mode.
+     * @throws UncheckedIOException            If the file could not be locked.
+     */
+    public boolean saveIfUnchanged(final MachineTracker vendmachtrack, final long revision) {
+        requireSnapshotMode();
+        return locked(() -> {
+            long current = snapshotFile.readRevision();
+            if (current != revision) {
+                throw new ConcurrentModificationException("The file was changed by someone else, revision "
+                        + revision + " is now " + current);
+            }
+            return write(vendmachtrack);
+        });
+    }
+
+    /**
+     * Saves the given vending machines to the specified file as a tracker, replacing whatever
+     * another process may have written since it was read. The machines are written one at a time
+     * as they are iterated, so a snapshot of a store too large for the heap can be exported.
+     *
+     * @param machines The machines to save.
+     * @return {@code true} if the file was written, {@code false} if writing or locking failed.
+     * @throws IllegalStateException If the persistence is in journal mode.
+     */
+    public boolean saveMachines(final Collection<VendingMachine> machines) {
+        requireSnapshotMode();
+        try {
+            return locked(() -> writeMachines(machines));
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage() + "\n" + e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Saves the given vending machines to the specified file as a tracker, unless the file was
+     * written since the given revision. The machines are written one at a time as they are
+     * iterated.
+     *
+     * @param machines The machines to save.
+     * @param revision The revision of the file the machines are based on, see {@link #getRevision()}.
+     * @return {@code true} if the file was written, {@code false} if writing failed.
+     * @throws ConcurrentModificationException If the file has another revision.
+     * @throws IllegalStateException           If the persistence is in journal mode.
+     * @throws UncheckedIOException            If the file could not be locked.
+     */
+    public boolean saveMachinesIfUnchanged(final Collection<VendingMachine> machines, final long revision) {
+        requireSnapshotMode();
+        return locked(() -> {
+            long current = snapshotFile.readRevision();
+            if (current != revision) {
+                throw new ConcurrentModificationException("The file was changed by someone else, revision "
+                        + revision + " is now " + current);
+            }
+            return writeMachines(machines);
+        });
+    }
+
+    /**
+     * Applies a change to the latest {@link MachineTracker} in the file and saves it, while no
+     * other thread or process can write to the file. A change therefore never overwrites another
+     * change made in the meantime. In journal mode, the tracker is written as a new snapshot.
+     * <p>
+     * If the change throws an exception, nothing is saved.
+     * </p>
+     *
+     * @param change Changes the tracker, which is null if the file could not be read, and returns a
+     *               result. Nothing is saved if the tracker is null.
+     * @param <T>    The type of the result.
+     * @return The result of the change.
+     * @throws UncheckedIOException If the file could not be locked.
+     */
+    public <T> T update(final Function<MachineTracker, T> change) {
+        return locked(() -> {
+            MachineTracker latest = getVendmachtrack();
+            T result = change.apply(latest);
+            if (latest != null) {
+                write(latest);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Retrieves the number of writes that have failed since this instance was created, including
+     * writes that could not lock the file. A failed write leaves the previous file in place.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return snapshotFile.getFailedWrites() + (isJournaled() ? journal.getFailedWrites() : 0) + failedLocks.get();
+    }
+
+    /**
+     * Retrieves the number of times the file has been parsed by a cached persistence.
+     *
+     * @return The number of parses, or 0 if the persistence isn't cached.
+     */
+    public long getParses() {
+        return cache == null ? 0 : cache.getParses();
+    }
+
+    /**
+     * Checks whether this persistence runs in journal mode, where the {@code record} methods
+     * can be used.
+     *
+     * @return {@code true} if changes can be journaled, {@code false} otherwise.
+     */
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Checks whether the journal holds enough entries to be compacted into a new snapshot with
+     * {@link #compact(MachineTracker, long)}.
+     *
+     * @return {@code true} if the journal should be compacted, {@code false} otherwise or if the
+     * persistence is not in journal mode.
+     */
+    public boolean needsCompaction() {
+        return isJournaled() && journal.size() >= compactAfter;
+    }
+
+    /**
+     * Retrieves the sequence number of the last change recorded in the journal. A caller keeping
+     * the tracker in memory reads it together with a copy of the tracker, while no change can be
+     * recorded, to compact the journal with the copy.
+     *
+     * @return The sequence number.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public long getJournalSequence() {
+        requireJournalMode();
+        return journal.getSequence();
+    }
+
+    /**
+     * Compacts the journal by writing a tracker as the new snapshot, and removing the changes it
+     * contains from the journal. Changes recorded while the snapshot is written are kept in the
+     * journal. The file lock is not held while the snapshot is written, so another process can't
+     * share a journaled file.
+     *
+     * @param vendmachtrack   The tracker to write, containing every change recorded up to the
+     *                        sequence number and none after it.
+     * @param journalSequence The sequence number of the last change the tracker contains, see
+     *                        {@link #getJournalSequence()}.
+     * @return {@code true} if the snapshot was written, {@code false} if writing failed.
+     * @throws IllegalStateException    If the persistence is not in journal mode.
+     * @throws IllegalArgumentException If no change with the sequence number was recorded.
+     */
+    public boolean compact(final MachineTracker vendmachtrack, final long journalSequence) {
+        requireJournalMode();
+        return journal.writeSnapshot(vendmachtrack, journalSequence);
+    }
+
+    /**
+     * Records that a quantity of an item was added to a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity added.
+     * @return {@code true} if the change was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordAddItem(final int id, final String item, final int quantity) {
+        return record(JournalEntry.addItem(id, item, quantity));
+    }
+
+    /**
+     * Records that a quantity of an item was removed from a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity removed.
+     * @return {@code true} if the change was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordRemoveItem(final int id, final String item, final int quantity) {
+        return record(JournalEntry.removeItem(id, item, quantity));
+    }
+
+    /**
+     * Records several changes to the inventory of a vending machine, which are written to the
+     * journal together and forced to disk once.
+     *
+     * @param id      The ID of the vending machine.
+     * @param changes The changes in the order they were made, as item names mapped to the
+     *                quantity added, or to the negated quantity removed.
+     * @return {@code true} if the changes were written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordItemChanges(final int id, final List<Map.Entry<String, Integer>> changes) {
+        List<JournalEntry> entries = new ArrayList<>(changes.size());
+        for (Map.Entry<String, Integer> change : changes) {
+            int delta = change.getValue();
+            entries.add(delta >= 0
+                    ? JournalEntry.addItem(id, change.getKey(), delta)
+                    : JournalEntry.removeItem(id, change.getKey(), -delta));
+        }
+        return record(entries);
+    }
+
+    /**
+     * Records that a new, empty vending machine was added.
+     *
+     * @param id       The ID of the new vending machine.
+     * @param location The location of the new vending machine.
+     * @return {@code true} if the change was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordAddVendMach(final int id, final String location) {
+        return record(JournalEntry.addMachine(id, location));
+    }
+
+    /**
+     * Records that a vending machine was removed.
+     *
+     * @param id The ID of the vending machine.
+     * @return {@code true} if the change was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordRemoveVendMach(final int id) {
+        return record(JournalEntry.removeMachine(id));
+    }
+
+    /**
+     * Records that a vending machine was moved to a new location.
+     *
+     * @param id       The ID of the vending machine.
+     * @param location The new location.
+     * @return {@code true} if the change was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    public boolean recordChangeLocation(final int id, final String location) {
+        return record(JournalEntry.relocate(id, location));
+    }
+
+    /**
+     * Checks that a journal compaction threshold turns journal mode on.
+     *
+     * @param compactAfter The number of entries after which the journal is compacted.
+     * @return The same number.
+     * @throws IllegalArgumentException If the number is lower than one.
+     */
+    private static int requireCompaction(final int compactAfter) {
+        if (compactAfter < 1) {
+            throw new IllegalArgumentException("The journal has to hold at least one entry before compaction");
+        }
+        return compactAfter;
+    }
+
+    /**
+     * Writes a tracker as a new snapshot with the next revision. Must be called while holding the
+     * file lock.
+     *
+     * @param vendmachtrack The tracker to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    private boolean write(final MachineTracker vendmachtrack) {
+        if (isJournaled()) {
+            return journal.writeSnapshot(vendmachtrack);
+        } else if (cache != null) {
+            return cache.write(vendmachtrack);
+        }
+        return snapshotFile.writeToFile(vendmachtrack);
+    }
+
+    /**
+     * Writes vending machines as a new snapshot with the next revision. Must be called while
+     * holding the file lock.
+     *
+     * @param machines The machines to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    private boolean writeMachines(final Collection<VendingMachine> machines) {
+        return cache != null ? cache.writeMachines(machines) : snapshotFile.writeMachines(machines);
+    }
+
+    /**
+     * Runs an action while holding the file lock, counting a failure to lock as a failed write.
+     *
+     * @param action The action.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     * @throws UncheckedIOException If the file could not be locked.
+     */
+    private <T> T locked(final Supplier<T> action) {
+        try {
+            return locker.withLock(action);
+        } catch (UncheckedIOException e) {
+            failedLocks.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks that this persistence isn't in journal mode, where the file alone doesn't hold the
+     * tracker.
+     *
+     * @throws IllegalStateException If the persistence is in journal mode.
+     */
+    private void requireSnapshotMode() {
+        if (isJournaled()) {
+            throw new IllegalStateException("Revisions are only checked without a journal");
+        }
+    }
+
+    /**
+     * Checks that this persistence is in journal mode.
+     *
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    private void requireJournalMode() {
+        if (!isJournaled()) {
+            throw new IllegalStateException("The persistence is not in journal mode");
+        }
+    }
+
+    /**
+     * Appends an entry to the journal. The journal is not compacted here, see
+     * {@link #needsCompaction()}.
+     *
+     * @param entry The entry to append.
+     * @return {@code true} if the entry was written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    private boolean record(final JournalEntry entry) {
+        return record(List.of(entry));
+    }
+
+    /**
+     * Appends entries to the journal in one write.
+     *
+     * @param entries The entries to append.
+     * @return {@code true} if the entries were written, {@code false} if writing failed.
+     * @throws IllegalStateException If the persistence is not in journal mode.
+     */
+    private boolean record(final List<JournalEntry> entries) {
+        requireJournalMode();
+
+        try {
+            return locked(() -> journal.appendAll(entries));
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage() + "\n" + e.getCause());
+            return false;
+        }
+    }
+
 }
@@ -0,0 +1,113 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces a file by streaming the new content to a temporary file next to it, forcing that to
+ * disk according to an {@link FsyncPolicy}, and renaming it over the file. A crash while writing
+ * therefore leaves either the old or the new file, never a torn one. Failed writes are counted.
+ */
+final class AtomicFileWriter {
+
+    /**
+     * Writes content to an {@link OutputStream}.
+     */
+    @FunctionalInterface
+    interface Content {
+
+        /**
+         * Writes the content. The stream is flushed and closed by the caller.
+         *
+         * @param out The stream to write to.
+         * @throws IOException If writing fails.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final Path target;
+    private final Path temp;
+    private final FileSyncer syncer;
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    /**
+     * Creates a writer for the given file.
+     *
+     * @param target      The file to replace.
+     * @param fsyncPolicy The policy deciding when written data is forced to disk.
+     */
+    AtomicFileWriter(final Path target, final FsyncPolicy fsyncPolicy) {
+        this.target = target;
+        this.temp = Path.of(target + ToJson.TEMP_SUFFIX);
+        this.syncer = new FileSyncer(fsyncPolicy);
+    }
+
+    /**
+     * Replaces the file with the given content.
+     * <p>
+     * If there are issues writing the file, an error message will be printed to the standard
+     * error stream, the failed write is counted, and the old file is left as it was.
+     *
+     * @param content Writes the new content of the file.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    boolean write(final Content content) {
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                content.writeTo(out);
+                out.flush();
+                syncer.sync(channel, true);
+            }
+            move();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failedWrites.incrementAndGet();
+            System.err.println("Error writing to file: " + target + "\n" + e);
+            return false;
+        }
+    }
+
+    /**
+     * Retrieves the number of writes that have failed since this instance was created.
+     *
+     * @return The number of failed writes.
+     */
+    long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * Retrieves the fsync policy used when writing.
+     *
+     * @return The fsync policy.
+     */
+    FsyncPolicy getFsyncPolicy() {
+        return syncer.getPolicy();
+    }
+
+    /**
+     * Renames the temporary file over the target, atomically where the file system supports it.
+     *
+     * @throws IOException If the file could not be renamed.
+     */
+    private void move() throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code BinarySnapshot} class reads and writes a {@link MachineTracker} in a compact,
+ * versioned binary format.
+ * <p>
+ * All integers are variable-length (LEB128) encoded, so small numbers take a single byte. Signed
+ * values such as IDs and quantities are zigzag encoded first. Item names and locations are
+ * stored once in a string table and referred to by index. Version 2 of the format looks like this:
+ * </p>
+ * <pre>
+ * magic            4 bytes, "VMTB"
+ * version          varint
+ * journal sequence varint, 0 if the snapshot isn't used with a journal
+ * revision         varint, the number of times the file has been written, see {@link SnapshotFile}
+ * string count     varint
+ * strings          string count times: byte length (varint) followed by UTF-8 bytes
+ * machine count    varint
+ * machines         machine count times:
+ *   id             zigzag varint
+ *   location       varint, string index + 1, or 0 for no location
+ *   item count     varint
+ *   items          item count times: name string index (varint), quantity (zigzag varint)
+ * </pre>
+ * <p>
+ * Version 1 had no revision, which is read as 0. Readers reject files with a newer version than
+ * they know, so the format can be extended by bumping {@link #VERSION}.
+ * </p>
+ */
+public final class BinarySnapshot {
+
+    /**
+     * The bytes every binary snapshot starts with.
+     */
+    static final byte[] MAGIC = {'V', 'M', 'T', 'B'};
+
+    /**
+     * The current version of the format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Number of value bits in every byte of a variable-length integer.
+     */
+    private static final int VAR_BITS = 7;
+
+    /**
+     * The value bits of a byte of a variable-length integer.
+     */
+    private static final int VAR_VALUE_MASK = 0x7F;
+
+    /**
+     * The bit set on every byte of a variable-length integer but the last.
+     */
+    private static final int VAR_CONTINUE_BIT = 0x80;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Writes a tracker to a stream in the binary format with revision 0, without closing it.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the snapshot contains.
+     * @param out             The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void write(final MachineTracker machtrack, final long journalSequence, final OutputStream out)
+            throws IOException {
+        write(machtrack, journalSequence, 0, out);
+    }
+
+    /**
+     * Writes a tracker to a stream in the binary format, without closing it.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the snapshot contains.
+     * @param revision        The revision of the file.
+     * @param out             The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void write(final MachineTracker machtrack, final long journalSequence, final long revision,
+                             final OutputStream out) throws IOException {
+        writeMachines(machtrack.getMachinesView(), journalSequence, revision, out);
+    }
+
+    /**
+     * Writes vending machines to a stream in the binary format, without closing it. The machines
+     * are iterated twice, once to collect the strings and once to write the machines.
+     *
+     * @param machines        The machines to write.
+     * @param journalSequence The sequence number of the last journal entry the snapshot contains.
+     * @param revision        The revision of the file.
+     * @param out             The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void writeMachines(final Collection<VendingMachine> machines, final long journalSequence,
+                                     final long revision, final OutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+
+        for (VendingMachine vendMach : machines) {
+            if (vendMach.getLocation() != null) {
+                strings.putIfAbsent(vendMach.getLocation(), strings.size());
+            }
+            for (String item : vendMach.getStatusView().keySet()) {
+                strings.putIfAbsent(item, strings.size());
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        writeVarLong(data, VERSION);
+        writeVarLong(data, journalSequence);
+        writeVarLong(data, revision);
+
+        writeVarLong(data, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(data, bytes.length);
+            data.write(bytes);
+        }
+
+        writeVarLong(data, machines.size());
+        for (VendingMachine vendMach : machines) {
+            Map<String, Integer> status = vendMach.getStatusView();
+
+            writeVarLong(data, zigzag(vendMach.getId()));
+            writeVarLong(data, vendMach.getLocation() == null ? 0 : strings.get(vendMach.getLocation()) + 1);
+            writeVarLong(data, status.size());
+            for (Map.Entry<String, Integer> entry : status.entrySet()) {
+                writeVarLong(data, strings.get(entry.getKey()));
+                writeVarLong(data, zigzag(entry.getValue() == null ? 0 : entry.getValue()));
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a tracker in the binary format from a stream.
+     *
+     * @param in The stream to read from.
+     * @return The tracker and the journal sequence number and revision stored with it.
+     * @throws IOException If reading fails, the data isn't a binary snapshot, or it has a newer
+     *                     version than this reader supports.
+     */
+    public static SnapshotFile.Contents read(final InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        long version = readVersion(data);
+        long journalSequence = readVarLong(data);
+        long revision = version < 2 ? 0 : readVarLong(data);
+
+        String[] strings = new String[readCount(data)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readCount(data)];
+            data.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int machineCount = readCount(data);
+        List<VendingMachine> machines = new ArrayList<>(machineCount);
+        for (int i = 0; i < machineCount; i++) {
+            VendingMachine vendMach = new VendingMachine();
+            vendMach.setId(unzigzag(readVarLong(data)));
+
+            int location = readCount(data);
+            if (location > 0) {
+                vendMach.setLocation(string(strings, location - 1));
+            }
+
+            int itemCount = readCount(data);
+            for (int j = 0; j < itemCount; j++) {
+                String item = string(strings, readCount(data));
+                vendMach.addItem(item, unzigzag(readVarLong(data)));
+            }
+            machines.add(vendMach);
+        }
+
+        MachineTracker machtrack = new MachineTracker();
+        machtrack.setMachines(machines);
+        return new SnapshotFile.Contents(machtrack, journalSequence, revision);
+    }
+
+    /**
+     * Reads only the revision of a tracker in the binary format from a stream, without reading
+     * the machines.
+     *
+     * @param in The stream to read from.
+     * @return The revision, or 0 for version 1 of the format.
+     * @throws IOException If reading fails, the data isn't a binary snapshot, or it has a newer
+     *                     version than this reader supports.
+     */
+    public static long readRevision(final InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        long version = readVersion(data);
+        readVarLong(data);
+        return version < 2 ? 0 : readVarLong(data);
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, seven bits per byte with the high bit set on
+     * every byte but the last.
+     *
+     * @param out   The stream to write to.
+     * @param value The value, treated as unsigned.
+     * @throws IOException If writing fails.
+     */
+    static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~(long) VAR_VALUE_MASK) != 0) {
+            out.writeByte((int) ((remaining & VAR_VALUE_MASK) | VAR_CONTINUE_BIT));
+            remaining >>>= VAR_BITS;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by {@link #writeVarLong}.
+     *
+     * @param in The stream to read from.
+     * @return The value.
+     * @throws IOException If reading fails or the value is longer than 64 bits.
+     */
+    static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VAR_BITS) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Binary snapshot ended in the middle of a number");
+            }
+            value |= (long) (b & VAR_VALUE_MASK) << shift;
+            if ((b & VAR_CONTINUE_BIT) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in binary snapshot");
+    }
+
+    /**
+     * Reads a count or index, which must fit in a non-negative int.
+     *
+     * @param in The stream to read from.
+     * @return The count.
+     * @throws IOException If reading fails or the count is too large.
+     */
+    private static int readCount(final DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Count out of range in binary snapshot: " + count);
+        }
+        return (int) count;
+    }
+
+    /**
+     * Looks up an entry in the string table.
+     *
+     * @param strings The string table.
+     * @param index   The index of the string.
+     * @return The string.
+     * @throws IOException If the index is outside the table.
+     */
+    private static String string(final String[] strings, final int index) throws IOException {
+        if (index >= strings.length) {
+            throw new IOException("String index out of range in binary snapshot: " + index);
+        }
+        return strings[index];
+    }
+
+    /**
+     * Maps a signed int to an unsigned value so that small negative numbers stay small.
+     *
+     * @param value The signed value.
+     * @return The zigzag encoded value.
+     */
+    private static long zigzag(final int value) {
+        return Integer.toUnsignedLong((value << 1) ^ (value >> (Integer.SIZE - 1)));
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}.
+     *
+     * @param value The zigzag encoded value.
+     * @return The signed value.
+     */
+    private static int unzigzag(final long value) {
+        int bits = (int) value;
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+
+    /**
+     * Reads the magic bytes and the version of the format.
+     *
+     * @param data The stream to read from.
+     * @return The version.
+     * @throws IOException If reading fails, the data isn't a binary snapshot, or it has a newer
+     *                     version than this reader supports.
+     */
+    private static long readVersion(final DataInputStream data) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a binary tracker snapshot");
+            }
+        }
+        long version = readVarLong(data);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported binary snapshot version: " + version);
+        }
+        return version;
+    }
+}
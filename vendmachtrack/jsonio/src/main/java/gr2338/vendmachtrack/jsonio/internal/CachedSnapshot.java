@@ -0,0 +1,227 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the tracker last read from or written to a {@link SnapshotFile}, so that it is only parsed
+ * again when another process has changed the file.
+ * <p>
+ * Every read first compares the modification time, size and file key of the file to those seen
+ * when the cached tracker was stored. Since the file is replaced by renaming, any write by another
+ * process gives it a new file key on file systems that have one. If nothing changed, the cached
+ * tracker is copied without touching the content. Otherwise the content is read and its CRC-32 is
+ * compared to the cached one, so a file that was rewritten with the same content is still not
+ * parsed. Only a file with new content is parsed.
+ * </p>
+ * <p>
+ * A file modified within {@value #RACY_MILLIS} ms of when it was last checked always has its
+ * content hashed, since another write in the same clock tick of a coarse file system could leave
+ * the modification time and size as they were.
+ * </p>
+ * <p>
+ * The cached tracker is never handed out, since callers change the trackers they get. Reads return
+ * a copy, and writes store a copy of the written tracker, which costs far less than parsing.
+ * The class is thread-safe.
+ * </p>
+ */
+public final class CachedSnapshot {
+
+    /**
+     * How recently a file may have been modified, relative to when it was checked, before its
+     * metadata alone is no longer trusted.
+     */
+    static final long RACY_MILLIS = 2000;
+
+    /**
+     * What was seen of the file when the cached tracker was stored.
+     *
+     * @param modifiedMillis The modification time of the file.
+     * @param size           The size of the file.
+     * @param fileKey        The file key, or null if the file system has none.
+     * @param checksum       The CRC-32 of the content.
+     * @param checkedMillis  When the file was checked.
+     */
+    private record Stamp(long modifiedMillis, long size, Object fileKey, long checksum, long checkedMillis) {
+
+        /**
+         * Checks whether the metadata of the file shows that it is unchanged.
+         *
+         * @param attributes The current metadata of the file.
+         * @return True if the cached tracker can be used without reading the file.
+         */
+        boolean matches(final BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().toMillis() == modifiedMillis
+                    && attributes.size() == size
+                    && Objects.equals(attributes.fileKey(), fileKey)
+                    && modifiedMillis < checkedMillis - RACY_MILLIS;
+        }
+    }
+
+    private final SnapshotFile snapshotFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong parses = new AtomicLong();
+
+    private SnapshotFile.Contents cached;
+    private Stamp stamp;
+
+    /**
+     * Creates a cache for a snapshot file, which is empty until the first read or write.
+     *
+     * @param snapshotFile The snapshot file.
+     */
+    public CachedSnapshot(final SnapshotFile snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Reads the tracker from the snapshot, parsing the file only if its content changed since
+     * it was last read or written.
+     * <p>
+     * If the file can't be read or isn't a valid snapshot, an error is printed to the standard
+     * error stream, the cache is emptied and null is returned.
+     *
+     * @return The contents of the snapshot with a copy of the tracker, or {@code null} if it could
+     * not be read.
+     */
+    public SnapshotFile.Contents read() {
+        lock.lock();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(snapshotFile.getPath(), BasicFileAttributes.class);
+            if (stamp != null && stamp.matches(attributes)) {
+                return copyOf(cached);
+            }
+
+            long checkedMillis = System.currentTimeMillis();
+            byte[] bytes = Files.readAllBytes(snapshotFile.getPath());
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (stamp == null || crc.getValue() != stamp.checksum()) {
+                parses.incrementAndGet();
+                cached = SnapshotFile.read(new ByteArrayInputStream(bytes), snapshotFile.getFormat());
+            }
+            stamp = new Stamp(attributes.lastModifiedTime().toMillis(), bytes.length, attributes.fileKey(),
+                    crc.getValue(), checkedMillis);
+            return copyOf(cached);
+        } catch (Exception e) {
+            forget();
+            System.err.println("Error reading from file: " + snapshotFile.getPath() + "\n" + e);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given tracker, with the revision after the current one, and
+     * keeps a copy of it so that the next read doesn't parse the file. If writing fails, the cache
+     * is emptied. Must be called while holding the {@link FileLocker} of the file.
+     *
+     * @param machtrack The tracker to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean write(final MachineTracker machtrack) {
+        lock.lock();
+        try {
+            CRC32 crc = new CRC32();
+            long revision = snapshotFile.readRevision() + 1;
+            if (!snapshotFile.write(machtrack, 0, revision, crc)) {
+                forget();
+                return false;
+            }
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(snapshotFile.getPath(), BasicFileAttributes.class);
+                // Stamped after the write, so a change by another process in between is seen as racy.
+                stamp = new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(),
+                        attributes.fileKey(), crc.getValue(), System.currentTimeMillis());
+                cached = new SnapshotFile.Contents(copyOf(machtrack), 0, revision);
+            } catch (IOException e) {
+                forget();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given vending machines, with the revision after the current
+     * one, without keeping a copy of them. The cache is emptied, so the next read parses the file.
+     * Must be called while holding the {@link FileLocker} of the file.
+     *
+     * @param machines The machines to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean writeMachines(final Collection<VendingMachine> machines) {
+        lock.lock();
+        try {
+            forget();
+            return snapshotFile.writeMachines(machines);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of times the file has been parsed since this instance was created.
+     *
+     * @return The number of parses.
+     */
+    public long getParses() {
+        return parses.get();
+    }
+
+    /**
+     * Empties the cache, so that the next read parses the file. Must be called while holding the
+     * lock.
+     */
+    private void forget() {
+        cached = null;
+        stamp = null;
+    }
+
+    /**
+     * Copies the contents of a snapshot with a copy of the tracker.
+     *
+     * @param contents The contents to copy, or null.
+     * @return The copy, or null.
+     */
+    private static SnapshotFile.Contents copyOf(final SnapshotFile.Contents contents) {
+        if (contents == null) {
+            return null;
+        }
+        return new SnapshotFile.Contents(copyOf(contents.tracker()), contents.journalSequence(), contents.revision());
+    }
+
+    /**
+     * Copies a tracker and its vending machines.
+     *
+     * @param machtrack The tracker to copy, or null.
+     * @return The copy, or null.
+     */
+    private static MachineTracker copyOf(final MachineTracker machtrack) {
+        if (machtrack == null) {
+            return null;
+        }
+        List<VendingMachine> machines = new ArrayList<>(machtrack.getMachineCount());
+        for (VendingMachine vendMach : machtrack.getMachinesView()) {
+            machines.add(new VendingMachine(vendMach));
+        }
+        MachineTracker copy = new MachineTracker();
+        copy.setMachines(machines);
+        return copy;
+    }
+}
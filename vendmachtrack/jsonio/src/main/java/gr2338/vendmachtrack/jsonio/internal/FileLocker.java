@@ -0,0 +1,98 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes writes to a file between threads and between processes, with an advisory lock on a
+ * lock file next to it.
+ * <p>
+ * The lock is taken on a separate file ending in {@value #LOCK_SUFFIX}, since the file itself is
+ * replaced by renaming on every write and a lock on it would be left behind on the old file. The
+ * lock file is created on first use and never deleted, so every process locks the same file.
+ * Advisory locks only exclude other processes that take them, so readers that don't lock are
+ * never blocked, and see either the old or the new file thanks to the atomic rename.
+ * </p>
+ * <p>
+ * The operating system grants file locks to processes, not threads, so all lockers of a file in
+ * one process share one instance, see {@link #forFile(Path)}, which lets one thread at a time take
+ * the file lock. A {@link ReentrantLock} is used instead of {@code synchronized} so virtual threads
+ * waiting for it don't pin their carrier threads. The lock is reentrant, and nested calls don't
+ * lock the file again.
+ * </p>
+ */
+public final class FileLocker {
+
+    /**
+     * Suffix added to the file name to get the name of the lock file.
+     */
+    public static final String LOCK_SUFFIX = ".lock";
+
+    private static final Map<Path, FileLocker> LOCKERS = new ConcurrentHashMap<>();
+
+    private final Path lockPath;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a locker for a file.
+     *
+     * @param path The absolute, normalized path of the file.
+     */
+    private FileLocker(final Path path) {
+        this.lockPath = Path.of(path + LOCK_SUFFIX);
+    }
+
+    /**
+     * Retrieves the locker of a file, which is shared by everyone in this process locking it.
+     *
+     * @param path The path of the file to lock, not of the lock file.
+     * @return The locker.
+     */
+    public static FileLocker forFile(final Path path) {
+        return LOCKERS.computeIfAbsent(path.toAbsolutePath().normalize(), FileLocker::new);
+    }
+
+    /**
+     * Runs an action while holding the lock, waiting for other threads and processes to release
+     * it first.
+     *
+     * @param action The action.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     * @throws UncheckedIOException If the lock file could not be opened or locked.
+     */
+    public <T> T withLock(final Supplier<T> action) {
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1) {
+                return action.get();
+            }
+            try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                 FileLock fileLock = channel.lock()) {
+                return action.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error locking file: " + lockPath, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the path of the lock file.
+     *
+     * @return The path.
+     */
+    public Path getLockPath() {
+        return lockPath;
+    }
+}
@@ -0,0 +1,74 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Forces written files to disk according to an {@link FsyncPolicy}, keeping track of when data
+ * was last forced for the {@link FsyncPolicy#BATCHED} policy.
+ * <p>
+ * Forcing is guarded by a {@link ReentrantLock}, since a virtual thread waiting for a slow
+ * {@code fsync} inside a {@code synchronized} method would hold on to its carrier thread.
+ * </p>
+ */
+final class FileSyncer {
+
+    private final FsyncPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long lastSyncNanos = System.nanoTime();
+
+    /**
+     * Creates a syncer following the given policy.
+     *
+     * @param policy The policy deciding when to force data to disk.
+     */
+    FileSyncer(final FsyncPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Retrieves the policy of this syncer.
+     *
+     * @return The fsync policy.
+     */
+    FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Forces the data written to a channel to disk if the policy asks for it.
+     *
+     * @param channel  The channel to force.
+     * @param metaData Whether file metadata, such as the size, has to be forced as well.
+     * @return {@code true} if the data was forced, {@code false} if it was left to the operating
+     * system.
+     * @throws IOException If forcing the data failed.
+     */
+    boolean sync(final FileChannel channel, final boolean metaData) throws IOException {
+        lock.lock();
+        try {
+            switch (policy) {
+                case ALWAYS:
+                    break;
+                case BATCHED:
+                    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSyncNanos);
+                    if (elapsedMillis < FsyncPolicy.BATCH_INTERVAL_MILLIS) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+
+            channel.force(metaData);
+            lastSyncNanos = System.nanoTime();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
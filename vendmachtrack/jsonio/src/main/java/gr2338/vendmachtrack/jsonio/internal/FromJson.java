@@ -1,6 +1,5 @@
 package gr2338.vendmachtrack.jsonio.internal;
 
-import com.google.gson.Gson;
 import gr2338.vendmachtrack.core.model.MachineTracker;
 
 import java.io.BufferedReader;
@@ -13,7 +12,8 @@ import java.nio.charset.StandardCharsets;
  * The {@code FromJson} class provides methods to deserialize a {@link MachineTracker}
  * object from its JSON representation. The class can read from either an InputStream or a file.
  * <p>
- * This class uses the Gson library to perform the deserialization. The provided file name
+ * This class uses the Gson library to perform the deserialization, streaming the document
+ * through hand-written type adapters instead of binding it by reflection. The provided file name
  * is used to determine the absolute path of the file in the user's home directory, where
  * the JSON data is expected to be stored.
  * </p>
@@ -40,7 +40,8 @@ public class FromJson {
 
     /**
      * Deserializes a {@link MachineTracker} object from the provided {@link InputStream}
-     * containing its JSON representation. Utilizes the Gson library for the deserialization process.
+     * containing its JSON representation. Utilizes the Gson library for the deserialization process,
+     * reading one vending machine at a time.
      * <p>
      * If there are issues during the deserialization process (such as malformed JSON data),
      * an error is printed to the standard error stream and null is returned.
@@ -50,8 +51,7 @@ public class FromJson {
      */
     public MachineTracker fromInputStream(final InputStream is) {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-            Gson gson = new Gson();
-            return gson.fromJson(br, MachineTracker.class);
+            return MachineTrackerAdapter.GSON.fromJson(br, MachineTracker.class);
         } catch (Exception e) {
             System.err.println("Error deserializing from InputStream\n" + e);
             return null;
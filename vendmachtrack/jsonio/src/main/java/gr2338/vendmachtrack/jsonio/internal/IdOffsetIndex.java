@@ -0,0 +1,197 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import java.util.Arrays;
+
+/**
+ * The {@code IdOffsetIndex} class maps vending machine IDs to file offsets.
+ * <p>
+ * It is an open addressing hash table with linear probing, stored in two primitive arrays, so an
+ * entry costs twelve bytes per slot instead of the boxed keys, values and entry objects of a
+ * {@code HashMap}. Offsets have to be positive, since zero marks an empty slot.
+ * </p>
+ * <p>
+ * The class is not thread-safe.
+ * </p>
+ */
+public final class IdOffsetIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The table is doubled when more than three quarters of the slots are used.
+     */
+    private static final long LOAD_NUMERATOR = 3;
+    private static final long LOAD_DENOMINATOR = 4;
+
+    /**
+     * Odd multiplier spreading the bits of the IDs, from the golden ratio.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * How far the high bits of a hash are moved down before mixing them into the low bits.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    private int[] keys;
+    private long[] offsets;
+    private int size;
+
+    /**
+     * Creates an empty index.
+     */
+    public IdOffsetIndex() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.offsets = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Retrieves the offset stored for an ID.
+     *
+     * @param id The ID to look up.
+     * @return The offset, or -1 if the ID isn't in the index.
+     */
+    public long get(final int id) {
+        int mask = keys.length - 1;
+        for (int slot = slotFor(id, mask); offsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return offsets[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the offset for an ID, replacing any previous offset.
+     *
+     * @param id     The ID.
+     * @param offset The offset, which has to be positive.
+     * @return The previous offset, or -1 if the ID wasn't in the index.
+     * @throws IllegalArgumentException If the offset isn't positive.
+     */
+    public long put(final int id, final long offset) {
+        if (offset <= 0) {
+            throw new IllegalArgumentException("Offsets have to be positive");
+        }
+        if ((size + 1) * LOAD_DENOMINATOR > keys.length * LOAD_NUMERATOR) {
+            resize(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int slot = slotFor(id, mask);
+        while (offsets[slot] != 0) {
+            if (keys[slot] == id) {
+                long previous = offsets[slot];
+                offsets[slot] = offset;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        offsets[slot] = offset;
+        size++;
+        return -1;
+    }
+
+    /**
+     * Removes an ID from the index.
+     *
+     * @param id The ID to remove.
+     * @return The offset that was stored for it, or -1 if the ID wasn't in the index.
+     */
+    public long remove(final int id) {
+        int mask = keys.length - 1;
+        int slot = slotFor(id, mask);
+        while (offsets[slot] != 0 && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (offsets[slot] == 0) {
+            return -1;
+        }
+
+        long removed = offsets[slot];
+        // Moves later entries of the probe sequence back, so lookups never stop at a hole.
+        int hole = slot;
+        for (int next = (hole + 1) & mask; offsets[next] != 0; next = (next + 1) & mask) {
+            int home = slotFor(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                offsets[hole] = offsets[next];
+                hole = next;
+            }
+        }
+        offsets[hole] = 0;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Retrieves the number of IDs in the index.
+     *
+     * @return The number of IDs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves every ID in the index.
+     *
+     * @return The IDs, in no particular order.
+     */
+    public int[] ids() {
+        int[] ids = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (offsets[slot] != 0) {
+                ids[count++] = keys[slot];
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Removes every ID from the index.
+     */
+    public void clear() {
+        Arrays.fill(offsets, 0);
+        size = 0;
+    }
+
+    /**
+     * Grows the table and reinserts every entry.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void resize(final int capacity) {
+        int[] oldKeys = keys;
+        long[] oldOffsets = offsets;
+        keys = new int[capacity];
+        offsets = new long[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldOffsets[i] != 0) {
+                int slot = slotFor(oldKeys[i], mask);
+                while (offsets[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                offsets[slot] = oldOffsets[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the first slot to probe for an ID. The bits of the ID are mixed, so that IDs
+     * following each other don't fill up neighbouring slots.
+     *
+     * @param id   The ID.
+     * @param mask The number of slots minus one.
+     * @return The slot.
+     */
+    private static int slotFor(final int id, final int mask) {
+        int hash = id * HASH_MULTIPLIER;
+        return (hash ^ (hash >>> HASH_SHIFT)) & mask;
+    }
+}
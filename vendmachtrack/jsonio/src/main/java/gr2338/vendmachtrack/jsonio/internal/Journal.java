@@ -0,0 +1,410 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.Gson;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code Journal} class stores a {@link MachineTracker} as a snapshot file together with
+ * an append-only journal of the changes made since the snapshot was written.
+ * <p>
+ * Every change is appended to the journal as one line of JSON and forced to disk according to
+ * the {@link FsyncPolicy}, so the cost of a change doesn't depend on the size of the fleet.
+ * Writing a new snapshot removes the entries it contains from the journal. Snapshots are always
+ * forced to disk before the journal is changed, whatever the policy. Loading reads the snapshot
+ * and replays the journal on top of it.
+ * </p>
+ * <p>
+ * The data survives a crash at any point:
+ * </p>
+ * <ul>
+ *   <li>A journal line that was only partly written when the process died is cut off on the
+ *   next load.</li>
+ *   <li>Snapshots are written to a temporary file which is then renamed over the old snapshot,
+ *   so the snapshot file is always complete.</li>
+ *   <li>The snapshot stores the sequence number of the last journal entry it contains, and
+ *   entries up to that number are skipped on replay. A crash between writing a snapshot and
+ *   emptying the journal therefore doesn't apply any change twice.</li>
+ * </ul>
+ * <p>
+ * The snapshot can be stored in either {@link SnapshotFormat}, see {@link SnapshotFile}. A JSON
+ * snapshot is a regular tracker file with an extra {@code journalSequence} field, so it can still
+ * be read by {@link FromJson}. The journal itself is always JSON lines.
+ * </p>
+ * <p>
+ * The methods are guarded by a {@link ReentrantLock} rather than {@code synchronized}, so a
+ * virtual thread blocked on file I/O inside the journal doesn't pin its carrier thread. Snapshots
+ * written with {@link #writeSnapshot(MachineTracker, long)} only hold a separate lock while the
+ * snapshot is written, so entries can be appended in the meantime.
+ * </p>
+ * Example usage:
+ * <pre>
+ * Journal journal = new Journal("machineTracker.json");
+ * MachineTracker machineTracker = journal.load();
+ * journal.append(JournalEntry.addItem(1, "Cola", 3));
+ * journal.writeSnapshot(machineTracker);
+ * </pre>
+ */
+public class Journal {
+
+    /**
+     * Suffix added to the snapshot file name to get the name of the journal file.
+     */
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    private final Path journalPath;
+    private final SnapshotFile snapshotFile;
+    private final FileSyncer syncer;
+    private final Gson gson = new Gson();
+    private final AtomicLong failedAppends = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Serializes writing snapshots, and is taken before {@link #lock} when both are held.
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    /**
+     * Sequence number of the last entry written to the journal or contained in the snapshot.
+     */
+    private long sequence;
+
+    /**
+     * Sequence number of the last entry contained in the snapshot. Guarded by
+     * {@link #snapshotLock}.
+     */
+    private long snapshotSequence;
+
+    /**
+     * Number of entries in the journal file.
+     */
+    private int size;
+
+    /**
+     * Initializes a new {@code Journal} instance using the specified file name.
+     * The snapshot is stored in the file with the given name in the user's home directory,
+     * and the journal in a file next to it with {@value #JOURNAL_SUFFIX} added to the name.
+     * Every journal entry is forced to disk.
+     *
+     * @param fileName Name of the snapshot file in the user's home directory.
+     */
+    public Journal(final String fileName) {
+        this(fileName, FsyncPolicy.ALWAYS, SnapshotFormat.forFileName(fileName));
+    }
+
+    /**
+     * Initializes a new {@code Journal} instance using the specified file name, fsync policy and
+     * snapshot format.
+     *
+     * @param fileName    Name of the snapshot file in the user's home directory.
+     * @param fsyncPolicy The policy deciding when journal entries are forced to disk.
+     * @param format      The format of the snapshot file.
+     */
+    public Journal(final String fileName, final FsyncPolicy fsyncPolicy, final SnapshotFormat format) {
+        this.journalPath = Paths.get(System.getProperty("user.home") + "/" + fileName + JOURNAL_SUFFIX);
+        this.snapshotFile = new SnapshotFile(fileName, format, FsyncPolicy.ALWAYS);
+        this.syncer = new FileSyncer(fsyncPolicy);
+    }
+
+    /**
+     * Reads the snapshot and replays the journal on top of it.
+     * <p>
+     * A partly written line at the end of the journal is removed from the file. Entries that
+     * can't be parsed or applied are skipped with an error printed to the standard error stream.
+     * If the snapshot can't be read, an error is printed and null is returned.
+     *
+     * @return The {@link MachineTracker} with all journaled changes applied, or {@code null}
+     * if the snapshot could not be read.
+     */
+    public MachineTracker load() {
+        snapshotLock.lock();
+        lock.lock();
+        try {
+            SnapshotFile.Contents contents = snapshotFile.read();
+            if (contents == null || contents.tracker() == null) {
+                return null;
+            }
+            MachineTracker machtrack = contents.tracker();
+
+            snapshotSequence = contents.journalSequence();
+            sequence = snapshotSequence;
+            size = 0;
+            try {
+                replay(machtrack, snapshotSequence);
+            } catch (IOException e) {
+                System.err.println("Error reading journal: " + journalPath + "\n" + e);
+            }
+            return machtrack;
+        } finally {
+            lock.unlock();
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Appends an entry to the journal and forces it to disk according to the fsync policy.
+     * The entry is given the next sequence number.
+     *
+     * @param entry The entry to append.
+     * @return {@code true} if the entry was written, {@code false} if writing failed.
+     */
+    public boolean append(final JournalEntry entry) {
+        return appendAll(List.of(entry));
+    }
+
+    /**
+     * Appends several entries to the journal in one write, and forces them to disk once
+     * according to the fsync policy. The entries are given the next sequence numbers in order.
+     *
+     * @param entries The entries to append.
+     * @return {@code true} if the entries were written, {@code false} if writing failed.
+     */
+    public boolean appendAll(final List<JournalEntry> entries) {
+        lock.lock();
+        try {
+            if (entries.isEmpty()) {
+                return true;
+            }
+            StringBuilder lines = new StringBuilder();
+            long seq = sequence;
+            for (JournalEntry entry : entries) {
+                entry.setSeq(++seq);
+                lines.append(gson.toJson(entry)).append('\n');
+            }
+
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                syncer.sync(channel, false);
+            } catch (IOException e) {
+                failedAppends.incrementAndGet();
+                System.err.println("Error writing to journal: " + journalPath + "\n" + e);
+                return false;
+            }
+
+            sequence = seq;
+            size += entries.size();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given {@link MachineTracker} as the new snapshot and empties the journal.
+     * The tracker must contain every change appended to the journal so far, so no entries can be
+     * appended while the snapshot is written.
+     *
+     * @param machtrack The {@link MachineTracker} to write.
+     * @return {@code true} if the snapshot was written, {@code false} if writing failed.
+     */
+    public boolean writeSnapshot(final MachineTracker machtrack) {
+        snapshotLock.lock();
+        lock.lock();
+        try {
+            return writeSnapshot(machtrack, sequence);
+        } finally {
+            lock.unlock();
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given {@link MachineTracker} as the new snapshot, containing the entries up to
+     * a sequence number, and removes those entries from the journal. Entries can be appended
+     * while the snapshot is written, and are kept in the journal.
+     * <p>
+     * Nothing is written if a snapshot containing later entries has been written already, so an
+     * older tracker never replaces a newer one.
+     * </p>
+     *
+     * @param machtrack       The {@link MachineTracker} to write, containing every change
+     *                        appended up to the sequence number and none after it.
+     * @param journalSequence The sequence number of the last entry the tracker contains, see
+     *                        {@link #getSequence()}.
+     * @return {@code true} if the snapshot was written or a newer one exists, {@code false} if
+     * writing failed.
+     * @throws IllegalArgumentException If no entry with the sequence number has been appended.
+     */
+    public boolean writeSnapshot(final MachineTracker machtrack, final long journalSequence) {
+        snapshotLock.lock();
+        try {
+            if (journalSequence > getSequence()) {
+                throw new IllegalArgumentException("No journal entry has sequence number " + journalSequence);
+            }
+            if (journalSequence < snapshotSequence) {
+                return true;
+            }
+            if (!snapshotFile.write(machtrack, journalSequence)) {
+                return false;
+            }
+            snapshotSequence = journalSequence;
+
+            lock.lock();
+            try {
+                removeEntries(journalSequence);
+            } catch (IOException e) {
+                // The snapshot is safe, the entries left in the journal are skipped on the next load.
+                System.err.println("Error emptying journal: " + journalPath + "\n" + e);
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of entries in the journal, which is the number of entries that
+     * would be replayed on the next load.
+     *
+     * @return The number of entries in the journal.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of journal entries and snapshots that have failed to be written
+     * since this instance was created.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return failedAppends.get() + snapshotFile.getFailedWrites();
+    }
+
+    /**
+     * Retrieves the sequence number of the last appended entry.
+     *
+     * @return The current sequence number.
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entries up to a sequence number from the journal file. If entries after it are
+     * left, they are written to a temporary file which is renamed over the journal, so a crash
+     * never loses them. Must be called while holding the lock.
+     *
+     * @param journalSequence The sequence number of the last entry to remove.
+     * @throws IOException If the journal file could not be changed.
+     */
+    private void removeEntries(final long journalSequence) throws IOException {
+        if (journalSequence >= sequence || !Files.exists(journalPath)) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+                syncer.sync(channel, true);
+            }
+            size = 0;
+            return;
+        }
+
+        StringBuilder kept = new StringBuilder();
+        int keptEntries = 0;
+        for (String line : Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+            try {
+                if (!line.isBlank() && gson.fromJson(line, JournalEntry.class).getSeq() > journalSequence) {
+                    kept.append(line).append('\n');
+                    keptEntries++;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Dropping journal entry: " + line + "\n" + e);
+            }
+        }
+
+        Path temp = Path.of(journalPath + ToJson.TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(kept.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            syncer.sync(channel, true);
+        }
+        try {
+            Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        size = keptEntries;
+    }
+
+    /**
+     * Replays the journal file on top of a tracker, and cuts off a partly written last line.
+     *
+     * @param machtrack        The tracker to apply the entries to.
+     * @param snapshotSequence The sequence number stored in the snapshot. Entries up to and
+     *                         including this number are already part of the snapshot.
+     * @throws IOException If the journal file could not be read or repaired.
+     */
+    private void replay(final MachineTracker machtrack, final long snapshotSequence) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+
+        byte[] bytes = Files.readAllBytes(journalPath);
+        int start = 0;
+
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] != '\n') {
+                continue;
+            }
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            start = end + 1;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            size++;
+            try {
+                JournalEntry entry = gson.fromJson(line, JournalEntry.class);
+                if (entry.getSeq() > snapshotSequence) {
+                    entry.applyTo(machtrack);
+                }
+                sequence = Math.max(sequence, entry.getSeq());
+            } catch (RuntimeException e) {
+                System.err.println("Skipping journal entry: " + line + "\n" + e);
+            }
+        }
+
+        if (start < bytes.length) {
+            System.err.println("Removing incomplete journal entry from: " + journalPath);
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+                channel.force(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+/**
+ * The {@code JournalEntry} class represents a single change to a {@link MachineTracker},
+ * as it is written to the journal by {@link Journal}.
+ * <p>
+ * Each entry is serialized as one line of JSON, holding only the fields the change needs,
+ * for instance {@code {"seq":7,"op":"ADD_ITEM","id":1,"item":"Cola","quantity":3}}.
+ * The sequence number is assigned by the journal when the entry is appended.
+ * </p>
+ * Example usage:
+ * <pre>
+ * JournalEntry entry = JournalEntry.addItem(1, "Cola", 3);
+ * entry.applyTo(machineTracker);
+ * </pre>
+ */
+public final class JournalEntry {
+
+    /**
+     * The kinds of changes that can be journaled.
+     */
+    public enum Operation {
+        ADD_ITEM,
+        REMOVE_ITEM,
+        ADD_MACHINE,
+        REMOVE_MACHINE,
+        RELOCATE
+    }
+
+    private long seq;
+    private Operation op;
+    private int id;
+    private String item;
+    private Integer quantity;
+    private String location;
+
+    /**
+     * Used by Gson when reading entries back from the journal.
+     */
+    private JournalEntry() {
+    }
+
+    private JournalEntry(final Operation op, final int id, final String item, final Integer quantity,
+                         final String location) {
+        this.op = op;
+        this.id = id;
+        this.item = item;
+        this.quantity = quantity;
+        this.location = location;
+    }
+
+    /**
+     * Creates an entry for adding a quantity of an item to a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity added.
+     * @return The new entry.
+     */
+    public static JournalEntry addItem(final int id, final String item, final int quantity) {
+        return new JournalEntry(Operation.ADD_ITEM, id, item, quantity, null);
+    }
+
+    /**
+     * Creates an entry for removing a quantity of an item from a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity removed.
+     * @return The new entry.
+     */
+    public static JournalEntry removeItem(final int id, final String item, final int quantity) {
+        return new JournalEntry(Operation.REMOVE_ITEM, id, item, quantity, null);
+    }
+
+    /**
+     * Creates an entry for adding a new, empty vending machine.
+     *
+     * @param id       The ID of the new vending machine.
+     * @param location The location of the new vending machine.
+     * @return The new entry.
+     */
+    public static JournalEntry addMachine(final int id, final String location) {
+        return new JournalEntry(Operation.ADD_MACHINE, id, null, null, location);
+    }
+
+    /**
+     * Creates an entry for removing a vending machine.
+     *
+     * @param id The ID of the vending machine.
+     * @return The new entry.
+     */
+    public static JournalEntry removeMachine(final int id) {
+        return new JournalEntry(Operation.REMOVE_MACHINE, id, null, null, null);
+    }
+
+    /**
+     * Creates an entry for moving a vending machine to a new location.
+     *
+     * @param id       The ID of the vending machine.
+     * @param location The new location.
+     * @return The new entry.
+     */
+    public static JournalEntry relocate(final int id, final String location) {
+        return new JournalEntry(Operation.RELOCATE, id, null, null, location);
+    }
+
+    /**
+     * Applies the change to the given {@link MachineTracker}.
+     *
+     * @param machtrack The tracker to change.
+     * @throws IllegalArgumentException If the entry is incomplete, or refers to a vending
+     *                                  machine that is not in the tracker.
+     */
+    public void applyTo(final MachineTracker machtrack) {
+        if (op == null) {
+            throw new IllegalArgumentException("Journal entry " + seq + " has no operation");
+        }
+
+        switch (op) {
+            case ADD_ITEM:
+                machine(machtrack).addItem(item, quantity);
+                break;
+            case REMOVE_ITEM:
+                machine(machtrack).removeItem(item, quantity);
+                break;
+            case ADD_MACHINE:
+                VendingMachine vendMach = new VendingMachine();
+                vendMach.setId(id);
+                vendMach.setLocation(location);
+                machtrack.addVendingMachine(vendMach);
+                break;
+            case REMOVE_MACHINE:
+                machtrack.removeVendingMachine(id);
+                break;
+            case RELOCATE:
+                machine(machtrack).setLocation(location);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal operation: " + op);
+        }
+    }
+
+    /**
+     * Looks up the vending machine the entry refers to.
+     *
+     * @param machtrack The tracker to look in.
+     * @return The vending machine.
+     * @throws IllegalArgumentException If the vending machine is not in the tracker.
+     */
+    private VendingMachine machine(final MachineTracker machtrack) {
+        VendingMachine vendMach = machtrack.getMachine(id);
+
+        if (vendMach == null) {
+            throw new IllegalArgumentException("Journal entry " + seq + " refers to unknown vending machine " + id);
+        }
+        return vendMach;
+    }
+
+    /**
+     * Retrieves the sequence number of the entry.
+     *
+     * @return The sequence number, or 0 if the entry hasn't been appended to a journal.
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Sets the sequence number of the entry. Called by the journal when appending.
+     *
+     * @param seq The sequence number.
+     */
+    void setSeq(final long seq) {
+        this.seq = seq;
+    }
+
+    /**
+     * Retrieves the kind of change.
+     *
+     * @return The operation of the entry.
+     */
+    public Operation getOp() {
+        return op;
+    }
+
+    /**
+     * Retrieves the ID of the vending machine that was changed.
+     *
+     * @return The ID of the vending machine.
+     */
+    public int getId() {
+        return id;
+    }
+}
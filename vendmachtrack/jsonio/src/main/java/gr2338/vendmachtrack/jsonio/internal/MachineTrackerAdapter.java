@@ -0,0 +1,150 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Streaming Gson {@link TypeAdapter} for {@link MachineTracker}, reading and writing the
+ * machines one at a time without building the whole document in memory and without
+ * reflection.
+ * <p>
+ * The format is the same as Gson's reflective format, {@code {"machines":[...]}}.
+ * Unknown fields are skipped when reading.
+ * </p>
+ * <p>
+ * {@link #GSON} is a shared, thread-safe {@link Gson} instance with the adapters registered.
+ * </p>
+ */
+final class MachineTrackerAdapter extends TypeAdapter<MachineTracker> {
+
+    /**
+     * Name of the field holding the machines.
+     */
+    static final String MACHINES_FIELD = "machines";
+
+    private static final VendingMachineAdapter MACHINE_ADAPTER = new VendingMachineAdapter();
+
+    /**
+     * Gson instance using the streaming adapters for {@link MachineTracker} and
+     * {@link VendingMachine}.
+     */
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(MachineTracker.class, new MachineTrackerAdapter())
+            .registerTypeAdapter(VendingMachine.class, MACHINE_ADAPTER)
+            .create();
+
+    /**
+     * Writes a tracker as a JSON object.
+     *
+     * @param out       The writer to write to.
+     * @param machtrack The tracker to write, may be null.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void write(final JsonWriter out, final MachineTracker machtrack) throws IOException {
+        if (machtrack == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeMachines(out, machtrack);
+        out.endObject();
+    }
+
+    /**
+     * Reads a tracker from a JSON object.
+     *
+     * @param in The reader to read from.
+     * @return The tracker, or null if the value was null.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    @Override
+    public MachineTracker read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        MachineTracker machtrack = new MachineTracker();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            if (MACHINES_FIELD.equals(in.nextName())) {
+                machtrack.setMachines(readMachines(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return machtrack;
+    }
+
+    /**
+     * Writes the {@value #MACHINES_FIELD} field of a tracker inside an object that has
+     * already been started. Lets other formats add their own fields next to it.
+     *
+     * @param out       The writer to write to.
+     * @param machtrack The tracker whose machines to write.
+     * @throws IOException If writing fails.
+     */
+    static void writeMachines(final JsonWriter out, final MachineTracker machtrack) throws IOException {
+        writeMachines(out, machtrack.getMachinesView());
+    }
+
+    /**
+     * Writes the {@value #MACHINES_FIELD} field with the given machines inside an object that has
+     * already been started, one machine at a time.
+     *
+     * @param out      The writer to write to.
+     * @param machines The machines to write.
+     * @throws IOException If writing fails.
+     */
+    static void writeMachines(final JsonWriter out, final Collection<VendingMachine> machines) throws IOException {
+        out.name(MACHINES_FIELD);
+        out.beginArray();
+        for (VendingMachine vendMach : machines) {
+            MACHINE_ADAPTER.write(out, vendMach);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Reads the value of a {@value #MACHINES_FIELD} field.
+     *
+     * @param in The reader to read from, positioned at the value.
+     * @return The machines that were read. Null entries are left out.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    static List<VendingMachine> readMachines(final JsonReader in) throws IOException {
+        List<VendingMachine> machines = new ArrayList<>();
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return machines;
+        }
+
+        in.beginArray();
+        while (in.hasNext()) {
+            VendingMachine vendMach = MACHINE_ADAPTER.read(in);
+            if (vendMach != null) {
+                machines.add(vendMach);
+            }
+        }
+        in.endArray();
+
+        return machines;
+    }
+}
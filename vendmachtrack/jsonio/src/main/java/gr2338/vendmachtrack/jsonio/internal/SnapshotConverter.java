@@ -0,0 +1,70 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The {@code SnapshotConverter} class converts a tracker snapshot between the JSON and the binary
+ * format. The format of each file is chosen from its name, see {@link SnapshotFormat#forFileName}.
+ * <p>
+ * Only the snapshot itself is converted, together with its journal sequence number. A journal
+ * next to the source file is not, so the server should be stopped and the journal compacted
+ * before converting.
+ * </p>
+ * Example usage:
+ * <pre>
+ * java gr2338.vendmachtrack.jsonio.internal.SnapshotConverter ~/tracker.json ~/tracker.bin
+ * </pre>
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+    }
+
+    /**
+     * Reads a snapshot and writes it to another file, in the format given by each file name.
+     *
+     * @param source The snapshot to read.
+     * @param target The file to write. It is replaced if it exists.
+     * @throws IOException If the source can't be read or the target can't be written.
+     */
+    public static void convert(final Path source, final Path target) throws IOException {
+        SnapshotFile.Contents contents;
+        try (InputStream in = Files.newInputStream(source)) {
+            contents = SnapshotFile.read(in, SnapshotFormat.forFileName(source.toString()));
+        }
+        if (contents.tracker() == null) {
+            throw new IOException("No tracker in snapshot: " + source);
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            SnapshotFile.write(contents.tracker(), contents.journalSequence(), contents.revision(), out,
+                    SnapshotFormat.forFileName(target.toString()));
+        }
+    }
+
+    /**
+     * Converts the snapshot given as the first argument into the file given as the second.
+     *
+     * @param args The source and target file paths.
+     */
+    public static void main(final String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: SnapshotConverter <source> <target>");
+            System.exit(2);
+        }
+
+        try {
+            convert(Path.of(args[0]), Path.of(args[1]));
+        } catch (IOException e) {
+            System.err.println("Error converting " + args[0] + " to " + args[1] + "\n" + e);
+            System.exit(1);
+        }
+    }
+}
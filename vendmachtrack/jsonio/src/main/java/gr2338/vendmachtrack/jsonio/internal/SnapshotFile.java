@@ -0,0 +1,333 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
+
+/**
+ * The {@code SnapshotFile} class reads and writes a {@link MachineTracker} snapshot in either
+ * {@link SnapshotFormat}, together with the sequence number of the last journal entry it contains
+ * and the revision of the file.
+ * <p>
+ * The file is stored in the user's home directory and replaced atomically on every write, see
+ * {@link ToJson}. JSON snapshots only hold the {@code journalSequence} and {@code revision} fields
+ * when they are above zero, so they are otherwise identical to the files written by {@link ToJson}.
+ * </p>
+ * <p>
+ * The revision counts the writes to the file, so a process can tell whether the file changed since
+ * it read it. It is stored at the start of the file in both formats, so {@link #readRevision()}
+ * doesn't read the machines. Writes that aren't given a revision use the one after the current,
+ * and have to be made while holding the {@link FileLocker} of the file for the count to be exact.
+ * </p>
+ * Example usage:
+ * <pre>
+ * SnapshotFile snapshotFile = new SnapshotFile("machineTracker.bin", SnapshotFormat.BINARY, FsyncPolicy.ALWAYS);
+ * snapshotFile.writeToFile(machineTrackerInstance);
+ * MachineTracker machineTracker = snapshotFile.readFromFile();
+ * </pre>
+ */
+public class SnapshotFile {
+
+    /**
+     * A tracker read from a snapshot, together with the journal sequence number stored with it.
+     *
+     * @param tracker         The tracker.
+     * @param journalSequence The sequence number of the last journal entry the snapshot contains,
+     *                        or 0 if it has none.
+     * @param revision        The revision of the file, or 0 if it has none.
+     */
+    public record Contents(MachineTracker tracker, long journalSequence, long revision) {
+    }
+
+    private static final String SEQUENCE_FIELD = "journalSequence";
+    private static final String REVISION_FIELD = "revision";
+
+    private final Path path;
+    private final SnapshotFormat format;
+    private final AtomicFileWriter fileWriter;
+
+    /**
+     * Initializes a new {@code SnapshotFile} for a file in the user's home directory.
+     *
+     * @param fileName    Name of the file in the user's home directory.
+     * @param format      The format of the file.
+     * @param fsyncPolicy The policy deciding when written data is forced to disk.
+     */
+    public SnapshotFile(final String fileName, final SnapshotFormat format, final FsyncPolicy fsyncPolicy) {
+        this.path = Paths.get(System.getProperty("user.home") + "/" + fileName);
+        this.format = format;
+        this.fileWriter = new AtomicFileWriter(path, fsyncPolicy);
+    }
+
+    /**
+     * Reads the snapshot.
+     * <p>
+     * If the file can't be read or isn't a valid snapshot, an error is printed to the standard
+     * error stream and null is returned.
+     *
+     * @return The contents of the snapshot, or {@code null} if it could not be read.
+     */
+    public Contents read() {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in, format);
+        } catch (Exception e) {
+            System.err.println("Error reading from file: " + path + "\n" + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the tracker from the snapshot.
+     *
+     * @return The tracker, or {@code null} if it could not be read.
+     */
+    public MachineTracker readFromFile() {
+        Contents contents = read();
+        return contents == null ? null : contents.tracker();
+    }
+
+    /**
+     * Reads only the revision of the snapshot.
+     *
+     * @return The revision, or 0 if the file doesn't exist, has no revision or can't be read.
+     */
+    public long readRevision() {
+        try (InputStream in = Files.newInputStream(path)) {
+            return readRevision(in, format);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given tracker and journal sequence number, with the revision
+     * after the current one.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the tracker contains.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean write(final MachineTracker machtrack, final long journalSequence) {
+        return write(machtrack, journalSequence, readRevision() + 1);
+    }
+
+    /**
+     * Replaces the snapshot with the given tracker, journal sequence number and revision.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the tracker contains.
+     * @param revision        The revision of the new file.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean write(final MachineTracker machtrack, final long journalSequence, final long revision) {
+        return fileWriter.write(out -> write(machtrack, journalSequence, revision, out, format));
+    }
+
+    /**
+     * Replaces the snapshot with the given tracker, journal sequence number and revision, updating
+     * a checksum with every byte written.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the tracker contains.
+     * @param revision        The revision of the new file.
+     * @param checksum        The checksum to update, which is only complete if the write succeeds.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean write(final MachineTracker machtrack, final long journalSequence, final long revision,
+                         final Checksum checksum) {
+        return fileWriter.write(out -> write(machtrack, journalSequence, revision,
+                new CheckedOutputStream(out, checksum), format));
+    }
+
+    /**
+     * Replaces the snapshot with the given tracker, with the revision after the current one.
+     *
+     * @param machtrack The tracker to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean writeToFile(final MachineTracker machtrack) {
+        return write(machtrack, 0);
+    }
+
+    /**
+     * Replaces the snapshot with the given vending machines, with the revision after the current
+     * one. The machines are written one at a time as they are iterated, so they don't all have to
+     * be on the heap at once.
+     *
+     * @param machines The machines to write.
+     * @return {@code true} if the file was written, {@code false} otherwise.
+     */
+    public boolean writeMachines(final Collection<VendingMachine> machines) {
+        long revision = readRevision() + 1;
+        return fileWriter.write(out -> writeMachines(machines, 0, revision, out, format));
+    }
+
+    /**
+     * Retrieves the number of writes that have failed since this instance was created.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return fileWriter.getFailedWrites();
+    }
+
+    /**
+     * Retrieves the path of the file.
+     *
+     * @return The path in the user's home directory.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Retrieves the format of the file.
+     *
+     * @return The snapshot format.
+     */
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Reads a snapshot in the given format from a stream, without closing it.
+     *
+     * @param in     The stream to read from.
+     * @param format The format of the data.
+     * @return The contents of the snapshot. The tracker is null if the JSON document is
+     * {@code null}, and the journal sequence number and revision are 0 if they are missing.
+     * @throws IOException If reading fails or the data is malformed.
+     */
+    public static Contents read(final InputStream in, final SnapshotFormat format) throws IOException {
+        if (format == SnapshotFormat.BINARY) {
+            return BinarySnapshot.read(new BufferedInputStream(in));
+        }
+
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        JsonReader json = MachineTrackerAdapter.GSON.newJsonReader(reader);
+        MachineTracker machtrack = new MachineTracker();
+        long journalSequence = 0;
+        long revision = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (MachineTrackerAdapter.MACHINES_FIELD.equals(name)) {
+                machtrack.setMachines(MachineTrackerAdapter.readMachines(json));
+            } else if (SEQUENCE_FIELD.equals(name)) {
+                journalSequence = json.nextLong();
+            } else if (REVISION_FIELD.equals(name)) {
+                revision = json.nextLong();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        return new Contents(machtrack, journalSequence, revision);
+    }
+
+    /**
+     * Reads only the revision of a snapshot in the given format from a stream, without closing it.
+     * The revision has to be the first field of a JSON snapshot, as written by this class.
+     *
+     * @param in     The stream to read from.
+     * @param format The format of the data.
+     * @return The revision, or 0 if the snapshot has none.
+     * @throws IOException If reading fails or the data is malformed.
+     */
+    public static long readRevision(final InputStream in, final SnapshotFormat format) throws IOException {
+        if (format == SnapshotFormat.BINARY) {
+            return BinarySnapshot.readRevision(new BufferedInputStream(in));
+        }
+
+        JsonReader json = MachineTrackerAdapter.GSON.newJsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        json.beginObject();
+        return json.hasNext() && REVISION_FIELD.equals(json.nextName()) ? json.nextLong() : 0;
+    }
+
+    /**
+     * Writes a snapshot in the given format with revision 0 to a stream, without closing it.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the tracker contains.
+     * @param out             The stream to write to.
+     * @param format          The format to write.
+     * @throws IOException If writing fails.
+     */
+    public static void write(final MachineTracker machtrack, final long journalSequence, final OutputStream out,
+                             final SnapshotFormat format) throws IOException {
+        write(machtrack, journalSequence, 0, out, format);
+    }
+
+    /**
+     * Writes a snapshot in the given format to a stream, without closing it.
+     *
+     * @param machtrack       The tracker to write.
+     * @param journalSequence The sequence number of the last journal entry the tracker contains.
+     * @param revision        The revision of the file.
+     * @param out             The stream to write to.
+     * @param format          The format to write.
+     * @throws IOException If writing fails.
+     */
+    public static void write(final MachineTracker machtrack, final long journalSequence, final long revision,
+                             final OutputStream out, final SnapshotFormat format) throws IOException {
+        if (format != SnapshotFormat.BINARY && (machtrack == null || (journalSequence == 0 && revision == 0))) {
+            ToJson.write(machtrack, out);
+            return;
+        }
+        writeMachines(machtrack.getMachinesView(), journalSequence, revision, out, format);
+    }
+
+    /**
+     * Writes a snapshot of vending machines in the given format to a stream, without closing it.
+     *
+     * @param machines        The machines to write.
+     * @param journalSequence The sequence number of the last journal entry the machines contain.
+     * @param revision        The revision of the file.
+     * @param out             The stream to write to.
+     * @param format          The format to write.
+     * @throws IOException If writing fails.
+     */
+    public static void writeMachines(final Collection<VendingMachine> machines, final long journalSequence,
+                                     final long revision, final OutputStream out, final SnapshotFormat format)
+            throws IOException {
+        if (format == SnapshotFormat.BINARY) {
+            BinarySnapshot.writeMachines(machines, journalSequence, revision, out);
+            return;
+        }
+
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        JsonWriter json = MachineTrackerAdapter.GSON.newJsonWriter(writer);
+        json.beginObject();
+        if (revision > 0) {
+            // Written first, so the revision can be read without reading the machines.
+            json.name(REVISION_FIELD).value(revision);
+        }
+        MachineTrackerAdapter.writeMachines(json, machines);
+        if (journalSequence > 0) {
+            json.name(SEQUENCE_FIELD).value(journalSequence);
+        }
+        json.endObject();
+        json.flush();
+    }
+}
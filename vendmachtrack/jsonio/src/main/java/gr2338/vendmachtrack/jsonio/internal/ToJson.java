@@ -1,22 +1,31 @@
 package gr2338.vendmachtrack.jsonio.internal;
 
-import com.google.gson.Gson;
 import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 /**
  * The {@code ToJson} class provides methods to serialize a {@link MachineTracker}
  * object into its JSON representation and write to either an OutputStream or a file.
  * <p>
- * This class uses the Gson library to perform the serialization. The provided file name
+ * This class uses the Gson library to perform the serialization, streaming the JSON straight to
+ * its destination through hand-written type adapters. The provided file name
  * is used to determine the absolute path of the file in the user's home directory, where
  * the serialized JSON data will be saved.
  * </p>
+ * <p>
+ * Files are written to a temporary file next to the target, forced to disk according to the
+ * {@link FsyncPolicy}, and then renamed over the target. A crash while writing therefore leaves
+ * either the old or the new file, never a torn one. Failed writes are counted, see
+ * {@link #getFailedWrites()}.
+ * </p>
  * Example usage:
  * <pre>
  * ToJson toJson = new ToJson("machineTracker.json");
@@ -25,18 +34,36 @@ import java.nio.charset.StandardCharsets;
  */
 public class ToJson {
 
-    private final String filePath;
+    /**
+     * Suffix added to the file name to get the name of the temporary file used while writing.
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private final AtomicFileWriter fileWriter;
 
     /**
      * Initializes a new {@code ToJson} instance using the specified file name.
      * The full path is derived by appending the file name to the user's home directory.
      * This path will be used to save the serialized JSON representation of the {@link MachineTracker} object.
+     * Every write is forced to disk.
      *
      * @param fileName Name of the file in the user's home directory to which the
      *                 {@link MachineTracker} object will be saved.
      */
     public ToJson(final String fileName) {
-        this.filePath = System.getProperty("user.home") + "/" + fileName;
+        this(fileName, FsyncPolicy.ALWAYS);
+    }
+
+    /**
+     * Initializes a new {@code ToJson} instance using the specified file name and fsync policy.
+     *
+     * @param fileName    Name of the file in the user's home directory to which the
+     *                    {@link MachineTracker} object will be saved.
+     * @param fsyncPolicy The policy deciding when written data is forced to disk.
+     */
+    public ToJson(final String fileName, final FsyncPolicy fsyncPolicy) {
+        this.fileWriter = new AtomicFileWriter(Paths.get(System.getProperty("user.home") + "/" + fileName),
+                fsyncPolicy);
     }
 
     /**
@@ -54,11 +81,8 @@ public class ToJson {
      * or {@code null} if the serialization process fails.
      */
     public OutputStream toOutputStream(final MachineTracker machtrack) {
-        Gson gson = new Gson();
-        String jsonString = gson.toJson(machtrack);
-
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            baos.write(jsonString.getBytes(StandardCharsets.UTF_8));
+            write(machtrack, baos);
             return baos;
         } catch (Exception e) {
             System.err.println("Error writing to ByteArrayOutputStream\n" + e);
@@ -72,18 +96,44 @@ public class ToJson {
      * provided during the instantiation of this class.
      * <p>
      * The Gson library is used for the serialization process. If there are issues during serialization
-     * or writing the file, an error message will be printed to the standard error stream.
+     * or writing the file, an error message will be printed to the standard error stream, the
+     * failed write is counted, and the old file is left as it was.
      *
      * @param machtrack The {@link MachineTracker} object to be serialized and saved to file.
+     * @return {@code true} if the file was written, {@code false} otherwise.
      */
-    public void writeToFile(final MachineTracker machtrack) {
-        Gson gson = new Gson();
-        String jsonString = gson.toJson(machtrack);
+    public boolean writeToFile(final MachineTracker machtrack) {
+        return fileWriter.write(out -> write(machtrack, out));
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, StandardCharsets.UTF_8))) {
-            bw.write(jsonString);
-        } catch (Exception e) {
-            System.err.println("Error writing to file\n" + e);
-        }
+    /**
+     * Retrieves the number of writes that have failed since this instance was created.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return fileWriter.getFailedWrites();
+    }
+
+    /**
+     * Retrieves the fsync policy used when writing.
+     *
+     * @return The fsync policy.
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return fileWriter.getFsyncPolicy();
+    }
+
+    /**
+     * Writes a {@link MachineTracker} object as JSON to a stream, without closing it.
+     *
+     * @param machtrack The {@link MachineTracker} object to write, may be null.
+     * @param out       The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    static void write(final MachineTracker machtrack, final OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        MachineTrackerAdapter.GSON.toJson(machtrack, MachineTracker.class, writer);
+        writer.flush();
     }
 }
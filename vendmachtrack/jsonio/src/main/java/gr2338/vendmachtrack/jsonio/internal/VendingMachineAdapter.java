@@ -0,0 +1,129 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Streaming Gson {@link TypeAdapter} for {@link VendingMachine}, reading and writing
+ * one machine at a time without reflection.
+ * <p>
+ * The format is the same as Gson's reflective format, for instance
+ * {@code {"status":{"Cola":3},"id":1,"location":"Trondheim"}}. A missing location
+ * is left out, and unknown fields are skipped when reading.
+ * </p>
+ */
+final class VendingMachineAdapter extends TypeAdapter<VendingMachine> {
+
+    /**
+     * Writes a vending machine as a JSON object.
+     *
+     * @param out      The writer to write to.
+     * @param vendMach The vending machine to write, may be null.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void write(final JsonWriter out, final VendingMachine vendMach) throws IOException {
+        if (vendMach == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("status");
+        out.beginObject();
+        for (Map.Entry<String, Integer> entry : vendMach.getStatusView().entrySet()) {
+            out.name(entry.getKey());
+            out.value(entry.getValue());
+        }
+        out.endObject();
+        out.name("id").value(vendMach.getId());
+        if (vendMach.getLocation() != null) {
+            out.name("location").value(vendMach.getLocation());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Reads a vending machine from a JSON object.
+     *
+     * @param in The reader to read from.
+     * @return The vending machine, or null if the value was null.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    @Override
+    public VendingMachine read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        VendingMachine vendMach = new VendingMachine();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "status":
+                    readStatus(in, vendMach);
+                    break;
+                case "id":
+                    vendMach.setId(in.nextInt());
+                    break;
+                case "location":
+                    vendMach.setLocation(nextStringOrNull(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return vendMach;
+    }
+
+    /**
+     * Reads an inventory object into the given vending machine, without building a
+     * separate map that would have to be copied.
+     *
+     * @param in       The reader to read from.
+     * @param vendMach The vending machine to add the items to.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    private static void readStatus(final JsonReader in, final VendingMachine vendMach) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String item = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else {
+                vendMach.addItem(item, in.nextInt());
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Reads a string value, which may be null.
+     *
+     * @param in The reader to read from.
+     * @return The string, or null.
+     * @throws IOException If reading fails.
+     */
+    private static String nextStringOrNull(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -6,6 +6,9 @@ module vendmachtrack.jsonio {
     // This will be worked more on in a later release.
     exports gr2338.vendmachtrack.jsonio;
 
+    // Lets Gson read and write journal entries.
+    opens gr2338.vendmachtrack.jsonio.internal to com.google.gson;
+
     requires vendmachtrack.core;
     requires com.google.gson;
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package gr2338.vendmachtrack.jsonio;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * A process that adds one "Cola" at a time to the vending machine with ID 1 in a shared file, started
+ * several times over by {@link VendmachtrackPersistenceTest} to write the file from many processes at
+ * once.
+ * <p>
+ * In {@code update} mode, every change is made with {@link VendmachtrackPersistence#update}. In
+ * {@code retry} mode, the tracker is read, changed and saved with
+ * {@link VendmachtrackPersistence#saveIfUnchanged}, and read again whenever the save is rejected.
+ * </p>
+ */
+public final class ConcurrentWriter {
+
+    private ConcurrentWriter() {
+    }
+
+    /**
+     * Adds "Cola" to the machine with ID 1.
+     *
+     * @param args The file name in the user's home directory, the number of "Cola" to add one at a
+     *             time, and the mode, {@code update} or {@code retry}.
+     */
+    public static void main(final String[] args) {
+        VendmachtrackPersistence persistence = VendmachtrackPersistence.cached(args[0]);
+        int count = Integer.parseInt(args[1]);
+        boolean retry = "retry".equals(args[2]);
+
+        for (int i = 0; i < count; i++) {
+            if (retry) {
+                addWithRetry(persistence);
+            } else {
+                persistence.update(tracker -> {
+                    tracker.getMachine(1).addItem("Cola", 1);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Adds one "Cola", reading the tracker again for as long as another process got to save first.
+     *
+     * @param persistence The persistence of the shared file.
+     */
+    private static void addWithRetry(final VendmachtrackPersistence persistence) {
+        while (true) {
+            VendmachtrackPersistence.Snapshot snapshot = persistence.getSnapshot();
+            MachineTracker tracker = snapshot.tracker();
+            tracker.getMachine(1).addItem("Cola", 1);
+            try {
+                if (persistence.saveIfUnchanged(tracker, snapshot.revision())) {
+                    return;
+                }
+            } catch (ConcurrentModificationException e) {
+                // Another process saved first, so the change is made again on its tracker.
+            }
+        }
+    }
+}
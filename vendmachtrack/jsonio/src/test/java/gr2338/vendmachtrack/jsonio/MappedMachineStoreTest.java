@@ -0,0 +1,244 @@
+package gr2338.vendmachtrack.jsonio;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains JUnit tests for the MappedMachineStore class. It tests that machines are written to and read
+ * from the mapped file, that the index is rebuilt when the store is opened again, and that compaction keeps the
+ * latest version of every machine.
+ *
+ * @see MappedMachineStore
+ */
+public class MappedMachineStoreTest {
+
+    /**
+     * A region size small enough that a few records fill a region.
+     */
+    private static final int SMALL_REGION_SIZE = 128;
+
+    private final String filename = "/testmappedstore.json";
+    private Path storePath;
+    private MappedMachineStore store;
+
+    /**
+     * Deletes any store left behind and opens a new one with small regions.
+     *
+     * @throws Exception if any error occurs during the setup
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        storePath = Paths.get(System.getProperty("user.home") + filename + MappedMachineStore.STORE_SUFFIX);
+        Files.deleteIfExists(storePath);
+        store = new MappedMachineStore(filename, FsyncPolicy.ALWAYS, 2, SMALL_REGION_SIZE);
+    }
+
+    /**
+     * Closes and deletes the store after each test.
+     *
+     * @throws Exception if any error occurs during the cleanup
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        store.close();
+        Files.deleteIfExists(storePath);
+    }
+
+    /**
+     * Creates a vending machine stocked with "Cola".
+     *
+     * @param id       The ID of the machine.
+     * @param location The location of the machine.
+     * @param cola     The number of "Cola".
+     * @return The vending machine.
+     */
+    private static VendingMachine machine(final int id, final String location, final int cola) {
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", cola);
+        return new VendingMachine(id, inventory, location);
+    }
+
+    /**
+     * Tests that added, changed and removed machines are read back after opening the store again.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Put enough machines in the store to fill several regions.</li>
+     *   <li>Act: Change one machine, remove another, and open the store again.</li>
+     *   <li>Assert: Ensure that the reopened store holds the latest version of every machine, and nothing of the
+     *   removed one.</li>
+     * </ol>
+     *
+     * @throws Exception if the store can't be opened
+     */
+    @Test
+    public void MappedMachineStore_Open_RebuildsIndex() throws Exception {
+        // Arrange
+        for (int id = 1; id <= 20; id++) {
+            assertTrue(store.put(machine(id, "Trondheim", id)));
+        }
+
+        // Act
+        VendingMachine changed = store.get(7);
+        changed.addItem("Øl", 3);
+        changed.setLocation(null);
+        assertTrue(store.put(changed));
+        assertTrue(store.remove(13));
+        assertFalse(store.remove(13));
+        store.close();
+        store = new MappedMachineStore(filename, FsyncPolicy.ALWAYS, 2, SMALL_REGION_SIZE);
+
+        // Assert
+        assertEquals(19, store.size());
+        assertNull(store.get(13));
+        assertNull(store.get(7).getLocation());
+        assertEquals(3, store.get(7).getStatus().get("Øl"));
+        assertEquals(7, store.get(7).getStatus().get("Cola"));
+        assertEquals("Trondheim", store.get(20).getLocation());
+        assertEquals(19, store.toTracker().getMachineCount());
+    }
+
+    /**
+     * Tests that machines returned by the store are copies.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Put a machine in the store.</li>
+     *   <li>Act: Change a machine returned by the store without putting it back.</li>
+     *   <li>Assert: Ensure that the stored machine is unchanged.</li>
+     * </ol>
+     */
+    @Test
+    public void MappedMachineStore_Get_ReturnsCopies() {
+        // Arrange
+        store.put(machine(1, "Oslo", 5));
+
+        // Act
+        store.get(1).addItem("Cola", 5);
+
+        // Assert
+        assertEquals(5, store.get(1).getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests that compacting drops outdated records but keeps every machine.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Put a few machines in the store and change one of them many times.</li>
+     *   <li>Act: Compact the store.</li>
+     *   <li>Assert: Ensure that the file shrank, and that all machines are read back after opening it again.</li>
+     * </ol>
+     *
+     * @throws Exception if the store can't be compacted or opened
+     */
+    @Test
+    public void MappedMachineStore_Compact_KeepsLatestRecords() throws Exception {
+        // Arrange
+        for (int id = 1; id <= 3; id++) {
+            store.put(machine(id, "Bergen", 1));
+        }
+        for (int i = 0; i < 50; i++) {
+            store.put(machine(2, "Bergen", i));
+        }
+        long sizeBefore = Files.size(storePath);
+
+        // Act
+        store.compact();
+        store.close();
+        store = new MappedMachineStore(filename, FsyncPolicy.ALWAYS, 2, SMALL_REGION_SIZE);
+
+        // Assert
+        assertTrue(Files.size(storePath) < sizeBefore);
+        assertEquals(3, store.size());
+        assertEquals(49, store.get(2).getStatus().get("Cola"));
+        assertEquals(1, store.get(3).getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests that replacing the content of the store removes machines that aren't in the new tracker.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Put a machine in the store.</li>
+     *   <li>Act: Replace the content with a tracker holding two other machines.</li>
+     *   <li>Assert: Ensure that only the machines of the tracker are in the store.</li>
+     * </ol>
+     */
+    @Test
+    public void MappedMachineStore_ReplaceAll_ReplacesContent() {
+        // Arrange
+        store.put(machine(1, "Oslo", 5));
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(machine(2, "Bergen", 1));
+        machineTracker.addVendingMachine(machine(3, "Bodø", 2));
+
+        // Act
+        assertTrue(store.replaceAll(machineTracker));
+
+        // Assert
+        assertFalse(store.contains(1));
+        assertEquals(2, store.size());
+        assertEquals("Bodø", store.get(3).getLocation());
+        assertEquals(0, store.getFailedWrites());
+    }
+
+    /**
+     * Tests that a snapshot holds the machines as they were when it was taken, in the order they were written, even
+     * after the store is changed and compacted.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Put machines in the store and take a snapshot.</li>
+     *   <li>Act: Change one machine, remove another, add a new one and compact the store.</li>
+     *   <li>Assert: Ensure that the snapshot still reads the old machines, every time it is iterated, and that a new
+     *   snapshot reads the changes.</li>
+     * </ol>
+     *
+     * @throws Exception if the store can't be compacted
+     */
+    @Test
+    public void MappedMachineStore_Snapshot_IgnoresLaterChanges() throws Exception {
+        // Arrange
+        for (int id = 1; id <= 5; id++) {
+            store.put(machine(id, "Oslo", id));
+        }
+        Collection<VendingMachine> snapshot = store.snapshot();
+
+        // Act
+        store.put(machine(2, "Bergen", 20));
+        store.remove(3);
+        store.put(machine(6, "Bodø", 6));
+        store.compact();
+
+        // Assert
+        assertEquals(5, snapshot.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(List.of(1, 2, 3, 4, 5), snapshot.stream().map(VendingMachine::getId).toList());
+        }
+        VendingMachine old = snapshot.stream().filter(vendMach -> vendMach.getId() == 2).findFirst().orElseThrow();
+        assertEquals("Oslo", old.getLocation());
+        assertEquals(2, old.getStatus().get("Cola"));
+        assertEquals(List.of(1, 4, 5, 2, 6), store.snapshot().stream().map(VendingMachine::getId).toList());
+    }
+}
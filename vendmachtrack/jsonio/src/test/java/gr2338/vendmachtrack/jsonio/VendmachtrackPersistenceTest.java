@@ -0,0 +1,264 @@
+package gr2338.vendmachtrack.jsonio;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.internal.FileLocker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains JUnit tests for the revisions and file locking of the VendmachtrackPersistence
+ * class. It tests that stale saves are rejected, and that several processes writing the same file at
+ * once don't lose each other's changes.
+ *
+ * @see VendmachtrackPersistence
+ */
+public class VendmachtrackPersistenceTest {
+
+    /**
+     * The number of processes writing the file at once.
+     */
+    private static final int WRITERS = 4;
+
+    /**
+     * The number of "Cola" every process adds, one at a time.
+     */
+    private static final int ADDS_PER_WRITER = 25;
+
+    private final String filename = "/testpersistence.json";
+    private Path path;
+
+    /**
+     * Sets up a snapshot in the user's home directory holding one empty vending machine with ID 1
+     * at "Trondheim".
+     */
+    @BeforeEach
+    public void setUp() {
+        path = Paths.get(System.getProperty("user.home") + filename);
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(new VendingMachine(1, new HashMap<>(), "Trondheim"));
+        new VendmachtrackPersistence(filename).saveVendmachtrack(machineTracker);
+    }
+
+    /**
+     * Deletes the snapshot and lock files after each test.
+     *
+     * @throws Exception if any error occurs during the cleanup
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(Paths.get(path + FileLocker.LOCK_SUFFIX));
+    }
+
+    /**
+     * Tests that every save increases the revision, in both formats.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the JSON snapshot, and save a tracker to a binary snapshot.</li>
+     *   <li>Act: Save both twice more.</li>
+     *   <li>Assert: Ensure that the revision went up by one on every save.</li>
+     * </ol>
+     *
+     * @throws Exception if the binary snapshot could not be deleted
+     */
+    @Test
+    public void VendmachtrackPersistence_Save_IncrementsRevision() throws Exception {
+        // Arrange
+        VendmachtrackPersistence json = new VendmachtrackPersistence(filename);
+        VendmachtrackPersistence.Snapshot first = json.getSnapshot();
+        String binaryName = "/testpersistence.bin";
+        Path binaryPath = Paths.get(System.getProperty("user.home") + binaryName);
+        VendmachtrackPersistence binary = new VendmachtrackPersistence(binaryName);
+
+        try {
+            binary.saveVendmachtrack(first.tracker());
+
+            // Act
+            json.saveVendmachtrack(first.tracker());
+            json.saveVendmachtrack(first.tracker());
+            binary.saveVendmachtrack(first.tracker());
+            binary.saveVendmachtrack(first.tracker());
+
+            // Assert
+            assertEquals(first.revision() + 2, json.getSnapshot().revision());
+            assertEquals(first.revision() + 2, json.getRevision());
+            assertEquals(3, binary.getSnapshot().revision());
+            assertEquals(3, binary.getRevision());
+            assertEquals("Trondheim", binary.getSnapshot().tracker().getMachine(1).getLocation());
+        } finally {
+            Files.deleteIfExists(binaryPath);
+            Files.deleteIfExists(Paths.get(binaryPath + FileLocker.LOCK_SUFFIX));
+        }
+    }
+
+    /**
+     * Tests that a save based on a stale read is rejected and leaves the file as it was.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker twice, as two clients would.</li>
+     *   <li>Act: Save a change from the first read, then try to save a change from the second.</li>
+     *   <li>Assert: Ensure that the second save is rejected and the first change is kept.</li>
+     * </ol>
+     */
+    @Test
+    public void VendmachtrackPersistence_SaveIfUnchanged_RejectsStaleSave() {
+        // Arrange
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(filename);
+        VendmachtrackPersistence.Snapshot first = persistence.getSnapshot();
+        VendmachtrackPersistence.Snapshot second = persistence.getSnapshot();
+        first.tracker().getMachine(1).addItem("Cola", 3);
+        second.tracker().getMachine(1).addItem("Pepsi", 5);
+
+        // Act
+        boolean saved = persistence.saveIfUnchanged(first.tracker(), first.revision());
+
+        // Assert
+        assertTrue(saved);
+        assertThrows(ConcurrentModificationException.class,
+                () -> persistence.saveIfUnchanged(second.tracker(), second.revision()));
+        VendingMachine vendMach = persistence.getVendmachtrack().getMachine(1);
+        assertEquals(3, vendMach.getQuantity("Cola"));
+        assertFalse(vendMach.getStatusView().containsKey("Pepsi"));
+    }
+
+    /**
+     * Tests that machines saved without a tracker are written as a tracker with the next revision, and that a save
+     * of machines based on a stale revision is rejected.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the revision of the file.</li>
+     *   <li>Act: Save two machines, then try to save other machines based on the old revision.</li>
+     *   <li>Assert: Ensure that the file holds the first two machines with the next revision.</li>
+     * </ol>
+     */
+    @Test
+    public void VendmachtrackPersistence_SaveMachines_WritesTracker() {
+        // Arrange
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(filename);
+        long revision = persistence.getRevision();
+        List<VendingMachine> machines = List.of(new VendingMachine(2, new HashMap<>(), "Bergen"),
+                new VendingMachine(3, new HashMap<>(), "Bodø"));
+
+        // Act
+        boolean saved = persistence.saveMachines(machines);
+
+        // Assert
+        assertTrue(saved);
+        assertThrows(ConcurrentModificationException.class,
+                () -> persistence.saveMachinesIfUnchanged(List.of(), revision));
+        VendmachtrackPersistence.Snapshot snapshot = persistence.getSnapshot();
+        assertEquals(revision + 1, snapshot.revision());
+        assertNull(snapshot.tracker().getMachine(1));
+        assertEquals("Bodø", snapshot.tracker().getMachine(3).getLocation());
+        assertEquals(2, snapshot.tracker().getMachineCount());
+    }
+
+    /**
+     * Tests that an update is applied to the latest tracker, and that nothing is saved if it throws.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker, then change the file through another persistence.</li>
+     *   <li>Act: Make an update, and an update that throws.</li>
+     *   <li>Assert: Ensure that both changes to the file are kept and the failed one isn't saved.</li>
+     * </ol>
+     */
+    @Test
+    public void VendmachtrackPersistence_Update_AppliesToLatest() {
+        // Arrange
+        VendmachtrackPersistence persistence = VendmachtrackPersistence.cached(filename);
+        persistence.getVendmachtrack();
+        new VendmachtrackPersistence(filename).update(tracker -> {
+            tracker.getMachine(1).addItem("Cola", 3);
+            return null;
+        });
+
+        // Act
+        int pepsi = persistence.update(tracker -> {
+            tracker.getMachine(1).addItem("Pepsi", 5);
+            return tracker.getMachine(1).getQuantity("Pepsi");
+        });
+        assertThrows(IllegalStateException.class, () -> persistence.update(tracker -> {
+            tracker.getMachine(1).addItem("Fanta", 1);
+            throw new IllegalStateException("Rejected");
+        }));
+
+        // Assert
+        VendingMachine vendMach = new VendmachtrackPersistence(filename).getVendmachtrack().getMachine(1);
+        assertEquals(5, pepsi);
+        assertEquals(3, vendMach.getQuantity("Cola"));
+        assertEquals(5, vendMach.getQuantity("Pepsi"));
+        assertFalse(vendMach.getStatusView().containsKey("Fanta"));
+    }
+
+    /**
+     * Tests that no change is lost when several processes write the file at once, half of them with
+     * {@code update} and half with {@code saveIfUnchanged} and retries, while this process does the
+     * same from another thread.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Build the command line starting a {@link ConcurrentWriter} on the class path of
+     *   this test.</li>
+     *   <li>Act: Start the writer processes, add "Cola" from this process as well, and wait for all
+     *   of them.</li>
+     *   <li>Assert: Ensure that every process succeeded, that every "Cola" was added, and that the
+     *   revision went up once per change.</li>
+     * </ol>
+     *
+     * @throws Exception if a process could not be started or waited for
+     */
+    @Test
+    public void VendmachtrackPersistence_ConcurrentProcesses_NoLostUpdates() throws Exception {
+        // Arrange
+        long revision = new VendmachtrackPersistence(filename).getSnapshot().revision();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = String.join(File.pathSeparator, System.getProperty("java.class.path"),
+                System.getProperty("jdk.module.path", ""));
+
+        // Act
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            processes.add(new ProcessBuilder(java, "-Duser.home=" + System.getProperty("user.home"),
+                    "-cp", classPath, ConcurrentWriter.class.getName(), filename,
+                    String.valueOf(ADDS_PER_WRITER), i % 2 == 0 ? "update" : "retry")
+                    .inheritIO()
+                    .start());
+        }
+        ConcurrentWriter.main(new String[]{filename, String.valueOf(ADDS_PER_WRITER), "update"});
+        for (Process process : processes) {
+            assertTrue(process.waitFor(2, TimeUnit.MINUTES));
+        }
+
+        // Assert
+        for (Process process : processes) {
+            assertEquals(0, process.exitValue());
+        }
+        VendmachtrackPersistence.Snapshot snapshot = new VendmachtrackPersistence(filename).getSnapshot();
+        int changes = (WRITERS + 1) * ADDS_PER_WRITER;
+        assertEquals(changes, snapshot.tracker().getMachine(1).getQuantity("Cola"));
+        assertEquals(revision + changes, snapshot.revision());
+    }
+}
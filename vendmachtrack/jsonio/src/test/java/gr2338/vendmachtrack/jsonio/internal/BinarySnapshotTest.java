@@ -0,0 +1,186 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains JUnit tests for the binary snapshot format. It tests that trackers survive a round trip,
+ * that unknown data is rejected, and that snapshots can be converted between the JSON and binary formats.
+ *
+ * @see BinarySnapshot
+ * @see SnapshotConverter
+ */
+public class BinarySnapshotTest {
+
+    private final Path jsonPath = Paths.get(System.getProperty("user.home") + "/testbinary.json");
+    private final Path binaryPath = Paths.get(System.getProperty("user.home") + "/testbinary.bin");
+
+    /**
+     * Deletes the files written by the converter test.
+     *
+     * @throws Exception if any error occurs during the cleanup
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(jsonPath);
+        Files.deleteIfExists(binaryPath);
+    }
+
+    /**
+     * Creates a tracker with a negative ID, a negative quantity, a machine without a location, and names that
+     * appear in more than one machine.
+     *
+     * @return The tracker.
+     */
+    private static MachineTracker createTracker() {
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Øl", 10);
+        inventory.put("Cola", -3);
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(new VendingMachine(-7, inventory, "Trondheim"));
+        machineTracker.addVendingMachine(new VendingMachine(300, new HashMap<>(inventory), "Trondheim"));
+        machineTracker.addVendingMachine(new VendingMachine(2, new HashMap<>(), null));
+        return machineTracker;
+    }
+
+    /**
+     * Tests that a tracker and its journal sequence number are read back unchanged.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a tracker with negative numbers and a missing location.</li>
+     *   <li>Act: Write it in the binary format and read it back.</li>
+     *   <li>Assert: Ensure that the machines, inventories, locations and sequence number are equal.</li>
+     * </ol>
+     *
+     * @throws IOException if writing or reading fails
+     */
+    @Test
+    public void BinarySnapshot_ReadWrite_RoundTrips() throws IOException {
+        // Arrange
+        MachineTracker machineTracker = createTracker();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        BinarySnapshot.write(machineTracker, 1L << 40, out);
+        SnapshotFile.Contents contents = BinarySnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // Assert
+        MachineTracker loaded = contents.tracker();
+        assertEquals(1L << 40, contents.journalSequence());
+        assertEquals(3, loaded.getMachineCount());
+        assertEquals(machineTracker.getMachine(-7).getStatus(), loaded.getMachine(-7).getStatus());
+        assertEquals("Trondheim", loaded.getMachine(300).getLocation());
+        assertEquals(-3, loaded.getMachine(300).getStatus().get("Cola"));
+        assertNull(loaded.getMachine(2).getLocation());
+        assertTrue(loaded.getMachine(2).getStatus().isEmpty());
+    }
+
+    /**
+     * Tests that the binary format is smaller than JSON for the same tracker.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a tracker with repeated names.</li>
+     *   <li>Act: Write it in both formats.</li>
+     *   <li>Assert: Ensure that the binary snapshot is less than half the size of the JSON one.</li>
+     * </ol>
+     *
+     * @throws IOException if writing fails
+     */
+    @Test
+    public void BinarySnapshot_Write_IsSmallerThanJson() throws IOException {
+        // Arrange
+        MachineTracker machineTracker = createTracker();
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        // Act
+        SnapshotFile.write(machineTracker, 0, binary, SnapshotFormat.BINARY);
+        SnapshotFile.write(machineTracker, 0, json, SnapshotFormat.JSON);
+
+        // Assert
+        assertTrue(binary.size() * 2 < json.size());
+    }
+
+    /**
+     * Tests that data without the magic bytes, or with a newer version, is rejected.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a JSON document, and a binary snapshot with its version bumped.</li>
+     *   <li>Act: Read both as binary snapshots.</li>
+     *   <li>Assert: Ensure that both reads fail.</li>
+     * </ol>
+     *
+     * @throws IOException if writing fails
+     */
+    @Test
+    public void BinarySnapshot_Read_RejectsUnknownData() throws IOException {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinarySnapshot.write(createTracker(), 0, out);
+        byte[] newer = out.toByteArray();
+        newer[BinarySnapshot.MAGIC.length] = BinarySnapshot.VERSION + 1;
+        byte[] json = "{\"machines\":[]}".getBytes();
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> BinarySnapshot.read(new ByteArrayInputStream(newer)));
+        assertThrows(IOException.class, () -> BinarySnapshot.read(new ByteArrayInputStream(json)));
+    }
+
+    /**
+     * Tests that a JSON snapshot converted to binary and back is unchanged.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write a tracker to a JSON file.</li>
+     *   <li>Act: Convert it to a binary file, delete the JSON file and convert the binary file back.</li>
+     *   <li>Assert: Ensure that the binary file is a binary snapshot and that the JSON file is read back equal to
+     *       the tracker.</li>
+     * </ol>
+     *
+     * @throws IOException if converting fails
+     */
+    @Test
+    public void SnapshotConverter_Convert_RoundTripsBetweenFormats() throws IOException {
+        // Arrange
+        MachineTracker machineTracker = createTracker();
+        new ToJson("/testbinary.json").writeToFile(machineTracker);
+
+        // Act
+        SnapshotConverter.convert(jsonPath, binaryPath);
+        Files.delete(jsonPath);
+        SnapshotConverter.convert(binaryPath, jsonPath);
+
+        // Assert
+        byte[] binary = Files.readAllBytes(binaryPath);
+        assertEquals('V', binary[0]);
+        MachineTracker loaded = new FromJson("/testbinary.json").readFromFile();
+        assertEquals(machineTracker.getMachineCount(), loaded.getMachineCount());
+        for (VendingMachine vendMach : machineTracker.getMachines()) {
+            assertEquals(vendMach.getStatus(), loaded.getMachine(vendMach.getId()).getStatus());
+            assertEquals(vendMach.getLocation(), loaded.getMachine(vendMach.getId()).getLocation());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains JUnit tests for the CachedSnapshot class. It tests that the file is only parsed
+ * when its content was changed by someone else, and that callers never share the cached tracker.
+ *
+ * @see CachedSnapshot
+ */
+public class CachedSnapshotTest {
+
+    private final String filename = "/testcachedsnapshot.json";
+    private Path path;
+    private VendmachtrackPersistence persistence;
+
+    /**
+     * Sets up a snapshot in the user's home directory holding one vending machine with ID 1
+     * at "Trondheim", stocked with 10 "Cola", and creates a cached 'persistence' instance for testing.
+     */
+    @BeforeEach
+    public void setUp() {
+        path = Paths.get(System.getProperty("user.home") + filename);
+        new SnapshotFile(filename, SnapshotFormat.JSON, FsyncPolicy.ALWAYS).writeToFile(tracker(10));
+        persistence = VendmachtrackPersistence.cached(filename);
+    }
+
+    /**
+     * Deletes the snapshot and lock files after each test.
+     *
+     * @throws Exception if any error occurs during the cleanup
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(Paths.get(path + FileLocker.LOCK_SUFFIX));
+    }
+
+    /**
+     * Tests that the file is parsed once, and that reading again or after saving returns copies
+     * without parsing.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker and change the copy that was returned.</li>
+     *   <li>Act: Read again, save a changed tracker, and read once more.</li>
+     *   <li>Assert: Ensure that the change to the copy is not seen, that the saved tracker is read
+     *   back, and that the file was only parsed by the first read.</li>
+     * </ol>
+     */
+    @Test
+    public void CachedSnapshot_Read_ParsesOnlyOnce() {
+        // Arrange
+        MachineTracker first = persistence.getVendmachtrack();
+        first.getMachine(1).addItem("Pepsi", 5);
+
+        // Act
+        MachineTracker second = persistence.getVendmachtrack();
+        second.getMachine(1).removeItem("Cola", 3);
+        persistence.saveVendmachtrack(second);
+        second.getMachine(1).addItem("Fanta", 1);
+        MachineTracker third = persistence.getVendmachtrack();
+
+        // Assert
+        assertEquals(1, persistence.getParses());
+        assertNotSame(first, second);
+        assertEquals(10, first.getMachine(1).getQuantity("Cola"));
+        assertEquals(1, third.getMachine(1).getStatus().size());
+        assertEquals(7, third.getMachine(1).getQuantity("Cola"));
+    }
+
+    /**
+     * Tests that a file changed by another process is parsed again, once.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker through the cached persistence.</li>
+     *   <li>Act: Write a different tracker through another persistence, and read twice.</li>
+     *   <li>Assert: Ensure that the new tracker is read, and that it was parsed once.</li>
+     * </ol>
+     */
+    @Test
+    public void CachedSnapshot_Read_ReloadsExternalChange() {
+        // Arrange
+        persistence.getVendmachtrack();
+
+        // Act
+        new VendmachtrackPersistence(filename).saveVendmachtrack(tracker(4));
+        MachineTracker changed = persistence.getVendmachtrack();
+        MachineTracker again = persistence.getVendmachtrack();
+
+        // Assert
+        assertEquals(4, changed.getMachine(1).getQuantity("Cola"));
+        assertEquals(4, again.getMachine(1).getQuantity("Cola"));
+        assertEquals(2, persistence.getParses());
+    }
+
+    /**
+     * Tests that a file rewritten with the same content is not parsed again, even though its
+     * modification time changed.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker through the cached persistence.</li>
+     *   <li>Act: Rewrite the file with the same bytes, move its modification time back an hour, and
+     *   read twice.</li>
+     *   <li>Assert: Ensure that the tracker is read and that the file was parsed only once.</li>
+     * </ol>
+     *
+     * @throws Exception if the file could not be rewritten
+     */
+    @Test
+    public void CachedSnapshot_Read_SkipsUnchangedContent() throws Exception {
+        // Arrange
+        persistence.getVendmachtrack();
+
+        // Act
+        Files.write(path, Files.readAllBytes(path));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+        MachineTracker rewritten = persistence.getVendmachtrack();
+        MachineTracker again = persistence.getVendmachtrack();
+
+        // Assert
+        assertEquals(10, rewritten.getMachine(1).getQuantity("Cola"));
+        assertEquals(10, again.getMachine(1).getQuantity("Cola"));
+        assertEquals(1, persistence.getParses());
+    }
+
+    /**
+     * Tests that a missing file is read as null, and that the cache recovers once the file is back.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the tracker, then delete the file.</li>
+     *   <li>Act: Read, write the file again through another persistence, and read.</li>
+     *   <li>Assert: Ensure that null is read while the file is missing, and the new tracker after.</li>
+     * </ol>
+     *
+     * @throws Exception if the file could not be deleted
+     */
+    @Test
+    public void CachedSnapshot_Read_MissingFile() throws Exception {
+        // Arrange
+        persistence.getVendmachtrack();
+        Files.delete(path);
+
+        // Act
+        MachineTracker missing = persistence.getVendmachtrack();
+        new VendmachtrackPersistence(filename).saveVendmachtrack(tracker(2));
+        MachineTracker restored = persistence.getVendmachtrack();
+
+        // Assert
+        assertNull(missing);
+        assertEquals(2, restored.getMachine(1).getQuantity("Cola"));
+    }
+
+    /**
+     * Creates a tracker with one vending machine with ID 1 at "Trondheim".
+     *
+     * @param cola The quantity of "Cola" in the machine.
+     * @return The tracker.
+     */
+    private static MachineTracker tracker(final int cola) {
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", cola);
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(new VendingMachine(1, inventory, "Trondheim"));
+        return machineTracker;
+    }
+}
@@ -96,6 +96,33 @@ public class FromJsonTest {
         assertEquals(1, machineTracker.getMachines().get(0).getId());
     }
 
+    /**
+     * Tests that a {@link MachineTracker} deserialized by {@link FromJson#fromInputStream(InputStream)} can look up
+     * its machines by ID, even though the ID index itself is not part of the JSON data.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create an input stream containing valid JSON data.</li>
+     *   <li>Act: Deserialize the JSON data into a {@link MachineTracker} object.</li>
+     *   <li>Assert: Verify that machines can be found by ID and that unknown IDs are not found.</li>
+     * </ol>
+     */
+    @Test
+    public void FromJson_fromInputStream_IndexesMachinesById() {
+        // Arrange
+        InputStream inputStream = new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        MachineTracker machineTracker = fromJson.fromInputStream(inputStream);
+
+        // Assert
+        assertEquals("Oslo", machineTracker.getMachine(2).getLocation());
+        assertTrue(machineTracker.containsMachine(3));
+        assertFalse(machineTracker.containsMachine(4));
+    }
+
 
     /**
      * Tests the {@link FromJson#fromInputStream(InputStream)} method when provided with an input stream containing
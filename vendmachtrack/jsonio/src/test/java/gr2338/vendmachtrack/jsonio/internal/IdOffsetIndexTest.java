@@ -0,0 +1,71 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class contains JUnit tests for the IdOffsetIndex class. It tests the index against a {@code HashMap} holding
+ * the same entries.
+ *
+ * @see IdOffsetIndex
+ */
+public class IdOffsetIndexTest {
+
+    /**
+     * Tests that a random mix of insertions, replacements and removals gives the same result as a {@code HashMap}.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create an index and a map, and a random generator with a fixed seed.</li>
+     *   <li>Act: Put and remove random IDs from a small range in both, so that probe sequences collide.</li>
+     *   <li>Assert: Ensure that both hold the same offsets for every ID in the range, and the same number of
+     *   entries, and that the index lists exactly the IDs of the map.</li>
+     * </ol>
+     */
+    @Test
+    public void IdOffsetIndex_PutRemove_MatchesHashMap() {
+        // Arrange
+        IdOffsetIndex index = new IdOffsetIndex();
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(2338);
+
+        // Act
+        for (int i = 0; i < 100_000; i++) {
+            int id = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                Long removed = expected.remove(id);
+                assertEquals(removed == null ? -1 : removed, index.remove(id));
+            } else {
+                long offset = 1 + random.nextInt(Integer.MAX_VALUE);
+                Long previous = expected.put(id, offset);
+                assertEquals(previous == null ? -1 : previous, index.put(id, offset));
+            }
+        }
+
+        // Assert
+        assertEquals(expected.size(), index.size());
+        for (int id = -1000; id < 1000; id++) {
+            assertEquals(expected.getOrDefault(id, -1L), index.get(id));
+        }
+        int[] ids = index.ids();
+        Arrays.sort(ids);
+        assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), ids);
+    }
+
+    /**
+     * Tests that offsets that can't be told apart from an empty slot are rejected.
+     */
+    @Test
+    public void IdOffsetIndex_Put_RejectsNonPositiveOffset() {
+        assertThrows(IllegalArgumentException.class, () -> new IdOffsetIndex().put(1, 0));
+    }
+}
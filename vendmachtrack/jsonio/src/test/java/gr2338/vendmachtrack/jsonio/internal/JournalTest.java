@@ -0,0 +1,373 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.SnapshotFormat;
+import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains JUnit tests for the Journal class. It tests that journaled changes are replayed
+ * on top of the snapshot, and that the data survives crashes at different points.
+ *
+ * @see Journal
+ */
+public class JournalTest {
+
+    private final String filename = "/testjournal.json";
+    private Path snapshotPath;
+    private Path journalPath;
+    private Journal journal;
+
+    /**
+     * Sets up a snapshot in the user's home directory holding one vending machine with ID 1
+     * at "Trondheim", stocked with 10 "Cola", and creates a 'journal' instance for testing.
+     *
+     * @throws Exception if any error occurs during the setup
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        snapshotPath = Paths.get(System.getProperty("user.home") + filename);
+        journalPath = Paths.get(snapshotPath + Journal.JOURNAL_SUFFIX);
+        Files.deleteIfExists(journalPath);
+
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 10);
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(new VendingMachine(1, inventory, "Trondheim"));
+        new ToJson(filename).writeToFile(machineTracker);
+
+        journal = new Journal(filename);
+    }
+
+    /**
+     * Deletes the snapshot, journal and lock files after each test.
+     *
+     * @throws Exception if any error occurs during the cleanup
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(snapshotPath);
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(Paths.get(snapshotPath + FileLocker.LOCK_SUFFIX));
+    }
+
+    /**
+     * Tests that every kind of entry appended to the journal is applied when loading.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load the snapshot.</li>
+     *   <li>Act: Append one entry of each kind, and load again from a new instance.</li>
+     *   <li>Assert: Ensure that all changes are applied and that the snapshot file is untouched.</li>
+     * </ol>
+     */
+    @Test
+    public void Journal_Load_ReplaysAppendedEntries() {
+        // Arrange
+        journal.load();
+
+        // Act
+        assertTrue(journal.append(JournalEntry.addItem(1, "Fanta", 4)));
+        assertTrue(journal.append(JournalEntry.removeItem(1, "Cola", 3)));
+        assertTrue(journal.append(JournalEntry.addMachine(2, "Oslo")));
+        assertTrue(journal.append(JournalEntry.relocate(1, "Bergen")));
+        assertTrue(journal.append(JournalEntry.addMachine(3, "Bodø")));
+        assertTrue(journal.append(JournalEntry.removeMachine(3)));
+        MachineTracker loaded = new Journal(filename).load();
+
+        // Assert
+        assertEquals(2, loaded.getMachineCount());
+        VendingMachine vendMach = loaded.getMachine(1);
+        assertEquals(7, vendMach.getStatus().get("Cola"));
+        assertEquals(4, vendMach.getStatus().get("Fanta"));
+        assertEquals("Bergen", vendMach.getLocation());
+        assertEquals("Oslo", loaded.getMachine(2).getLocation());
+        assertNull(loaded.getMachine(3));
+        assertEquals(1, new FromJson(filename).readFromFile().getMachineCount());
+    }
+
+    /**
+     * Tests that writing a snapshot empties the journal, and that the sequence numbers continue
+     * from the snapshot after loading it again.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load the snapshot and append two entries.</li>
+     *   <li>Act: Write a snapshot of the replayed tracker, and load it from a new instance.</li>
+     *   <li>Assert: Ensure that the journal is empty, that the changes are in the snapshot, and
+     *   that the next entry gets the next sequence number.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be read
+     */
+    @Test
+    public void Journal_WriteSnapshot_EmptiesJournal() throws Exception {
+        // Arrange
+        journal.load();
+        journal.append(JournalEntry.addItem(1, "Cola", 1));
+        journal.append(JournalEntry.addItem(1, "Cola", 1));
+
+        // Act
+        assertTrue(journal.writeSnapshot(new Journal(filename).load()));
+        Journal reopened = new Journal(filename);
+        MachineTracker loaded = reopened.load();
+
+        // Assert
+        assertEquals(0, Files.size(journalPath));
+        assertEquals(12, loaded.getMachine(1).getStatus().get("Cola"));
+        assertEquals(12, new FromJson(filename).readFromFile().getMachine(1).getStatus().get("Cola"));
+        assertEquals(2, reopened.getSequence());
+        reopened.append(JournalEntry.addItem(1, "Cola", 1));
+        assertEquals(3, reopened.getSequence());
+    }
+
+    /**
+     * Tests a crash after a snapshot was written but before the journal was emptied.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Append two entries and keep a copy of the journal file.</li>
+     *   <li>Act: Write a snapshot, put the old journal back, and load.</li>
+     *   <li>Assert: Ensure that the entries already in the snapshot are not applied twice.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be copied
+     */
+    @Test
+    public void Journal_Load_SkipsEntriesInSnapshot() throws Exception {
+        // Arrange
+        journal.load();
+        journal.append(JournalEntry.addItem(1, "Cola", 5));
+        journal.append(JournalEntry.removeItem(1, "Cola", 2));
+        byte[] oldJournal = Files.readAllBytes(journalPath);
+
+        // Act
+        journal.writeSnapshot(new Journal(filename).load());
+        Files.write(journalPath, oldJournal);
+        MachineTracker loaded = new Journal(filename).load();
+
+        // Assert
+        assertEquals(13, loaded.getMachine(1).getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests a crash in the middle of appending an entry.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Append an entry, followed by half of a line.</li>
+     *   <li>Act: Load from a new instance and append another entry.</li>
+     *   <li>Assert: Ensure that the complete entry is applied, the partial one is cut off, and
+     *   that the new entry is readable on the next load.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be written
+     */
+    @Test
+    public void Journal_Load_CutsOffTornEntry() throws Exception {
+        // Arrange
+        journal.load();
+        journal.append(JournalEntry.addItem(1, "Cola", 5));
+        Files.write(journalPath, "{\"seq\":2,\"op\":\"ADD_IT".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        // Act
+        Journal reopened = new Journal(filename);
+        MachineTracker loaded = reopened.load();
+        reopened.append(JournalEntry.addItem(1, "Cola", 1));
+
+        // Assert
+        assertEquals(15, loaded.getMachine(1).getStatus().get("Cola"));
+        assertEquals(16, new Journal(filename).load().getMachine(1).getStatus().get("Cola"));
+        assertEquals(2, Files.readAllLines(journalPath).size());
+    }
+
+    /**
+     * Tests that {@link VendmachtrackPersistence} in journal mode asks for compaction once the journal
+     * holds the configured number of entries, and that compacting writes the given tracker as the
+     * snapshot without recording anything inline.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a persistence that needs compaction after three entries, and load the
+     *   tracker.</li>
+     *   <li>Act: Record three changes, and compact with the loaded tracker after applying them.</li>
+     *   <li>Assert: Ensure that compaction was only asked for after the third change, that the
+     *   journal is empty afterwards, and that the snapshot contains the changes.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be read
+     */
+    @Test
+    public void VendmachtrackPersistence_Compact_WritesGivenTracker() throws Exception {
+        // Arrange
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(filename, 3);
+        MachineTracker machineTracker = persistence.getVendmachtrack();
+
+        // Act
+        assertTrue(persistence.recordAddItem(1, "Cola", 1));
+        assertTrue(persistence.recordChangeLocation(1, "Oslo"));
+        assertFalse(persistence.needsCompaction());
+        assertTrue(persistence.recordAddVendMach(2, "Bergen"));
+        assertTrue(persistence.needsCompaction());
+        assertEquals(3, Files.readAllLines(journalPath).size());
+        machineTracker.getMachine(1).addItem("Cola", 1);
+        machineTracker.getMachine(1).setLocation("Oslo");
+        machineTracker.addVendingMachine(new VendingMachine(2, new HashMap<>(), "Bergen"));
+        assertTrue(persistence.compact(machineTracker, persistence.getJournalSequence()));
+
+        // Assert
+        assertFalse(persistence.needsCompaction());
+        assertEquals(0, Files.size(journalPath));
+        MachineTracker snapshot = new FromJson(filename).readFromFile();
+        assertEquals(11, snapshot.getMachine(1).getStatus().get("Cola"));
+        assertEquals("Oslo", snapshot.getMachine(1).getLocation());
+        assertEquals(2, persistence.getVendmachtrack().getMachineCount());
+    }
+
+    /**
+     * Tests that a snapshot written for an earlier sequence number keeps the entries appended after
+     * it in the journal, and that an older snapshot never replaces a newer one.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load the tracker, append one entry and copy the tracker with it applied, then
+     *   append a second entry.</li>
+     *   <li>Act: Write the copy as a snapshot up to the first entry, then write an empty tracker as
+     *   a snapshot up to no entry.</li>
+     *   <li>Assert: Ensure that only the second entry is left in the journal, and that loading
+     *   applies both entries once.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be read
+     */
+    @Test
+    public void Journal_WriteSnapshotUpTo_KeepsLaterEntries() throws Exception {
+        // Arrange
+        MachineTracker machineTracker = journal.load();
+        journal.append(JournalEntry.addItem(1, "Cola", 1));
+        long sequence = journal.getSequence();
+        machineTracker.getMachine(1).addItem("Cola", 1);
+        journal.append(JournalEntry.addItem(1, "Cola", 2));
+
+        // Act
+        assertTrue(journal.writeSnapshot(machineTracker, sequence));
+        assertTrue(journal.writeSnapshot(new MachineTracker(), sequence - 1));
+
+        // Assert
+        assertEquals(1, Files.readAllLines(journalPath).size());
+        assertEquals(1, journal.size());
+        assertEquals(13, new Journal(filename).load().getMachine(1).getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests that a batch of item changes is written to the journal in one go and replayed in order.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a persistence in journal mode.</li>
+     *   <li>Act: Record additions and removals of the same items as one batch.</li>
+     *   <li>Assert: Ensure that there is one journal line per change, and that loading applies them
+     *   in order.</li>
+     * </ol>
+     *
+     * @throws Exception if the journal file can't be read
+     */
+    @Test
+    public void VendmachtrackPersistence_RecordItemChanges_ReplaysInOrder() throws Exception {
+        // Arrange
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(filename, 100);
+
+        // Act
+        assertTrue(persistence.recordItemChanges(1, List.of(Map.entry("Fanta", 2), Map.entry("Cola", -10),
+                Map.entry("Fanta", -1), Map.entry("Cola", 4))));
+
+        // Assert
+        assertEquals(4, Files.readAllLines(journalPath).size());
+        VendingMachine vendMach = persistence.getVendmachtrack().getMachine(1);
+        assertEquals(1, vendMach.getStatus().get("Fanta"));
+        assertEquals(4, vendMach.getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests that changes can't be recorded by a {@link VendmachtrackPersistence} that isn't in
+     * journal mode.
+     */
+    @Test
+    public void VendmachtrackPersistence_Record_ThrowsWithoutJournal() {
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(filename);
+
+        assertFalse(persistence.isJournaled());
+        assertThrows(IllegalStateException.class, () -> persistence.recordRemoveVendMach(1));
+    }
+
+    /**
+     * Tests that the journal works the same on top of a binary snapshot.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write the tracker to a binary snapshot and create a persistence for it that
+     *   needs compaction after two entries.</li>
+     *   <li>Act: Record two changes, compact with the tracker as loaded after them, and record a
+     *   third change.</li>
+     *   <li>Assert: Ensure that the snapshot is still binary, holds the compacted changes, and
+     *   that all changes are loaded.</li>
+     * </ol>
+     *
+     * @throws Exception if the snapshot can't be read or deleted
+     */
+    @Test
+    public void VendmachtrackPersistence_Compact_WritesBinarySnapshot() throws Exception {
+        // Arrange
+        String binaryName = "/testjournal.bin";
+        Path binaryPath = Paths.get(System.getProperty("user.home") + binaryName);
+        Path binaryJournalPath = Paths.get(binaryPath + Journal.JOURNAL_SUFFIX);
+        new VendmachtrackPersistence(binaryName).saveVendmachtrack(new FromJson(filename).readFromFile());
+        VendmachtrackPersistence persistence = new VendmachtrackPersistence(binaryName, 2);
+
+        try {
+            // Act
+            assertTrue(persistence.recordAddItem(1, "Cola", 1));
+            assertTrue(persistence.recordAddVendMach(2, "Bergen"));
+            assertTrue(persistence.needsCompaction());
+            assertTrue(persistence.compact(persistence.getVendmachtrack(), persistence.getJournalSequence()));
+            assertTrue(persistence.recordChangeLocation(2, "Oslo"));
+
+            // Assert
+            assertEquals('V', Files.readAllBytes(binaryPath)[0]);
+            SnapshotFile.Contents snapshot = new SnapshotFile(binaryName, SnapshotFormat.BINARY,
+                    FsyncPolicy.ALWAYS).read();
+            assertEquals(2, snapshot.journalSequence());
+            assertEquals(11, snapshot.tracker().getMachine(1).getStatus().get("Cola"));
+            MachineTracker loaded = new VendmachtrackPersistence(binaryName, 2).getVendmachtrack();
+            assertEquals("Oslo", loaded.getMachine(2).getLocation());
+        } finally {
+            Files.deleteIfExists(binaryPath);
+            Files.deleteIfExists(binaryJournalPath);
+            Files.deleteIfExists(Paths.get(binaryPath + FileLocker.LOCK_SUFFIX));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.Gson;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class contains JUnit tests for the streaming type adapters. It tests that they produce and accept the same
+ * JSON as Gson's reflective binding.
+ *
+ * @see MachineTrackerAdapter
+ * @see VendingMachineAdapter
+ */
+public class MachineTrackerAdapterTest {
+
+    private final Gson reflectiveGson = new Gson();
+
+    /**
+     * Tests that the adapters write exactly the same JSON as reflective Gson wrote for the original model, where the
+     * inventory was a {@code HashMap} field named {@code status}. The model no longer has that field, so the original
+     * shape is rebuilt from maps, with the items in the order the inventory holds them.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a tracker with several items, characters that need escaping, and a machine without a
+     *       location.</li>
+     *   <li>Act: Serialize it with the adapters, and its original shape with reflective Gson.</li>
+     *   <li>Assert: Ensure that the two results are equal.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAdapter_write_MatchesReflectiveFormat() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Øl", 10);
+        inventory.put("Cola \"Zero\"", 3);
+        inventory.put("<Snacks> & more", 7);
+        MachineTracker machineTracker = new MachineTracker();
+        machineTracker.addVendingMachine(new VendingMachine(1, inventory, "Trondheim"));
+        machineTracker.addVendingMachine(new VendingMachine(2, new HashMap<>(), null));
+
+        // Act
+        String streamed = MachineTrackerAdapter.GSON.toJson(machineTracker);
+        List<Map<String, Object>> machines = new ArrayList<>();
+        for (VendingMachine vendMach : machineTracker.getMachines()) {
+            Map<String, Object> machine = new LinkedHashMap<>();
+            machine.put("status", new LinkedHashMap<>(vendMach.getStatusView()));
+            machine.put("id", vendMach.getId());
+            if (vendMach.getLocation() != null) {
+                machine.put("location", vendMach.getLocation());
+            }
+            machines.add(machine);
+        }
+        String reflective = reflectiveGson.toJson(Map.of("machines", machines));
+
+        // Assert
+        assertEquals(reflective, streamed);
+    }
+
+    /**
+     * Tests that the adapters read JSON written by reflective Gson, and skip fields they don't know.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a JSON document with an unknown field on the tracker and on a machine, and a machine
+     *       with a null location.</li>
+     *   <li>Act: Deserialize it with the adapters.</li>
+     *   <li>Assert: Ensure that the machines, their inventories and locations are read correctly.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAdapter_read_SkipsUnknownFields() {
+        // Arrange
+        String json = "{\"version\":2,\"machines\":[{\"status\":{\"Cola\":3},\"id\":1,\"extra\":[1,{\"a\":null}],"
+                + "\"location\":\"Trondheim\"},{\"id\":2,\"location\":null,\"status\":{}}]}";
+
+        // Act
+        MachineTracker machineTracker = MachineTrackerAdapter.GSON.fromJson(json, MachineTracker.class);
+
+        // Assert
+        assertEquals(2, machineTracker.getMachineCount());
+        assertEquals(3, machineTracker.getMachine(1).getStatus().get("Cola"));
+        assertEquals("Trondheim", machineTracker.getMachine(1).getLocation());
+        assertNull(machineTracker.getMachine(2).getLocation());
+        assertEquals(0, machineTracker.getMachine(2).getStatus().size());
+    }
+
+    /**
+     * Tests that a null tracker is written and read as {@code null}.
+     */
+    @Test
+    public void MachineTrackerAdapter_nullTracker_RoundTrips() {
+        assertEquals("null", MachineTrackerAdapter.GSON.toJson(null, MachineTracker.class));
+        assertNull(MachineTrackerAdapter.GSON.fromJson("null", MachineTracker.class));
+    }
+}
@@ -0,0 +1,184 @@
+package gr2338.vendmachtrack.jsonio.internal;
+
+import com.google.gson.Gson;
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the streaming {@link FromJson}/{@link ToJson} path with the reflective Gson path it replaced,
+ * measuring time and peak heap for writing and reading tracker files of different sizes.
+ * <p>
+ * This is not a unit test and is not run by the build. Run it from the IDE, or with
+ * {@code mvn -pl jsonio -am test-compile exec:java -Dexec.mainClass=... -Dexec.classpathScope=test}, and give the
+ * JVM a fixed heap, for instance {@code -Xmx4g}, to get comparable numbers.
+ * </p>
+ * <p>
+ * Peak heap is sampled from {@link Runtime} while the operation runs, so it is approximate, but it shows the
+ * difference between building the whole document as a String and streaming it.
+ * </p>
+ */
+public final class SerializationBenchmark {
+
+    private static final String FILE_NAME = "serialization-benchmark.json";
+    private static final int[] FLEET_SIZES = {10_000, 100_000, 500_000};
+    private static final int ITEMS_PER_MACHINE = 8;
+    private static final int ROUNDS = 5;
+
+    private SerializationBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark and prints a table of the results.
+     *
+     * @param args Not used.
+     * @throws Exception If a file can't be written or read.
+     */
+    public static void main(final String[] args) throws Exception {
+        Path path = Paths.get(System.getProperty("user.home"), FILE_NAME);
+        // The reflective path never forced data to disk, so leave that out of the comparison.
+        ToJson toJson = new ToJson(FILE_NAME, FsyncPolicy.NEVER);
+        FromJson fromJson = new FromJson(FILE_NAME);
+
+        System.out.printf("%-10s %-10s %10s %12s %10s %12s%n",
+                "machines", "path", "write ms", "write MB", "read ms", "read MB");
+        try {
+            for (int fleetSize : FLEET_SIZES) {
+                MachineTracker machineTracker = createFleet(fleetSize);
+
+                Result reflectiveWrite = measure(() -> reflectiveWrite(machineTracker, path));
+                Result reflectiveRead = measure(() -> reflectiveRead(path));
+                print(fleetSize, "reflective", reflectiveWrite, reflectiveRead);
+
+                Result streamingWrite = measure(() -> toJson.writeToFile(machineTracker));
+                Result streamingRead = measure(fromJson::readFromFile);
+                print(fleetSize, "streaming", streamingWrite, streamingRead);
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Creates a tracker with the given number of machines, each holding the same number of items.
+     *
+     * @param fleetSize The number of machines.
+     * @return The tracker.
+     */
+    static MachineTracker createFleet(final int fleetSize) {
+        MachineTracker machineTracker = new MachineTracker();
+
+        for (int id = 1; id <= fleetSize; id++) {
+            HashMap<String, Integer> inventory = new HashMap<>();
+            for (int item = 0; item < ITEMS_PER_MACHINE; item++) {
+                inventory.put("Item " + item, (id + item) % 50);
+            }
+            machineTracker.addVendingMachine(new VendingMachine(id, inventory, "Location " + (id % 1000)));
+        }
+        return machineTracker;
+    }
+
+    /**
+     * Writes a tracker the way {@link ToJson} did before streaming, by building the whole document as a String.
+     *
+     * @param machineTracker The tracker to write.
+     * @param path           The file to write to.
+     */
+    private static void reflectiveWrite(final MachineTracker machineTracker, final Path path) {
+        String json = new Gson().toJson(machineTracker);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a tracker the way {@link FromJson} did before streaming, binding it by reflection.
+     *
+     * @param path The file to read from.
+     * @return The tracker.
+     */
+    private static MachineTracker reflectiveRead(final Path path) {
+        try (InputStream is = Files.newInputStream(path);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            return new Gson().fromJson(reader, MachineTracker.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The best time and lowest peak heap growth over the measured rounds.
+     *
+     * @param millis   The time of the operation in milliseconds.
+     * @param peakHeap The peak heap growth during the operation in bytes.
+     */
+    private record Result(double millis, long peakHeap) {
+    }
+
+    /**
+     * Runs an operation once to warm up, and then {@value #ROUNDS} times while measuring.
+     *
+     * @param operation The operation to measure.
+     * @return The best result.
+     * @throws InterruptedException If interrupted while waiting for the heap sampler.
+     */
+    private static Result measure(final Runnable operation) throws InterruptedException {
+        operation.run();
+
+        double bestMillis = Double.MAX_VALUE;
+        long bestPeak = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            long baseline = runtime.totalMemory() - runtime.freeMemory();
+            AtomicLong peak = new AtomicLong(baseline);
+
+            Thread sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                    Thread.onSpinWait();
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+
+            long start = System.nanoTime();
+            operation.run();
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+
+            sampler.interrupt();
+            sampler.join();
+            bestMillis = Math.min(bestMillis, millis);
+            bestPeak = Math.min(bestPeak, peak.get() - baseline);
+        }
+        return new Result(bestMillis, bestPeak);
+    }
+
+    /**
+     * Prints one row of the result table.
+     *
+     * @param fleetSize The number of machines.
+     * @param path      The name of the measured path.
+     * @param write     The result of writing.
+     * @param read      The result of reading.
+     */
+    private static void print(final int fleetSize, final String path, final Result write, final Result read) {
+        System.out.printf("%-10d %-10s %10.1f %12.1f %10.1f %12.1f%n", fleetSize, path,
+                write.millis(), write.peakHeap() / 1_048_576.0, read.millis(), read.peakHeap() / 1_048_576.0);
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import gr2338.vendmachtrack.core.model.MachineTracker;
 import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -17,7 +18,9 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This class contains JUnit tests for the ToJson class. It tests the serialization of MachineTracker objects to JSON format.
@@ -96,7 +99,7 @@ public class ToJsonTest {
         // Assert
         assertNotNull(outputStream);
         String result = ((ByteArrayOutputStream) outputStream).toString(StandardCharsets.UTF_8);
-        assertEquals("{\"machines\":[{\"status\":{\"Øl\":10,\"Cola\":3},\"id\":1,\"location\":\"Trondheim\"}]}", result);
+        assertEquals("{\"machines\":[{\"status\":{\"Cola\":3,\"Øl\":10},\"id\":1,\"location\":\"Trondheim\"}]}", result);
     }
 
 
@@ -191,7 +194,7 @@ public class ToJsonTest {
         VendingMachine v1 = new VendingMachine(1, inventory, "Trondheim");
         MachineTracker machineTracker = new MachineTracker();
         machineTracker.addVendingMachine(v1);
-        String expectedJson = "{\"machines\":[{\"status\":{\"Øl\":10,\"Cola\":3},\"id\":1,\"location\":\"Trondheim\"}]}";
+        String expectedJson = "{\"machines\":[{\"status\":{\"Cola\":3,\"Øl\":10},\"id\":1,\"location\":\"Trondheim\"}]}";
 
         // Act
         toJson.writeToFile(machineTracker);
@@ -268,4 +271,68 @@ public class ToJsonTest {
         assertEquals(expectedJson, fileContent);
     }
 
+    /**
+     * Tests that {@link toJson#writeToFile(MachineTracker)} replaces an existing file through a temporary
+     * file, for every {@link FsyncPolicy}.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write a tracker with one vending machine to the file.</li>
+     *   <li>Act: Overwrite it with an empty tracker, using each fsync policy.</li>
+     *   <li>Assert: Ensure that the file holds the new content, that no temporary file is left behind,
+     *       and that no write failed.</li>
+     * </ol>
+     *
+     * @throws IOException if any I/O error occurs during the test
+     */
+    @Test
+    public void ToJson_writeToFile_ReplacesFileWithEveryPolicy() throws IOException {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            // Arrange
+            ToJson policyToJson = new ToJson(filename, policy);
+            MachineTracker machineTracker = new MachineTracker();
+            machineTracker.addVendingMachine(new VendingMachine(1, new HashMap<>(), "Trondheim"));
+            assertTrue(policyToJson.writeToFile(machineTracker));
+
+            // Act
+            boolean written = policyToJson.writeToFile(new MachineTracker());
+
+            // Assert
+            assertTrue(written);
+            assertEquals(policy, policyToJson.getFsyncPolicy());
+            assertEquals("{\"machines\":[]}", new String(Files.readAllBytes(dir), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(Paths.get(dir + ToJson.TEMP_SUFFIX)));
+            assertEquals(0, policyToJson.getFailedWrites());
+        }
+    }
+
+    /**
+     * Tests that {@link toJson#writeToFile(MachineTracker)} counts writes that fail.
+     *
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a {@code ToJson} for a file in a directory that doesn't exist.</li>
+     *   <li>Act: Write to the file twice.</li>
+     *   <li>Assert: Ensure that both writes are reported as failed and counted.</li>
+     * </ol>
+     */
+    @Test
+    public void ToJson_writeToFile_CountsFailedWrites() {
+        // Arrange
+        ToJson failingToJson = new ToJson("/no-such-directory/testfile.json");
+
+        // Act
+        boolean firstWritten = failingToJson.writeToFile(new MachineTracker());
+        boolean secondWritten = failingToJson.writeToFile(new MachineTracker());
+
+        // Assert
+        assertFalse(firstWritten);
+        assertFalse(secondWritten);
+        assertEquals(2, failingToJson.getFailedWrites());
+    }
+
 }
@@ -1,28 +1,84 @@
 package gr2338.vendmachtrack.springboot;
 
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.ExecutorService;
 
 /**
  * The {@code SpringbootApplication} class serves as the main entry point for the Spring Boot application.
+ * <p>
+ * Requests are handled by Tomcat's pool of platform threads by default. Setting the
+ * {@code vendmachtrack.threads} property to {@code virtual} runs every request on its own virtual
+ * thread instead, which requires Java 21 or later. The repository and the persistence layer are
+ * called on the request thread, so their blocking file I/O then runs on virtual threads as well.
+ * </p>
+ * <p>
+ * With the {@code reactive} profile, the REST API is served by the reactive stack on Netty instead, where a few
+ * event-loop threads handle all connections and blocking work is moved to a bounded scheduler, see
+ * {@link gr2338.vendmachtrack.springboot.service.ReactiveMachineTrackerService}.
+ * </p>
  */
 @SpringBootApplication
 public class SpringbootApplication {
 
     /**
-     * The file name of the .json file storing the {@code MachineTracker} object
+     * Method for returning the file name of the file storing the {@code MachineTracker} object.
+     * It is set with the {@code vendmachtrack.persistence.file} property and defaults to
+     * {@code tracker.json}. A name ending in {@code .bin} stores the tracker in the binary format.
+     *
+     * @param fileName File name from the configuration
+     * @return File name of the tracker file
+     */
+    @Bean
+    public String fileName(@Value("${vendmachtrack.persistence.file:tracker.json}") final String fileName) {
+        return fileName;
+    }
+
+    /**
+     * Method for returning the executor running requests on virtual threads. It is only created
+     * when the {@code vendmachtrack.threads} property is set to {@code virtual}.
+     *
+     * @return Executor starting a new virtual thread for every task
+     * @throws IllegalStateException If the running Java version doesn't support virtual threads
      */
-    private static final String FILE_NAME = "tracker.json";
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "vendmachtrack.threads", havingValue = "virtual")
+    public ExecutorService virtualThreadExecutor() {
+        return VirtualThreads.newExecutor("http-virtual-");
+    }
+
+    /**
+     * Method for returning the customizer that makes Tomcat hand requests to the virtual thread
+     * executor instead of its own thread pool.
+     *
+     * @param virtualThreadExecutor Executor starting a new virtual thread for every task
+     * @return Customizer setting the executor of Tomcat's protocol handler
+     */
+    @Bean
+    @ConditionalOnProperty(name = "vendmachtrack.threads", havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadCustomizer(
+            final ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
 
     /**
-     * Method for returning the file name of the .json file storing the {@code MachineTracker} object
+     * Method for returning the factory of the Netty server used by the reactive variant. Without it, Spring Boot
+     * would run the reactive stack on Tomcat, which is also on the classpath.
      *
-     * @return File name of the .json file
+     * @return Factory for the reactive Netty server
      */
     @Bean
-    public String fileName() {
-        return FILE_NAME;
+    @Profile("reactive")
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
     }
 
     public static void main(final String[] args) {
@@ -0,0 +1,82 @@
+package gr2338.vendmachtrack.springboot;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The {@code VirtualThreads} class creates executors that run every task on a new virtual thread.
+ * <p>
+ * The project is compiled for Java 17, where virtual threads don't exist, so the Java 21 API
+ * ({@code Thread.ofVirtual()} and {@code Executors.newThreadPerTaskExecutor}) is looked up by
+ * reflection. The backend can then be built as before and still use virtual threads when it
+ * runs on Java 21 or later.
+ * </p>
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks whether the running Java version supports virtual threads.
+     *
+     * @return {@code true} if virtual threads can be created.
+     */
+    static boolean isSupported() {
+        try {
+            newThreadFactory("check-");
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     *
+     * @param namePrefix The prefix of the thread names, followed by a counter.
+     * @return The executor.
+     * @throws IllegalStateException If the running Java version doesn't support virtual threads.
+     */
+    static ExecutorService newExecutor(final String namePrefix) {
+        ThreadFactory factory = newThreadFactory(namePrefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw unsupported(e);
+        }
+    }
+
+    /**
+     * Creates a factory for named virtual threads.
+     *
+     * @param namePrefix The prefix of the thread names, followed by a counter.
+     * @return The thread factory.
+     * @throws IllegalStateException If the running Java version doesn't support virtual threads.
+     */
+    private static ThreadFactory newThreadFactory(final String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw unsupported(e);
+        }
+    }
+
+    /**
+     * Creates the exception thrown when virtual threads can't be used.
+     *
+     * @param cause The exception thrown by the reflective lookup.
+     * @return The exception to throw.
+     */
+    private static IllegalStateException unsupported(final Exception cause) {
+        Throwable reason = cause instanceof InvocationTargetException ? cause.getCause() : cause;
+        return new IllegalStateException("Virtual threads need Java 21 or later, running on Java "
+                + Runtime.version().feature(), reason);
+    }
+}
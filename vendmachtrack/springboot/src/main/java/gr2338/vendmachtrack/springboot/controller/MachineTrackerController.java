@@ -1,26 +1,52 @@
 package gr2338.vendmachtrack.springboot.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
 import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import reactor.core.publisher.Flux;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.SortedMap;
 
 /**
  * Controller responsible for handling HTTP requests related to the machine
  * tracker operations.
  * Provides endpoints to view, add, modify, and delete vending machines and
  * their inventory.
+ * <p>
+ * The read endpoints send the version of the data as a strong ETag. A request
+ * whose {@code If-None-Match} header holds the current version gets
+ * {@code 304 Not Modified} without the data being looked up.
+ * </p>
+ * <p>
+ * With the {@code reactive} profile the same endpoints are served by
+ * {@link ReactiveMachineTrackerController} instead.
+ * </p>
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping(MachineTrackerController.VENDMACHTRACK_SERVICE_PATH)
 public class MachineTrackerController {
 
@@ -42,35 +68,205 @@ public class MachineTrackerController {
     /**
      * Fetches the list of all vending machines.
      *
-     * @return List of vending machines with their IDs and locations.
+     * @param request The request, checked for a current ETag.
+     * @return List of vending machines with their IDs and locations, or null if
+     * the client's copy is current and {@code 304 Not Modified} has been sent.
      */
     @GetMapping()
-    public ResponseEntity<HashMap<Integer, String>> getVendMachList() {
+    public ResponseEntity<HashMap<Integer, String>> getVendMachList(final WebRequest request) {
+        if (request.checkNotModified(Long.toString(machineTrackerService.getVersion()))) {
+            return null;
+        }
         return ResponseEntity.ok(machineTrackerService.getVendMachList());
     }
 
+    /**
+     * Fetches a page of the vending machines, in order of ascending ID.
+     *
+     * @param after    The ID the page starts after, or nothing for the first page.
+     * @param limit    The largest number of vending machines on the page.
+     * @param location The start of the location of the vending machines to list,
+     *                 ignoring case, or nothing for all vending machines.
+     * @return The vending machines on the page with their IDs and locations, and
+     * the ID to ask for the next page after.
+     */
+    @GetMapping("/machines")
+    public ResponseEntity<MachinePage> getVendMachPage(
+            @RequestParam(required = false) final Integer after,
+            @RequestParam(defaultValue = "" + MachineTrackerService.DEFAULT_PAGE_SIZE) final int limit,
+            @RequestParam(required = false) final String location) {
+        return ResponseEntity.ok(machineTrackerService.getVendMachPage(after, limit, location));
+    }
+
+    /**
+     * Counts the vending machines at every location starting with a prefix,
+     * ignoring case.
+     *
+     * @param prefix The start of the location, or nothing for every location.
+     * @return The locations and the number of vending machines there, in
+     * alphabetical order.
+     */
+    @GetMapping("/locations")
+    public ResponseEntity<SortedMap<String, Integer>> countByLocation(
+            @RequestParam(required = false) final String prefix) {
+        return ResponseEntity.ok(machineTrackerService.countByLocation(prefix));
+    }
+
+    /**
+     * Counts the vending machines at a location, ignoring case.
+     *
+     * @param location The location.
+     * @return The number of vending machines at the location.
+     */
+    @GetMapping("/locations/count")
+    public ResponseEntity<Integer> countAtLocation(@RequestParam final String location) {
+        return ResponseEntity.ok(machineTrackerService.countAtLocation(location));
+    }
+
+    /**
+     * Fetches the vending machines at a location, or at every location starting
+     * with a prefix, ignoring case. Exactly one of the two has to be given.
+     *
+     * @param location The location.
+     * @param prefix   The start of the location.
+     * @return The IDs and locations of the vending machines found, in order of
+     * ascending ID.
+     */
+    @GetMapping("/locations/machines")
+    public ResponseEntity<List<MachineSummary>> findByLocation(
+            @RequestParam(required = false) final String location,
+            @RequestParam(required = false) final String prefix) {
+        return ResponseEntity.ok(machineTrackerService.findByLocation(location, prefix));
+    }
+
+    /**
+     * Fetches the vending machines stocking an item, with their quantities of it.
+     *
+     * @param item The name of the item.
+     * @return The IDs of the vending machines and their quantities, in order of
+     * ascending ID.
+     */
+    @GetMapping("/items/machines")
+    public ResponseEntity<List<ItemStock>> getMachinesStocking(@RequestParam final String item) {
+        return ResponseEntity.ok(machineTrackerService.getMachinesStocking(item));
+    }
+
+    /**
+     * Fetches the total quantity of an item in all vending machines.
+     *
+     * @param item The name of the item.
+     * @return The total quantity.
+     */
+    @GetMapping("/items/total")
+    public ResponseEntity<Long> getTotalQuantity(@RequestParam final String item) {
+        return ResponseEntity.ok(machineTrackerService.getTotalQuantity(item));
+    }
+
+    /**
+     * Fetches the vending machines with the highest quantities of an item.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of vending machines to fetch.
+     * @return The IDs of the vending machines and their quantities, in order of
+     * descending quantity.
+     */
+    @GetMapping("/items/top")
+    public ResponseEntity<List<ItemStock>> getTopMachines(@RequestParam final String item,
+            @RequestParam(defaultValue = "" + MachineTrackerService.DEFAULT_TOP_MACHINES) final int count) {
+        return ResponseEntity.ok(machineTrackerService.getTopMachines(item, count));
+    }
+
+    /**
+     * Fetches the items that are below their thresholds in any vending machine.
+     *
+     * @return The low items, in order of machine ID and item name.
+     */
+    @GetMapping("/items/low")
+    public ResponseEntity<List<LowStock>> getLowStock() {
+        return ResponseEntity.ok(machineTrackerService.getLowStock());
+    }
+
+    /**
+     * Sets the threshold of an item in every vending machine without a threshold
+     * of its own. Items dropping below their thresholds, and being restocked, are
+     * published on the event streams.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     * @return The items that are below their thresholds after the change.
+     */
+    @PutMapping("/items/threshold")
+    public ResponseEntity<List<LowStock>> setItemThreshold(@RequestParam final String item,
+            @RequestParam final int threshold) {
+        return ResponseEntity.ok(machineTrackerService.setItemThreshold(item, threshold));
+    }
+
+    /**
+     * Fetches the vending machines added, changed and removed since a version.
+     *
+     * @param since The version the client is up to date with, or zero for all
+     *              vending machines.
+     * @return The changes and the version to ask for changes since next time.
+     */
+    @GetMapping(params = "since")
+    public ResponseEntity<MachineTrackerDelta> getChangesSince(@RequestParam final long since) {
+        return ResponseEntity.ok(machineTrackerService.getChangesSince(since));
+    }
+
     /**
      * Retrieves the location of a vending machine by its ID.
      *
-     * @param id The ID of the vending machine.
-     * @return Location of the vending machine.
+     * @param id      The ID of the vending machine.
+     * @param request The request, checked for a current ETag.
+     * @return Location of the vending machine, or null if the client's copy is
+     * current and {@code 304 Not Modified} has been sent.
      */
     @GetMapping("/{id}/name")
-    public ResponseEntity<String> getVendMachLocation(@PathVariable("id") final int id) {
+    public ResponseEntity<String> getVendMachLocation(@PathVariable("id") final int id, final WebRequest request) {
+        if (request.checkNotModified(Long.toString(machineTrackerService.getMachineVersion(id)))) {
+            return null;
+        }
         return ResponseEntity.ok(machineTrackerService.getVendMachLocation(id));
     }
 
     /**
      * Fetches the inventory of a specific vending machine by its ID.
      *
-     * @param id The ID of the vending machine.
-     * @return Inventory items and their quantities.
+     * @param id      The ID of the vending machine.
+     * @param request The request, checked for a current ETag.
+     * @return Inventory items and their quantities, or null if the client's copy
+     * is current and {@code 304 Not Modified} has been sent.
      */
     @GetMapping("/{id}")
-    public ResponseEntity<HashMap<String, Integer>> getInventory(@PathVariable("id") final int id) {
+    public ResponseEntity<HashMap<String, Integer>> getInventory(@PathVariable("id") final int id,
+                                                                 final WebRequest request) {
+        if (request.checkNotModified(Long.toString(machineTrackerService.getMachineVersion(id)))) {
+            return null;
+        }
         return ResponseEntity.ok(machineTrackerService.getInventory(id));
     }
 
+    /**
+     * Streams the changes to all vending machines as Server-Sent Events.
+     *
+     * @return Stream of inventory, location, added and removed events.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents() {
+        return machineTrackerService.streamEvents();
+    }
+
+    /**
+     * Streams the changes to a vending machine as Server-Sent Events.
+     *
+     * @param id The ID of the vending machine.
+     * @return Stream of the machine's inventory, location and removed events.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents(@PathVariable("id") final int id) {
+        return machineTrackerService.streamEvents(id);
+    }
+
     /**
      * Adds items to the inventory of a vending machine.
      *
@@ -101,6 +297,37 @@ public class MachineTrackerController {
         return ResponseEntity.ok(machineTrackerService.removeItem(id, item, quantity));
     }
 
+    /**
+     * Sets the threshold of every item in a vending machine, which takes
+     * precedence over the item thresholds.
+     *
+     * @param id        The ID of the vending machine.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     * @return The items that are below their thresholds after the change.
+     */
+    @PutMapping("/{id}/threshold")
+    public ResponseEntity<List<LowStock>> setMachineThreshold(@PathVariable("id") final int id,
+            @RequestParam final int threshold) {
+        return ResponseEntity.ok(machineTrackerService.setMachineThreshold(id, threshold));
+    }
+
+    /**
+     * Applies a batch of inventory changes to one or more vending machines in a
+     * single request. Each operation holds the ID of a machine, the name of an
+     * item, and the quantity to add, or the negated quantity to remove.
+     *
+     * @param operations The operations to apply.
+     * @param atomic     Whether the operations on each machine are applied all or
+     *                   nothing.
+     * @return The result of every operation, in the order they were given.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<InventoryOperationResult>> applyBatch(
+            @RequestBody final List<InventoryOperation> operations,
+            @RequestParam(defaultValue = "false") final boolean atomic) {
+        return ResponseEntity.ok(machineTrackerService.applyBatch(operations, atomic));
+    }
+
     /**
      * Adds a new vending machine.
      *
@@ -114,6 +341,20 @@ public class MachineTrackerController {
         return ResponseEntity.ok(machineTrackerService.addVendMach(id, location));
     }
 
+    /**
+     * Adds a new vending machine, and returns only the added vending machine
+     * instead of the whole list.
+     *
+     * @param id       The ID of the new vending machine.
+     * @param location The location of the new vending machine.
+     * @return The ID and location of the added vending machine.
+     */
+    @PostMapping(value = "/add", params = "brief=true")
+    public ResponseEntity<MachineSummary> addVendMachBrief(@RequestParam final int id,
+                                                           @RequestParam final String location) {
+        return ResponseEntity.ok(machineTrackerService.addVendMachBrief(id, location));
+    }
+
     /**
      * Removes a vending machine by its ID.
      *
@@ -125,6 +366,18 @@ public class MachineTrackerController {
         return ResponseEntity.ok(machineTrackerService.removeVendMach(id));
     }
 
+    /**
+     * Removes a vending machine by its ID, and returns only the removed vending
+     * machine instead of the whole list.
+     *
+     * @param id The ID of the vending machine to remove.
+     * @return The ID and location of the removed vending machine.
+     */
+    @DeleteMapping(value = "/{id}", params = "brief=true")
+    public ResponseEntity<MachineSummary> removeVendMachBrief(@PathVariable("id") final int id) {
+        return ResponseEntity.ok(machineTrackerService.removeVendMachBrief(id));
+    }
+
     /**
      * Changes the location of a vending machine.
      *
@@ -137,4 +390,18 @@ public class MachineTrackerController {
                                                                    @RequestParam final String location) {
         return ResponseEntity.ok(machineTrackerService.changeLocation(id, location));
     }
+
+    /**
+     * Changes the location of a vending machine, and returns only the moved
+     * vending machine instead of the whole list.
+     *
+     * @param id       The ID of the vending machine.
+     * @param location The new location.
+     * @return The ID and new location of the vending machine.
+     */
+    @PutMapping(value = "/{id}", params = "brief=true")
+    public ResponseEntity<MachineSummary> changeLocationBrief(@PathVariable("id") final int id,
+                                                              @RequestParam final String location) {
+        return ResponseEntity.ok(machineTrackerService.changeLocationBrief(id, location));
+    }
 }
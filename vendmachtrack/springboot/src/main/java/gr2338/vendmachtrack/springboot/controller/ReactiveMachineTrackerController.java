@@ -0,0 +1,403 @@
+package gr2338.vendmachtrack.springboot.controller;
+
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
+import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import gr2338.vendmachtrack.springboot.service.ReactiveMachineTrackerService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Reactive controller serving the same endpoints as {@link MachineTrackerController}.
+ * <p>
+ * It is only created with the {@code reactive} profile, which runs the server on a small number of event-loop
+ * threads instead of a thread per request. The handlers never block: the work is handed to
+ * {@link ReactiveMachineTrackerService}, and the response is written when its {@code Mono} completes. As in
+ * {@link MachineTrackerController}, the read endpoints answer a current {@code If-None-Match} with
+ * {@code 304 Not Modified}.
+ * </p>
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping(MachineTrackerController.VENDMACHTRACK_SERVICE_PATH)
+public class ReactiveMachineTrackerController {
+
+    private final ReactiveMachineTrackerService machineTrackerService;
+
+    /**
+     * Constructor injection of the ReactiveMachineTrackerService dependency.
+     *
+     * @param machineTrackerService The service layer handling the machine tracker
+     *                              logic without blocking.
+     */
+    @Autowired
+    public ReactiveMachineTrackerController(final ReactiveMachineTrackerService machineTrackerService) {
+        this.machineTrackerService = machineTrackerService;
+    }
+
+    /**
+     * Fetches the list of all vending machines.
+     *
+     * @param exchange The exchange, whose request is checked for a current ETag.
+     * @return List of vending machines with their IDs and locations, or nothing if
+     * the client's copy is current and {@code 304 Not Modified} is sent.
+     */
+    @GetMapping()
+    public Mono<ResponseEntity<HashMap<Integer, String>>> getVendMachList(final ServerWebExchange exchange) {
+        return machineTrackerService.getVersion()
+                .filter(version -> !exchange.checkNotModified(Long.toString(version)))
+                .flatMap(version -> machineTrackerService.getVendMachList())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches a page of the vending machines, in order of ascending ID.
+     *
+     * @param after    The ID the page starts after, or nothing for the first page.
+     * @param limit    The largest number of vending machines on the page.
+     * @param location The start of the location of the vending machines to list,
+     *                 ignoring case, or nothing for all vending machines.
+     * @return The vending machines on the page with their IDs and locations, and
+     * the ID to ask for the next page after.
+     */
+    @GetMapping("/machines")
+    public Mono<ResponseEntity<MachinePage>> getVendMachPage(
+            @RequestParam(required = false) final Integer after,
+            @RequestParam(defaultValue = "" + MachineTrackerService.DEFAULT_PAGE_SIZE) final int limit,
+            @RequestParam(required = false) final String location) {
+        return machineTrackerService.getVendMachPage(after, limit, location).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Counts the vending machines at every location starting with a prefix,
+     * ignoring case.
+     *
+     * @param prefix The start of the location, or nothing for every location.
+     * @return The locations and the number of vending machines there, in
+     * alphabetical order.
+     */
+    @GetMapping("/locations")
+    public Mono<ResponseEntity<SortedMap<String, Integer>>> countByLocation(
+            @RequestParam(required = false) final String prefix) {
+        return machineTrackerService.countByLocation(prefix).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Counts the vending machines at a location, ignoring case.
+     *
+     * @param location The location.
+     * @return The number of vending machines at the location.
+     */
+    @GetMapping("/locations/count")
+    public Mono<ResponseEntity<Integer>> countAtLocation(@RequestParam final String location) {
+        return machineTrackerService.countAtLocation(location).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the vending machines at a location, or at every location starting
+     * with a prefix, ignoring case. Exactly one of the two has to be given.
+     *
+     * @param location The location.
+     * @param prefix   The start of the location.
+     * @return The IDs and locations of the vending machines found, in order of
+     * ascending ID.
+     */
+    @GetMapping("/locations/machines")
+    public Mono<ResponseEntity<List<MachineSummary>>> findByLocation(
+            @RequestParam(required = false) final String location,
+            @RequestParam(required = false) final String prefix) {
+        return machineTrackerService.findByLocation(location, prefix).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the vending machines stocking an item, with their quantities of it.
+     *
+     * @param item The name of the item.
+     * @return The IDs of the vending machines and their quantities, in order of
+     * ascending ID.
+     */
+    @GetMapping("/items/machines")
+    public Mono<ResponseEntity<List<ItemStock>>> getMachinesStocking(@RequestParam final String item) {
+        return machineTrackerService.getMachinesStocking(item).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the total quantity of an item in all vending machines.
+     *
+     * @param item The name of the item.
+     * @return The total quantity.
+     */
+    @GetMapping("/items/total")
+    public Mono<ResponseEntity<Long>> getTotalQuantity(@RequestParam final String item) {
+        return machineTrackerService.getTotalQuantity(item).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the vending machines with the highest quantities of an item.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of vending machines to fetch.
+     * @return The IDs of the vending machines and their quantities, in order of
+     * descending quantity.
+     */
+    @GetMapping("/items/top")
+    public Mono<ResponseEntity<List<ItemStock>>> getTopMachines(@RequestParam final String item,
+            @RequestParam(defaultValue = "" + MachineTrackerService.DEFAULT_TOP_MACHINES) final int count) {
+        return machineTrackerService.getTopMachines(item, count).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the items that are below their thresholds in any vending machine.
+     *
+     * @return The low items, in order of machine ID and item name.
+     */
+    @GetMapping("/items/low")
+    public Mono<ResponseEntity<List<LowStock>>> getLowStock() {
+        return machineTrackerService.getLowStock().map(ResponseEntity::ok);
+    }
+
+    /**
+     * Sets the threshold of an item in every vending machine without a threshold
+     * of its own. Items dropping below their thresholds, and being restocked, are
+     * published on the event streams.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     * @return The items that are below their thresholds after the change.
+     */
+    @PutMapping("/items/threshold")
+    public Mono<ResponseEntity<List<LowStock>>> setItemThreshold(@RequestParam final String item,
+            @RequestParam final int threshold) {
+        return machineTrackerService.setItemThreshold(item, threshold).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the vending machines added, changed and removed since a version.
+     *
+     * @param since The version the client is up to date with, or zero for all
+     *              vending machines.
+     * @return The changes and the version to ask for changes since next time.
+     */
+    @GetMapping(params = "since")
+    public Mono<ResponseEntity<MachineTrackerDelta>> getChangesSince(@RequestParam final long since) {
+        return machineTrackerService.getChangesSince(since).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Retrieves the location of a vending machine by its ID.
+     *
+     * @param id       The ID of the vending machine.
+     * @param exchange The exchange, whose request is checked for a current ETag.
+     * @return Location of the vending machine, or nothing if the client's copy is
+     * current and {@code 304 Not Modified} is sent.
+     */
+    @GetMapping("/{id}/name")
+    public Mono<ResponseEntity<String>> getVendMachLocation(@PathVariable("id") final int id,
+                                                            final ServerWebExchange exchange) {
+        return machineTrackerService.getMachineVersion(id)
+                .filter(version -> !exchange.checkNotModified(Long.toString(version)))
+                .flatMap(version -> machineTrackerService.getVendMachLocation(id))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Fetches the inventory of a specific vending machine by its ID.
+     *
+     * @param id       The ID of the vending machine.
+     * @param exchange The exchange, whose request is checked for a current ETag.
+     * @return Inventory items and their quantities, or nothing if the client's
+     * copy is current and {@code 304 Not Modified} is sent.
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<HashMap<String, Integer>>> getInventory(@PathVariable("id") final int id,
+                                                                       final ServerWebExchange exchange) {
+        return machineTrackerService.getMachineVersion(id)
+                .filter(version -> !exchange.checkNotModified(Long.toString(version)))
+                .flatMap(version -> machineTrackerService.getInventory(id))
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Streams the changes to all vending machines as Server-Sent Events.
+     *
+     * @return Stream of inventory, location, added and removed events.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents() {
+        return machineTrackerService.streamEvents();
+    }
+
+    /**
+     * Streams the changes to a vending machine as Server-Sent Events.
+     *
+     * @param id The ID of the vending machine.
+     * @return Stream of the machine's inventory, location and removed events.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents(@PathVariable("id") final int id) {
+        return machineTrackerService.streamEvents(id);
+    }
+
+    /**
+     * Adds items to the inventory of a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity of the item to add.
+     * @return Updated inventory items and their quantities.
+     */
+    @PutMapping("/{id}/add")
+    public Mono<ResponseEntity<HashMap<String, Integer>>> addItem(@PathVariable("id") final int id,
+                                                                  @RequestParam final String item,
+                                                                  @RequestParam final int quantity) {
+        return machineTrackerService.addItem(id, item, quantity).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Removes items from the inventory of a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param item     The name of the item.
+     * @param quantity The quantity of the item to remove.
+     * @return Updated inventory items and their quantities.
+     */
+    @PutMapping("/{id}/remove")
+    public Mono<ResponseEntity<HashMap<String, Integer>>> removeItem(@PathVariable("id") final int id,
+                                                                     @RequestParam final String item,
+                                                                     @RequestParam final int quantity) {
+        return machineTrackerService.removeItem(id, item, quantity).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Sets the threshold of every item in a vending machine, which takes
+     * precedence over the item thresholds.
+     *
+     * @param id        The ID of the vending machine.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     * @return The items that are below their thresholds after the change.
+     */
+    @PutMapping("/{id}/threshold")
+    public Mono<ResponseEntity<List<LowStock>>> setMachineThreshold(@PathVariable("id") final int id,
+            @RequestParam final int threshold) {
+        return machineTrackerService.setMachineThreshold(id, threshold).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Applies a batch of inventory changes to one or more vending machines in a
+     * single request. Each operation holds the ID of a machine, the name of an
+     * item, and the quantity to add, or the negated quantity to remove.
+     *
+     * @param operations The operations to apply.
+     * @param atomic     Whether the operations on each machine are applied all or
+     *                   nothing.
+     * @return The result of every operation, in the order they were given.
+     */
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<List<InventoryOperationResult>>> applyBatch(
+            @RequestBody final List<InventoryOperation> operations,
+            @RequestParam(defaultValue = "false") final boolean atomic) {
+        return machineTrackerService.applyBatch(operations, atomic).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Adds a new vending machine.
+     *
+     * @param id       The ID of the new vending machine.
+     * @param location The location of the new vending machine.
+     * @return Updated list of vending machines with their IDs and locations.
+     */
+    @PostMapping("/add")
+    public Mono<ResponseEntity<HashMap<Integer, String>>> addVendMach(@RequestParam final int id,
+                                                                      @RequestParam final String location) {
+        return machineTrackerService.addVendMach(id, location).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Adds a new vending machine, and returns only the added vending machine
+     * instead of the whole list.
+     *
+     * @param id       The ID of the new vending machine.
+     * @param location The location of the new vending machine.
+     * @return The ID and location of the added vending machine.
+     */
+    @PostMapping(value = "/add", params = "brief=true")
+    public Mono<ResponseEntity<MachineSummary>> addVendMachBrief(@RequestParam final int id,
+                                                                 @RequestParam final String location) {
+        return machineTrackerService.addVendMachBrief(id, location).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Removes a vending machine by its ID.
+     *
+     * @param id The ID of the vending machine to remove.
+     * @return Updated list of vending machines with their IDs and locations.
+     */
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<HashMap<Integer, String>>> removeVendMach(@PathVariable("id") final int id) {
+        return machineTrackerService.removeVendMach(id).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Removes a vending machine by its ID, and returns only the removed vending
+     * machine instead of the whole list.
+     *
+     * @param id The ID of the vending machine to remove.
+     * @return The ID and location of the removed vending machine.
+     */
+    @DeleteMapping(value = "/{id}", params = "brief=true")
+    public Mono<ResponseEntity<MachineSummary>> removeVendMachBrief(@PathVariable("id") final int id) {
+        return machineTrackerService.removeVendMachBrief(id).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Changes the location of a vending machine.
+     *
+     * @param id       The ID of the vending machine.
+     * @param location The new location.
+     * @return Updated list of vending machines with their IDs and locations.
+     */
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<HashMap<Integer, String>>> changeLocation(@PathVariable("id") final int id,
+                                                                         @RequestParam final String location) {
+        return machineTrackerService.changeLocation(id, location).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Changes the location of a vending machine, and returns only the moved
+     * vending machine instead of the whole list.
+     *
+     * @param id       The ID of the vending machine.
+     * @param location The new location.
+     * @return The ID and new location of the vending machine.
+     */
+    @PutMapping(value = "/{id}", params = "brief=true")
+    public Mono<ResponseEntity<MachineSummary>> changeLocationBrief(@PathVariable("id") final int id,
+                                                                    @RequestParam final String location) {
+        return machineTrackerService.changeLocationBrief(id, location).map(ResponseEntity::ok);
+    }
+}
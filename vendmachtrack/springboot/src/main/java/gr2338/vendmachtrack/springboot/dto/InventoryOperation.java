@@ -0,0 +1,11 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+/**
+ * A single change to the inventory of a vending machine, sent as part of a batch.
+ *
+ * @param id    The ID of the vending machine.
+ * @param item  The name of the item.
+ * @param delta The quantity to add, or the negated quantity to remove.
+ */
+public record InventoryOperation(int id, String item, int delta) {
+}
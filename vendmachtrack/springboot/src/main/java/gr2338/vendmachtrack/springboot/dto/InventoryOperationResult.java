@@ -0,0 +1,69 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+/**
+ * The outcome of a single {@link InventoryOperation} in a batch.
+ *
+ * @param id       The ID of the vending machine.
+ * @param item     The name of the item.
+ * @param delta    The quantity that was to be added, or the negated quantity that was to be removed.
+ * @param status   Whether the operation was applied.
+ * @param quantity The quantity of the item after the operation, or null if it wasn't applied.
+ * @param error    Why the operation wasn't applied, or null if it was.
+ */
+public record InventoryOperationResult(int id, String item, int delta, Status status, Integer quantity,
+                                       String error) {
+
+    /**
+     * Whether an operation was applied.
+     */
+    public enum Status {
+        /**
+         * The operation was applied.
+         */
+        APPLIED,
+        /**
+         * The operation was invalid, or the machine didn't hold enough of the item.
+         */
+        REJECTED,
+        /**
+         * The operation was valid, but wasn't applied because another operation on the same
+         * machine was rejected and the batch was all-or-nothing per machine.
+         */
+        ROLLED_BACK
+    }
+
+    /**
+     * Creates the result of an applied operation.
+     *
+     * @param operation The operation.
+     * @param quantity  The quantity of the item after the operation.
+     * @return The result.
+     */
+    public static InventoryOperationResult applied(final InventoryOperation operation, final int quantity) {
+        return new InventoryOperationResult(operation.id(), operation.item(), operation.delta(), Status.APPLIED,
+                quantity, null);
+    }
+
+    /**
+     * Creates the result of a rejected operation.
+     *
+     * @param operation The operation.
+     * @param error     Why the operation was rejected.
+     * @return The result.
+     */
+    public static InventoryOperationResult rejected(final InventoryOperation operation, final String error) {
+        return new InventoryOperationResult(operation.id(), operation.item(), operation.delta(), Status.REJECTED,
+                null, error);
+    }
+
+    /**
+     * Creates the result of an operation that was rolled back.
+     *
+     * @param operation The operation.
+     * @return The result.
+     */
+    public static InventoryOperationResult rolledBack(final InventoryOperation operation) {
+        return new InventoryOperationResult(operation.id(), operation.item(), operation.delta(), Status.ROLLED_BACK,
+                null, "Another operation on the same vending machine was rejected");
+    }
+}
@@ -0,0 +1,11 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+/**
+ * The quantity of one item in a vending machine. Returned for each machine stocking an item, found through the
+ * item index without reading the inventories of the fleet.
+ *
+ * @param id       The ID of the machine.
+ * @param quantity The quantity of the item in the machine.
+ */
+public record ItemStock(int id, int quantity) {
+}
@@ -0,0 +1,13 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+/**
+ * An item that is below its threshold in a vending machine. Read from the set of low items the server keeps up to
+ * date as items are sold, without reading the inventories of the fleet.
+ *
+ * @param id        The ID of the machine.
+ * @param item      The name of the item.
+ * @param quantity  The quantity of the item in the machine, zero if sold out.
+ * @param threshold The threshold the quantity is below.
+ */
+public record LowStock(int id, String item, int quantity, int threshold) {
+}
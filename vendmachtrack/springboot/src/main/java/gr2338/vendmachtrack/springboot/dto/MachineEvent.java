@@ -0,0 +1,58 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+import java.util.Map;
+
+/**
+ * A change to a vending machine, pushed to subscribers of the event stream.
+ * <p>
+ * Events carry the state of the machine after the change rather than the change itself, so a subscriber that
+ * missed events only needs the next one for a machine to be up to date again. Sequence numbers increase by one for
+ * every event, so a gap tells the subscriber that events were dropped.
+ * </p>
+ *
+ * @param sequence  The number of the event, starting at 1 when the server starts.
+ * @param type      What changed.
+ * @param id        The ID of the vending machine.
+ * @param location  The location of the machine, or null for inventory changes and removed machines.
+ * @param inventory The inventory of the machine after the change, or null for location changes and removed
+ *                  machines. For stock alerts, only the quantity of the item that crossed its threshold.
+ */
+public record MachineEvent(long sequence, Type type, int id, String location, Map<String, Integer> inventory) {
+
+    /**
+     * Creates an event, copying the inventory so that later changes to the machine don't alter it.
+     */
+    public MachineEvent {
+        inventory = inventory == null ? null : Map.copyOf(inventory);
+    }
+
+    /**
+     * What changed about a vending machine.
+     */
+    public enum Type {
+        /**
+         * Items were added to or removed from the inventory.
+         */
+        INVENTORY,
+        /**
+         * The machine was moved to a new location.
+         */
+        LOCATION,
+        /**
+         * The machine was added.
+         */
+        ADDED,
+        /**
+         * The machine was removed.
+         */
+        REMOVED,
+        /**
+         * An item dropped below its threshold.
+         */
+        LOW_STOCK,
+        /**
+         * An item that was below its threshold was restocked to at least the threshold.
+         */
+        RESTOCKED
+    }
+}
@@ -0,0 +1,19 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+import java.util.List;
+
+/**
+ * A page of the vending machines in the fleet, in order of ascending ID.
+ *
+ * @param machines The machines on the page.
+ * @param next     The ID to ask for the machines after to get the next page, or null if this is the last page.
+ */
+public record MachinePage(List<MachineSummary> machines, Integer next) {
+
+    /**
+     * Creates the page, copying the machines.
+     */
+    public MachinePage {
+        machines = List.copyOf(machines);
+    }
+}
@@ -0,0 +1,12 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+/**
+ * The ID and location of a vending machine, without its inventory. Returned for each machine in a
+ * {@link MachinePage}, and for the machine affected by a change to the fleet when the client doesn't want the whole
+ * list back.
+ *
+ * @param id       The ID of the machine.
+ * @param location The location of the machine.
+ */
+public record MachineSummary(int id, String location) {
+}
@@ -0,0 +1,44 @@
+package gr2338.vendmachtrack.springboot.dto;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The vending machines added, changed and removed since a version, which a client applies to its own copy of the
+ * fleet instead of fetching the whole fleet again.
+ *
+ * @param version  The version to ask for changes since next time.
+ * @param full     Whether {@code machines} holds the whole fleet, because the version the client gave was too old or
+ *                 unknown. The client should then replace its copy instead of applying the changes to it.
+ * @param machines The location and inventory of every machine added or changed, by machine ID.
+ * @param removed  The IDs of the machines removed.
+ */
+public record MachineTrackerDelta(long version, boolean full, Map<Integer, MachineState> machines,
+                                  List<Integer> removed) {
+
+    /**
+     * Creates the delta, copying the removed IDs. The machines are wrapped rather than copied, so a view of the whole
+     * fleet is only read while it is written.
+     */
+    public MachineTrackerDelta {
+        machines = Collections.unmodifiableMap(machines);
+        removed = List.copyOf(removed);
+    }
+
+    /**
+     * The state of a vending machine after the latest change to it.
+     *
+     * @param location  The location of the machine.
+     * @param inventory The items in the machine and their quantities.
+     */
+    public record MachineState(String location, Map<String, Integer> inventory) {
+
+        /**
+         * Creates the state, copying the inventory.
+         */
+        public MachineState {
+            inventory = Map.copyOf(inventory);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gr2338.vendmachtrack.springboot.exception;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -16,8 +17,13 @@ import java.util.Date;
  * status codes and error details to the client. Using the {@code @ControllerAdvice} annotation, it applies
  * to all controllers throughout the server application.
  * </p>
+ * <p>
+ * The handler relies on the servlet stack. The reactive variant of the API uses
+ * {@link ReactiveExceptionHandler} instead.
+ * </p>
  */
 @ControllerAdvice
+@Profile("!reactive")
 public class GlobalExceptionHandler {
 
     /**
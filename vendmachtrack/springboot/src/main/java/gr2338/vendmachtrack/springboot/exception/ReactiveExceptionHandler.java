@@ -0,0 +1,80 @@
+package gr2338.vendmachtrack.springboot.exception;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Represents the exception handler of the reactive variant of the server application.
+ * <p>
+ * It returns the same HTTP status codes and error details as {@link GlobalExceptionHandler}, which depends on the
+ * servlet stack, so clients can't tell the two variants apart. It also answers with {@code SERVICE_UNAVAILABLE}
+ * when the scheduler running the blocking operations has no room for more work.
+ * </p>
+ */
+@ControllerAdvice
+@Profile("reactive")
+public class ReactiveExceptionHandler {
+
+    /**
+     * Handles the {@code ResourceNotFoundException} by creating a detailed error response and returning
+     * an HTTP status code of {@code NOT_FOUND}.
+     *
+     * @param ex      the exception that was caught.
+     * @param request the current request.
+     * @return a structured error response containing a timestamp, the error message, and a description.
+     */
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<?> resourceNotFoundException(final ResourceNotFoundException ex,
+                                                       final ServerHttpRequest request) {
+        return errorResponse(ex, request, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Handles the {@code IllegalInputException} by creating a detailed error response and returning
+     * an HTTP status code of {@code BAD_REQUEST}.
+     *
+     * @param ex      the exception that was caught.
+     * @param request the current request.
+     * @return a structured error response containing a timestamp, the error message, and a description.
+     */
+    @ExceptionHandler(IllegalInputException.class)
+    public ResponseEntity<?> illegalInputException(final IllegalInputException ex, final ServerHttpRequest request) {
+        return errorResponse(ex, request, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handles the {@code RejectedExecutionException} thrown when too many operations are waiting for the
+     * persistence scheduler, by returning an HTTP status code of {@code SERVICE_UNAVAILABLE}.
+     *
+     * @param ex      the exception that was caught.
+     * @param request the current request.
+     * @return a structured error response containing a timestamp, the error message, and a description.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<?> rejectedExecutionException(final RejectedExecutionException ex,
+                                                        final ServerHttpRequest request) {
+        return errorResponse(ex, request, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Creates an error response. The description has the same form as the one of the servlet variant.
+     *
+     * @param ex      the exception that was caught.
+     * @param request the current request.
+     * @param status  the HTTP status code.
+     * @return a structured error response containing a timestamp, the error message, and a description.
+     */
+    private static ResponseEntity<?> errorResponse(final Exception ex, final ServerHttpRequest request,
+                                                   final HttpStatus status) {
+        ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(),
+                "uri=" + request.getPath().value());
+        return new ResponseEntity<>(errorDetails, status);
+    }
+}
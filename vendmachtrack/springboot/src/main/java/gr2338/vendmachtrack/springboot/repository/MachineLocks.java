@@ -0,0 +1,86 @@
+package gr2338.vendmachtrack.springboot.repository;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of locks striped over vending machine IDs.
+ * <p>
+ * Every machine ID maps to one lock, so operations on the same machine are
+ * serialized while operations on different machines can usually run in
+ * parallel. Machines sharing a stripe are serialized too, which keeps the number
+ * of locks bounded no matter how large the fleet is. Consecutive IDs always map
+ * to different stripes.
+ * </p>
+ */
+final class MachineLocks {
+
+    /**
+     * Default number of stripes. Must be a power of two.
+     */
+    static final int DEFAULT_STRIPES = 256;
+
+    /**
+     * How far the high bits of an ID are moved down before mixing them into the low bits.
+     */
+    private static final int HASH_SHIFT = 16;
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Creates a set of locks with the default number of stripes.
+     */
+    MachineLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a set of locks with the given number of stripes.
+     *
+     * @param stripeCount The number of stripes, which must be a power of two.
+     * @throws IllegalArgumentException If the stripe count is not a positive power
+     *                                  of two.
+     */
+    MachineLocks(final int stripeCount) {
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count has to be a positive power of two");
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs an action while holding the lock for the given machine ID.
+     * The lock is reentrant, so the action may call other methods that lock the
+     * same machine.
+     *
+     * @param id     The ID of the vending machine.
+     * @param action The action to run.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     */
+    <T> T withLock(final int id, final Supplier<T> action) {
+        ReentrantLock stripe = stripeFor(id);
+
+        stripe.lock();
+        try {
+            return action.get();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Finds the stripe for a machine ID, spreading the high bits into the low bits
+     * the same way {@code HashMap} does.
+     *
+     * @param id The ID of the vending machine.
+     * @return The lock guarding the machine.
+     */
+    private ReentrantLock stripeFor(final int id) {
+        int hash = id ^ (id >>> HASH_SHIFT);
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
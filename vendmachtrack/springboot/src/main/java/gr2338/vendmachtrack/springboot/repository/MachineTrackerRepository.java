@@ -1,22 +1,144 @@
 package gr2338.vendmachtrack.springboot.repository;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import gr2338.vendmachtrack.core.model.ItemIndex;
+import gr2338.vendmachtrack.core.model.LocationIndex;
 import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.StockMonitor;
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
 import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.FsyncPolicy;
+import gr2338.vendmachtrack.jsonio.MappedMachineStore;
 import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
 /**
  * Repository class responsible for handling operations related to the
  * {@code MachineTracker}.
  * This class integrates with the {@code VendmachtrackPersistence} class to
  * manage Vending Machine data.
  * <p>
- * This class is stateless, ensuring that the data retrieved and persisted is
- * always up-to-date with the
- * data storage.
+ * The repository keeps a single in-memory {@code MachineTracker} as the source
+ * of truth. It is loaded from the data storage on first access, and reads never
+ * touch the disk after that. Changes are written behind by a background writer,
+ * which flushes the tracker after a given number of changes, after a given
+ * interval, and when the repository is closed on shutdown.
+ * <p>
+ * If journal compaction is configured, every change is instead appended to the
+ * journal of the {@code VendmachtrackPersistence} as it happens, so a change costs
+ * the same no matter how large the fleet is. Once the journal is long enough, the
+ * background writer compacts it by writing a copy of the in-memory tracker as the
+ * new snapshot. If appending fails, the repository falls back to writing the
+ * whole tracker.
+ * <p>
+ * Desktop clients in local mode may write the tracker file while the server
+ * runs. Without a journal, the repository remembers the revision of the file it
+ * last read or wrote, and only writes if the file still has that revision. If
+ * another process wrote the file in the meantime, its changes are merged into
+ * the in-memory tracker one machine at a time, keeping the machines changed on
+ * the server since its last write, and the write is tried again. When the
+ * changes can't be merged, the file is overwritten and the lost write is
+ * counted, see {@link #getClobberedWrites()}.
+ * <p>
+ * For very large fleets, a {@code MappedMachineStore} can be used instead of the
+ * in-memory tracker by giving it a cache size. Machines are then kept in a
+ * memory-mapped file and decoded when they are accessed, so the heap holds only
+ * the ID index and the cached machines. On first start, the store is filled from
+ * the tracker file, and the background writer exports the store back to the
+ * tracker file as changes build up, so readers of the file, like the local mode
+ * of the desktop app, see the changes. The export and the whole fleet returned
+ * by {@link #getChangesSince(long)} decode one machine at a time as they are
+ * written, and queries by location or item read the store the same way, keeping
+ * only the machines found. Methods that return the whole tracker aren't
+ * supported with the store, since they would decode every machine.
+ * <p>
+ * Every method returns copies of the stored objects, so callers can't modify the
+ * in-memory state without going through the repository.
+ * <p>
+ * The repository is safe to use from many request threads. Operations on a
+ * single machine lock only that machine, so different machines can be changed in
+ * parallel, see {@link #withMachineLock(int, Supplier)}.
+ * <p>
+ * Every change is given a version number, so callers holding a copy of the fleet
+ * can ask for only the machines changed since the version they have, see
+ * {@link #getChangesSince(long)}.
+ * <p>
+ * The IDs of the machines are kept sorted, so the fleet can be listed a page at
+ * a time, see {@link #getLocations(int, int, String)}.
+ * <p>
+ * Machines can be looked up by location through a {@link LocationIndex}, which
+ * is updated as machines are added, moved and removed, see
+ * {@link #getMachinesAt(String)}.
  */
 @Repository
-public class MachineTrackerRepository {
+public class MachineTrackerRepository implements AutoCloseable {
+
+    /**
+     * Default number of unflushed changes that triggers a flush.
+     */
+    static final int DEFAULT_FLUSH_AFTER_CHANGES = 50;
+
+    /**
+     * Default interval in milliseconds between periodic flushes.
+     */
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Default number of journal entries after which the journal is compacted.
+     * Zero turns journal mode off.
+     */
+    static final int DEFAULT_JOURNAL_COMPACT_AFTER = 0;
+
+    /**
+     * Default policy for forcing written data to disk.
+     */
+    static final String DEFAULT_FSYNC_POLICY = "always";
+
+    /**
+     * Default number of machines cached by the memory-mapped store. Zero keeps the
+     * whole tracker in memory instead of using the store.
+     */
+    static final int DEFAULT_MAPPED_CACHE_SIZE = 0;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Number of times changes written by another process are merged before a
+     * flush gives up and overwrites the file.
+     */
+    private static final int MAX_MERGE_ATTEMPTS = 3;
 
     /**
      * Instance of the persistence class used for data operations.
@@ -24,31 +146,561 @@ public class MachineTrackerRepository {
     private final VendmachtrackPersistence persistence;
 
     /**
-     * Constructs a new {@code MachineTrackerRepository} instance.
+     * The memory-mapped store holding the machines, or null if the whole tracker is
+     * kept in memory.
+     */
+    private final MappedMachineStore store;
+
+    /**
+     * The in-memory tracker, or null until it has been loaded.
+     */
+    private volatile MachineTracker tracker;
+
+    /**
+     * Guards the structure of the in-memory tracker. Adding and removing machines,
+     * replacing the tracker, taking snapshots and flushing take the write lock.
+     * Operations on a single machine take the read lock together with the lock for
+     * that machine.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Locks for the individual machines.
+     */
+    private final MachineLocks machineLocks = new MachineLocks();
+
+    /**
+     * Guards the first load of the tracker, which reads the data storage while
+     * holding only the read lock. Not {@code synchronized}, so that request
+     * threads that are virtual don't pin their carrier threads while waiting.
+     */
+    private final Lock loadLock = new ReentrantLock();
+
+    /**
+     * Serializes flushes, which write outside the write lock, so an older copy of
+     * the tracker is never written over a newer one.
+     */
+    private final Lock flushLock = new ReentrantLock();
+
+    /**
+     * Version numbers of the changes made to the machines.
+     */
+    private final MachineVersions versions = new MachineVersions();
+
+    /**
+     * The IDs of all machines in ascending order, or null if machines have been
+     * added or removed since they were last sorted. Sorted again on the next
+     * listing, while holding the read lock, and cleared while holding the write
+     * lock, so a stale array is never published.
+     */
+    private volatile int[] sortedIds;
+
+    /**
+     * Watches the inventories for items dropping below their thresholds. Kept by
+     * the repository rather than the tracker, so the thresholds outlive trackers
+     * that are replaced, and so machines in the memory-mapped store are watched as
+     * well.
+     */
+    private final StockMonitor stockMonitor = new StockMonitor();
+
+    /**
+     * Number of changes made since the last flush.
+     */
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+
+    /**
+     * Number of batches running, see {@link #inBatch(Supplier)}.
+     */
+    private final AtomicInteger runningBatches = new AtomicInteger();
+
+    /**
+     * Whether a compaction of the journal has been handed to the background
+     * writer and not started yet.
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * The revision of the tracker file when it was last read or written, or zero
+     * if the file has no revision to compare against yet. Not used in journal
+     * mode, where the server owns the file.
+     */
+    private volatile long fileRevision;
+
+    /**
+     * The version of the latest change held by the tracker file when it was last
+     * read or written. The machines changed after it are kept when merging changes
+     * written by another process.
+     */
+    private volatile long writtenVersion;
+
+    /**
+     * Number of flushes that overwrote changes written to the file by another
+     * process, because they could not be merged.
+     */
+    private final AtomicLong clobberedWrites = new AtomicLong();
+
+    private final int flushAfterChanges;
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Constructs a new {@code MachineTrackerRepository} instance with the default
+     * flush policy.
      *
      * @param fileName The name of the file where the data is stored.
      */
     public MachineTrackerRepository(final String fileName) {
-        persistence = new VendmachtrackPersistence(fileName);
+        this(fileName, DEFAULT_FLUSH_AFTER_CHANGES, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@code MachineTrackerRepository} instance that writes the
+     * whole tracker on flush.
+     *
+     * @param fileName            The name of the file where the data is stored.
+     * @param flushAfterChanges   The number of changes that triggers a flush.
+     * @param flushIntervalMillis The interval in milliseconds between periodic
+     *                            flushes of pending changes.
+     */
+    public MachineTrackerRepository(final String fileName, final int flushAfterChanges,
+                                    final long flushIntervalMillis) {
+        this(fileName, flushAfterChanges, flushIntervalMillis, DEFAULT_JOURNAL_COMPACT_AFTER, DEFAULT_FSYNC_POLICY);
+    }
+
+    /**
+     * Constructs a new {@code MachineTrackerRepository} instance that keeps the
+     * whole tracker in memory.
+     *
+     * @param fileName            The name of the file where the data is stored.
+     * @param flushAfterChanges   The number of changes that triggers a flush.
+     * @param flushIntervalMillis The interval in milliseconds between periodic
+     *                            flushes of pending changes.
+     * @param journalCompactAfter The number of journal entries after which the
+     *                            journal is compacted, or zero to write the whole
+     *                            tracker on flush instead of journaling changes.
+     * @param fsyncPolicy         When written data is forced to disk, one of
+     *                            {@code always}, {@code batched} and {@code never}.
+     */
+    public MachineTrackerRepository(final String fileName, final int flushAfterChanges,
+                                    final long flushIntervalMillis, final int journalCompactAfter,
+                                    final String fsyncPolicy) {
+        this(fileName, flushAfterChanges, flushIntervalMillis, journalCompactAfter, fsyncPolicy,
+                DEFAULT_MAPPED_CACHE_SIZE);
     }
 
     /**
-     * Retrieves the current state of the {@code MachineTracker}.
+     * Constructs a new {@code MachineTrackerRepository} instance.
      *
-     * @return The current {@code MachineTracker} instance.
+     * @param fileName            The name of the file where the data is stored.
+     * @param flushAfterChanges   The number of changes that triggers a flush.
+     * @param flushIntervalMillis The interval in milliseconds between periodic
+     *                            flushes of pending changes.
+     * @param journalCompactAfter The number of journal entries after which the
+     *                            journal is compacted, or zero to write the whole
+     *                            tracker on flush instead of journaling changes.
+     * @param fsyncPolicy         When written data is forced to disk, one of
+     *                            {@code always}, {@code batched} and {@code never}.
+     * @param mappedCacheSize     The number of machines to cache when keeping the
+     *                            machines in a memory-mapped store, or zero to keep
+     *                            the whole tracker in memory.
+     * @throws UncheckedIOException If the memory-mapped store can't be opened.
+     */
+    @Autowired
+    public MachineTrackerRepository(final String fileName,
+                                    @Value("${vendmachtrack.persistence.flush-after-changes:"
+                                            + DEFAULT_FLUSH_AFTER_CHANGES + "}") final int flushAfterChanges,
+                                    @Value("${vendmachtrack.persistence.flush-interval-millis:"
+                                            + DEFAULT_FLUSH_INTERVAL_MILLIS + "}") final long flushIntervalMillis,
+                                    @Value("${vendmachtrack.persistence.journal-compact-after:"
+                                            + DEFAULT_JOURNAL_COMPACT_AFTER + "}") final int journalCompactAfter,
+                                    @Value("${vendmachtrack.persistence.fsync:"
+                                            + DEFAULT_FSYNC_POLICY + "}") final String fsyncPolicy,
+                                    @Value("${vendmachtrack.persistence.mapped-cache-size:"
+                                            + DEFAULT_MAPPED_CACHE_SIZE + "}") final int mappedCacheSize) {
+        if (flushAfterChanges < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush thresholds have to be higher than zero");
+        }
+        if (journalCompactAfter < 0) {
+            throw new IllegalArgumentException("Journal compaction threshold can't be negative");
+        }
+        if (mappedCacheSize < 0) {
+            throw new IllegalArgumentException("Mapped store cache size can't be negative");
+        }
+        if (mappedCacheSize > 0 && journalCompactAfter > 0) {
+            throw new IllegalArgumentException("The mapped store can't be combined with journal mode");
+        }
+        FsyncPolicy policy = parseFsyncPolicy(fsyncPolicy);
+        this.persistence = journalCompactAfter == 0
+                ? new VendmachtrackPersistence(fileName, policy)
+                : new VendmachtrackPersistence(fileName, policy, journalCompactAfter);
+        this.store = mappedCacheSize == 0 ? null : openStore(fileName, policy, mappedCacheSize, persistence);
+        if (store != null) {
+            this.fileRevision = persistence.getRevision();
+            this.writtenVersion = versions.current();
+        }
+        this.flushAfterChanges = flushAfterChanges;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tracker-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retrieves a snapshot of the current state of the {@code MachineTracker}.
+     *
+     * @return A copy of the current {@code MachineTracker}, or null if no tracker
+     * could be loaded.
+     * @throws UnsupportedOperationException If the machines are kept in the
+     *                                       memory-mapped store.
      */
     public MachineTracker getVendmachtrack() {
-        return persistence.getVendmachtrack();
+        requireInMemory();
+        lock.writeLock().lock();
+        try {
+            MachineTracker machTrack = loadedTracker();
+            return machTrack == null ? null : copyOf(machTrack);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the version of the latest change to any {@code VendingMachine}.
+     * The version changes with every change, so it can tell callers whether data
+     * they got earlier is still current.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return versions.current();
     }
 
     /**
-     * Persists the given {@code MachineTracker} instance.
+     * Retrieves the version of the latest change to a {@code VendingMachine},
+     * without copying the machine.
+     *
+     * @param id The ID of the {@code VendingMachine}.
+     * @return The version, or -1 if the machine is not found.
+     */
+    public long getMachineVersion(final int id) {
+        lock.readLock().lock();
+        try {
+            boolean found;
+            if (store != null) {
+                found = store.contains(id);
+            } else {
+                MachineTracker machTrack = loadedTracker();
+                found = machTrack != null && machTrack.containsMachine(id);
+            }
+            return found ? versions.of(id) : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the {@code VendingMachine}s changed and removed after a version.
+     * <p>
+     * Only the machines changed since the given version are copied, so a caller
+     * that keeps its copy of the fleet up to date this way pays for the changes,
+     * not for the size of the fleet. If the version is older than the oldest
+     * change that is remembered, or wasn't handed out by this repository, the
+     * whole fleet is returned instead.
+     *
+     * @param since The version the caller is up to date with, or zero to get the
+     *              whole fleet.
+     * @return The changes, or null if no tracker could be loaded.
+     */
+    public TrackerChanges getChangesSince(final long since) {
+        lock.writeLock().lock();
+        try {
+            if (store == null && loadedTracker() == null) {
+                return null;
+            }
+            MachineVersions.Changes changes = versions.since(since);
+            if (changes == null) {
+                if (store != null) {
+                    // Only the offsets of the machines are copied, they are decoded as the answer is written.
+                    return new TrackerChanges(versions.current(), true, store.snapshot(), List.of());
+                }
+                List<VendingMachine> machines = new ArrayList<>();
+                forEachMachine(vendMach -> machines.add(copyOf(vendMach)));
+                return new TrackerChanges(versions.current(), true, machines, List.of());
+            }
+            List<VendingMachine> machines = new ArrayList<>(changes.changed().size());
+            for (int id : changes.changed()) {
+                VendingMachine vendMach = findVendMach(id);
+                if (vendMach != null) {
+                    machines.add(copyOf(vendMach));
+                }
+            }
+            return new TrackerChanges(changes.version(), false, machines, changes.removed());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the locations of a page of {@code VendingMachine}s, in order of
+     * ascending ID.
+     * <p>
+     * The page starts after the given ID, found by binary search in the sorted
+     * IDs, and only the machines on the page are read, so the cost depends on the
+     * size of the page, not the size of the fleet. With a location prefix, the
+     * machines that don't match are skipped, which may read further than the page.
+     *
+     * @param afterId  The ID the page starts after, or {@link Integer#MIN_VALUE}
+     *                 for the first page.
+     * @param limit    The largest number of machines on the page.
+     * @param prefix   The start of the location, ignoring case, or null for all
+     *                 locations.
+     * @return The IDs of the machines on the page mapped to their locations, in
+     * order of ascending ID, or null if no tracker could be loaded.
+     */
+    public LinkedHashMap<Integer, String> getLocations(final int afterId, final int limit, final String prefix) {
+        lock.readLock().lock();
+        try {
+            int[] ids = sortedIds();
+            if (ids == null) {
+                return null;
+            }
+            int start = Arrays.binarySearch(ids, afterId);
+            start = start >= 0 ? start + 1 : -start - 1;
+
+            LinkedHashMap<Integer, String> page = new LinkedHashMap<>();
+            for (int i = start; i < ids.length && page.size() < limit; i++) {
+                int id = ids[i];
+                String location = machineLocks.withLock(id, () -> {
+                    VendingMachine vendMach = findVendMach(id);
+                    return vendMach == null ? null : vendMach.getLocation();
+                });
+                if (location != null && (prefix == null
+                        || location.regionMatches(true, 0, prefix, 0, prefix.length()))) {
+                    page.put(id, location);
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the location of every {@code VendingMachine}, using the location
+     * index, so no machine is copied.
+     *
+     * @return The IDs of the machines mapped to their locations, or null if no
+     * tracker could be loaded.
+     */
+    public HashMap<Integer, String> getAllLocations() {
+        return queryLocations(location -> true, LocationIndex::getAllMachines);
+    }
+
+    /**
+     * Retrieves the {@code VendingMachine}s at a location, ignoring case, using
+     * the location index.
+     *
+     * @param location The location.
+     * @return The IDs of the machines mapped to their locations, in order of
+     * ascending ID, or null if no tracker could be loaded.
+     */
+    public SortedMap<Integer, String> getMachinesAt(final String location) {
+        return queryLocations(at(location), index -> index.getMachinesAt(location));
+    }
+
+    /**
+     * Retrieves the {@code VendingMachine}s at every location starting with a
+     * prefix, ignoring case, using the location index.
+     *
+     * @param prefix The start of the location.
+     * @return The IDs of the machines mapped to their locations, in order of
+     * ascending ID, or null if no tracker could be loaded.
+     */
+    public SortedMap<Integer, String> getMachinesWithLocationPrefix(final String prefix) {
+        return queryLocations(startingWith(prefix), index -> index.getMachinesWithPrefix(prefix));
+    }
+
+    /**
+     * Retrieves the number of {@code VendingMachine}s at a location, ignoring
+     * case, using the location index.
+     *
+     * @param location The location.
+     * @return The number of machines, or null if no tracker could be loaded.
+     */
+    public Integer countMachinesAt(final String location) {
+        return queryLocations(at(location), index -> index.countAt(location));
+    }
+
+    /**
+     * Retrieves the number of {@code VendingMachine}s at every location starting
+     * with a prefix, ignoring case, using the location index.
+     *
+     * @param prefix The start of the location, or an empty string for every
+     *               location.
+     * @return The locations mapped to the number of machines there, or null if no
+     * tracker could be loaded.
+     */
+    public SortedMap<String, Integer> countByLocation(final String prefix) {
+        return queryLocations(startingWith(prefix), index -> index.countByLocation(prefix));
+    }
+
+    /**
+     * Retrieves the {@code VendingMachine}s stocking an item, using the item
+     * index.
+     *
+     * @param item The name of the item.
+     * @return The IDs of the machines mapped to their quantities of the item, in
+     * order of ascending ID, or null if no tracker could be loaded.
+     */
+    public SortedMap<Integer, Integer> getMachinesStocking(final String item) {
+        return queryItems(item, index -> index.getMachinesStocking(item));
+    }
+
+    /**
+     * Retrieves the total quantity of an item in all {@code VendingMachine}s,
+     * using the item index.
+     *
+     * @param item The name of the item.
+     * @return The total quantity, or null if no tracker could be loaded.
+     */
+    public Long getTotalQuantity(final String item) {
+        return queryItems(item, index -> index.getTotalQuantity(item));
+    }
+
+    /**
+     * Retrieves the {@code VendingMachine}s with the highest quantities of an
+     * item, using the item index.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of machines to retrieve.
+     * @return The IDs of the machines mapped to their quantities of the item, in
+     * order of descending quantity, or null if no tracker could be loaded.
+     */
+    public LinkedHashMap<Integer, Integer> getTopMachines(final String item, final int count) {
+        return queryItems(item, index -> index.getTopMachines(item, count));
+    }
+
+    /**
+     * Sets the threshold an item is compared to in every {@code VendingMachine}
+     * without a threshold of its own, and checks the machines stocking the item
+     * against it. The machines are found through the item index, or by reading
+     * the memory-mapped store one machine at a time, so only the machines stocking
+     * the item are kept. Takes the write lock, so no quantity changes while they
+     * are checked.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     */
+    public void setItemThreshold(final String item, final int threshold) {
+        lock.writeLock().lock();
+        try {
+            stockMonitor.setItemThreshold(item, threshold);
+            SortedMap<Integer, Integer> stocking = queryItems(item, index -> index.getMachinesStocking(item));
+            if (stocking != null) {
+                stocking.forEach((id, quantity) -> stockMonitor.update(id, item, quantity));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the threshold every item in a specific {@code VendingMachine} is
+     * compared to, and checks the inventory of the machine against it.
+     *
+     * @param id        The ID of the {@code VendingMachine}.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     * @return Whether a machine with the ID was found.
+     */
+    public boolean setMachineThreshold(final int id, final int threshold) {
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            if (vendMach == null) {
+                return false;
+            }
+            stockMonitor.setMachineThreshold(id, threshold);
+            for (Map.Entry<String, Integer> entry : vendMach.getStatusView().entrySet()) {
+                stockMonitor.update(id, entry.getKey(), entry.getValue());
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Retrieves the items that are below their thresholds in any
+     * {@code VendingMachine}, from the set kept up to date as items are sold.
+     *
+     * @return The low items in order of machine ID and item name, or null if no
+     * tracker could be loaded.
+     */
+    public List<StockAlert> getLowStock() {
+        lock.readLock().lock();
+        try {
+            if (store == null && loadedTracker() == null) {
+                return null;
+            }
+            return stockMonitor.getLowStock();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a listener told when an item drops below its threshold in a
+     * {@code VendingMachine}, and when it is restocked. The listener is called on
+     * the thread making the change, while holding the lock for the machine, so it
+     * must return quickly.
+     *
+     * @param listener The listener.
+     */
+    public void addStockListener(final Consumer<StockAlert> listener) {
+        stockMonitor.addListener(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addStockListener(Consumer)}.
+     *
+     * @param listener The listener.
+     */
+    public void removeStockListener(final Consumer<StockAlert> listener) {
+        stockMonitor.removeListener(listener);
+    }
+
+    /**
+     * Replaces the in-memory {@code MachineTracker} with the given instance and
+     * schedules it to be persisted. In journal mode it is written right away.
      *
      * @param vendmachtrack The {@code MachineTracker} instance to save.
      * @return The saved {@code MachineTracker} instance.
      */
     public MachineTracker saveVendmachtrack(final MachineTracker vendmachtrack) {
-        persistence.saveVendmachtrack(vendmachtrack);
+        lock.writeLock().lock();
+        try {
+            versions.replacedAll();
+            sortedIds = null;
+            stockMonitor.forgetAll();
+            if (store != null) {
+                if (vendmachtrack != null) {
+                    store.replaceAll(vendmachtrack);
+                }
+                if (stockMonitor.isActive()) {
+                    forEachMachine(vendMach -> vendMach.getStatusView().forEach(
+                            (item, quantity) -> stockMonitor.update(vendMach.getId(), item, quantity)));
+                }
+            } else {
+                tracker = vendmachtrack == null ? null : watched(withIndex(copyOf(vendmachtrack)));
+                if (tracker != null && persistence.isJournaled()) {
+                    // Later journal entries build on the new tracker, so it has to be written first.
+                    persistence.saveVendmachtrack(tracker);
+                    return vendmachtrack;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changed();
         return vendmachtrack;
     }
 
@@ -56,16 +708,14 @@ public class MachineTrackerRepository {
      * Retrieves a {@code VendingMachine} by its ID.
      *
      * @param id The ID of the {@code VendingMachine}.
-     * @return The {@code VendingMachine} with the specified ID, or null if not
-     * found.
+     * @return A copy of the {@code VendingMachine} with the specified ID, or null
+     * if not found.
      */
     public VendingMachine getVendMach(final int id) {
-        for (VendingMachine vendMach : getVendmachtrack().getMachines()) {
-            if (vendMach.getId() == id) {
-                return vendMach;
-            }
-        }
-        return null;
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            return vendMach == null ? null : copyOf(vendMach);
+        });
     }
 
     /**
@@ -73,19 +723,18 @@ public class MachineTrackerRepository {
      *
      * @param id       The ID of the {@code VendingMachine}.
      * @param location The new location.
-     * @return The updated {@code VendingMachine}, or null if not found.
+     * @return A copy of the updated {@code VendingMachine}, or null if not found.
      */
     public VendingMachine changeLocation(final int id, final String location) {
-        MachineTracker machTrack = getVendmachtrack();
-
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                vendMach.setLocation(location);
-                saveVendmachtrack(machTrack);
-                return vendMach;
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            if (vendMach == null) {
+                return null;
             }
-        }
-        return null;
+            vendMach.setLocation(location);
+            changed(vendMach, () -> persistence.recordChangeLocation(id, location));
+            return copyOf(vendMach);
+        });
     }
 
     /**
@@ -94,40 +743,124 @@ public class MachineTrackerRepository {
      * @param id       The ID of the {@code VendingMachine}.
      * @param item     The item to add.
      * @param quantity The quantity of the item to add.
-     * @return The updated {@code VendingMachine}, or null if not found.
+     * @return A copy of the updated {@code VendingMachine}, or null if not found.
      */
     public VendingMachine addItem(final int id, final String item, final int quantity) {
-        MachineTracker machTrack = getVendmachtrack();
-
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                vendMach.addItem(item, quantity);
-                saveVendmachtrack(machTrack);
-                return vendMach;
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            if (vendMach == null) {
+                return null;
             }
-        }
-        return null;
+            vendMach.addItem(item, quantity);
+            storeInventoryChanged(id, item, vendMach.getQuantity(item));
+            changed(vendMach, () -> persistence.recordAddItem(id, item, quantity));
+            return copyOf(vendMach);
+        });
     }
 
     /**
      * Removes an item from a specific {@code VendingMachine} based on its ID.
+     * Nothing is removed if the machine holds less than the given quantity.
      *
      * @param id       The ID of the {@code VendingMachine}.
      * @param item     The item to remove.
      * @param quantity The quantity of the item to remove.
-     * @return The updated {@code VendingMachine}, or null if not found.
+     * @return A copy of the updated {@code VendingMachine}, or null if not found.
      */
     public VendingMachine removeItem(final int id, final String item, final int quantity) {
-        MachineTracker machTrack = getVendmachtrack();
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            if (vendMach == null) {
+                return null;
+            }
+            if (vendMach.removeItem(item, quantity)) {
+                storeInventoryChanged(id, item, vendMach.getQuantity(item));
+                changed(vendMach, () -> persistence.recordRemoveItem(id, item, quantity));
+            }
+            return copyOf(vendMach);
+        });
+    }
+
+    /**
+     * Applies several changes to the inventory of a specific {@code VendingMachine}
+     * as one change to the data storage. In journal mode the changes are appended
+     * to the journal in one write. Removals are skipped if the machine holds less
+     * than the given quantity when they are reached, and are left out of the
+     * journal.
+     *
+     * @param id      The ID of the {@code VendingMachine}.
+     * @param changes The changes in the order they are applied, as item names
+     *                mapped to the quantity to add, or to the negated quantity to
+     *                remove.
+     * @return A copy of the updated {@code VendingMachine}, or null if not found.
+     */
+    public VendingMachine applyItemChanges(final int id, final List<Map.Entry<String, Integer>> changes) {
+        return withMachineLock(id, () -> {
+            VendingMachine vendMach = findVendMach(id);
+            if (vendMach == null) {
+                return null;
+            }
+            List<Map.Entry<String, Integer>> applied = new ArrayList<>(changes.size());
+            for (Map.Entry<String, Integer> change : changes) {
+                int delta = change.getValue();
+                if (delta >= 0) {
+                    vendMach.addItem(change.getKey(), delta);
+                } else if (!vendMach.tryRemove(change.getKey(), -delta)) {
+                    continue;
+                }
+                storeInventoryChanged(id, change.getKey(), vendMach.getQuantity(change.getKey()));
+                applied.add(change);
+            }
+            if (!applied.isEmpty()) {
+                changed(vendMach, () -> persistence.recordItemChanges(id, applied));
+            }
+            return copyOf(vendMach);
+        });
+    }
 
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                vendMach.removeItem(item, quantity);
-                saveVendmachtrack(machTrack);
-                return vendMach;
+    /**
+     * Runs an action that makes many changes, holding back background flushes
+     * until it is done. Changes made while the action runs are flushed together
+     * afterwards, instead of the flush threshold being reached several times
+     * along the way.
+     *
+     * @param action The action to run.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     */
+    public <T> T inBatch(final Supplier<T> action) {
+        runningBatches.incrementAndGet();
+        try {
+            return action.get();
+        } finally {
+            if (runningBatches.decrementAndGet() == 0 && pendingChanges.get() >= flushAfterChanges
+                    && !writer.isShutdown()) {
+                writer.execute(this::flush);
             }
         }
-        return null;
+    }
+
+    /**
+     * Runs an action while holding the lock for a single {@code VendingMachine}.
+     * <p>
+     * Operations on the same machine are serialized, while operations on
+     * different machines run in parallel. Repository calls for the same machine
+     * can be made from inside the action, which makes it possible to check the
+     * state of a machine and change it as one atomic step. The action must not add
+     * or remove machines.
+     *
+     * @param id     The ID of the {@code VendingMachine} to lock.
+     * @param action The action to run while holding the lock.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     */
+    public <T> T withMachineLock(final int id, final Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return machineLocks.withLock(id, action);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -136,17 +869,59 @@ public class MachineTrackerRepository {
      *
      * @param id       The ID of the new {@code VendingMachine}.
      * @param location The location of the new {@code VendingMachine}.
-     * @return The updated {@code MachineTracker} instance.
+     * @return A snapshot of the updated {@code MachineTracker}.
+     * @throws IllegalArgumentException      If a machine with the ID already exists.
+     * @throws UnsupportedOperationException If the machines are kept in the
+     *                                       memory-mapped store, see
+     *                                       {@link #addMachine(int, String)}.
      */
     public MachineTracker addVendMach(final int id, final String location) {
-        MachineTracker machTrack = getVendmachtrack();
-        VendingMachine vendMach = new VendingMachine();
+        requireInMemory();
+        lock.writeLock().lock();
+        try {
+            if (addMachine(id, location) == null) {
+                throw new IllegalArgumentException("The vending machine is already part of this tracker");
+            }
+            return copyOf(loadedTracker());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        vendMach.setId(id);
-        vendMach.setLocation(location);
-        machTrack.addVendingMachine(vendMach);
+    /**
+     * Adds a new {@code VendingMachine} with a specified ID and location, without
+     * taking a snapshot of the whole {@code MachineTracker}. Whether the ID is
+     * taken is checked while holding the write lock, so of two machines added
+     * with the same ID at once, only one is added.
+     *
+     * @param id       The ID of the new {@code VendingMachine}.
+     * @param location The location of the new {@code VendingMachine}.
+     * @return A copy of the added {@code VendingMachine}, or null if a machine
+     * with the ID already exists.
+     */
+    public VendingMachine addMachine(final int id, final String location) {
+        lock.writeLock().lock();
+        try {
+            if (store != null ? store.contains(id) : loadedTracker().containsMachine(id)) {
+                return null;
+            }
+            VendingMachine vendMach = new VendingMachine();
 
-        return saveVendmachtrack(machTrack);
+            vendMach.setId(id);
+            vendMach.setLocation(location);
+            if (store != null) {
+                store.put(vendMach);
+                changed();
+            } else {
+                loadedTracker().addVendingMachine(vendMach);
+                changed(() -> persistence.recordAddVendMach(id, location));
+            }
+            versions.changed(id);
+            sortedIds = null;
+            return copyOf(vendMach);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -154,19 +929,652 @@ public class MachineTrackerRepository {
      * {@code MachineTracker}.
      *
      * @param id The ID of the {@code VendingMachine} to remove.
-     * @return The updated {@code MachineTracker} instance.
+     * @return A snapshot of the updated {@code MachineTracker}.
+     * @throws UnsupportedOperationException If the machines are kept in the
+     *                                       memory-mapped store, see
+     *                                       {@link #removeMachine(int)}.
      */
     public MachineTracker removeVendMach(final int id) {
-        MachineTracker machTrack = getVendmachtrack();
+        requireInMemory();
+        lock.writeLock().lock();
+        try {
+            removeMachine(id);
+            return copyOf(loadedTracker());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a {@code VendingMachine} based on its ID, without taking a snapshot
+     * of the whole {@code MachineTracker}.
+     *
+     * @param id The ID of the {@code VendingMachine} to remove.
+     * @return Whether a machine with the ID was removed.
+     */
+    public boolean removeMachine(final int id) {
+        lock.writeLock().lock();
+        try {
+            boolean removed;
+            if (store != null) {
+                removed = store.remove(id);
+                stockMonitor.forget(id);
+                if (removed) {
+                    changed();
+                }
+            } else {
+                MachineTracker machTrack = loadedTracker();
+                removed = machTrack.containsMachine(id);
+                if (removed) {
+                    machTrack.removeVendingMachine(id);
+                    changed(() -> persistence.recordRemoveVendMach(id));
+                }
+            }
+            if (removed) {
+                versions.removed(id);
+                sortedIds = null;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the in-memory {@code MachineTracker} to the data storage if there are
+     * changes that haven't been written yet.
+     * <p>
+     * This is called by the background writer, but can also be called directly to
+     * force pending changes to disk. The tracker is copied while holding the write
+     * lock and written after releasing it, so requests only wait for the copy, not
+     * for the disk. In journal mode, the copy is written as a compaction of the
+     * journal. If writing fails, the changes are kept as pending and retried on the
+     * next flush. With the memory-mapped store, this forces written machines to
+     * disk, and exports the store to the tracker file if machines have changed.
+     */
+    public void flush() {
+        if (store != null) {
+            store.flush();
+        }
+
+        flushLock.lock();
+        try {
+            int changes = pendingChanges.getAndSet(0);
+            if (changes == 0) {
+                return;
+            }
+            if (!write()) {
+                pendingChanges.addAndGet(changes);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of writes to the data storage that have failed since
+     * the repository was created.
+     *
+     * @return The number of failed writes.
+     */
+    public long getFailedWrites() {
+        return persistence.getFailedWrites() + (store != null ? store.getFailedWrites() : 0);
+    }
+
+    /**
+     * Retrieves the number of flushes that overwrote changes another process had
+     * written to the tracker file, because they could not be merged into the
+     * in-memory tracker. Changes written by another process are never merged into
+     * the memory-mapped store.
+     *
+     * @return The number of overwritten writes.
+     */
+    public long getClobberedWrites() {
+        return clobberedWrites.get();
+    }
+
+    /**
+     * Stops the background writer and flushes any pending changes.
+     * Called by Spring when the application shuts down.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Writes the in-memory tracker, or the machines of the memory-mapped store, to
+     * the data storage. Must be called while holding the flush lock.
+     * <p>
+     * Without a journal, the file is only written if it still has the revision it
+     * was last read or written with. Otherwise the changes in it are merged and
+     * the write is tried again, see {@link #mergeFileChanges()}.
+     * </p>
+     *
+     * @return Whether the tracker was written.
+     */
+    private boolean write() {
+        for (int attempt = 1; ; attempt++) {
+            MachineTracker copy = null;
+            Collection<VendingMachine> machines = null;
+            long journalSequence = 0;
+            long version;
+            long failedWrites = persistence.getFailedWrites();
+            if (store != null) {
+                // The store takes its own lock to copy the offsets of the machines, which are then decoded one at
+                // a time as they are written, without holding the repository lock.
+                version = versions.current();
+                machines = store.snapshot();
+            } else {
+                lock.writeLock().lock();
+                try {
+                    if (tracker == null) {
+                        return true;
+                    }
+                    copy = copyOf(tracker);
+                    if (persistence.isJournaled()) {
+                        // No change is journaled while holding the write lock, so the copy holds exactly the
+                        // changes up to this sequence number.
+                        journalSequence = persistence.getJournalSequence();
+                    }
+                    version = versions.current();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            try {
+                if (persistence.isJournaled()) {
+                    return persistence.compact(copy, journalSequence);
+                }
+                long revision = fileRevision;
+                if (revision == 0) {
+                    // The file has no revision to compare against yet, so it is written as it is.
+                    if (machines != null) {
+                        persistence.saveMachines(machines);
+                    } else {
+                        persistence.saveVendmachtrack(copy);
+                    }
+                    revision = persistence.getRevision();
+                } else if (machines != null ? persistence.saveMachinesIfUnchanged(machines, revision)
+                        : persistence.saveIfUnchanged(copy, revision)) {
+                    revision++;
+                }
+                if (persistence.getFailedWrites() != failedWrites) {
+                    return false;
+                }
+                fileRevision = revision;
+                writtenVersion = version;
+                return true;
+            } catch (ConcurrentModificationException e) {
+                if (attempt >= MAX_MERGE_ATTEMPTS || !mergeFileChanges()) {
+                    clobberedWrites.incrementAndGet();
+                    System.err.println("Overwriting changes another process made to the tracker file\n" + e);
+                    fileRevision = 0;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error flushing tracker to file\n" + e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Merges the changes another process wrote to the tracker file into the
+     * in-memory tracker. Machines changed or removed on the server since the file
+     * was last written are kept as they are, while other machines are replaced,
+     * added or removed to match the file. Must be called while holding the flush
+     * lock.
+     *
+     * @return Whether the changes were merged, false if the machines changed on
+     * the server can't be told apart, or the machines are kept in the
+     * memory-mapped store.
+     */
+    private boolean mergeFileChanges() {
+        if (store != null) {
+            return false;
+        }
+        VendmachtrackPersistence.Snapshot snapshot = persistence.getSnapshot();
+        if (snapshot == null || snapshot.tracker() == null) {
+            return false;
+        }
+        MachineTracker theirs = snapshot.tracker();
+
+        lock.writeLock().lock();
+        try {
+            MachineTracker machTrack = tracker;
+            MachineVersions.Changes ours = versions.since(writtenVersion);
+            if (machTrack == null || ours == null) {
+                return false;
+            }
+            Set<Integer> kept = new HashSet<>(ours.changed());
+            kept.addAll(ours.removed());
+            for (VendingMachine vendMach : theirs.getMachinesView()) {
+                int id = vendMach.getId();
+                VendingMachine mine = machTrack.getMachine(id);
+                if (kept.contains(id) || mine != null && sameState(mine, vendMach)) {
+                    continue;
+                }
+                if (mine != null) {
+                    machTrack.removeVendingMachine(id);
+                }
+                machTrack.addVendingMachine(copyOf(vendMach));
+                versions.changed(id);
+            }
+            for (VendingMachine mine : machTrack.getMachines()) {
+                int id = mine.getId();
+                if (!kept.contains(id) && !theirs.containsMachine(id)) {
+                    machTrack.removeVendingMachine(id);
+                    versions.removed(id);
+                }
+            }
+            sortedIds = null;
+            fileRevision = snapshot.revision();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the journal by writing a copy of the in-memory tracker as the new
+     * snapshot. Run by the background writer, so request threads only wait for the
+     * copy.
+     */
+    private void compact() {
+        compactionScheduled.set(false);
+        flushLock.lock();
+        try {
+            if (!write()) {
+                System.err.println("Error compacting the journal, it is retried after the next change");
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Checks that the whole tracker is kept in memory, for the methods that return
+     * a copy of it.
+     *
+     * @throws UnsupportedOperationException If the machines are kept in the
+     *                                       memory-mapped store.
+     */
+    private void requireInMemory() {
+        if (store != null) {
+            throw new UnsupportedOperationException(
+                    "The whole tracker isn't copied when the machines are kept in the mapped store");
+        }
+    }
 
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                machTrack.removeVendingMachine(vendMach);
+    /**
+     * Parses the name of an fsync policy, ignoring case.
+     *
+     * @param name The name of the policy.
+     * @return The policy.
+     * @throws IllegalArgumentException If there is no policy with the name.
+     */
+    private static FsyncPolicy parseFsyncPolicy(final String name) {
+        try {
+            return FsyncPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown fsync policy: " + name, e);
+        }
+    }
+
+    /**
+     * Opens the memory-mapped store for a tracker file. If the store doesn't exist
+     * yet, it is filled with the machines of the tracker file.
+     *
+     * @param fileName    The name of the tracker file.
+     * @param policy      The policy for forcing written machines to disk.
+     * @param cacheSize   The number of machines to cache.
+     * @param persistence Reads the tracker file.
+     * @return The opened store.
+     * @throws UncheckedIOException If the store can't be opened.
+     */
+    private static MappedMachineStore openStore(final String fileName, final FsyncPolicy policy,
+                                                final int cacheSize, final VendmachtrackPersistence persistence) {
+        try {
+            boolean existed = MappedMachineStore.exists(fileName);
+            MappedMachineStore mappedStore = new MappedMachineStore(fileName, policy, cacheSize);
+            if (!existed) {
+                MachineTracker machTrack = persistence.getVendmachtrack();
+                if (machTrack != null) {
+                    mappedStore.replaceAll(machTrack);
+                }
             }
+            return mappedStore;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the machine store for " + fileName, e);
         }
+    }
 
-        saveVendmachtrack(machTrack);
+    /**
+     * Registers a change to a single machine and gives it the next version. With
+     * the memory-mapped store, the changed machine is written back to it right
+     * away, and the change counts towards the next export to the tracker file.
+     * Must be called while holding the lock for the machine.
+     *
+     * @param vendMach The changed machine.
+     * @param journal  Appends the change to the journal, returning whether it was
+     *                 written.
+     */
+    private void changed(final VendingMachine vendMach, final BooleanSupplier journal) {
+        versions.changed(vendMach.getId());
+        if (store != null) {
+            store.put(vendMach);
+        }
+        changed(journal);
+    }
 
+    /**
+     * Registers a change to the in-memory tracker. In journal mode the change is
+     * appended to the journal right away, which has to happen while holding the
+     * lock guarding the change so entries are journaled in the order they were
+     * made, and the background writer compacts the journal once it is long enough.
+     * Otherwise, or if appending fails, the change is left for the background
+     * writer.
+     *
+     * @param journal Appends the change to the journal, returning whether it was
+     *                written.
+     */
+    private void changed(final BooleanSupplier journal) {
+        if (!persistence.isJournaled() || !journal.getAsBoolean()) {
+            changed();
+        } else if (persistence.needsCompaction() && !writer.isShutdown()
+                && compactionScheduled.compareAndSet(false, true)) {
+            writer.execute(this::compact);
+        }
+    }
+
+    /**
+     * Registers a change to the in-memory tracker, and hands a flush to the
+     * background writer once enough changes have built up.
+     */
+    private void changed() {
+        if (pendingChanges.incrementAndGet() >= flushAfterChanges && runningBatches.get() == 0
+                && !writer.isShutdown()) {
+            writer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Returns the in-memory tracker, loading it from the data storage if this
+     * hasn't been done yet. Must be called while holding the lock.
+     *
+     * @return The in-memory tracker, or null if it could not be loaded.
+     */
+    private MachineTracker loadedTracker() {
+        if (tracker == null) {
+            loadLock.lock();
+            try {
+                if (tracker == null) {
+                    if (!persistence.isJournaled()) {
+                        // Read before the tracker, so a write in between shows up as a change on the next flush.
+                        fileRevision = persistence.getRevision();
+                    }
+                    tracker = watched(withIndex(persistence.getVendmachtrack()));
+                    writtenVersion = versions.current();
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        return tracker;
+    }
+
+    /**
+     * Runs a query on the location index while holding the read lock. With the
+     * memory-mapped store, which keeps no index, a snapshot of the store is read
+     * one machine at a time and only the machines at matching locations are put
+     * in a temporary index for the query, so the heap holds the machines found
+     * rather than the fleet.
+     *
+     * @param matches Whether a location can be part of the result.
+     * @param query   The query.
+     * @param <T>     The type of the result.
+     * @return The result of the query, or null if no tracker could be loaded.
+     */
+    private <T> T queryLocations(final Predicate<String> matches, final Function<LocationIndex, T> query) {
+        if (store != null) {
+            LocationIndex locations = new LocationIndex();
+            for (VendingMachine vendMach : store.snapshot()) {
+                if (vendMach.getLocation() != null && matches.test(vendMach.getLocation())) {
+                    locations.put(vendMach.getId(), vendMach.getLocation());
+                }
+            }
+            return query.apply(locations);
+        }
+
+        lock.readLock().lock();
+        try {
+            MachineTracker machTrack = loadedTracker();
+            return machTrack == null ? null : query.apply(machTrack.getLocationIndex());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query about an item on the item index while holding the read lock.
+     * The index of the in-memory tracker is built on the first query, while
+     * holding the write lock so no inventory changes while it is built. With the
+     * memory-mapped store, which keeps no index, a snapshot of the store is read
+     * one machine at a time and only the machines stocking the item are put in a
+     * temporary index for the query.
+     *
+     * @param item  The name of the item the query is about.
+     * @param query The query.
+     * @param <T>   The type of the result.
+     * @return The result of the query, or null if no tracker could be loaded.
+     */
+    private <T> T queryItems(final String item, final Function<ItemIndex, T> query) {
+        if (store != null) {
+            ItemIndex items = new ItemIndex();
+            for (VendingMachine vendMach : store.snapshot()) {
+                Integer quantity = vendMach.getStatusView().get(item);
+                if (quantity != null) {
+                    items.update(vendMach.getId(), item, 0, quantity);
+                }
+            }
+            return query.apply(items);
+        }
+
+        lock.readLock().lock();
+        try {
+            MachineTracker machTrack = loadedTracker();
+            if (machTrack == null) {
+                return null;
+            }
+            if (machTrack.isItemIndexed()) {
+                return query.apply(machTrack.getItemIndex());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            MachineTracker machTrack = loadedTracker();
+            return machTrack == null ? null : query.apply(machTrack.getItemIndex());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tells the stock monitor about a change to the quantity of an item in a
+     * machine of the memory-mapped store. Machines in the in-memory tracker report
+     * their own changes. Must be called while holding the lock for the machine.
+     *
+     * @param id    The ID of the {@code VendingMachine}.
+     * @param item  The name of the item.
+     * @param after The quantity after the change.
+     */
+    private void storeInventoryChanged(final int id, final String item, final int after) {
+        if (store != null) {
+            stockMonitor.update(id, item, after);
+        }
+    }
+
+    /**
+     * Tests whether a location is the given one, ignoring case.
+     *
+     * @param location The location to look for.
+     * @return The test.
+     */
+    private static Predicate<String> at(final String location) {
+        return candidate -> candidate.equalsIgnoreCase(location);
+    }
+
+    /**
+     * Tests whether a location starts with a prefix, ignoring case.
+     *
+     * @param prefix The start of the location.
+     * @return The test.
+     */
+    private static Predicate<String> startingWith(final String prefix) {
+        return candidate -> candidate.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     * Runs an action for every {@code VendingMachine}. Must be called while
+     * holding the write lock. With the memory-mapped store, the machines are
+     * decoded copies.
+     *
+     * @param action The action.
+     */
+    private void forEachMachine(final Consumer<VendingMachine> action) {
+        if (store != null) {
+            store.snapshot().forEach(action);
+            return;
+        }
+        MachineTracker machTrack = loadedTracker();
+        if (machTrack != null) {
+            machTrack.getMachines().forEach(action);
+        }
+    }
+
+    /**
+     * Returns the IDs of all machines in ascending order, sorting them if machines
+     * have been added or removed since the last time. Must be called while holding
+     * the lock.
+     *
+     * @return The sorted IDs, or null if no tracker could be loaded.
+     */
+    private int[] sortedIds() {
+        int[] ids = sortedIds;
+        if (ids != null) {
+            return ids;
+        }
+        if (store != null) {
+            ids = store.ids();
+        } else {
+            MachineTracker machTrack = loadedTracker();
+            if (machTrack == null) {
+                return null;
+            }
+            ids = machTrack.getMachinesView().stream().mapToInt(VendingMachine::getId).toArray();
+        }
+        Arrays.sort(ids);
+        sortedIds = ids;
+        return ids;
+    }
+
+    /**
+     * Finds a {@code VendingMachine} in the in-memory tracker by its ID. Must be
+     * called while holding the lock. With the memory-mapped store, the machine is
+     * a decoded copy that has to be written back when changed.
+     *
+     * @param id The ID of the {@code VendingMachine}.
+     * @return The stored {@code VendingMachine}, or null if not found.
+     */
+    private VendingMachine findVendMach(final int id) {
+        if (store != null) {
+            return store.get(id);
+        }
+        MachineTracker machTrack = loadedTracker();
+
+        return machTrack == null ? null : machTrack.getMachine(id);
+    }
+
+    /**
+     * Builds the ID index of a tracker up front. The index is otherwise built on
+     * the first lookup, which may happen on several threads at once since lookups
+     * only hold the read lock.
+     *
+     * @param machTrack The tracker to index, may be null.
+     * @return The same tracker.
+     */
+    private static MachineTracker withIndex(final MachineTracker machTrack) {
+        if (machTrack != null) {
+            machTrack.containsMachine(0);
+        }
         return machTrack;
     }
+
+    /**
+     * Tells the stock monitor about changes to the inventories of a tracker, and
+     * checks its machines against the thresholds.
+     *
+     * @param machTrack The tracker to watch, may be null.
+     * @return The same tracker.
+     */
+    private MachineTracker watched(final MachineTracker machTrack) {
+        if (machTrack != null) {
+            machTrack.setStockMonitor(stockMonitor);
+        }
+        return machTrack;
+    }
+
+    /**
+     * Checks whether two {@code VendingMachine}s have the same location and
+     * inventory.
+     *
+     * @param first  The first machine.
+     * @param second The second machine.
+     * @return Whether they are the same.
+     */
+    private static boolean sameState(final VendingMachine first, final VendingMachine second) {
+        return Objects.equals(first.getLocation(), second.getLocation())
+                && first.getStatusView().equals(second.getStatusView());
+    }
+
+    /**
+     * Creates a copy of a {@code VendingMachine}.
+     *
+     * @param vendMach The {@code VendingMachine} to copy.
+     * @return A copy with the same ID, location and inventory.
+     */
+    private static VendingMachine copyOf(final VendingMachine vendMach) {
+        return new VendingMachine(vendMach);
+    }
+
+    /**
+     * Creates a copy of a {@code MachineTracker}, copying every machine in it.
+     *
+     * @param machTrack The {@code MachineTracker} to copy.
+     * @return A copy of the tracker.
+     */
+    private static MachineTracker copyOf(final MachineTracker machTrack) {
+        List<VendingMachine> machines = new ArrayList<>(machTrack.getMachineCount());
+
+        for (VendingMachine vendMach : machTrack.getMachinesView()) {
+            machines.add(copyOf(vendMach));
+        }
+
+        MachineTracker copy = new MachineTracker();
+        copy.setMachines(machines);
+        return copy;
+    }
 }
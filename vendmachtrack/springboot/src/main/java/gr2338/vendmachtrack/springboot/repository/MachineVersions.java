@@ -0,0 +1,245 @@
+package gr2338.vendmachtrack.springboot.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Version numbers for the changes made to a fleet of vending machines.
+ * <p>
+ * Every change gets the next version number, and only the latest version of
+ * each machine is kept, ordered by version. The machines changed after a given
+ * version can therefore be found in time proportional to the number of changes,
+ * not the size of the fleet. Removed machines are remembered as tombstones, up
+ * to a limit. When the oldest tombstone is dropped, versions before it can no
+ * longer be answered with changes, and the caller has to start over from the
+ * whole fleet.
+ * </p>
+ * <p>
+ * Versions aren't persisted. They start at the time the repository was created,
+ * in milliseconds, so versions handed out before a restart fall below the first
+ * version after it, as long as fewer changes were made than milliseconds went
+ * by.
+ * </p>
+ */
+final class MachineVersions {
+
+    /**
+     * Default number of removed machines remembered.
+     */
+    static final int DEFAULT_MAX_TOMBSTONES = 10_000;
+
+    private final int maxTombstones;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The version of the latest change.
+     */
+    private long version;
+
+    /**
+     * The lowest version that changes can be found after.
+     */
+    private long horizon;
+
+    /**
+     * The version of the machines that haven't changed since the repository was
+     * created or all machines were replaced.
+     */
+    private long baseline;
+
+    /**
+     * The version of the latest change to each machine.
+     */
+    private final Map<Integer, Long> latest = new HashMap<>();
+
+    /**
+     * The machine of each version in {@link #latest}, ordered by version.
+     */
+    private final NavigableMap<Long, Integer> byVersion = new TreeMap<>();
+
+    /**
+     * The version each removed machine was removed at, oldest first.
+     */
+    private final LinkedHashMap<Integer, Long> tombstones = new LinkedHashMap<>();
+
+    /**
+     * The machines changed and removed after a version.
+     *
+     * @param version The version of the latest change.
+     * @param changed The IDs of the machines added or changed, in the order of their latest change.
+     * @param removed The IDs of the machines removed.
+     */
+    record Changes(long version, List<Integer> changed, List<Integer> removed) {
+    }
+
+    /**
+     * Creates version numbers starting at the current time, with the default
+     * number of tombstones.
+     */
+    MachineVersions() {
+        this(System.currentTimeMillis(), DEFAULT_MAX_TOMBSTONES);
+    }
+
+    /**
+     * Creates version numbers starting at the given version.
+     *
+     * @param initialVersion The version before the first change.
+     * @param maxTombstones  The number of removed machines remembered.
+     * @throws IllegalArgumentException If the number of tombstones isn't positive.
+     */
+    MachineVersions(final long initialVersion, final int maxTombstones) {
+        if (maxTombstones < 1) {
+            throw new IllegalArgumentException("At least one removed machine has to be remembered");
+        }
+        this.version = initialVersion;
+        this.horizon = initialVersion;
+        this.baseline = initialVersion;
+        this.maxTombstones = maxTombstones;
+    }
+
+    /**
+     * Registers that a machine was added or changed.
+     *
+     * @param id The ID of the machine.
+     * @return The version of the change.
+     */
+    long changed(final int id) {
+        lock.lock();
+        try {
+            tombstones.remove(id);
+            return record(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers that a machine was removed. If this makes the number of
+     * tombstones go above the limit, the oldest one is dropped.
+     *
+     * @param id The ID of the machine.
+     * @return The version of the change.
+     */
+    long removed(final int id) {
+        lock.lock();
+        try {
+            tombstones.remove(id);
+            long removedAt = record(id);
+            tombstones.put(id, removedAt);
+            if (tombstones.size() > maxTombstones) {
+                Iterator<Map.Entry<Integer, Long>> oldest = tombstones.entrySet().iterator();
+                Map.Entry<Integer, Long> dropped = oldest.next();
+                oldest.remove();
+                latest.remove(dropped.getKey());
+                byVersion.remove(dropped.getValue());
+                horizon = dropped.getValue();
+            }
+            return removedAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers that every machine was replaced. Changes can't be found after any
+     * earlier version.
+     *
+     * @return The version of the change.
+     */
+    long replacedAll() {
+        lock.lock();
+        try {
+            latest.clear();
+            byVersion.clear();
+            tombstones.clear();
+            horizon = ++version;
+            baseline = version;
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the version of the latest change.
+     *
+     * @return The version.
+     */
+    long current() {
+        lock.lock();
+        try {
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the version of the latest change to a machine.
+     *
+     * @param id The ID of the machine.
+     * @return The version, which is the same for all machines that haven't changed
+     * since the repository was created or all machines were replaced.
+     */
+    long of(final int id) {
+        lock.lock();
+        try {
+            return latest.getOrDefault(id, baseline);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the machines changed and removed after a version.
+     *
+     * @param since The version the caller is up to date with.
+     * @return The changes, or null if the version is older than the oldest
+     * remembered change or newer than the latest, and the caller has to start over
+     * from the whole fleet.
+     */
+    Changes since(final long since) {
+        lock.lock();
+        try {
+            if (since < horizon || since > version) {
+                return null;
+            }
+            List<Integer> changed = new ArrayList<>();
+            List<Integer> removed = new ArrayList<>();
+            for (Map.Entry<Long, Integer> change : byVersion.tailMap(since, false).entrySet()) {
+                if (tombstones.containsKey(change.getValue())) {
+                    removed.add(change.getValue());
+                } else {
+                    changed.add(change.getValue());
+                }
+            }
+            return new Changes(version, changed, removed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives a machine the next version, replacing its earlier one. Must be called
+     * while holding the lock.
+     *
+     * @param id The ID of the machine.
+     * @return The new version.
+     */
+    private long record(final int id) {
+        long next = ++version;
+        Long previous = latest.put(id, next);
+        if (previous != null) {
+            byVersion.remove(previous);
+        }
+        byVersion.put(next, id);
+        return next;
+    }
+}
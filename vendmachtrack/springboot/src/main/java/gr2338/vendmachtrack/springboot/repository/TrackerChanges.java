@@ -0,0 +1,33 @@
+package gr2338.vendmachtrack.springboot.repository;
+
+import gr2338.vendmachtrack.core.model.VendingMachine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The vending machines changed and removed after a version, as returned by
+ * {@link MachineTrackerRepository#getChangesSince(long)}.
+ *
+ * @param version  The version of the latest change, which the caller is up to
+ *                 date with once the changes are applied.
+ * @param full     Whether the changes are the whole fleet, because the caller's
+ *                 version was too old or unknown. Machines the caller has that
+ *                 aren't among them have been removed.
+ * @param machines Copies of the machines added or changed. For the whole fleet
+ *                 of the memory-mapped store, the machines are decoded one at a
+ *                 time as they are iterated.
+ * @param removed  The IDs of the machines removed.
+ */
+public record TrackerChanges(long version, boolean full, Collection<VendingMachine> machines, List<Integer> removed) {
+
+    /**
+     * Creates the changes, copying the removed IDs. The machines are wrapped
+     * rather than copied, so a lazy snapshot of the fleet stays lazy.
+     */
+    public TrackerChanges {
+        machines = Collections.unmodifiableCollection(machines);
+        removed = List.copyOf(removed);
+    }
+}
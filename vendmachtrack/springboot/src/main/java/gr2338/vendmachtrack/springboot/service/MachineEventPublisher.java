@@ -0,0 +1,210 @@
+package gr2338.vendmachtrack.springboot.service;
+
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes changes to {@code Vending Machines} to the subscribers of the event stream.
+ * <p>
+ * {@link MachineTrackerService} publishes an event after every change it applies. Publishing never blocks the
+ * writer, whatever the subscribers do. Every subscriber gets its own buffer of the given size, which is drained by
+ * a separate thread that writes to the subscriber's connection. When a subscriber reads too slowly and its buffer
+ * fills up, its oldest events are dropped, which the subscriber can tell from the gap in the sequence numbers.
+ * </p>
+ * <p>
+ * The {@code stream} methods wrap the events as Server-Sent Events named after the event type, with the sequence
+ * number as ID. A comment is sent when the stream opens and every {@value #HEARTBEAT_SECONDS} seconds after that,
+ * which keeps idle connections open through proxies and detects clients that have gone away.
+ * </p>
+ */
+@Component
+public class MachineEventPublisher {
+
+    /**
+     * Default number of events buffered for each subscriber.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Seconds between the comments sent on idle streams.
+     */
+    public static final int HEARTBEAT_SECONDS = 15;
+
+    private final Sinks.Many<MachineEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final Scheduler deliveryScheduler = Schedulers.boundedElastic();
+    private final int bufferSize;
+
+    /**
+     * Sequence number of the last published event. Guarded by {@link #emitLock}, since the sink doesn't accept
+     * events from several threads at once.
+     */
+    private long sequence;
+    private final ReentrantLock emitLock = new ReentrantLock();
+
+    /**
+     * Constructs a new {@code MachineEventPublisher} with the default buffer size.
+     */
+    public MachineEventPublisher() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new {@code MachineEventPublisher}.
+     *
+     * @param bufferSize The number of events buffered for each subscriber, set with the
+     *                   {@code vendmachtrack.events.buffer-size} property.
+     * @throws IllegalArgumentException if the buffer size isn't positive.
+     */
+    @Autowired
+    public MachineEventPublisher(@Value("${vendmachtrack.events.buffer-size:" + DEFAULT_BUFFER_SIZE + "}")
+                                 final int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The event buffer must hold at least one event");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Retrieves the events of all {@code Vending Machines}.
+     *
+     * @return A stream of every event published after subscribing.
+     */
+    public Flux<MachineEvent> events() {
+        return sink.asFlux()
+                .onBackpressureBuffer(bufferSize, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST)
+                .publishOn(deliveryScheduler, 1);
+    }
+
+    /**
+     * Retrieves the events of one {@code Vending Machine}.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A stream of the machine's events published after subscribing.
+     */
+    public Flux<MachineEvent> events(final int id) {
+        return sink.asFlux()
+                .filter(event -> event.id() == id)
+                .onBackpressureBuffer(bufferSize, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST)
+                .publishOn(deliveryScheduler, 1);
+    }
+
+    /**
+     * Retrieves the events of all {@code Vending Machines} as Server-Sent Events.
+     *
+     * @return A stream of every event published after subscribing, with regular heartbeat comments.
+     */
+    public Flux<ServerSentEvent<MachineEvent>> stream() {
+        return withHeartbeat(events());
+    }
+
+    /**
+     * Retrieves the events of one {@code Vending Machine} as Server-Sent Events.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A stream of the machine's events published after subscribing, with regular heartbeat comments.
+     */
+    public Flux<ServerSentEvent<MachineEvent>> stream(final int id) {
+        return withHeartbeat(events(id));
+    }
+
+    /**
+     * Publishes that the inventory of a {@code Vending Machine} changed.
+     *
+     * @param id        The ID of the Vending Machine.
+     * @param inventory The inventory after the change.
+     */
+    public void inventoryChanged(final int id, final Map<String, Integer> inventory) {
+        publish(MachineEvent.Type.INVENTORY, id, null, inventory);
+    }
+
+    /**
+     * Publishes that a {@code Vending Machine} was moved.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param location The new location.
+     */
+    public void locationChanged(final int id, final String location) {
+        publish(MachineEvent.Type.LOCATION, id, location, null);
+    }
+
+    /**
+     * Publishes that a {@code Vending Machine} was added.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param location The location of the machine.
+     */
+    public void machineAdded(final int id, final String location) {
+        publish(MachineEvent.Type.ADDED, id, location, Map.of());
+    }
+
+    /**
+     * Publishes that a {@code Vending Machine} was removed.
+     *
+     * @param id The ID of the Vending Machine.
+     */
+    public void machineRemoved(final int id) {
+        publish(MachineEvent.Type.REMOVED, id, null, null);
+    }
+
+    /**
+     * Publishes that an item dropped below its threshold in a {@code Vending Machine}, or was restocked.
+     *
+     * @param alert The item, its quantity and whether it became low.
+     */
+    public void stockChanged(final StockAlert alert) {
+        publish(alert.low() ? MachineEvent.Type.LOW_STOCK : MachineEvent.Type.RESTOCKED, alert.id(), null,
+                Map.of(alert.item(), alert.quantity()));
+    }
+
+    /**
+     * Wraps events as Server-Sent Events and adds heartbeat comments. The events are subscribed to first, so no
+     * event published after the first comment is missed. Everything is delivered on the delivery scheduler, so
+     * a heartbeat written to a slow connection doesn't hold up the timer either.
+     *
+     * @param events The events.
+     * @return The Server-Sent Events.
+     */
+    private Flux<ServerSentEvent<MachineEvent>> withHeartbeat(final Flux<MachineEvent> events) {
+        Flux<ServerSentEvent<MachineEvent>> data = events.map(event -> ServerSentEvent.builder(event)
+                .id(Long.toString(event.sequence()))
+                .event(event.type().name().toLowerCase(Locale.ROOT))
+                .build());
+        Flux<ServerSentEvent<MachineEvent>> heartbeat = Flux.interval(Duration.ZERO,
+                        Duration.ofSeconds(HEARTBEAT_SECONDS))
+                .map(tick -> ServerSentEvent.<MachineEvent>builder().comment("heartbeat").build());
+        return data.mergeWith(heartbeat).publishOn(deliveryScheduler, 1);
+    }
+
+    /**
+     * Gives an event the next sequence number and hands it to the subscribers.
+     *
+     * @param type      What changed.
+     * @param id        The ID of the Vending Machine.
+     * @param location  The location, or null.
+     * @param inventory The inventory, or null.
+     */
+    private void publish(final MachineEvent.Type type, final int id, final String location,
+                         final Map<String, Integer> inventory) {
+        emitLock.lock();
+        try {
+            // Subscribers without room for the event drop it on their own, so the result can be ignored.
+            sink.tryEmitNext(new MachineEvent(++sequence, type, id, location, inventory));
+        } finally {
+            emitLock.unlock();
+        }
+    }
+}
@@ -2,14 +2,36 @@ package gr2338.vendmachtrack.springboot.service;
 
 import gr2338.vendmachtrack.springboot.exception.ResourceNotFoundException;
 import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+import gr2338.vendmachtrack.springboot.repository.TrackerChanges;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
 import gr2338.vendmachtrack.core.model.VendingMachine;
 import gr2338.vendmachtrack.springboot.exception.IllegalInputException;
-
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.regex.Pattern;
 
 /**
@@ -19,20 +41,60 @@ import java.util.regex.Pattern;
  * and provides functionalities like fetching machine details, adding or
  * removing items,
  * and more.
+ * <p>
+ * Every change that is applied is also published to the subscribers of the
+ * event stream through the {@link MachineEventPublisher}.
+ * </p>
  */
 @Service
 public class MachineTrackerService {
 
+    /**
+     * The largest number of operations accepted in one batch.
+     */
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    /**
+     * The number of machines on a page when no page size is given.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The largest number of machines on a page.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The number of machines ranked by their quantity of an item when no number is
+     * given.
+     */
+    public static final int DEFAULT_TOP_MACHINES = 10;
+
     private final MachineTrackerRepository repository;
+    private final MachineEventPublisher events;
 
     /**
-     * Constructor injection of the MachineTrackerRepository dependency.
+     * Constructs a service whose changes aren't published to anyone.
      *
      * @param repository the repository used for data storage interactions
      */
-    @Autowired
     public MachineTrackerService(final MachineTrackerRepository repository) {
+        this(repository, new MachineEventPublisher());
+    }
+
+    /**
+     * Constructor injection of the MachineTrackerRepository and
+     * MachineEventPublisher dependencies. Items dropping below their thresholds
+     * in the repository are published as events.
+     *
+     * @param repository the repository used for data storage interactions
+     * @param events     the publisher of the changes made by the service
+     */
+    @Autowired
+    public MachineTrackerService(final MachineTrackerRepository repository, final MachineEventPublisher events) {
         this.repository = repository;
+        this.events = events;
+        repository.addStockListener(events::stockChanged);
     }
 
     /**
@@ -43,37 +105,320 @@ public class MachineTrackerService {
      *                                   found.
      */
     public HashMap<Integer, String> getVendMachList() {
-        Optional<MachineTracker> machtrack = Optional.ofNullable(repository.getVendmachtrack());
+        HashMap<Integer, String> vendMachList = repository.getAllLocations();
+
+        if (vendMachList == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return vendMachList;
+    }
 
-        if (machtrack.isPresent()) {
-            HashMap<Integer, String> vendMachList = new HashMap<>();
+    /**
+     * Retrieves a page of {@code Vending Machines} with their locations, in order
+     * of ascending ID. Unlike {@link #getVendMachList()}, the cost and size of the
+     * result depend on the page size, not the size of the fleet. The fleet is
+     * listed by asking for the first page, and then for the page after the
+     * {@code next} ID of the previous page until it is null.
+     *
+     * @param after    The ID the page starts after, or null for the first page.
+     * @param limit    The largest number of machines on the page.
+     * @param location The start of the location of the machines to list, ignoring
+     *                 case, or null for all machines.
+     * @return The page.
+     * @throws IllegalInputException     if the page size is less than one or larger
+     *                                   than {@value #MAX_PAGE_SIZE}.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public MachinePage getVendMachPage(final Integer after, final int limit, final String location) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalInputException("Page size has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+        String prefix = location == null || location.isBlank() ? null : location.strip();
+        // One machine more than the page is read to find out whether there is a next page.
+        LinkedHashMap<Integer, String> locations = repository.getLocations(
+                after == null ? Integer.MIN_VALUE : after, limit + 1, prefix);
+        if (locations == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
 
-            for (VendingMachine vendMach : machtrack.get().getMachines()) {
-                vendMachList.put(vendMach.getId(), vendMach.getLocation());
+        List<MachineSummary> machines = new ArrayList<>(Math.min(locations.size(), limit));
+        for (Map.Entry<Integer, String> entry : locations.entrySet()) {
+            if (machines.size() == limit) {
+                break;
             }
+            machines.add(new MachineSummary(entry.getKey(), entry.getValue()));
+        }
+        Integer next = locations.size() > limit ? machines.get(limit - 1).id() : null;
+        return new MachinePage(machines, next);
+    }
 
-            return vendMachList;
-        } else {
+    /**
+     * Retrieves the {@code Vending Machines} at a location, or at every location
+     * starting with a prefix, ignoring case. The machines are found through the
+     * location index, so the whole fleet isn't scanned.
+     *
+     * @param location The location, or null to search by prefix.
+     * @param prefix   The start of the location, or null to search by location.
+     * @return The machines found, in order of ascending ID.
+     * @throws IllegalInputException     if not exactly one of the location and the
+     *                                   prefix is given, or it is blank.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public List<MachineSummary> findByLocation(final String location, final String prefix) {
+        if ((location == null) == (prefix == null)) {
+            throw new IllegalInputException("Either a location or a location prefix has to be given");
+        }
+        String query = location != null ? location.strip() : prefix.strip();
+        if (query.isEmpty()) {
+            throw new IllegalInputException("Location name not valid");
+        }
+        SortedMap<Integer, String> machines = location != null
+                ? repository.getMachinesAt(query)
+                : repository.getMachinesWithLocationPrefix(query);
+        if (machines == null) {
             throw new ResourceNotFoundException("Vending Machine Tracker not found");
         }
+
+        List<MachineSummary> found = new ArrayList<>(machines.size());
+        machines.forEach((id, machineLocation) -> found.add(new MachineSummary(id, machineLocation)));
+        return found;
     }
 
     /**
-     * Fetches the location of a specific {@code Vending Machine} by its ID.
+     * Retrieves the number of {@code Vending Machines} at a location, ignoring
+     * case.
+     *
+     * @param location The location.
+     * @return The number of machines.
+     * @throws IllegalInputException     if the location is blank.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public int countAtLocation(final String location) {
+        if (location == null || location.isBlank()) {
+            throw new IllegalInputException("Location name not valid");
+        }
+        Integer count = repository.countMachinesAt(location.strip());
+        if (count == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the number of {@code Vending Machines} at every location starting
+     * with a prefix, ignoring case.
+     *
+     * @param prefix The start of the location, or null for every location.
+     * @return The locations mapped to the number of machines there, in
+     * alphabetical order.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public SortedMap<String, Integer> countByLocation(final String prefix) {
+        SortedMap<String, Integer> counts = repository.countByLocation(prefix == null ? "" : prefix.strip());
+        if (counts == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return counts;
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} stocking an item, with their
+     * quantities. The machines are found through the item index, so the
+     * inventories of the fleet aren't scanned.
+     *
+     * @param item The name of the item.
+     * @return The machines stocking the item, in order of ascending ID.
+     * @throws IllegalInputException     if the item name is blank.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public List<ItemStock> getMachinesStocking(final String item) {
+        validateItem(item);
+        SortedMap<Integer, Integer> machines = repository.getMachinesStocking(item);
+        if (machines == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return toItemStock(machines);
+    }
+
+    /**
+     * Retrieves the total quantity of an item in all {@code Vending Machines}.
+     *
+     * @param item The name of the item.
+     * @return The total quantity, zero if no machine stocks the item.
+     * @throws IllegalInputException     if the item name is blank.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public long getTotalQuantity(final String item) {
+        validateItem(item);
+        Long total = repository.getTotalQuantity(item);
+        if (total == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} with the highest quantities of an
+     * item.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of machines to retrieve.
+     * @return The machines, in order of descending quantity, and ascending ID for
+     * equal quantities.
+     * @throws IllegalInputException     if the item name is blank, or the number of
+     *                                   machines is less than one or larger than
+     *                                   {@value #MAX_PAGE_SIZE}.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public List<ItemStock> getTopMachines(final String item, final int count) {
+        validateItem(item);
+        if (count < 1 || count > MAX_PAGE_SIZE) {
+            throw new IllegalInputException("Number of machines has to be between 1 and " + MAX_PAGE_SIZE);
+        }
+        LinkedHashMap<Integer, Integer> machines = repository.getTopMachines(item, count);
+        if (machines == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        return toItemStock(machines);
+    }
+
+    /**
+     * Sets the threshold of an item in every {@code Vending Machine} without a
+     * threshold of its own. From then on, the item becoming low or being
+     * restocked in a machine is published as an event.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     * @return The items that are below their thresholds after the change.
+     * @throws IllegalInputException     if the item name is blank or the
+     *                                   threshold is negative.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public List<LowStock> setItemThreshold(final String item, final int threshold) {
+        validateItem(item);
+        validateThreshold(threshold);
+        repository.setItemThreshold(item, threshold);
+        return getLowStock();
+    }
+
+    /**
+     * Sets the threshold of every item in a {@code Vending Machine}, which takes
+     * precedence over the item thresholds.
+     *
+     * @param id        The ID of the Vending Machine.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     * @return The items that are below their thresholds after the change.
+     * @throws IllegalInputException     if the threshold is negative.
+     * @throws ResourceNotFoundException if no Vending Machine with the ID exists.
+     */
+    public List<LowStock> setMachineThreshold(final int id, final int threshold) {
+        validateThreshold(threshold);
+        if (!repository.setMachineThreshold(id, threshold)) {
+            throw new ResourceNotFoundException("No such Vending Machine with ID: " + id);
+        }
+        return getLowStock();
+    }
+
+    /**
+     * Retrieves the items that are currently below their thresholds. The items
+     * are read from a set kept up to date as items are sold, so no inventory is
+     * scanned.
+     *
+     * @return The low items, in order of machine ID and item name.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public List<LowStock> getLowStock() {
+        List<StockAlert> lowStock = repository.getLowStock();
+        if (lowStock == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+        List<LowStock> low = new ArrayList<>(lowStock.size());
+        for (StockAlert alert : lowStock) {
+            low.add(new LowStock(alert.id(), alert.item(), alert.quantity(), alert.threshold()));
+        }
+        return low;
+    }
+
+    /**
+     * Retrieves the version of the latest change to any {@code Vending Machine},
+     * which identifies the current list of Vending Machines.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return repository.getVersion();
+    }
+
+    /**
+     * Retrieves the version of the latest change to a {@code Vending Machine},
+     * which identifies its current location and inventory.
      *
      * @param id The ID of the Vending Machine.
-     * @return The location of the Vending Machine with the given ID.
+     * @return The version.
      * @throws ResourceNotFoundException if no Vending Machine with the specified ID
      *                                   exists.
      */
-    public String getVendMachLocation(final int id) {
-        HashMap<Integer, String> vendMachList = getVendMachList();
+    public long getMachineVersion(final int id) {
+        long version = repository.getMachineVersion(id);
 
-        if (vendMachList.containsKey(id)) {
-            return vendMachList.get(id);
-        } else {
+        if (version < 0) {
             throw new ResourceNotFoundException("No such Vending Machine with ID: " + id);
         }
+        return version;
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} added, changed and removed since a
+     * version, with their locations and inventories. A client that keeps its own
+     * copy of the fleet starts with version zero, which gives the whole fleet, and
+     * then asks for the changes since the version it got each time.
+     *
+     * @param since The version the client is up to date with.
+     * @return The changes since the version, or the whole fleet if the version is
+     * too old or unknown.
+     * @throws IllegalInputException     if the version is negative.
+     * @throws ResourceNotFoundException if the Vending Machine Tracker is not
+     *                                   found.
+     */
+    public MachineTrackerDelta getChangesSince(final long since) {
+        if (since < 0) {
+            throw new IllegalInputException("Version can't be negative");
+        }
+        TrackerChanges changes = repository.getChangesSince(since);
+        if (changes == null) {
+            throw new ResourceNotFoundException("Vending Machine Tracker not found");
+        }
+
+        if (changes.full()) {
+            return new MachineTrackerDelta(changes.version(), true, toStates(changes.machines()), changes.removed());
+        }
+        Map<Integer, MachineTrackerDelta.MachineState> machines = new HashMap<>();
+        for (VendingMachine vendMach : changes.machines()) {
+            machines.put(vendMach.getId(),
+                    new MachineTrackerDelta.MachineState(vendMach.getLocation(), vendMach.getStatusView()));
+        }
+        return new MachineTrackerDelta(changes.version(), changes.full(), machines, changes.removed());
+    }
+
+    /**
+     * Fetches the location of a specific {@code Vending Machine} by its ID.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return The location of the Vending Machine with the given ID.
+     * @throws ResourceNotFoundException if no Vending Machine with the specified ID
+     *                                   exists.
+     */
+    public String getVendMachLocation(final int id) {
+        return getVendMach(id).getLocation();
     }
 
     /**
@@ -105,9 +450,16 @@ public class MachineTrackerService {
         validateItem(item);
         validateQuantity(quantity);
         validateQuantity(quantity);
-        validateVendMachId(id);
 
-        return repository.addItem(id, item, quantity).getStatus();
+        return repository.withMachineLock(id, () -> {
+            VendingMachine vendMach = repository.addItem(id, item, quantity);
+            if (vendMach == null) {
+                throw new ResourceNotFoundException("No such Vending Machine with ID: " + id);
+            }
+            HashMap<String, Integer> inventory = vendMach.getStatus();
+            events.inventoryChanged(id, inventory);
+            return inventory;
+        });
     }
 
     /**
@@ -129,18 +481,88 @@ public class MachineTrackerService {
         validateItem(item);
         validateQuantity(quantity);
         validateQuantity(quantity);
-        validateVendMachId(id);
 
-        VendingMachine vendMach = getVendMach(id);
+        return repository.withMachineLock(id, () -> {
+            VendingMachine vendMach = getVendMach(id);
+
+            if (!vendMach.getStatusView().containsKey(item)) {
+                throw new IllegalInputException("The vending machine's inventory does not contain this item");
+            } else if (quantity > vendMach.getQuantity(item)) {
+                throw new IllegalInputException(
+                        "The vending machine's inventory contains less than the given quantity to remove of item: "
+                                + item);
+            } else {
+                HashMap<String, Integer> inventory = repository.removeItem(id, item, quantity).getStatus();
+                events.inventoryChanged(id, inventory);
+                return inventory;
+            }
+        });
+    }
+
+    /**
+     * Applies a batch of changes to the inventories of one or more
+     * {@code Vending Machines}.
+     * <p>
+     * The operations on each machine are applied in the order they are given,
+     * while holding the lock for that machine, and stored as one change. Invalid
+     * operations and removals of more than the machine holds are rejected, while
+     * the rest of the batch is still applied. If {@code atomic} is set, a rejected
+     * operation rolls back every other operation on the same machine, but doesn't
+     * affect other machines. Background flushes are held back until the whole
+     * batch has been applied.
+     *
+     * @param operations The operations to apply.
+     * @param atomic     Whether the operations on each machine are applied all or
+     *                   nothing.
+     * @return The result of every operation, in the order they were given.
+     * @throws IllegalInputException if the batch is empty or larger than
+     *                               {@value #MAX_BATCH_SIZE} operations.
+     */
+    public List<InventoryOperationResult> applyBatch(final List<InventoryOperation> operations,
+                                                     final boolean atomic) {
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalInputException("The batch has to contain at least one operation");
+        } else if (operations.size() > MAX_BATCH_SIZE) {
+            throw new IllegalInputException("The batch can't contain more than " + MAX_BATCH_SIZE + " operations");
+        }
 
-        if (!vendMach.getStatus().containsKey(item)) {
-            throw new IllegalInputException("The vending machine's inventory does not contain this item");
-        } else if (quantity > vendMach.getStatus().get(item)) {
-            throw new IllegalInputException(
-                    "The vending machine's inventory contains less than the given quantity to remove of item: " + item);
-        } else {
-            return repository.removeItem(id, item, quantity).getStatus();
+        InventoryOperationResult[] results = new InventoryOperationResult[operations.size()];
+        Map<Integer, List<Integer>> positionsByMachine = new LinkedHashMap<>();
+        for (int position = 0; position < operations.size(); position++) {
+            if (operations.get(position) == null) {
+                throw new IllegalInputException("Operations in a batch can't be null");
+            }
+            positionsByMachine.computeIfAbsent(operations.get(position).id(), id -> new ArrayList<>()).add(position);
         }
+
+        repository.inBatch(() -> {
+            positionsByMachine.forEach((id, positions) -> applyToMachine(id, positions, operations, atomic, results));
+            return null;
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Retrieves the stream of changes to all {@code Vending Machines}, including
+     * machines added after subscribing.
+     *
+     * @return A stream of Server-Sent Events, see {@link MachineEventPublisher}.
+     */
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents() {
+        return events.stream();
+    }
+
+    /**
+     * Retrieves the stream of changes to one {@code Vending Machine}.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A stream of Server-Sent Events, see {@link MachineEventPublisher}.
+     * @throws ResourceNotFoundException if no Vending Machine with the specified ID
+     *                                   exists.
+     */
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents(final int id) {
+        validateVendMachId(id);
+        return events.stream(id);
     }
 
     /**
@@ -154,11 +576,31 @@ public class MachineTrackerService {
      *                               exists.
      */
     public HashMap<Integer, String> addVendMach(final int id, final String location) {
+        addVendMachBrief(id, location);
+
+        return getVendMachList();
+    }
+
+    /**
+     * Adds a new {@code Vending Machine} with a specified ID and location, and
+     * returns only the added machine instead of the whole list.
+     *
+     * @param id       The ID of the new Vending Machine.
+     * @param location The location of the new Vending Machine.
+     * @return The added Vending Machine.
+     * @throws IllegalInputException if the input values for location are invalid or
+     *                               if a Vending Machine with the given ID already
+     *                               exists.
+     */
+    public MachineSummary addVendMachBrief(final int id, final String location) {
         validateNewVendMachId(id);
         validateLocation(location);
-        repository.addVendMach(id, location);
+        if (repository.addMachine(id, location) == null) {
+            throw new IllegalInputException("A vending machine with id " + id + " already exists");
+        }
+        events.machineAdded(id, location);
 
-        return getVendMachList();
+        return new MachineSummary(id, location);
     }
 
     /**
@@ -170,12 +612,31 @@ public class MachineTrackerService {
      *                                   exists.
      */
     public HashMap<Integer, String> removeVendMach(final int id) {
-        validateVendMachId(id);
-        repository.removeVendMach(id);
+        removeVendMachBrief(id);
 
         return getVendMachList();
     }
 
+    /**
+     * Removes a {@code Vending Machine} by its ID, and returns only the removed
+     * machine instead of the whole list.
+     *
+     * @param id The ID of the Vending Machine to remove.
+     * @return The removed Vending Machine.
+     * @throws ResourceNotFoundException if no Vending Machine with the specified ID
+     *                                   exists.
+     */
+    public MachineSummary removeVendMachBrief(final int id) {
+        VendingMachine vendMach = getVendMach(id);
+        // Checked again by the removal itself, in case the machine was removed in the meantime.
+        if (!repository.removeMachine(id)) {
+            throw new ResourceNotFoundException("No such Vending Machine with ID: " + id);
+        }
+        events.machineRemoved(id);
+
+        return new MachineSummary(id, vendMach.getLocation());
+    }
+
     /**
      * Changes the location of an existing {@code Vending Machine}.
      *
@@ -188,13 +649,119 @@ public class MachineTrackerService {
      *                                   exists.
      */
     public HashMap<Integer, String> changeLocation(final int id, final String location) {
-        validateLocation(location);
-        validateVendMachId(id);
-        repository.changeLocation(id, location);
+        changeLocationBrief(id, location);
 
         return getVendMachList();
     }
 
+    /**
+     * Changes the location of an existing {@code Vending Machine}, and returns
+     * only the moved machine instead of the whole list.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param location The new location for the Vending Machine.
+     * @return The moved Vending Machine.
+     * @throws IllegalInputException     if the input values for location are
+     *                                   invalid.
+     * @throws ResourceNotFoundException if no Vending Machine with the specified ID
+     *                                   exists.
+     */
+    public MachineSummary changeLocationBrief(final int id, final String location) {
+        validateLocation(location);
+        repository.withMachineLock(id, () -> {
+            if (repository.changeLocation(id, location) == null) {
+                throw new ResourceNotFoundException("No such Vending Machine with ID: " + id);
+            }
+            events.locationChanged(id, location);
+            return null;
+        });
+
+        return new MachineSummary(id, location);
+    }
+
+    /**
+     * Applies the operations of a batch that belong to one {@code Vending Machine}.
+     * The operations are first checked against a copy of the machine, and only
+     * the accepted ones are passed on to the repository.
+     * This method is for internal use.
+     *
+     * @param id         The ID of the Vending Machine.
+     * @param positions  The positions of the machine's operations in the batch.
+     * @param operations The operations of the batch.
+     * @param atomic     Whether a rejected operation rolls back the others.
+     * @param results    Where the result of each operation is stored, by position.
+     */
+    private void applyToMachine(final int id, final List<Integer> positions,
+                                final List<InventoryOperation> operations, final boolean atomic,
+                                final InventoryOperationResult[] results) {
+        repository.withMachineLock(id, () -> {
+            VendingMachine vendMach = repository.getVendMach(id);
+            List<Map.Entry<String, Integer>> changes = new ArrayList<>(positions.size());
+            List<Integer> accepted = new ArrayList<>(positions.size());
+
+            for (int position : positions) {
+                InventoryOperation operation = operations.get(position);
+                String error = vendMach == null
+                        ? "No such Vending Machine with ID: " + id
+                        : tryApply(vendMach, operation);
+                if (error != null) {
+                    results[position] = InventoryOperationResult.rejected(operation, error);
+                } else {
+                    results[position] = InventoryOperationResult.applied(operation,
+                            vendMach.getQuantity(operation.item()));
+                    changes.add(Map.entry(operation.item(), operation.delta()));
+                    accepted.add(position);
+                }
+            }
+
+            if (atomic && accepted.size() < positions.size()) {
+                for (int position : accepted) {
+                    results[position] = InventoryOperationResult.rolledBack(operations.get(position));
+                }
+            } else if (!changes.isEmpty()) {
+                VendingMachine changed = repository.applyItemChanges(id, changes);
+                if (changed != null) {
+                    events.inventoryChanged(id, changed.getStatusView());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Validates an operation of a batch and applies it to a copy of a
+     * {@code Vending Machine}.
+     * This method is for internal use.
+     *
+     * @param vendMach  The copy of the Vending Machine.
+     * @param operation The operation.
+     * @return Why the operation was rejected, or null if it was applied.
+     */
+    private String tryApply(final VendingMachine vendMach, final InventoryOperation operation) {
+        String item = operation.item();
+        int delta = operation.delta();
+        try {
+            validateItem(item);
+        } catch (IllegalInputException e) {
+            return e.getMessage();
+        }
+
+        if (delta == 0) {
+            return "Quantity can't be zero";
+        } else if (delta == Integer.MIN_VALUE
+                || delta > 0 && vendMach.getQuantity(item) > Integer.MAX_VALUE - delta) {
+            return "Quantity is too large";
+        } else if (delta > 0) {
+            vendMach.addItem(item, delta);
+        } else if (!vendMach.getStatusView().containsKey(item)) {
+            return "The vending machine's inventory does not contain this item";
+        } else if (!vendMach.tryRemove(item, -delta)) {
+            return "The vending machine's inventory contains less than the given quantity to remove of item: "
+                    + item;
+        }
+        return null;
+    }
+
     /**
      * Validates a given location string based on the specified format.
      * This method is for internal use.
@@ -221,6 +788,72 @@ public class MachineTrackerService {
         }
     }
 
+    /**
+     * Validates a stock threshold.
+     * This method is for internal use.
+     *
+     * @param threshold The threshold to validate.
+     * @throws IllegalInputException if the threshold is negative.
+     */
+    private void validateThreshold(final int threshold) {
+        if (threshold < 0) {
+            throw new IllegalInputException("Threshold can't be negative");
+        }
+    }
+
+    /**
+     * Converts machine IDs mapped to quantities of an item to a list, keeping the
+     * order of the map.
+     *
+     * @param machines The IDs of the machines mapped to their quantities.
+     * @return The quantity of the item in each machine.
+     */
+    private static List<ItemStock> toItemStock(final Map<Integer, Integer> machines) {
+        List<ItemStock> stock = new ArrayList<>(machines.size());
+        machines.forEach((id, quantity) -> stock.add(new ItemStock(id, quantity)));
+        return stock;
+    }
+
+    /**
+     * Wraps machines in a map from ID to state, which converts every machine when
+     * it is reached. The whole fleet is then written to the response one machine
+     * at a time, instead of all states being built before the response is written.
+     *
+     * @param machines The machines, with no two machines having the same ID.
+     * @return A view of the machines by ID.
+     */
+    private static Map<Integer, MachineTrackerDelta.MachineState> toStates(final Collection<VendingMachine> machines) {
+        return new AbstractMap<>() {
+            @Override
+            public Set<Entry<Integer, MachineTrackerDelta.MachineState>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<Integer, MachineTrackerDelta.MachineState>> iterator() {
+                        Iterator<VendingMachine> source = machines.iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return source.hasNext();
+                            }
+
+                            @Override
+                            public Entry<Integer, MachineTrackerDelta.MachineState> next() {
+                                VendingMachine vendMach = source.next();
+                                return Map.entry(vendMach.getId(), new MachineTrackerDelta.MachineState(
+                                        vendMach.getLocation(), vendMach.getStatusView()));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return machines.size();
+                    }
+                };
+            }
+        };
+    }
+
     /**
      * Validates a given item string to ensure it matches the required format.
      * This method is for internal use.
@@ -229,7 +862,7 @@ public class MachineTrackerService {
      * @throws IllegalInputException if the item name is not valid.
      */
     private void validateItem(final String item) {
-        if (!Pattern.compile("\\S(.*\\S)?").matcher(item).matches()) {
+        if (item == null || !Pattern.compile("\\S(.*\\S)?").matcher(item).matches()) {
             throw new IllegalInputException("Item name not valid");
         }
     }
@@ -251,20 +884,16 @@ public class MachineTrackerService {
     }
 
     /**
-     * Validates a new Vending Machine ID to ensure it doesn't already exist and
-     * follows the correct format.
+     * Validates a new Vending Machine ID to ensure it follows the correct format.
+     * Whether the ID is taken is checked by the repository when the machine is
+     * added, so that two machines with the same ID can't be added at once.
      * This method is for internal use.
      *
      * @param id The new Vending Machine ID to validate.
-     * @throws IllegalInputException if a Vending Machine with the given ID already
-     *                               exists or if the ID format is invalid.
+     * @throws IllegalInputException if the ID format is invalid.
      */
     private void validateNewVendMachId(final int id) {
-        Optional<VendingMachine> vendMach = Optional.ofNullable(repository.getVendMach(id));
-
-        if (vendMach.isPresent()) {
-            throw new IllegalInputException("A vending machine with id " + id + " already exists");
-        } else if (!Pattern.compile("\\d+").matcher(String.valueOf(id)).matches()) {
+        if (!Pattern.compile("\\d+").matcher(String.valueOf(id)).matches()) {
             throw new IllegalInputException("Id not valid");
         }
     }
@@ -280,8 +909,8 @@ public class MachineTrackerService {
      *                                   exists.
      */
     private VendingMachine getVendMach(final int id) {
-        validateVendMachId(id);
-        return repository.getVendMach(id);
+        return Optional.ofNullable(repository.getVendMach(id))
+                .orElseThrow(() -> new ResourceNotFoundException("No such Vending Machine with ID: " + id));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,398 @@
+package gr2338.vendmachtrack.springboot.service;
+
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Non-blocking front of {@link MachineTrackerService}, used by the reactive variant of the REST API.
+ * <p>
+ * The service and the repository behind it block on locks and file I/O, which must never happen on the few
+ * event-loop threads of the reactive server. Every operation is therefore run on a dedicated scheduler with a
+ * bounded number of threads and a bounded queue, and its result is delivered as a {@link Mono}. The validation
+ * and error handling are the ones of {@link MachineTrackerService}, so both variants of the API behave the same.
+ * When the queue is full, the returned {@code Mono} fails with a
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ * </p>
+ * <p>
+ * The service is only created with the {@code reactive} profile.
+ * </p>
+ */
+@Service
+@Profile("reactive")
+public class ReactiveMachineTrackerService implements AutoCloseable {
+
+    private final MachineTrackerService service;
+    private final Scheduler persistenceScheduler;
+
+    /**
+     * Constructs a new {@code ReactiveMachineTrackerService} with a scheduler of the given size.
+     *
+     * @param service      the blocking service doing the work
+     * @param threads      the number of threads running blocking operations, set with the
+     *                     {@code vendmachtrack.reactive.persistence-threads} property
+     * @param queuedTasks  the number of operations that may wait for a thread, set with the
+     *                     {@code vendmachtrack.reactive.persistence-queue} property
+     * @throws IllegalArgumentException if the number of threads or queued tasks isn't positive
+     */
+    @Autowired
+    public ReactiveMachineTrackerService(final MachineTrackerService service,
+                                         @Value("${vendmachtrack.reactive.persistence-threads:4}") final int threads,
+                                         @Value("${vendmachtrack.reactive.persistence-queue:10000}")
+                                         final int queuedTasks) {
+        if (threads < 1 || queuedTasks < 1) {
+            throw new IllegalArgumentException("The persistence scheduler needs at least one thread and queue slot");
+        }
+        this.service = service;
+        this.persistenceScheduler = Schedulers.newBoundedElastic(threads, queuedTasks, "vendmachtrack-persistence");
+    }
+
+    /**
+     * Retrieves a list of all {@code Vending Machines} with their locations.
+     *
+     * @return A {@code Mono} emitting the machine IDs and their locations.
+     * @see MachineTrackerService#getVendMachList()
+     */
+    public Mono<HashMap<Integer, String>> getVendMachList() {
+        return offload(service::getVendMachList);
+    }
+
+    /**
+     * Retrieves a page of {@code Vending Machines} with their locations.
+     *
+     * @param after    The ID the page starts after, or null for the first page.
+     * @param limit    The largest number of machines on the page.
+     * @param location The start of the location of the machines to list, or null for all machines.
+     * @return A {@code Mono} emitting the page.
+     * @see MachineTrackerService#getVendMachPage(Integer, int, String)
+     */
+    public Mono<MachinePage> getVendMachPage(final Integer after, final int limit, final String location) {
+        return offload(() -> service.getVendMachPage(after, limit, location));
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} at a location, or at every location starting with a prefix.
+     *
+     * @param location The location, or null to search by prefix.
+     * @param prefix   The start of the location, or null to search by location.
+     * @return A {@code Mono} emitting the machines found.
+     * @see MachineTrackerService#findByLocation(String, String)
+     */
+    public Mono<List<MachineSummary>> findByLocation(final String location, final String prefix) {
+        return offload(() -> service.findByLocation(location, prefix));
+    }
+
+    /**
+     * Retrieves the number of {@code Vending Machines} at a location.
+     *
+     * @param location The location.
+     * @return A {@code Mono} emitting the number of machines.
+     * @see MachineTrackerService#countAtLocation(String)
+     */
+    public Mono<Integer> countAtLocation(final String location) {
+        return offload(() -> service.countAtLocation(location));
+    }
+
+    /**
+     * Retrieves the number of {@code Vending Machines} at every location starting with a prefix.
+     *
+     * @param prefix The start of the location, or null for every location.
+     * @return A {@code Mono} emitting the locations and the number of machines there.
+     * @see MachineTrackerService#countByLocation(String)
+     */
+    public Mono<SortedMap<String, Integer>> countByLocation(final String prefix) {
+        return offload(() -> service.countByLocation(prefix));
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} stocking an item.
+     *
+     * @param item The name of the item.
+     * @return A {@code Mono} emitting the machines and their quantities.
+     * @see MachineTrackerService#getMachinesStocking(String)
+     */
+    public Mono<List<ItemStock>> getMachinesStocking(final String item) {
+        return offload(() -> service.getMachinesStocking(item));
+    }
+
+    /**
+     * Retrieves the total quantity of an item in all {@code Vending Machines}.
+     *
+     * @param item The name of the item.
+     * @return A {@code Mono} emitting the total quantity.
+     * @see MachineTrackerService#getTotalQuantity(String)
+     */
+    public Mono<Long> getTotalQuantity(final String item) {
+        return offload(() -> service.getTotalQuantity(item));
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} with the highest quantities of an item.
+     *
+     * @param item  The name of the item.
+     * @param count The largest number of machines to retrieve.
+     * @return A {@code Mono} emitting the machines and their quantities.
+     * @see MachineTrackerService#getTopMachines(String, int)
+     */
+    public Mono<List<ItemStock>> getTopMachines(final String item, final int count) {
+        return offload(() -> service.getTopMachines(item, count));
+    }
+
+    /**
+     * Sets the threshold of an item in every {@code Vending Machine} without a threshold of its own.
+     *
+     * @param item      The name of the item.
+     * @param threshold The threshold, or zero to stop watching the item.
+     * @return A {@code Mono} emitting the items below their thresholds after the change.
+     * @see MachineTrackerService#setItemThreshold(String, int)
+     */
+    public Mono<List<LowStock>> setItemThreshold(final String item, final int threshold) {
+        return offload(() -> service.setItemThreshold(item, threshold));
+    }
+
+    /**
+     * Sets the threshold of every item in a {@code Vending Machine}.
+     *
+     * @param id        The ID of the Vending Machine.
+     * @param threshold The threshold, or zero to go back to the item thresholds.
+     * @return A {@code Mono} emitting the items below their thresholds after the change.
+     * @see MachineTrackerService#setMachineThreshold(int, int)
+     */
+    public Mono<List<LowStock>> setMachineThreshold(final int id, final int threshold) {
+        return offload(() -> service.setMachineThreshold(id, threshold));
+    }
+
+    /**
+     * Retrieves the items that are currently below their thresholds.
+     *
+     * @return A {@code Mono} emitting the low items.
+     * @see MachineTrackerService#getLowStock()
+     */
+    public Mono<List<LowStock>> getLowStock() {
+        return offload(service::getLowStock);
+    }
+
+    /**
+     * Retrieves the version of the latest change to any {@code Vending Machine}.
+     *
+     * @return A {@code Mono} emitting the version.
+     * @see MachineTrackerService#getVersion()
+     */
+    public Mono<Long> getVersion() {
+        return offload(service::getVersion);
+    }
+
+    /**
+     * Retrieves the version of the latest change to a {@code Vending Machine}.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A {@code Mono} emitting the version.
+     * @see MachineTrackerService#getMachineVersion(int)
+     */
+    public Mono<Long> getMachineVersion(final int id) {
+        return offload(() -> service.getMachineVersion(id));
+    }
+
+    /**
+     * Retrieves the {@code Vending Machines} added, changed and removed since a version.
+     *
+     * @param since The version the client is up to date with.
+     * @return A {@code Mono} emitting the changes.
+     * @see MachineTrackerService#getChangesSince(long)
+     */
+    public Mono<MachineTrackerDelta> getChangesSince(final long since) {
+        return offload(() -> service.getChangesSince(since));
+    }
+
+    /**
+     * Fetches the location of a specific {@code Vending Machine} by its ID.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A {@code Mono} emitting the location.
+     * @see MachineTrackerService#getVendMachLocation(int)
+     */
+    public Mono<String> getVendMachLocation(final int id) {
+        return offload(() -> service.getVendMachLocation(id));
+    }
+
+    /**
+     * Retrieves the inventory status of a {@code Vending Machine} by its ID.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A {@code Mono} emitting the items and their quantities.
+     * @see MachineTrackerService#getInventory(int)
+     */
+    public Mono<HashMap<String, Integer>> getInventory(final int id) {
+        return offload(() -> service.getInventory(id));
+    }
+
+    /**
+     * Retrieves the stream of changes to all {@code Vending Machines}. Subscribing doesn't block, so it isn't
+     * moved to the persistence scheduler.
+     *
+     * @return A stream of Server-Sent Events.
+     * @see MachineTrackerService#streamEvents()
+     */
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents() {
+        return service.streamEvents();
+    }
+
+    /**
+     * Retrieves the stream of changes to one {@code Vending Machine}, once the machine has been looked up.
+     *
+     * @param id The ID of the Vending Machine.
+     * @return A stream of Server-Sent Events.
+     * @see MachineTrackerService#streamEvents(int)
+     */
+    public Flux<ServerSentEvent<MachineEvent>> streamEvents(final int id) {
+        return offload(() -> service.streamEvents(id)).flatMapMany(Function.identity());
+    }
+
+    /**
+     * Adds a specified quantity of a particular item to a {@code Vending Machine}.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param item     The name of the item to add.
+     * @param quantity The quantity of the item to add.
+     * @return A {@code Mono} emitting the updated inventory.
+     * @see MachineTrackerService#addItem(int, String, int)
+     */
+    public Mono<HashMap<String, Integer>> addItem(final int id, final String item, final int quantity) {
+        return offload(() -> service.addItem(id, item, quantity));
+    }
+
+    /**
+     * Removes a specified quantity of a particular item from a {@code Vending Machine}.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param item     The name of the item to remove.
+     * @param quantity The quantity of the item to remove.
+     * @return A {@code Mono} emitting the updated inventory.
+     * @see MachineTrackerService#removeItem(int, String, int)
+     */
+    public Mono<HashMap<String, Integer>> removeItem(final int id, final String item, final int quantity) {
+        return offload(() -> service.removeItem(id, item, quantity));
+    }
+
+    /**
+     * Applies a batch of inventory changes to one or more {@code Vending Machines}.
+     *
+     * @param operations The operations to apply.
+     * @param atomic     Whether the operations on each machine are applied all or nothing.
+     * @return A {@code Mono} emitting the result of every operation, in the order they were given.
+     * @see MachineTrackerService#applyBatch(List, boolean)
+     */
+    public Mono<List<InventoryOperationResult>> applyBatch(final List<InventoryOperation> operations,
+                                                           final boolean atomic) {
+        return offload(() -> service.applyBatch(operations, atomic));
+    }
+
+    /**
+     * Adds a new {@code Vending Machine} with a specified ID and location.
+     *
+     * @param id       The ID of the new Vending Machine.
+     * @param location The location of the new Vending Machine.
+     * @return A {@code Mono} emitting the updated list of machines and their locations.
+     * @see MachineTrackerService#addVendMach(int, String)
+     */
+    public Mono<HashMap<Integer, String>> addVendMach(final int id, final String location) {
+        return offload(() -> service.addVendMach(id, location));
+    }
+
+    /**
+     * Adds a new {@code Vending Machine}, returning only the added machine.
+     *
+     * @param id       The ID of the new Vending Machine.
+     * @param location The location of the new Vending Machine.
+     * @return A {@code Mono} emitting the added machine.
+     * @see MachineTrackerService#addVendMachBrief(int, String)
+     */
+    public Mono<MachineSummary> addVendMachBrief(final int id, final String location) {
+        return offload(() -> service.addVendMachBrief(id, location));
+    }
+
+    /**
+     * Removes a {@code Vending Machine} by its ID.
+     *
+     * @param id The ID of the Vending Machine to remove.
+     * @return A {@code Mono} emitting the updated list of machines and their locations.
+     * @see MachineTrackerService#removeVendMach(int)
+     */
+    public Mono<HashMap<Integer, String>> removeVendMach(final int id) {
+        return offload(() -> service.removeVendMach(id));
+    }
+
+    /**
+     * Removes a {@code Vending Machine} by its ID, returning only the removed machine.
+     *
+     * @param id The ID of the Vending Machine to remove.
+     * @return A {@code Mono} emitting the removed machine.
+     * @see MachineTrackerService#removeVendMachBrief(int)
+     */
+    public Mono<MachineSummary> removeVendMachBrief(final int id) {
+        return offload(() -> service.removeVendMachBrief(id));
+    }
+
+    /**
+     * Changes the location of an existing {@code Vending Machine}.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param location The new location for the Vending Machine.
+     * @return A {@code Mono} emitting the updated list of machines and their locations.
+     * @see MachineTrackerService#changeLocation(int, String)
+     */
+    public Mono<HashMap<Integer, String>> changeLocation(final int id, final String location) {
+        return offload(() -> service.changeLocation(id, location));
+    }
+
+    /**
+     * Changes the location of an existing {@code Vending Machine}, returning only the moved machine.
+     *
+     * @param id       The ID of the Vending Machine.
+     * @param location The new location for the Vending Machine.
+     * @return A {@code Mono} emitting the moved machine.
+     * @see MachineTrackerService#changeLocationBrief(int, String)
+     */
+    public Mono<MachineSummary> changeLocationBrief(final int id, final String location) {
+        return offload(() -> service.changeLocationBrief(id, location));
+    }
+
+    /**
+     * Stops the scheduler. Operations already running are allowed to finish.
+     */
+    @Override
+    public void close() {
+        persistenceScheduler.dispose();
+    }
+
+    /**
+     * Runs a blocking operation on the persistence scheduler.
+     *
+     * @param operation The operation.
+     * @param <T>       The type of the result.
+     * @return A {@code Mono} emitting the result, or the exception thrown by the operation.
+     */
+    private <T> Mono<T> offload(final Callable<T> operation) {
+        return Mono.fromCallable(operation).subscribeOn(persistenceScheduler);
+    }
+}
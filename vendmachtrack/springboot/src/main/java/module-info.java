@@ -5,6 +5,8 @@ module vendmachtrack.springboot {
     requires spring.web;
     requires spring.context;
     requires spring.beans;
+    requires org.apache.tomcat.embed.core;
+    requires reactor.core;
 
     requires vendmachtrack.core;
     requires vendmachtrack.jsonio;
@@ -19,6 +21,9 @@ module vendmachtrack.springboot {
     opens gr2338.vendmachtrack.springboot.controller;
     opens gr2338.vendmachtrack.springboot.exception;
 
+    // Lets Jackson read and write the request and response bodies of the batch endpoint.
+    opens gr2338.vendmachtrack.springboot.dto;
+
     //Opening the 'springboot.repository' to the spring.core module is necessary for testing purposes.
     // The reason why is that the Spring framework, especially the 'ReflectionTestUtils' class, needs
     // to gain access to the classes and their private fields within the 'springboot.repository' package.
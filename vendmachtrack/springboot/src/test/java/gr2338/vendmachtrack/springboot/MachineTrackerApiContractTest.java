@@ -0,0 +1,534 @@
+package gr2338.vendmachtrack.springboot;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Contract tests for the {@code /vendmachtrack} REST API.
+ * <p>
+ * The API is served either by the servlet stack or, with the {@code reactive} profile, by the reactive stack. The
+ * two variants must answer every request with the same status code and body, so the tests are written once here and
+ * run against a server of each kind by the subclasses. The tests talk to the running server over HTTP and don't
+ * depend on how it is implemented.
+ * </p>
+ * <p>
+ * Each subclass starts the server with its own tracker file, which is written before the first test with machine 1
+ * in "Trondheim" holding 5 "Cola" and 2 "Fanta", and machine 2 in "Oslo" with an empty inventory. Tests that change
+ * data add their own machines, so the tests don't depend on each other.
+ * </p>
+ *
+ * @see ServletApiContractTest
+ * @see ReactiveApiContractTest
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public abstract class MachineTrackerApiContractTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${vendmachtrack.persistence.file}")
+    private String fileName;
+
+    private WebTestClient client;
+
+    /**
+     * Writes the tracker file the server reads on the first request, and creates the client.
+     */
+    @BeforeAll
+    public void setUp() {
+        MachineTracker machineTracker = new MachineTracker();
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 5);
+        inventory.put("Fanta", 2);
+        machineTracker.addVendingMachine(new VendingMachine(1, inventory, "Trondheim"));
+        machineTracker.addVendingMachine(new VendingMachine(2, new HashMap<>(), "Oslo"));
+        new VendmachtrackPersistence(fileName).saveVendmachtrack(machineTracker);
+
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + port + "/vendmachtrack").build();
+    }
+
+    /**
+     * Tests that the list of machines holds the ID and location of every machine.
+     */
+    @Test
+    public void getVendMachList_returnsMachines() {
+        client.get().exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.1").isEqualTo("Trondheim")
+                .jsonPath("$.2").isEqualTo("Oslo");
+    }
+
+    /**
+     * Tests that the location of a machine is returned as plain text.
+     */
+    @Test
+    public void getVendMachLocation_returnsLocation() {
+        client.get().uri("/1/name").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Trondheim");
+    }
+
+    /**
+     * Tests that the inventory of a machine maps item names to quantities.
+     */
+    @Test
+    public void getInventory_returnsInventory() {
+        client.get().uri("/1").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .json("{\"Cola\":5,\"Fanta\":2}", true);
+    }
+
+    /**
+     * Tests that asking for a machine that doesn't exist gives {@code 404 Not Found} with the error details.
+     */
+    @Test
+    public void getInventory_unknownMachine_returnsNotFound() {
+        client.get().uri("/999").exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.timestamp").exists()
+                .jsonPath("$.error").isEqualTo("No such Vending Machine with ID: 999")
+                .jsonPath("$.details").isEqualTo("uri=/vendmachtrack/999");
+    }
+
+    /**
+     * Tests that adding and removing items changes the inventory and returns it.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add a new machine.</li>
+     *   <li>Act: Add three "Cola" and remove one.</li>
+     *   <li>Assert: Ensure that both responses hold the inventory after the change.</li>
+     * </ol>
+     */
+    @Test
+    public void addAndRemoveItem_updatesInventory() {
+        // Arrange
+        addMachine(10, "Bergen");
+
+        // Act and Assert
+        client.put().uri("/10/add?item=Cola&quantity=3").exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{\"Cola\":3}", true);
+        client.put().uri("/10/remove?item=Cola&quantity=1").exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{\"Cola\":2}", true);
+    }
+
+    /**
+     * Tests that removing more items than the machine holds gives {@code 400 Bad Request} and leaves the inventory
+     * unchanged.
+     */
+    @Test
+    public void removeItem_tooMany_returnsBadRequest() {
+        addMachine(11, "Bodø");
+        client.put().uri("/11/add?item=Cola&quantity=1").exchange().expectStatus().isOk();
+
+        client.put().uri("/11/remove?item=Cola&quantity=2").exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.details").isEqualTo("uri=/vendmachtrack/11/remove");
+        client.get().uri("/11").exchange()
+                .expectBody().json("{\"Cola\":1}", true);
+    }
+
+    /**
+     * Tests that leaving out a required parameter gives {@code 400 Bad Request}.
+     */
+    @Test
+    public void addItem_missingQuantity_returnsBadRequest() {
+        client.put().uri("/1/add?item=Cola").exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Tests adding a machine, changing its location and removing it.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Act: Add a machine, move it, and remove it.</li>
+     *   <li>Assert: Ensure that every response holds the list of machines after the change.</li>
+     * </ol>
+     */
+    @Test
+    public void addChangeAndRemoveVendMach_updatesList() {
+        client.post().uri("/add?id=12&location=Tromsø").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.12").isEqualTo("Tromsø");
+        client.put().uri("/12?location=Narvik").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.12").isEqualTo("Narvik");
+        client.delete().uri("/12").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.12").doesNotExist();
+    }
+
+    /**
+     * Tests that the brief variants of adding, moving and removing a machine return only that machine.
+     */
+    @Test
+    public void addChangeAndRemoveVendMach_brief_returnsOnlyMachine() {
+        client.post().uri("/add?id=17&location=Lillehammer&brief=true").exchange()
+                .expectStatus().isOk()
+                .expectBody(MachineSummary.class).isEqualTo(new MachineSummary(17, "Lillehammer"));
+        client.put().uri("/17?location=Gjøvik&brief=true").exchange()
+                .expectStatus().isOk()
+                .expectBody(MachineSummary.class).isEqualTo(new MachineSummary(17, "Gjøvik"));
+        client.delete().uri("/17?brief=true").exchange()
+                .expectStatus().isOk()
+                .expectBody(MachineSummary.class).isEqualTo(new MachineSummary(17, "Gjøvik"));
+        client.get().uri("/17").exchange().expectStatus().isNotFound();
+    }
+
+    /**
+     * Tests that the machines can be listed a page at a time, filtered by location.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add two machines in locations starting with "Kristians", and one that doesn't.</li>
+     *   <li>Act: Get the first page of one machine in locations starting with "kristians", and the page after it.</li>
+     *   <li>Assert: Ensure that each page holds one of the two machines in ID order, and that only the first page
+     *   has a cursor.</li>
+     * </ol>
+     */
+    @Test
+    public void getVendMachPage_locationPrefix_pagesThroughMatches() {
+        // Arrange
+        addMachine(18, "Kristiansand");
+        addMachine(19, "Kirkenes");
+        addMachine(20, "Kristiansund");
+
+        // Act
+        MachinePage first = client.get().uri("/machines?limit=1&location=kristians").exchange()
+                .expectStatus().isOk()
+                .expectBody(MachinePage.class)
+                .returnResult().getResponseBody();
+        MachinePage second = client.get().uri("/machines?limit=1&location=kristians&after=" + first.next())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MachinePage.class)
+                .returnResult().getResponseBody();
+
+        // Assert
+        assertEquals(new MachinePage(List.of(new MachineSummary(18, "Kristiansand")), 18), first);
+        assertEquals(new MachinePage(List.of(new MachineSummary(20, "Kristiansund")), null), second);
+        client.get().uri("/machines?limit=0").exchange().expectStatus().isBadRequest();
+    }
+
+    /**
+     * Tests that machines can be found and counted by location and location prefix.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add two machines at "Gløshaugen" and one at "Glomfjord".</li>
+     *   <li>Act: Find the machines at "gløshaugen" and at locations starting with "Glo", and count them.</li>
+     *   <li>Assert: Ensure that each response holds the matching machines in ID order, or their number.</li>
+     * </ol>
+     */
+    @Test
+    public void findByLocation_returnsMatchingMachines() {
+        // Arrange
+        addMachine(21, "Gløshaugen");
+        addMachine(22, "Glomfjord");
+        addMachine(23, "Gløshaugen");
+
+        // Act & Assert
+        client.get().uri("/locations/machines?location=gløshaugen").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MachineSummary.class)
+                .isEqualTo(List.of(new MachineSummary(21, "Gløshaugen"), new MachineSummary(23, "Gløshaugen")));
+        client.get().uri("/locations/machines?prefix=Glo").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MachineSummary.class)
+                .isEqualTo(List.of(new MachineSummary(22, "Glomfjord")));
+        client.get().uri("/locations?prefix=gl").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.Glomfjord").isEqualTo(1)
+                .jsonPath("$.Gløshaugen").isEqualTo(2);
+        client.get().uri("/locations/count?location=Gløshaugen").exchange()
+                .expectStatus().isOk()
+                .expectBody(Integer.class).isEqualTo(2);
+        client.get().uri("/locations/machines").exchange().expectStatus().isBadRequest();
+    }
+
+    /**
+     * Tests that the machines stocking an item, the total quantity and the top machines are found through the item
+     * index.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add three machines and stock "Solo" in two of them.</li>
+     *   <li>Act: Fetch the machines stocking "Solo", its total quantity and the machine with the most of it.</li>
+     *   <li>Assert: Ensure that each response reflects the stocked quantities.</li>
+     * </ol>
+     */
+    @Test
+    public void itemQueries_returnStockedMachines() {
+        // Arrange
+        addMachine(24, "Moholt");
+        addMachine(25, "Moholt");
+        addMachine(26, "Moholt");
+        client.put().uri("/24/add?item=Solo&quantity=2").exchange().expectStatus().isOk();
+        client.put().uri("/26/add?item=Solo&quantity=5").exchange().expectStatus().isOk();
+
+        // Act & Assert
+        client.get().uri("/items/machines?item=Solo").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ItemStock.class)
+                .isEqualTo(List.of(new ItemStock(24, 2), new ItemStock(26, 5)));
+        client.get().uri("/items/total?item=Solo").exchange()
+                .expectStatus().isOk()
+                .expectBody(Long.class).isEqualTo(7L);
+        client.get().uri("/items/top?item=Solo&count=1").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ItemStock.class)
+                .isEqualTo(List.of(new ItemStock(26, 5)));
+        client.get().uri("/items/top?item=Solo&count=0").exchange().expectStatus().isBadRequest();
+    }
+
+    /**
+     * Tests that items sold below their threshold are listed as low until they are restocked.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add a machine stocking "Urge", and set a threshold of 3 for "Urge".</li>
+     *   <li>Act: Sell "Urge" until it is below the threshold, then restock it.</li>
+     *   <li>Assert: Ensure that the item is listed as low only between the sale and the restocking.</li>
+     * </ol>
+     */
+    @Test
+    public void lowStock_listsItemsBelowThreshold() {
+        // Arrange
+        addMachine(27, "Moholt");
+        client.put().uri("/27/add?item=Urge&quantity=4").exchange().expectStatus().isOk();
+        client.put().uri("/items/threshold?item=Urge&threshold=3").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(LowStock.class).doesNotContain(new LowStock(27, "Urge", 4, 3));
+
+        // Act & Assert
+        client.put().uri("/27/remove?item=Urge&quantity=2").exchange().expectStatus().isOk();
+        client.get().uri("/items/low").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(LowStock.class).contains(new LowStock(27, "Urge", 2, 3));
+        client.put().uri("/27/add?item=Urge&quantity=5").exchange().expectStatus().isOk();
+        client.get().uri("/items/low").exchange()
+                .expectStatus().isOk()
+                .expectBodyList(LowStock.class).doesNotContain(new LowStock(27, "Urge", 2, 3));
+        client.put().uri("/items/threshold?item=Urge&threshold=-1").exchange().expectStatus().isBadRequest();
+        client.put().uri("/999/threshold?threshold=1").exchange().expectStatus().isNotFound();
+    }
+
+    /**
+     * Tests that a batch returns the result of every operation in order.
+     */
+    @Test
+    public void applyBatch_returnsResults() {
+        addMachine(13, "Ålesund");
+
+        client.post().uri("/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(
+                        Map.of("id", 13, "item", "Cola", "delta", 4),
+                        Map.of("id", 13, "item", "Cola", "delta", -10),
+                        Map.of("id", 999, "item", "Cola", "delta", 1)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].status").isEqualTo("APPLIED")
+                .jsonPath("$[0].quantity").isEqualTo(4)
+                .jsonPath("$[1].status").isEqualTo("REJECTED")
+                .jsonPath("$[2].status").isEqualTo("REJECTED");
+    }
+
+    /**
+     * Tests that asking for the changes since a version returns only what changed after it.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add a new machine, and get the whole fleet by asking for the changes since version zero.</li>
+     *   <li>Act: Add items to the machine, and get the changes since the version of the fleet.</li>
+     *   <li>Assert: Ensure that the fleet holds the seeded machines, and that the changes hold the machine and its
+     *   new inventory.</li>
+     * </ol>
+     */
+    @Test
+    public void getChangesSince_returnsChangedMachines() {
+        // Arrange
+        addMachine(15, "Hamar");
+        MachineTrackerDelta fleet = client.get().uri(uriBuilder -> uriBuilder.queryParam("since", 0).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MachineTrackerDelta.class)
+                .returnResult().getResponseBody();
+
+        // Act
+        client.put().uri("/15/add?item=Cola&quantity=3").exchange().expectStatus().isOk();
+        MachineTrackerDelta changes = client.get()
+                .uri(uriBuilder -> uriBuilder.queryParam("since", fleet.version()).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MachineTrackerDelta.class)
+                .returnResult().getResponseBody();
+
+        // Assert
+        assertTrue(fleet.full());
+        assertEquals(new MachineTrackerDelta.MachineState("Trondheim", Map.of("Cola", 5, "Fanta", 2)),
+                fleet.machines().get(1));
+        assertFalse(changes.full());
+        assertEquals(Map.of(15, new MachineTrackerDelta.MachineState("Hamar", Map.of("Cola", 3))),
+                changes.machines());
+        assertEquals(List.of(), changes.removed());
+    }
+
+    /**
+     * Tests that reads are answered with {@code 304 Not Modified} while the client's ETag is current.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add a new machine, and get its inventory with the ETag.</li>
+     *   <li>Act: Get the inventory again with the ETag, add items, and get it with the ETag once more.</li>
+     *   <li>Assert: Ensure that the second request gets {@code 304 Not Modified} without a body, and the third gets
+     *   the new inventory with a new ETag.</li>
+     * </ol>
+     */
+    @Test
+    public void getInventory_ifNoneMatch_returnsNotModifiedUntilChanged() {
+        // Arrange
+        addMachine(16, "Lillehammer");
+        String etag = client.get().uri("/16").exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+        assertNotNull(etag);
+
+        // Act and Assert
+        client.get().uri("/16").ifNoneMatch(etag).exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("ETag", etag)
+                .expectBody().isEmpty();
+        client.get().uri("/16/name").ifNoneMatch(etag).exchange()
+                .expectStatus().isNotModified();
+        client.put().uri("/16/add?item=Cola&quantity=1").exchange().expectStatus().isOk();
+        client.get().uri("/16").ifNoneMatch(etag).exchange()
+                .expectStatus().isOk()
+                .expectHeader().value("ETag", newEtag -> assertNotEquals(etag, newEtag))
+                .expectBody().json("{\"Cola\":1}", true);
+    }
+
+    /**
+     * Tests that the list of machines is answered with {@code 304 Not Modified} while the client's ETag is current.
+     */
+    @Test
+    public void getVendMachList_ifNoneMatch_returnsNotModified() {
+        String etag = client.get().exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+        assertNotNull(etag);
+
+        client.get().ifNoneMatch(etag).exchange()
+                .expectStatus().isNotModified();
+    }
+
+    /**
+     * Tests that a subscriber to the events of a machine is told about changes to its inventory.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Add a new machine and subscribe to its events.</li>
+     *   <li>Act: Add items once the heartbeat comment shows that the stream is open.</li>
+     *   <li>Assert: Ensure that an inventory event with the new inventory is received.</li>
+     * </ol>
+     */
+    @Test
+    public void streamEvents_addItem_receivesInventoryEvent() {
+        // Arrange
+        addMachine(14, "Molde");
+        Flux<ServerSentEvent<String>> stream = client.get().uri("/14/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() { })
+                .getResponseBody();
+
+        // Act
+        ServerSentEvent<String> event = stream
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(sse -> {
+                    if (sse.comment() != null && sse.data() == null) {
+                        client.put().uri("/14/add?item=Cola&quantity=7").exchange().expectStatus().isOk();
+                    }
+                })
+                .filter(sse -> sse.data() != null)
+                .blockFirst(Duration.ofSeconds(10));
+
+        // Assert
+        assertNotNull(event);
+        assertEquals("inventory", event.event());
+        assertTrue(event.data().contains("\"inventory\":{\"Cola\":7}"), event.data());
+    }
+
+    /**
+     * Tests that subscribing to the events of a machine that doesn't exist gives {@code 404 Not Found}.
+     */
+    @Test
+    public void streamEvents_unknownMachine_returnsNotFound() {
+        client.get().uri("/999/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * Adds a machine through the API.
+     *
+     * @param id       The ID of the machine.
+     * @param location The location of the machine.
+     */
+    private void addMachine(final int id, final String location) {
+        client.post().uri(uriBuilder -> uriBuilder.path("/add").queryParam("id", id)
+                        .queryParam("location", location).build())
+                .exchange()
+                .expectStatus().isOk();
+    }
+}
@@ -0,0 +1,16 @@
+package gr2338.vendmachtrack.springboot;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs the contract tests of the REST API against the reactive variant of the server, selected with the
+ * {@code reactive} profile.
+ *
+ * @see MachineTrackerApiContractTest
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vendmachtrack.persistence.file=contract-test-reactive.json")
+@ActiveProfiles("reactive")
+public class ReactiveApiContractTest extends MachineTrackerApiContractTest {
+}
@@ -0,0 +1,13 @@
+package gr2338.vendmachtrack.springboot;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the contract tests of the REST API against the servlet variant of the server, which is the default.
+ *
+ * @see MachineTrackerApiContractTest
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vendmachtrack.persistence.file=contract-test-servlet.json")
+public class ServletApiContractTest extends MachineTrackerApiContractTest {
+}
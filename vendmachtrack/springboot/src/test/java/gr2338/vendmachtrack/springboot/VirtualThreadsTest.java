@@ -0,0 +1,63 @@
+package gr2338.vendmachtrack.springboot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains JUnit tests for the VirtualThreads class. What is expected depends on the Java version the
+ * tests run on, since virtual threads are only available from Java 21.
+ *
+ * @see VirtualThreads
+ */
+public class VirtualThreadsTest {
+
+    private static final boolean VIRTUAL_THREADS_EXPECTED = Runtime.version().feature() >= 21;
+
+    /**
+     * Tests that support for virtual threads is detected from the running Java version.
+     */
+    @Test
+    public void VirtualThreads_IsSupported_MatchesJavaVersion() {
+        assertEquals(VIRTUAL_THREADS_EXPECTED, VirtualThreads.isSupported());
+    }
+
+    /**
+     * Tests that the executor runs tasks on named virtual threads, or fails with a clear error on older Java versions.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Check which Java version the test runs on.</li>
+     *   <li>Act: Create an executor and run a task that reads the name and kind of its thread.</li>
+     *   <li>Assert: Ensure that the task ran on a virtual thread with the given name prefix, or that creating the
+     *   executor threw an {@code IllegalStateException} before Java 21.</li>
+     * </ol>
+     *
+     * @throws Exception if the task fails
+     */
+    @Test
+    public void VirtualThreads_NewExecutor_RunsTasksOnVirtualThreads() throws Exception {
+        if (!VIRTUAL_THREADS_EXPECTED) {
+            assertThrows(IllegalStateException.class, () -> VirtualThreads.newExecutor("test-"));
+            return;
+        }
+
+        ExecutorService executor = VirtualThreads.newExecutor("test-");
+        try {
+            String thread = executor.submit(() -> {
+                boolean virtual = (boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                return Thread.currentThread().getName() + ":" + virtual;
+            }).get();
+
+            assertTrue(thread.startsWith("test-"));
+            assertTrue(thread.endsWith(":true"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
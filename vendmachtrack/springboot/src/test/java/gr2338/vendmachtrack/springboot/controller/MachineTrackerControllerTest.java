@@ -12,10 +12,13 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.web.context.request.WebRequest;
 import gr2338.vendmachtrack.core.model.VendingMachine;
 import gr2338.vendmachtrack.springboot.exception.IllegalInputException;
 import gr2338.vendmachtrack.springboot.exception.ResourceNotFoundException;
 import gr2338.vendmachtrack.springboot.service.MachineTrackerService;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -25,7 +28,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 
@@ -65,9 +71,9 @@ public class MachineTrackerControllerTest {
     }
 
     /**
-     * Tests the behavior of the {@link MachineTrackerController#getVendMachList()} method in the {@link MachineTrackerController} class.
+     * Tests the behavior of the {@link MachineTrackerController#getVendMachList(WebRequest)} method in the {@link MachineTrackerController} class.
      * <p>
-     * This test verifies that the {@link MachineTrackerController#getVendMachList()} method returns a JSON object containing the list of vending machines and ensures that the HTTP response status is 200 (OK).
+     * This test verifies that the {@link MachineTrackerController#getVendMachList(WebRequest)} method returns a JSON object containing the list of vending machines and ensures that the HTTP response status is 200 (OK).
      *
      * <p>
      * Test Steps:
@@ -133,10 +139,10 @@ public class MachineTrackerControllerTest {
 
 
     /**
-     * Tests the behavior of the {@link MachineTrackerController#getVendMachLocation(int)} method in the {@link MachineTrackerController} class.
+     * Tests the behavior of the {@link MachineTrackerController#getVendMachLocation(int, WebRequest)} method in the {@link MachineTrackerController} class.
      *
      * <p>
-     * This test verifies that the {@link MachineTrackerController#getVendMachLocation(int)} method returns the expected location ("Oslo") for a vending machine with a given ID and ensures a 200 (OK) response status.
+     * This test verifies that the {@link MachineTrackerController#getVendMachLocation(int, WebRequest)} method returns the expected location ("Oslo") for a vending machine with a given ID and ensures a 200 (OK) response status.
      * </p>
      *
      * <p>
@@ -168,10 +174,10 @@ public class MachineTrackerControllerTest {
     }
 
     /**
-     * Tests the behavior of the {@link MachineTrackerController#getVendMachLocation(int)} method in the {@link MachineTrackerController} class when it throws a {@link ResourceNotFoundException}.
+     * Tests the behavior of the {@link MachineTrackerController#getVendMachLocation(int, WebRequest)} method in the {@link MachineTrackerController} class when it throws a {@link ResourceNotFoundException}.
      *
      * <p>
-     * This test verifies that the {@link MachineTrackerController#getVendMachLocation(int)} method throws a {@link ResourceNotFoundException} with the message "Should throw" and ensures that the HTTP response status is 404 (Not Found).
+     * This test verifies that the {@link MachineTrackerController#getVendMachLocation(int, WebRequest)} method throws a {@link ResourceNotFoundException} with the message "Should throw" and ensures that the HTTP response status is 404 (Not Found).
      * </p>
      *
      * <p>
@@ -204,10 +210,10 @@ public class MachineTrackerControllerTest {
     }
 
     /**
-     * Tests the behavior of the {@link MachineTrackerController#getInventory(int)} method in the {@link MachineTrackerController} class.
+     * Tests the behavior of the {@link MachineTrackerController#getInventory(int, WebRequest)} method in the {@link MachineTrackerController} class.
      *
      * <p>
-     * This test verifies that the {@link MachineTrackerController#getInventory(int)} method returns a JSON object containing the inventory of a vending machine ("Cola": 10) and ensures that the HTTP response status is 200 (OK).
+     * This test verifies that the {@link MachineTrackerController#getInventory(int, WebRequest)} method returns a JSON object containing the inventory of a vending machine ("Cola": 10) and ensures that the HTTP response status is 200 (OK).
      * </p>
      *
      * <p>
@@ -240,10 +246,46 @@ public class MachineTrackerControllerTest {
     }
 
     /**
-     * Tests the behavior of the {@link MachineTrackerController#getInventory(int)} method in the {@link MachineTrackerController} class when it throws an {@link IllegalInputException}.
+     * Tests the behavior of the {@link MachineTrackerController#getInventory(int, WebRequest)} method in the {@link MachineTrackerController} class when the client's copy is current.
      *
      * <p>
-     * This test verifies that the {@link MachineTrackerController#getInventory(int)} method throws an {@link IllegalInputException} with the message "Should throw" and ensures that the HTTP response status is 400 (Bad Request).
+     * This test verifies that a request whose {@code If-None-Match} header holds the version of the machine gets 304 (Not Modified) with the ETag, and that the inventory isn't looked up.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the {@link MachineTrackerService} to return version 42 for the machine.</li>
+     *   <li>Act: Make a GET request to the "/vendmachtrack/1" endpoint with the ETag of version 42.</li>
+     *   <li>Assert: Verify that the response status is 304 (Not Modified), that the ETag is sent, and that {@link MachineTrackerService#getInventory(int)} is never called.</li>
+     * </ol>
+     *
+     * @throws Exception if an exception occurs during test execution.
+     */
+    @Test
+    public void MachineTrackerController_getInventory_notModified() throws Exception {
+        // Arrange
+        when(machineTrackerService.getMachineVersion(1)).thenReturn(42L);
+
+        // Act
+        ResultActions response = mockmvc.perform(MockMvcRequestBuilders
+                .get("/vendmachtrack/1")
+                .header("If-None-Match", "\"42\"")
+                .accept(MediaType.APPLICATION_JSON));
+
+        // Assert
+        response.andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"42\""))
+                .andExpect(content().string(""));
+        verify(machineTrackerService, never()).getInventory(anyInt());
+    }
+
+    /**
+     * Tests the behavior of the {@link MachineTrackerController#getInventory(int, WebRequest)} method in the {@link MachineTrackerController} class when it throws an {@link IllegalInputException}.
+     *
+     * <p>
+     * This test verifies that the {@link MachineTrackerController#getInventory(int, WebRequest)} method throws an {@link IllegalInputException} with the message "Should throw" and ensures that the HTTP response status is 400 (Bad Request).
      * </p>
      *
      * <p>
@@ -693,4 +735,45 @@ public class MachineTrackerControllerTest {
                 .andExpect(result -> assertEquals("Should throw", result.getResolvedException().getMessage()));
     }
 
+    /**
+     * Tests the behavior of the {@link MachineTrackerController#applyBatch(List, boolean)} method in the {@link MachineTrackerController} class.
+     *
+     * <p>
+     * This test verifies that the operations in the request body and the all-or-nothing option are passed on to the service, and that the result of every operation is returned with HTTP status 200 (OK).
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the {@link MachineTrackerService} to return one applied and one rejected result for the two expected operations.</li>
+     *   <li>Act: Make a POST request to the "/vendmachtrack/batch?atomic=true" endpoint using MockMvc with the operations as a JSON array.</li>
+     *   <li>Assert: Verify that the response status is 200 (OK) and that the returned JSON holds both results.</li>
+     * </ol>
+     *
+     * @throws Exception if an exception occurs during test execution.
+     */
+    @Test
+    public void MachineTrackerController_applyBatch_returnResults() throws Exception {
+        // Arrange
+        List<InventoryOperation> operations = List.of(new InventoryOperation(1, "Cola", 3),
+                new InventoryOperation(2, "Cola", -1));
+        when(machineTrackerService.applyBatch(eq(operations), eq(true))).thenReturn(List.of(
+                InventoryOperationResult.applied(operations.get(0), 13),
+                InventoryOperationResult.rejected(operations.get(1), "Should reject")));
+
+        // Act
+        ResultActions response = mockmvc.perform(MockMvcRequestBuilders
+                .post("/vendmachtrack/batch")
+                .param("atomic", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\":1,\"item\":\"Cola\",\"delta\":3},{\"id\":2,\"item\":\"Cola\",\"delta\":-1}]")
+                .accept(MediaType.APPLICATION_JSON));
+
+        // Assert
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"item\":\"Cola\",\"delta\":3,\"status\":\"APPLIED\",\"quantity\":13},"
+                        + "{\"id\":2,\"item\":\"Cola\",\"delta\":-1,\"status\":\"REJECTED\",\"error\":\"Should reject\"}]"));
+    }
+
 }
@@ -7,15 +7,27 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.test.util.ReflectionTestUtils;
 import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
 import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.MappedMachineStore;
 import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 /**
@@ -76,7 +88,8 @@ public class MachineTrackerRepositoryTest {
         MachineTracker actualMachineTracker = machineTrackerRepository.getVendmachtrack();
 
         // Assert
-        assertEquals(machineTracker, actualMachineTracker);
+        assertEquals(1, actualMachineTracker.getMachines().size());
+        assertEquals(vendingmachine.getId(), actualMachineTracker.getMachines().get(0).getId());
         verify(persistence, times(1)).getVendmachtrack();
     }
 
@@ -108,7 +121,8 @@ public class MachineTrackerRepositoryTest {
         VendingMachine actualVendingMachine = machineTrackerRepository.getVendMach(id);
 
         // Assert
-        assertEquals(vendingmachine, actualVendingMachine);
+        assertEquals(vendingmachine.getId(), actualVendingMachine.getId());
+        assertEquals(vendingmachine.getLocation(), actualVendingMachine.getLocation());
     }
 
     /**
@@ -165,12 +179,32 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         MachineTracker returnedMachineTracker = machineTrackerRepository.saveVendmachtrack(machineTracker);
+        machineTrackerRepository.flush();
 
         // Assert
-        verify(persistence, times(1)).saveVendmachtrack(machineTracker);
+        verify(persistence, times(1)).saveVendmachtrack(machineTrackerCaptor.capture());
+        assertEquals(1, machineTrackerCaptor.getValue().getMachines().size());
         assertSame(machineTracker, returnedMachineTracker);
     }
 
+    /**
+     * Tests that {@link MachineTrackerRepository#addMachine(int, String)} doesn't add a machine whose ID is taken,
+     * and that {@link MachineTrackerRepository#removeMachine(int)} tells whether it removed anything, so callers
+     * racing each other can tell which of them made the change.
+     */
+    @Test
+    public void MachineTrackerRepository_addAndRemoveMachine_reportWhetherApplied() {
+        MachineTracker machTrack = new MachineTracker();
+        machTrack.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machTrack);
+
+        assertNull(machineTrackerRepository.addMachine(1, "Bergen"));
+        assertEquals("Oslo", machineTrackerRepository.getVendMach(1).getLocation());
+        assertThrows(IllegalArgumentException.class, () -> machineTrackerRepository.addVendMach(1, "Bergen"));
+        assertTrue(machineTrackerRepository.removeMachine(1));
+        assertFalse(machineTrackerRepository.removeMachine(1));
+    }
+
     /**
      * Tests the {@link MachineTrackerRepository#addVendMach(int, String)} method of the {@link MachineTrackerRepository} class.
      *
@@ -202,11 +236,12 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         MachineTracker updatedMachineTracker = machineTrackerRepository.addVendMach(id, location);
+        machineTrackerRepository.flush();
 
         // Assert
         verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
         MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
-        assertEquals(updatedMachineTracker, capturedMachineTracker);
+        assertEquals(1, updatedMachineTracker.getMachines().size());
         List<VendingMachine> vendingMachines = capturedMachineTracker.getMachines();
         assertEquals(1, vendingMachines.size());
         VendingMachine addedVendingMachine = vendingMachines.get(0);
@@ -245,6 +280,7 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         VendingMachine result = machineTrackerRepository.addItem(id, item, quantity);
+        machineTrackerRepository.flush();
 
         // Assert
         assertNotNull(result);
@@ -253,7 +289,7 @@ public class MachineTrackerRepositoryTest {
         verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
         MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
         // verify that the captured MachineTracker contains the updated VendingMachine
-        assertEquals(vendingmachine, capturedMachineTracker.getMachines().get(0));
+        assertEquals(quantity, capturedMachineTracker.getMachines().get(0).getStatus().get(item).intValue());
     }
 
     /**
@@ -319,6 +355,7 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         VendingMachine result = machineTrackerRepository.changeLocation(id, newLocation);
+        machineTrackerRepository.flush();
 
         // Assert
         assertNotNull(result);
@@ -327,7 +364,7 @@ public class MachineTrackerRepositoryTest {
         verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
         MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
         // verify that the captured MachineTracker contains the updated VendingMachine
-        assertEquals(vendingmachine, capturedMachineTracker.getMachines().get(0));
+        assertEquals(newLocation, capturedMachineTracker.getMachines().get(0).getLocation());
     }
 
     /**
@@ -391,13 +428,13 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         MachineTracker result = machineTrackerRepository.removeVendMach(id);
+        machineTrackerRepository.flush();
 
         // Assert
-        assertEquals(machineTracker, result);
         assertTrue(result.getMachines().isEmpty());
         verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
         MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
-        assertEquals(machineTracker, capturedMachineTracker);
+        assertTrue(capturedMachineTracker.getMachines().isEmpty());
     }
 
     /**
@@ -409,7 +446,7 @@ public class MachineTrackerRepositoryTest {
      *
      * <p>
      * The test sets up the necessary mocks and data, calls the {@link MachineTrackerRepository#removeVendMach(int)} method with a non-existent vending machine ID,
-     * and verifies that the returned {@link MachineTracker} is the same as the one saved.
+     * and verifies that the tracker is left unchanged and nothing is written to the data storage.
      * </p>
      *
      * <p>
@@ -418,7 +455,7 @@ public class MachineTrackerRepositoryTest {
      * <ol>
      *   <li>Arrange: Set up the test by configuring mock behavior to simulate an existing list of vending machines, specifying a vending machine ID that does not exist in the list, and configuring mock behavior for saving the updated {@link MachineTracker} object.</li>
      *   <li>Act: Call the {@link MachineTrackerRepository#removeVendMach(int)} method to attempt to remove a non-existent vending machine.</li>
-     *   <li>Assert: Verify that the method returns the same {@link MachineTracker} object as the one saved.</li>
+     *   <li>Assert: Verify that the returned {@link MachineTracker} still contains the existing machine and that nothing was saved.</li>
      * </ol>
      */
     @Test
@@ -433,12 +470,11 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         MachineTracker result = machineTrackerRepository.removeVendMach(id);
+        machineTrackerRepository.flush();
 
         // Assert
-        assertEquals(machineTracker, result);
-        verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
-        MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
-        assertEquals(machineTracker, capturedMachineTracker);
+        assertEquals(1, result.getMachines().size());
+        verify(persistence, never()).saveVendmachtrack(any(MachineTracker.class));
     }
 
 
@@ -473,6 +509,7 @@ public class MachineTrackerRepositoryTest {
 
         // Act
         VendingMachine result = machineTrackerRepository.removeItem(id, item, quantity);
+        machineTrackerRepository.flush();
 
         // Assert
         assertNotNull(result);
@@ -480,7 +517,7 @@ public class MachineTrackerRepositoryTest {
         assertEquals(1, result.getStatus().get(item));
         verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
         MachineTracker capturedMachineTracker = machineTrackerCaptor.getValue();
-        assertEquals(machineTracker, capturedMachineTracker);
+        assertEquals(1, capturedMachineTracker.getMachines().get(0).getStatus().get(item));
 
     }
 
@@ -514,4 +551,821 @@ public class MachineTrackerRepositoryTest {
         assertNull(result);
     }
 
+    /**
+     * Tests that reads are served from memory once the {@link MachineTracker} has been loaded.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the persistence mock to return a {@link MachineTracker} with one vending machine.</li>
+     *   <li>Act: Read the tracker and the vending machine several times.</li>
+     *   <li>Assert: Verify that the persistence layer was only read from once.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_reads_loadTrackerOnlyOnce() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        machineTrackerRepository.getVendmachtrack();
+        machineTrackerRepository.getVendMach(1);
+        machineTrackerRepository.addItem(1, "Cola", 1);
+        machineTrackerRepository.getVendMach(1);
+
+        // Assert
+        verify(persistence, times(1)).getVendmachtrack();
+    }
+
+    /**
+     * Tests that changes are not written to the data storage before a flush is due.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the persistence mock to return a {@link MachineTracker} with one vending machine.</li>
+     *   <li>Act: Add an item to the vending machine without flushing.</li>
+     *   <li>Assert: Verify that nothing has been saved yet.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_addItem_doesNotWriteThrough() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        machineTrackerRepository.addItem(1, "Cola", 1);
+
+        // Assert
+        verify(persistence, never()).saveVendmachtrack(any(MachineTracker.class));
+    }
+
+    /**
+     * Tests that the background writer flushes once the configured number of changes has been reached.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a repository that flushes after two changes and has a long flush interval.</li>
+     *   <li>Act: Add an item to the vending machine twice.</li>
+     *   <li>Assert: Verify that the background writer saves the tracker once, with both changes applied.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_changes_flushAfterChangeThreshold() {
+
+        // Arrange
+        MachineTrackerRepository repository = new MachineTrackerRepository("testFileName", 2, 60_000);
+        ReflectionTestUtils.setField(repository, "persistence", persistence);
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        repository.addItem(1, "Cola", 1);
+        repository.addItem(1, "Cola", 1);
+
+        // Assert
+        verify(persistence, timeout(5000).times(1)).saveVendmachtrack(machineTrackerCaptor.capture());
+        assertEquals(2, machineTrackerCaptor.getValue().getMachines().get(0).getStatus().get("Cola"));
+        repository.close();
+    }
+
+    /**
+     * Tests that the background writer flushes pending changes when the flush interval has passed.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a repository with a high change threshold and a short flush interval.</li>
+     *   <li>Act: Add an item to the vending machine once.</li>
+     *   <li>Assert: Verify that the background writer saves the tracker.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_changes_flushAfterInterval() {
+
+        // Arrange
+        MachineTrackerRepository repository = new MachineTrackerRepository("testFileName", 1000, 50);
+        ReflectionTestUtils.setField(repository, "persistence", persistence);
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        repository.addItem(1, "Cola", 1);
+
+        // Assert
+        verify(persistence, timeout(5000).atLeastOnce()).saveVendmachtrack(any(MachineTracker.class));
+        repository.close();
+    }
+
+    /**
+     * Tests that {@link MachineTrackerRepository#close()} flushes pending changes.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a repository with a high change threshold and a long flush interval, and change its tracker.</li>
+     *   <li>Act: Close the repository.</li>
+     *   <li>Assert: Verify that the pending change was saved.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_close_flushesPendingChanges() {
+
+        // Arrange
+        MachineTrackerRepository repository = new MachineTrackerRepository("testFileName", 1000, 60_000);
+        ReflectionTestUtils.setField(repository, "persistence", persistence);
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        repository.changeLocation(1, "Bergen");
+
+        // Act
+        repository.close();
+
+        // Assert
+        verify(persistence, times(1)).saveVendmachtrack(machineTrackerCaptor.capture());
+        assertEquals("Bergen", machineTrackerCaptor.getValue().getMachines().get(0).getLocation());
+    }
+
+    /**
+     * Tests that changes are appended to the journal instead of written behind when the persistence is in journal mode.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Let the persistence report journal mode, and accept every journal entry.</li>
+     *   <li>Act: Add an item, remove an item, add a machine and flush.</li>
+     *   <li>Assert: Verify that each change was journaled and that the whole tracker was never saved.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_journalMode_recordsChanges() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        when(persistence.isJournaled()).thenReturn(true);
+        when(persistence.recordAddItem(anyInt(), anyString(), anyInt())).thenReturn(true);
+        when(persistence.recordRemoveItem(anyInt(), anyString(), anyInt())).thenReturn(true);
+        when(persistence.recordAddVendMach(anyInt(), anyString())).thenReturn(true);
+
+        // Act
+        machineTrackerRepository.addItem(1, "Cola", 5);
+        machineTrackerRepository.removeItem(1, "Cola", 2);
+        machineTrackerRepository.addVendMach(2, "Bergen");
+        machineTrackerRepository.flush();
+
+        // Assert
+        verify(persistence).recordAddItem(1, "Cola", 5);
+        verify(persistence).recordRemoveItem(1, "Cola", 2);
+        verify(persistence).recordAddVendMach(2, "Bergen");
+        verify(persistence, never()).saveVendmachtrack(any(MachineTracker.class));
+    }
+
+    /**
+     * Tests that the whole tracker is written behind when appending to the journal fails.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Let the persistence report journal mode, but fail to write journal entries.</li>
+     *   <li>Act: Change the location of a machine and flush.</li>
+     *   <li>Assert: Verify that the whole tracker was written with the change, as a compaction of the journal.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_journalMode_fallsBackToFlush() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        when(persistence.isJournaled()).thenReturn(true);
+        when(persistence.recordChangeLocation(anyInt(), anyString())).thenReturn(false);
+        when(persistence.getJournalSequence()).thenReturn(4L);
+        when(persistence.compact(any(MachineTracker.class), anyLong())).thenReturn(true);
+
+        // Act
+        machineTrackerRepository.changeLocation(1, "Bergen");
+        machineTrackerRepository.flush();
+
+        // Assert
+        verify(persistence, times(1)).compact(machineTrackerCaptor.capture(), eq(4L));
+        assertEquals("Bergen", machineTrackerCaptor.getValue().getMachines().get(0).getLocation());
+    }
+
+    /**
+     * Tests that the journal is compacted by the background writer from the in-memory tracker, once it holds enough
+     * entries.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write a tracker file holding machine 1, and open a repository on it that compacts the journal
+     *   after two entries.</li>
+     *   <li>Act: Make three changes and close the repository, which lets the background writer finish.</li>
+     *   <li>Assert: Verify that the journal holds at most the change made after the compaction, and that the tracker
+     *   read back from the files holds every change.</li>
+     * </ol>
+     *
+     * @throws Exception if the test files can't be read or deleted
+     */
+    @Test
+    public void MachineTrackerRepository_journalMode_compactsInBackground() throws Exception {
+
+        // Arrange
+        String fileName = "testcompactingrepository.json";
+        Path trackerPath = Paths.get(System.getProperty("user.home"), fileName);
+        Path journalPath = Paths.get(trackerPath + ".journal");
+        machineTracker.setMachines(machines);
+        new VendmachtrackPersistence(fileName).saveVendmachtrack(machineTracker);
+
+        try {
+            MachineTrackerRepository repository = new MachineTrackerRepository(fileName, 50, 60_000, 2, "never");
+
+            // Act
+            repository.addItem(1, "Cola", 5);
+            repository.addItem(1, "Fanta", 2);
+            repository.changeLocation(1, "Bergen");
+            repository.close();
+
+            // Assert
+            assertTrue(Files.readAllLines(journalPath).size() <= 1);
+            VendingMachine reloaded = new VendmachtrackPersistence(fileName, 2).getVendmachtrack().getMachine(1);
+            assertEquals(Map.of("Cola", 5, "Fanta", 2), reloaded.getStatus());
+            assertEquals("Bergen", reloaded.getLocation());
+        } finally {
+            Files.deleteIfExists(trackerPath);
+            Files.deleteIfExists(journalPath);
+        }
+    }
+
+    /**
+     * Tests that a list of item changes is applied in order and journaled as one write, leaving out removals that can't be applied.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Let the persistence report journal mode, and accept every journal entry.</li>
+     *   <li>Act: Apply an addition, a removal, and a removal of an item the machine doesn't hold.</li>
+     *   <li>Assert: Verify that the first two changes were applied and journaled together, and that nothing was journaled one by one.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_applyItemChanges_journalsAppliedChanges() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        when(persistence.isJournaled()).thenReturn(true);
+        when(persistence.recordItemChanges(anyInt(), any())).thenReturn(true);
+
+        // Act
+        VendingMachine result = machineTrackerRepository.applyItemChanges(1,
+                List.of(Map.entry("Cola", 5), Map.entry("Cola", -2), Map.entry("Fanta", -1)));
+
+        // Assert
+        assertEquals(3, result.getQuantity("Cola"));
+        assertFalse(result.getStatusView().containsKey("Fanta"));
+        verify(persistence).recordItemChanges(1, List.of(Map.entry("Cola", 5), Map.entry("Cola", -2)));
+        verify(persistence, never()).recordAddItem(anyInt(), anyString(), anyInt());
+        assertNull(machineTrackerRepository.applyItemChanges(2, List.of(Map.entry("Cola", 1))));
+    }
+
+    /**
+     * Tests that changes made in a batch don't trigger flushes until the batch is done, and are then flushed together.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Create a repository that flushes after two changes and has a long flush interval.</li>
+     *   <li>Act: Add an item five times in a batch.</li>
+     *   <li>Assert: Verify that nothing was saved during the batch, and that the tracker was saved once afterwards with all changes.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_inBatch_flushesOnceAfterBatch() {
+
+        // Arrange
+        MachineTrackerRepository repository = new MachineTrackerRepository("testFileName", 2, 60_000);
+        ReflectionTestUtils.setField(repository, "persistence", persistence);
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        repository.inBatch(() -> {
+            for (int i = 0; i < 5; i++) {
+                repository.addItem(1, "Cola", 1);
+            }
+            verify(persistence, after(200).never()).saveVendmachtrack(any(MachineTracker.class));
+            return null;
+        });
+
+        // Assert
+        verify(persistence, timeout(5000).times(1)).saveVendmachtrack(machineTrackerCaptor.capture());
+        assertEquals(5, machineTrackerCaptor.getValue().getMachines().get(0).getStatus().get("Cola"));
+        repository.close();
+    }
+
+    /**
+     * Tests that {@link MachineTrackerRepository#flush()} keeps the changes pending when writing fails, and writes them on the next flush.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Let the persistence report a failed write during the first save only, and change the tracker.</li>
+     *   <li>Act: Flush three times.</li>
+     *   <li>Assert: Verify that the tracker was saved twice, once failing and once for the retry, and that the failed write is exposed.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_flush_retriesFailedWrite() {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        when(persistence.getFailedWrites()).thenReturn(0L, 1L);
+        machineTrackerRepository.changeLocation(1, "Bergen");
+
+        // Act
+        machineTrackerRepository.flush();
+        machineTrackerRepository.flush();
+        machineTrackerRepository.flush();
+
+        // Assert
+        verify(persistence, times(2)).saveVendmachtrack(any(MachineTracker.class));
+        assertEquals(1, machineTrackerRepository.getFailedWrites());
+    }
+
+    /**
+     * Tests that {@link MachineTrackerRepository#flush()} writes a copy of the tracker without holding the lock, so
+     * requests aren't held up by the disk.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Let the persistence block while saving until the test lets it go, and change the tracker.</li>
+     *   <li>Act: Flush on another thread, and change the tracker again while the save is blocked.</li>
+     *   <li>Assert: Verify that the change went through during the save, and that the saved copy doesn't hold it.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_flush_writesOutsideLock() throws Exception {
+
+        // Arrange
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(persistence.saveVendmachtrack(any(MachineTracker.class))).thenAnswer(invocation -> {
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        });
+        machineTrackerRepository.changeLocation(1, "Bergen");
+
+        // Act
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(machineTrackerRepository::flush);
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        VendingMachine changed = machineTrackerRepository.addItem(1, "Cola", 3);
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(3, changed.getStatus().get("Cola"));
+        verify(persistence).saveVendmachtrack(machineTrackerCaptor.capture());
+        assertEquals("Bergen", machineTrackerCaptor.getValue().getMachine(1).getLocation());
+        assertNull(machineTrackerCaptor.getValue().getMachine(1).getStatus().get("Cola"));
+    }
+
+    /**
+     * Tests that the constructor rejects unknown fsync policies.
+     */
+    @Test
+    public void MachineTrackerRepository_constructor_rejectsUnknownFsyncPolicy() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MachineTrackerRepository("testFileName", 50, 1000, 0, "sometimes"));
+    }
+
+    /**
+     * Tests that the repository keeps machines in a memory-mapped store when given a cache size, fills the store from
+     * the tracker file on first start, reads its changes back after a restart, and exports them to the tracker file.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write a tracker file holding machine 1, and open a repository with the mapped store.</li>
+     *   <li>Act: Add an item to machine 1, add machine 2, remove machine 1 after adding machine 3, and reopen the
+     *   repository.</li>
+     *   <li>Assert: Verify that the reopened repository holds the changes, that the tracker file holds them after
+     *   closing, and that the whole tracker isn't copied from the store.</li>
+     * </ol>
+     *
+     * @throws Exception if the test files can't be deleted
+     */
+    @Test
+    public void MachineTrackerRepository_mappedStore_importsAndKeepsChanges() throws Exception {
+
+        // Arrange
+        String fileName = "testmappedrepository.json";
+        Path trackerPath = Paths.get(System.getProperty("user.home"), fileName);
+        Path storePath = Paths.get(trackerPath + MappedMachineStore.STORE_SUFFIX);
+        machineTracker.setMachines(machines);
+        new VendmachtrackPersistence(fileName).saveVendmachtrack(machineTracker);
+
+        try {
+            MachineTrackerRepository repository = new MachineTrackerRepository(fileName, 50, 60_000, 0, "never", 10);
+
+            // Act
+            repository.addItem(1, "Cola", 5);
+            repository.addMachine(2, "Bergen");
+            repository.addMachine(3, "Bodø");
+            repository.removeMachine(3);
+            repository.close();
+            MachineTrackerRepository reopened = new MachineTrackerRepository(fileName, 50, 60_000, 0, "never", 10);
+
+            // Assert
+            assertEquals(5, reopened.getVendMach(1).getStatus().get("Cola"));
+            assertEquals("Bergen", reopened.getVendMach(2).getLocation());
+            assertNull(reopened.getVendMach(3));
+            assertEquals(2, reopened.getChangesSince(0).machines().size());
+            assertEquals(2, new VendmachtrackPersistence(fileName).getVendmachtrack().getMachineCount());
+            assertThrows(UnsupportedOperationException.class, reopened::getVendmachtrack);
+            assertEquals(List.of(1, 2), List.copyOf(reopened.getLocations(Integer.MIN_VALUE, 10, null).keySet()));
+            assertEquals(Map.of(2, "Bergen"), reopened.getMachinesAt("bergen"));
+            reopened.changeLocation(2, "Bodø");
+            reopened.addMachine(4, "Bergen");
+            assertEquals(Map.of(2, "Bodø", 4, "Bergen"), reopened.getMachinesWithLocationPrefix("b"));
+            assertEquals(1, reopened.countMachinesAt("BERGEN"));
+            assertEquals(Map.of("Bergen", 1, "Bodø", 1), reopened.countByLocation("b"));
+            assertEquals(Map.of(1, 5), reopened.getMachinesStocking("Cola"));
+            reopened.addItem(2, "Cola", 7);
+            reopened.removeItem(1, "Cola", 5);
+            reopened.addItem(4, "Cola", 2);
+            reopened.removeMachine(4);
+            assertEquals(Map.of(2, 7), reopened.getTopMachines("Cola", 5));
+            assertEquals(7, reopened.getTotalQuantity("Cola"));
+            reopened.setItemThreshold("Cola", 5);
+            assertTrue(reopened.getLowStock().isEmpty());
+            reopened.removeItem(2, "Cola", 3);
+            assertEquals(List.of(new StockAlert(2, "Cola", 4, 5, true)), reopened.getLowStock());
+            reopened.close();
+            MachineTracker exported = new VendmachtrackPersistence(fileName).getVendmachtrack();
+            assertTrue(exported.getMachine(1).getStatus().isEmpty());
+            assertEquals(4, exported.getMachine(2).getStatus().get("Cola"));
+            assertEquals("Bodø", exported.getMachine(2).getLocation());
+        } finally {
+            Files.deleteIfExists(trackerPath);
+            Files.deleteIfExists(storePath);
+            Files.deleteIfExists(Paths.get(trackerPath + ".lock"));
+        }
+    }
+
+    /**
+     * Tests that a flush merges the changes another process wrote to the tracker file instead of overwriting them,
+     * and that a flush that can't merge them overwrites the file and is counted.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Write a tracker file holding machines 1 and 2, open a repository on it and add an item to
+     *   machine 1, then change machine 2 and add machine 3 from another persistence, as a desktop client would.</li>
+     *   <li>Act: Flush, then change the file from the other persistence again, replace the whole tracker in the
+     *   repository, and flush once more.</li>
+     *   <li>Assert: Verify that the first flush kept both sets of changes in the file and in the repository, and
+     *   that the second overwrote the file and was counted.</li>
+     * </ol>
+     *
+     * @throws Exception if the test files can't be deleted
+     */
+    @Test
+    public void MachineTrackerRepository_flush_mergesChangesFromOtherProcess() throws Exception {
+
+        // Arrange
+        String fileName = "testmergingrepository.json";
+        Path trackerPath = Paths.get(System.getProperty("user.home"), fileName);
+        machines.add(new VendingMachine(2, new HashMap<>(), "Bergen"));
+        machineTracker.setMachines(machines);
+        VendmachtrackPersistence other = new VendmachtrackPersistence(fileName);
+        other.saveVendmachtrack(machineTracker);
+
+        try {
+            MachineTrackerRepository repository = new MachineTrackerRepository(fileName, 50, 60_000);
+            repository.addItem(1, "Cola", 5);
+            other.update(tracker -> {
+                tracker.getMachine(2).addItem("Fanta", 3);
+                tracker.addVendingMachine(new VendingMachine(3, new HashMap<>(), "Bodø"));
+                return null;
+            });
+
+            // Act
+            repository.flush();
+            MachineTracker merged = other.getVendmachtrack();
+            Map<Integer, String> mergedAtBodo = repository.getMachinesAt("bodø");
+            other.update(tracker -> tracker.removeVendingMachine(3));
+            MachineTracker replacement = new MachineTracker();
+            replacement.setMachines(new ArrayList<>(List.of(new VendingMachine(4, new HashMap<>(), "Tromsø"))));
+            repository.saveVendmachtrack(replacement);
+            repository.flush();
+
+            // Assert
+            assertEquals(5, merged.getMachine(1).getQuantity("Cola"));
+            assertEquals(3, merged.getMachine(2).getQuantity("Fanta"));
+            assertEquals("Bodø", merged.getMachine(3).getLocation());
+            assertEquals(Map.of(3, "Bodø"), mergedAtBodo);
+            assertEquals(1, repository.getClobberedWrites());
+            assertEquals(List.of(4), other.getVendmachtrack().getMachinesView().stream()
+                    .map(VendingMachine::getId).toList());
+            repository.close();
+        } finally {
+            Files.deleteIfExists(trackerPath);
+            Files.deleteIfExists(Paths.get(trackerPath + ".lock"));
+        }
+    }
+
+    /**
+     * Tests the {@link MachineTrackerRepository#getChangesSince(long)} method of the {@link MachineTrackerRepository} class.
+     *
+     * <p>
+     * This test case verifies that only the machines changed after the given version are returned.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load a tracker with three machines and get the whole fleet with its version.</li>
+     *   <li>Act: Add items to one machine, remove another and add a new one, then get the changes since the version.</li>
+     *   <li>Assert: Verify that the changed and added machines and the removed ID are returned, and nothing after the new version.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_getChangesSince_returnsOnlyChanges() {
+
+        // Arrange
+        machines.add(new VendingMachine(2, new HashMap<>(), "Bergen"));
+        machines.add(new VendingMachine(3, new HashMap<>(), "Molde"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        TrackerChanges fleet = machineTrackerRepository.getChangesSince(0);
+
+        // Act
+        machineTrackerRepository.addItem(1, "Cola", 2);
+        machineTrackerRepository.removeVendMach(2);
+        machineTrackerRepository.addVendMach(4, "Tromsø");
+        TrackerChanges changes = machineTrackerRepository.getChangesSince(fleet.version());
+
+        // Assert
+        assertTrue(fleet.full());
+        assertEquals(3, fleet.machines().size());
+        assertFalse(changes.full());
+        assertEquals(List.of(1, 4), changes.machines().stream().map(VendingMachine::getId).toList());
+        assertEquals(2, changes.machines().iterator().next().getQuantity("Cola"));
+        assertEquals(List.of(2), changes.removed());
+        assertEquals(fleet.version() + 3, changes.version());
+        TrackerChanges none = machineTrackerRepository.getChangesSince(changes.version());
+        assertTrue(none.machines().isEmpty());
+        assertTrue(none.removed().isEmpty());
+    }
+
+    /**
+     * Tests the {@link MachineTrackerRepository#getLocations(int, int, String)} method of the {@link MachineTrackerRepository} class.
+     *
+     * <p>
+     * This test case verifies that machines are listed in pages in order of ID, and that added and removed machines
+     * are reflected in the next listing.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load a tracker with machines added out of ID order.</li>
+     *   <li>Act: List the first two pages of two machines, the machines in locations starting with "b", and the first
+     *   page again after adding and removing machines.</li>
+     *   <li>Assert: Verify that each page holds the next machines by ID, that the filter ignores case, and that the
+     *   last listing holds the changes.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_getLocations_pagesInIdOrder() {
+
+        // Arrange
+        machines.add(new VendingMachine(7, new HashMap<>(), "Bergen"));
+        machines.add(new VendingMachine(3, new HashMap<>(), "Molde"));
+        machines.add(new VendingMachine(5, new HashMap<>(), "Bodø"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+
+        // Act
+        Map<Integer, String> first = machineTrackerRepository.getLocations(Integer.MIN_VALUE, 2, null);
+        Map<Integer, String> second = machineTrackerRepository.getLocations(3, 2, null);
+        Map<Integer, String> filtered = machineTrackerRepository.getLocations(Integer.MIN_VALUE, 10, "b");
+        machineTrackerRepository.addVendMach(2, "Hamar");
+        machineTrackerRepository.removeVendMach(3);
+        Map<Integer, String> changed = machineTrackerRepository.getLocations(Integer.MIN_VALUE, 2, null);
+
+        // Assert
+        assertEquals(List.of(1, 3), List.copyOf(first.keySet()));
+        assertEquals(List.of(5, 7), List.copyOf(second.keySet()));
+        assertEquals("Bodø", second.get(5));
+        assertEquals(List.of(5, 7), List.copyOf(filtered.keySet()));
+        assertEquals(List.of(1, 2), List.copyOf(changed.keySet()));
+    }
+
+    /**
+     * Tests the location queries of the {@link MachineTrackerRepository} class.
+     *
+     * <p>
+     * This test case verifies that machines are found by location through the index of the in-memory tracker, and
+     * that the index follows machines that are moved, added and removed through the repository.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load a tracker with machines in "Oslo" and "Bergen".</li>
+     *   <li>Act: Move the machine in "Bergen" to "Oslo", add a machine in "Bodø" and remove machine 1.</li>
+     *   <li>Assert: Verify that the machines, and the number of machines, at each location reflect the changes.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_locationQueries_followChanges() {
+
+        // Arrange
+        machines.add(new VendingMachine(2, new HashMap<>(), "Bergen"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        assertEquals(Map.of(2, "Bergen"), machineTrackerRepository.getMachinesAt("Bergen"));
+
+        // Act
+        machineTrackerRepository.changeLocation(2, "Oslo");
+        machineTrackerRepository.addVendMach(3, "Bodø");
+        int inOslo = machineTrackerRepository.countMachinesAt("oslo");
+        machineTrackerRepository.removeVendMach(1);
+
+        // Assert
+        assertEquals(2, inOslo);
+        assertEquals(Map.of(2, "Oslo"), machineTrackerRepository.getMachinesAt("Oslo"));
+        assertTrue(machineTrackerRepository.getMachinesAt("Bergen").isEmpty());
+        assertEquals(Map.of("Bodø", 1, "Oslo", 1), machineTrackerRepository.countByLocation(""));
+        assertEquals(Map.of(2, "Oslo", 3, "Bodø"), machineTrackerRepository.getAllLocations());
+    }
+
+    /**
+     * Tests the item queries of the {@link MachineTrackerRepository} class.
+     *
+     * <p>
+     * This test case verifies that the item index of the in-memory tracker is built on the first query, and that it
+     * follows items added and removed through the repository, and machines that are removed.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load a tracker with two machines stocking "Cola", and query the item index.</li>
+     *   <li>Act: Add and remove "Cola" in both machines in one batch of changes and one at a time, and remove machine
+     *   1.</li>
+     *   <li>Assert: Verify that the machines stocking "Cola", the total quantity and the ranking reflect the
+     *   changes.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_itemQueries_followChanges() {
+
+        // Arrange
+        vendingmachine.setStatus(new HashMap<>(Map.of("Cola", 3)));
+        machines.add(new VendingMachine(2, new HashMap<>(Map.of("Cola", 1, "Fanta", 2)), "Bergen"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        assertEquals(4, machineTrackerRepository.getTotalQuantity("Cola"));
+
+        // Act
+        machineTrackerRepository.applyItemChanges(2, List.of(Map.entry("Cola", 5), Map.entry("Fanta", -2)));
+        machineTrackerRepository.removeItem(1, "Cola", 1);
+        List<Integer> ranking = List.copyOf(machineTrackerRepository.getTopMachines("Cola", 2).keySet());
+        machineTrackerRepository.removeVendMach(2);
+
+        // Assert
+        assertEquals(List.of(2, 1), ranking);
+        assertEquals(Map.of(1, 2), machineTrackerRepository.getMachinesStocking("Cola"));
+        assertEquals(2, machineTrackerRepository.getTotalQuantity("Cola"));
+        assertTrue(machineTrackerRepository.getTopMachines("Fanta", 1).isEmpty());
+    }
+
+    /**
+     * Tests the stock thresholds of the {@link MachineTrackerRepository} class.
+     *
+     * <p>
+     * This test case verifies that setting a threshold finds the machines already below it, that items sold and
+     * restocked through the repository are reported to the listeners as they cross the threshold, and that the
+     * thresholds are kept when the tracker is replaced.
+     * </p>
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Load a tracker with two machines stocking "Cola", add a listener and set a threshold of 3 for
+     *   "Cola".</li>
+     *   <li>Act: Sell "Cola" from machine 2 until it is low, restock machine 1, set a threshold of 10 for machine 2,
+     *   and replace the tracker.</li>
+     *   <li>Assert: Verify the alerts the listener got, and the low items after the changes.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerRepository_stockThresholds_alertOnCrossings() {
+
+        // Arrange
+        vendingmachine.setStatus(new HashMap<>(Map.of("Cola", 1)));
+        machines.add(new VendingMachine(2, new HashMap<>(Map.of("Cola", 4, "Fanta", 8)), "Bergen"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        List<StockAlert> alerts = new ArrayList<>();
+        machineTrackerRepository.addStockListener(alerts::add);
+        machineTrackerRepository.setItemThreshold("Cola", 3);
+
+        // Act
+        machineTrackerRepository.removeItem(2, "Cola", 1);
+        machineTrackerRepository.removeItem(2, "Cola", 1);
+        machineTrackerRepository.addItem(1, "Cola", 5);
+        boolean found = machineTrackerRepository.setMachineThreshold(2, 10);
+        machineTrackerRepository.saveVendmachtrack(machineTracker);
+
+        // Assert
+        assertTrue(found);
+        assertFalse(machineTrackerRepository.setMachineThreshold(99, 1));
+        assertEquals(List.of(
+                new StockAlert(1, "Cola", 1, 3, true),
+                new StockAlert(2, "Cola", 2, 3, true),
+                new StockAlert(1, "Cola", 6, 3, false),
+                new StockAlert(2, "Fanta", 8, 10, true)), alerts.subList(0, 4));
+        assertEquals(List.of(new StockAlert(2, "Cola", 2, 10, true), new StockAlert(2, "Fanta", 8, 10, true)),
+                machineTrackerRepository.getLowStock());
+    }
+
+    /**
+     * Tests that the version of a machine changes only when that machine changes, and is -1 for unknown machines.
+     */
+    @Test
+    public void MachineTrackerRepository_getMachineVersion_changesWithMachine() {
+        machines.add(new VendingMachine(2, new HashMap<>(), "Bergen"));
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        long before = machineTrackerRepository.getMachineVersion(1);
+        long other = machineTrackerRepository.getMachineVersion(2);
+
+        machineTrackerRepository.addItem(1, "Cola", 1);
+
+        assertTrue(machineTrackerRepository.getMachineVersion(1) > before);
+        assertEquals(other, machineTrackerRepository.getMachineVersion(2));
+        assertEquals(machineTrackerRepository.getMachineVersion(1), machineTrackerRepository.getVersion());
+        assertEquals(-1, machineTrackerRepository.getMachineVersion(99));
+    }
+
+    /**
+     * Tests that replacing the tracker makes earlier versions unknown, so the whole fleet is returned for them.
+     */
+    @Test
+    public void MachineTrackerRepository_getChangesSince_fullAfterReplace() {
+        machineTracker.setMachines(machines);
+        when(persistence.getVendmachtrack()).thenReturn(machineTracker);
+        long version = machineTrackerRepository.getChangesSince(0).version();
+
+        MachineTracker replacement = new MachineTracker();
+        replacement.addVendingMachine(new VendingMachine(5, new HashMap<>(), "Bodø"));
+        machineTrackerRepository.saveVendmachtrack(replacement);
+        TrackerChanges changes = machineTrackerRepository.getChangesSince(version);
+
+        assertTrue(changes.full());
+        assertEquals(List.of(5), changes.machines().stream().map(VendingMachine::getId).toList());
+    }
+
+    /**
+     * Tests that the constructor rejects combining the memory-mapped store with journal mode.
+     */
+    @Test
+    public void MachineTrackerRepository_constructor_rejectsMappedStoreWithJournal() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MachineTrackerRepository("testFileName", 50, 1000, 100, "always", 10));
+    }
 }
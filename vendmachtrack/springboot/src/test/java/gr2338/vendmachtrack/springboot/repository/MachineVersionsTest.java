@@ -0,0 +1,91 @@
+package gr2338.vendmachtrack.springboot.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the {@link MachineVersions} class.
+ */
+public class MachineVersionsTest {
+
+    /**
+     * Tests that a machine changed several times is returned once, at its latest change.
+     */
+    @Test
+    public void since_machineChangedTwice_returnedOnceInOrderOfLatestChange() {
+        MachineVersions versions = new MachineVersions(100, 10);
+
+        versions.changed(1);
+        versions.changed(2);
+        versions.changed(1);
+
+        MachineVersions.Changes changes = versions.since(100);
+        assertEquals(List.of(2, 1), changes.changed());
+        assertEquals(103, changes.version());
+        assertEquals(List.of(1), versions.since(102).changed());
+    }
+
+    /**
+     * Tests that the version of a machine is the baseline until it changes, and that replacing all machines moves the
+     * baseline.
+     */
+    @Test
+    public void of_changedAndReplaced_returnsLatestVersion() {
+        MachineVersions versions = new MachineVersions(100, 10);
+
+        versions.changed(1);
+
+        assertEquals(101, versions.of(1));
+        assertEquals(100, versions.of(2));
+        versions.replacedAll();
+        assertEquals(102, versions.of(1));
+        assertEquals(102, versions.of(2));
+    }
+
+    /**
+     * Tests that a machine added again after being removed is no longer reported as removed.
+     */
+    @Test
+    public void since_machineAddedAfterRemoval_returnedAsChanged() {
+        MachineVersions versions = new MachineVersions(0, 10);
+
+        versions.removed(1);
+        versions.changed(1);
+
+        MachineVersions.Changes changes = versions.since(0);
+        assertEquals(List.of(1), changes.changed());
+        assertEquals(List.of(), changes.removed());
+    }
+
+    /**
+     * Tests that versions from before the oldest remembered removal, and versions that were never handed out, can't
+     * be answered with changes.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Remember only one removed machine.</li>
+     *   <li>Act: Remove two machines.</li>
+     *   <li>Assert: Ensure that the changes since the first removal can be found, but not since before it or after
+     *   the latest version.</li>
+     * </ol>
+     */
+    @Test
+    public void since_tombstoneDropped_returnsNullForOlderVersions() {
+        // Arrange
+        MachineVersions versions = new MachineVersions(0, 1);
+
+        // Act
+        versions.removed(1);
+        versions.removed(2);
+
+        // Assert
+        assertNull(versions.since(0));
+        assertEquals(List.of(2), versions.since(1).removed());
+        assertNull(versions.since(3));
+    }
+}
@@ -0,0 +1,190 @@
+package gr2338.vendmachtrack.springboot.service;
+
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
+import gr2338.vendmachtrack.springboot.dto.MachineEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link MachineEventPublisher} class.
+ * <p>
+ * The tests subscribe to the publisher directly and collect the events in a queue, since they are delivered on a
+ * separate thread.
+ * </p>
+ */
+public class MachineEventPublisherTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * Tests that a subscriber to one machine only gets the events of that machine, in the order they were published.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Subscribe to the events of machine 1.</li>
+     *   <li>Act: Publish events for machine 1 and machine 2.</li>
+     *   <li>Assert: Ensure that only the two events of machine 1 are received, with their sequence numbers.</li>
+     * </ol>
+     */
+    @Test
+    public void events_oneMachine_receivesOnlyThatMachine() throws InterruptedException {
+        // Arrange
+        MachineEventPublisher publisher = new MachineEventPublisher();
+        BlockingQueue<MachineEvent> received = new LinkedBlockingQueue<>();
+        Disposable subscription = publisher.events(1).subscribe(received::add);
+
+        // Act
+        publisher.inventoryChanged(1, Map.of("Cola", 5));
+        publisher.inventoryChanged(2, Map.of("Fanta", 1));
+        publisher.locationChanged(1, "Oslo");
+
+        // Assert
+        MachineEvent first = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MachineEvent second = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(new MachineEvent(1, MachineEvent.Type.INVENTORY, 1, null, Map.of("Cola", 5)), first);
+        assertEquals(new MachineEvent(3, MachineEvent.Type.LOCATION, 1, "Oslo", null), second);
+        assertEquals(null, received.poll(100, TimeUnit.MILLISECONDS));
+        subscription.dispose();
+    }
+
+    /**
+     * Tests that a subscriber to all machines gets the events of every machine.
+     */
+    @Test
+    public void events_allMachines_receivesEveryMachine() throws InterruptedException {
+        MachineEventPublisher publisher = new MachineEventPublisher();
+        BlockingQueue<MachineEvent> received = new LinkedBlockingQueue<>();
+        Disposable subscription = publisher.events().subscribe(received::add);
+
+        publisher.machineAdded(3, "Bergen");
+        publisher.machineRemoved(4);
+
+        MachineEvent added = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MachineEvent removed = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(new MachineEvent(1, MachineEvent.Type.ADDED, 3, "Bergen", Map.of()), added);
+        assertEquals(new MachineEvent(2, MachineEvent.Type.REMOVED, 4, null, null), removed);
+        subscription.dispose();
+    }
+
+    /**
+     * Tests that stock alerts are published as low stock and restocked events carrying the quantity of the item.
+     */
+    @Test
+    public void stockChanged_publishesLowStockAndRestocked() throws InterruptedException {
+        MachineEventPublisher publisher = new MachineEventPublisher();
+        BlockingQueue<MachineEvent> received = new LinkedBlockingQueue<>();
+        Disposable subscription = publisher.events(5).subscribe(received::add);
+
+        publisher.stockChanged(new StockAlert(5, "Cola", 1, 3, true));
+        publisher.stockChanged(new StockAlert(5, "Cola", 10, 3, false));
+
+        MachineEvent low = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MachineEvent restocked = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(new MachineEvent(1, MachineEvent.Type.LOW_STOCK, 5, null, Map.of("Cola", 1)), low);
+        assertEquals(new MachineEvent(2, MachineEvent.Type.RESTOCKED, 5, null, Map.of("Cola", 10)), restocked);
+        subscription.dispose();
+    }
+
+    /**
+     * Tests that a subscriber that doesn't keep up neither blocks the publisher nor makes it run out of memory.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Subscribe with a buffer of four events and a subscriber that is stuck on the first event.</li>
+     *   <li>Act: Publish a thousand events, then let the subscriber continue.</li>
+     *   <li>Assert: Ensure that publishing finishes while the subscriber is stuck, that the subscriber gets the
+     *   first and the last events, and that the events in between are dropped.</li>
+     * </ol>
+     */
+    @Test
+    public void events_slowSubscriber_dropsOldestWithoutBlockingPublisher() throws InterruptedException {
+        // Arrange
+        int bufferSize = 4;
+        int published = 1000;
+        MachineEventPublisher publisher = new MachineEventPublisher(bufferSize);
+        CountDownLatch stuck = new CountDownLatch(1);
+        BlockingQueue<MachineEvent> received = new LinkedBlockingQueue<>();
+        Disposable subscription = publisher.events(1).subscribe(event -> {
+            received.add(event);
+            try {
+                stuck.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // Act
+        assertTimeoutPreemptively(Duration.ofSeconds(TIMEOUT_SECONDS), () -> {
+            for (int i = 1; i <= published; i++) {
+                publisher.inventoryChanged(1, Map.of("Cola", i));
+            }
+        });
+        stuck.countDown();
+
+        // Assert
+        List<MachineEvent> events = new ArrayList<>();
+        MachineEvent event;
+        do {
+            event = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(event, "The last event was never delivered");
+            events.add(event);
+        } while (event.sequence() != published);
+        assertEquals(1, events.get(0).sequence());
+        assertEquals(Map.of("Cola", published), event.inventory());
+        assertTrue(events.size() <= bufferSize + 2, "Expected old events to be dropped, got " + events.size());
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i - 1).sequence() < events.get(i).sequence());
+        }
+        subscription.dispose();
+    }
+
+    /**
+     * Tests that the Server-Sent Events stream starts with a heartbeat comment and names events after their type.
+     */
+    @Test
+    public void stream_wrapsEventsAsServerSentEvents() {
+        MachineEventPublisher publisher = new MachineEventPublisher();
+
+        ServerSentEvent<MachineEvent> sent = publisher.stream(1)
+                .doOnNext(sse -> {
+                    if (sse.comment() != null) {
+                        publisher.locationChanged(1, "Oslo");
+                    }
+                })
+                .filter(sse -> sse.data() != null)
+                .blockFirst(Duration.ofSeconds(TIMEOUT_SECONDS));
+
+        assertNotNull(sent);
+        assertEquals("location", sent.event());
+        assertEquals("1", sent.id());
+        assertEquals("Oslo", sent.data().location());
+    }
+
+    /**
+     * Tests that a buffer without room for any event is rejected.
+     */
+    @Test
+    public void constructor_bufferSizeZero_throwsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new MachineEventPublisher(0));
+    }
+}
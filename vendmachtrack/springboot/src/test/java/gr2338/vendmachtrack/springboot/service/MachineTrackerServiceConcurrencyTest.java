@@ -0,0 +1,221 @@
+package gr2338.vendmachtrack.springboot.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.VendingMachine;
+import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
+import gr2338.vendmachtrack.springboot.exception.IllegalInputException;
+import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress tests for concurrent inventory changes through the
+ * {@link MachineTrackerService} and a real {@link MachineTrackerRepository}.
+ *
+ * <p>
+ * The repository writes to a tracker file in the home directory, flushing often
+ * so that flushes run while the tracker is being changed. Each test starts many
+ * threads at the same time and checks that no sale or refill is lost, neither in
+ * memory nor in the file written when the repository is closed. The throughput
+ * of operations on one and on several machines is measured by the
+ * {@code ContentionBenchmark} of the benchmarks module.
+ * </p>
+ */
+public class MachineTrackerServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int MACHINES = 8;
+    private static final String FILE_NAME = "testconcurrentservice.json";
+    private static final int FLUSH_AFTER_CHANGES = 10;
+    private static final long FLUSH_INTERVAL_MILLIS = 5;
+
+    private final Path trackerPath = Path.of(System.getProperty("user.home"), FILE_NAME);
+
+    private MachineTrackerRepository repository;
+    private MachineTrackerService service;
+    private ExecutorService executor;
+
+    /**
+     * Writes a tracker file with {@value #MACHINES} empty vending machines, opens
+     * a repository on it, and sets up a pool of {@value #THREADS} threads.
+     */
+    @BeforeEach
+    public void setUp() {
+        MachineTracker machineTracker = new MachineTracker();
+        for (int id = 1; id <= MACHINES; id++) {
+            machineTracker.addVendingMachine(new VendingMachine(id, new HashMap<>(), "Location " + id));
+        }
+        new VendmachtrackPersistence(FILE_NAME).saveVendmachtrack(machineTracker);
+        repository = new MachineTrackerRepository(FILE_NAME, FLUSH_AFTER_CHANGES, FLUSH_INTERVAL_MILLIS, 0, "never");
+        service = new MachineTrackerService(repository);
+
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    /**
+     * Stops the thread pool and the repository, and deletes the tracker file
+     * after each test.
+     *
+     * @throws IOException If the file can't be deleted.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        repository.close();
+        Files.deleteIfExists(trackerPath);
+    }
+
+    /**
+     * Test case for concurrent calls to
+     * {@link MachineTrackerService#removeItem(int, String, int)} on the same machine.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stock a machine with 500 units of an item.</li>
+     * <li>Act: Let {@value #THREADS} threads try to buy one unit at a time, 100
+     * times each.</li>
+     * <li>Assert: Verify that exactly 500 purchases succeed, that the rest are
+     * rejected, and that the machine ends up empty, also in the file.</li>
+     * </ol>
+     *
+     * @throws Exception If a worker thread fails.
+     */
+    @Test
+    public void removeItem_concurrentPurchases_neverOversells() throws Exception {
+        // Arrange
+        int stock = 500;
+        service.addItem(1, "Cola", stock);
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        // Act
+        runConcurrently(worker -> {
+            for (int i = 0; i < 100; i++) {
+                try {
+                    service.removeItem(1, "Cola", 1);
+                    sold.incrementAndGet();
+                } catch (IllegalInputException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        // Assert
+        assertEquals(stock, sold.get());
+        assertEquals(THREADS * 100 - stock, rejected.get());
+        assertFalse(repository.getVendMach(1).getStatus().containsKey("Cola"));
+        assertFalse(written().getMachine(1).getStatus().containsKey("Cola"));
+    }
+
+    /**
+     * Test case for concurrent calls to
+     * {@link MachineTrackerService#addItem(int, String, int)} spread over all
+     * machines.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Start with {@value #MACHINES} empty machines.</li>
+     * <li>Act: Let {@value #THREADS} threads refill every machine with one unit,
+     * 200 times each.</li>
+     * <li>Assert: Verify that every machine holds exactly the number of units that
+     * was added, also in the file.</li>
+     * </ol>
+     *
+     * @throws Exception If a worker thread fails.
+     */
+    @Test
+    public void addItem_concurrentRefills_noLostUpdates() throws Exception {
+        // Arrange
+        int rounds = 200;
+
+        // Act
+        runConcurrently(worker -> {
+            for (int i = 0; i < rounds; i++) {
+                for (int id = 1; id <= MACHINES; id++) {
+                    service.addItem(id, "Cola", 1);
+                }
+            }
+        });
+
+        // Assert
+        MachineTracker written = written();
+        for (int id = 1; id <= MACHINES; id++) {
+            assertEquals(THREADS * rounds, repository.getVendMach(id).getStatus().get("Cola"));
+            assertEquals(THREADS * rounds, written.getMachine(id).getStatus().get("Cola"));
+        }
+    }
+
+    /**
+     * A task run by one of the worker threads.
+     */
+    @FunctionalInterface
+    private interface Worker {
+
+        /**
+         * Runs the task.
+         *
+         * @param worker The number of the worker, from 0 and up.
+         */
+        void run(int worker);
+    }
+
+    /**
+     * Runs a task on {@value #THREADS} threads that start at the same time, and
+     * waits for all of them to finish.
+     *
+     * @param task The task to run.
+     * @throws Exception If a worker thread fails.
+     */
+    private void runConcurrently(final Worker task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            int worker = i;
+            Callable<Void> callable = () -> {
+                start.await();
+                task.run(worker);
+                return null;
+            };
+            futures.add(executor.submit(callable));
+        }
+
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Closes the repository, which flushes the pending changes, and reads the
+     * tracker file it wrote.
+     *
+     * @return The tracker in the file.
+     */
+    private MachineTracker written() {
+        repository.close();
+        return new VendmachtrackPersistence(FILE_NAME).getVendmachtrack();
+    }
+}
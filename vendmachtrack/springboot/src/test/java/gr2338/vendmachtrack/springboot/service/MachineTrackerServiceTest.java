@@ -12,13 +12,27 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import gr2338.vendmachtrack.core.model.MachineTracker;
+import gr2338.vendmachtrack.core.model.StockMonitor.StockAlert;
 import gr2338.vendmachtrack.core.model.VendingMachine;
 import gr2338.vendmachtrack.springboot.exception.IllegalInputException;
 import gr2338.vendmachtrack.springboot.exception.ResourceNotFoundException;
 import gr2338.vendmachtrack.springboot.repository.MachineTrackerRepository;
+import gr2338.vendmachtrack.springboot.repository.TrackerChanges;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperation;
+import gr2338.vendmachtrack.springboot.dto.InventoryOperationResult;
+import gr2338.vendmachtrack.springboot.dto.ItemStock;
+import gr2338.vendmachtrack.springboot.dto.LowStock;
+import gr2338.vendmachtrack.springboot.dto.MachinePage;
+import gr2338.vendmachtrack.springboot.dto.MachineSummary;
+import gr2338.vendmachtrack.springboot.dto.MachineTrackerDelta;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Unit tests for the {@link MachineTrackerService} class.
@@ -34,6 +48,9 @@ public class MachineTrackerServiceTest {
     @Mock
     private MachineTrackerRepository repository;
 
+    @Mock
+    private MachineEventPublisher events;
+
     @InjectMocks
     private MachineTrackerService service;
 
@@ -44,11 +61,16 @@ public class MachineTrackerServiceTest {
      * Sets up the test environment before each test case.
      * Initializes the Mockito annotations and sets the machine ID to 1, location to
      * "Oslo",
-     * and adds the machine to the machine tracker.
+     * and adds the machine to the machine tracker. Actions passed to
+     * {@link MachineTrackerRepository#withMachineLock(int, Supplier)} and
+     * {@link MachineTrackerRepository#inBatch(Supplier)} are run directly.
      */
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(repository.withMachineLock(anyInt(), any())).thenAnswer(
+                invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(repository.inBatch(any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get());
         machine.setId(1);
         machine.setLocation("Oslo");
         machineTracker.setMachines(Collections.singletonList(machine));
@@ -68,14 +90,14 @@ public class MachineTrackerServiceTest {
      *   <li>Arrange: Set up the necessary test data, including a {@link MachineTracker} object with machines and configure mock behavior for the repository.</li>
      *   <li>Act: Call the {@link MachineTrackerService#getVendMachList()} method to retrieve the actual list of machines.</li>
      *   <li>Assert: Verify that the actual list of machines is not null, contains the expected machine(s), and has the correct mapping of machine IDs to locations.
-     *          Also, ensure that the {@link MachineTrackerRepository#getVendmachtrack()} method is called once.</li>
+     *          Also, ensure that the {@link MachineTrackerRepository#getAllLocations()} method is called once.</li>
      * </ol>
      */
     @Test
     public void getVendMachList_whenMachineTrackerIsPresent_returnsListOfMachines() {
 
         // Arrange
-        when(repository.getVendmachtrack()).thenReturn(machineTracker);
+        when(repository.getAllLocations()).thenReturn(new HashMap<>(Map.of(1, "Oslo")));
 
         // Act
         HashMap<Integer, String> result = service.getVendMachList();
@@ -103,7 +125,7 @@ public class MachineTrackerServiceTest {
     public void getVendMachList_whenMachineTrackerIsNotPresent_thowsException() {
 
         // Arrange
-        when(repository.getVendmachtrack()).thenReturn(null);
+        when(repository.getAllLocations()).thenReturn(null);
 
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () -> service.getVendMachList());
@@ -126,7 +148,7 @@ public class MachineTrackerServiceTest {
     @Test
     public void getVendMachLocation_validId_returnsLocation() {
         // Arrange
-        when(repository.getVendmachtrack()).thenReturn(machineTracker);
+        when(repository.getVendMach(1)).thenReturn(machine);
 
         // Act
         String location = service.getVendMachLocation(1);
@@ -151,7 +173,7 @@ public class MachineTrackerServiceTest {
     public void getVendMachLocation_invalidId_throwsResourceNotFoundException() {
 
         // Arrange
-        when(repository.getVendmachtrack()).thenReturn(machineTracker);
+        when(repository.getVendMach(99)).thenReturn(null);
 
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () -> service.getVendMachLocation(99));
@@ -362,9 +384,9 @@ public class MachineTrackerServiceTest {
         VendingMachine newMachine = new VendingMachine();
         newMachine.setId(2);
         newMachine.setLocation("Bergen");
-        machineTracker.addVendingMachine(newMachine);
         when(repository.getVendMach(2)).thenReturn(null); // No existing machine with ID 2
-        when(repository.getVendmachtrack()).thenReturn(machineTracker);
+        when(repository.addMachine(2, "Bergen")).thenReturn(newMachine);
+        when(repository.getAllLocations()).thenReturn(new HashMap<>(Map.of(1, "Oslo", 2, "Bergen")));
 
         // Act
         HashMap<Integer, String> updatedMachineList = service.addVendMach(2, "Bergen");
@@ -446,8 +468,8 @@ public class MachineTrackerServiceTest {
 
         // Arrange
         when(repository.getVendMach(1)).thenReturn(machine);
-        when(repository.getVendmachtrack()).thenReturn(machineTracker);
-        machineTracker.removeVendingMachine(machine);
+        when(repository.removeMachine(1)).thenReturn(true);
+        when(repository.getAllLocations()).thenReturn(new HashMap<>());
 
         // Act
         HashMap<Integer, String> updatedMachineList = service.removeVendMach(1);
@@ -502,11 +524,10 @@ public class MachineTrackerServiceTest {
         VendingMachine updatedMachine = new VendingMachine();
         updatedMachine.setId(1);
         updatedMachine.setLocation("Trondheim");
-        MachineTracker updatedMachineTracker = new MachineTracker();
-        updatedMachineTracker.addVendingMachine(updatedMachine);
 
         when(repository.getVendMach(1)).thenReturn(updatedMachine);
-        when(repository.getVendmachtrack()).thenReturn(updatedMachineTracker);
+        when(repository.changeLocation(1, "Trondheim")).thenReturn(updatedMachine);
+        when(repository.getAllLocations()).thenReturn(new HashMap<>(Map.of(1, "Trondheim")));
 
         // Act
         HashMap<Integer, String> updatedMachineList = service.changeLocation(1, "Trondheim");
@@ -688,4 +709,388 @@ public class MachineTrackerServiceTest {
         assertThrows(IllegalInputException.class, () -> service.removeItem(1, "Cola", 5));
     }
 
+    /**
+     * Test case for the {@link MachineTrackerService#getChangesSince(long)} method of the {@link MachineTrackerService} class.
+     * Verifies that the changes from the repository are returned with the location and inventory of every changed machine.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the repository to return one changed and one removed machine.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#getChangesSince(long)} method.</li>
+     *   <li>Assert: Verify that the delta holds the version, the changed machine and the removed ID.</li>
+     * </ol>
+     */
+    @Test
+    public void getChangesSince_validVersion_returnsDelta() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 3);
+        when(repository.getChangesSince(7)).thenReturn(new TrackerChanges(9, false,
+                List.of(new VendingMachine(1, inventory, "Oslo")), List.of(2)));
+
+        // Act
+        MachineTrackerDelta delta = service.getChangesSince(7);
+
+        // Assert
+        assertEquals(9, delta.version());
+        assertFalse(delta.full());
+        assertEquals(Map.of(1, new MachineTrackerDelta.MachineState("Oslo", inventory)), delta.machines());
+        assertEquals(List.of(2), delta.removed());
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#getChangesSince(long)} method of the {@link MachineTrackerService} class
+     * when the version is negative.
+     * Verifies that an {@link IllegalInputException} is thrown.
+     */
+    @Test
+    public void getChangesSince_negativeVersion_throwsIllegalInputException() {
+        assertThrows(IllegalInputException.class, () -> service.getChangesSince(-1));
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#getVendMachPage(Integer, int, String)} method of the {@link MachineTrackerService} class
+     * when there are more machines than fit on the page.
+     * Verifies that the page holds the requested number of machines and the ID of the last one as the cursor.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the repository to return one machine more than the page size after ID 1.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#getVendMachPage(Integer, int, String)} method with a page size of two.</li>
+     *   <li>Assert: Verify that the page holds the first two machines and that the next page starts after the second.</li>
+     * </ol>
+     */
+    @Test
+    public void getVendMachPage_moreMachines_returnsNextCursor() {
+        // Arrange
+        LinkedHashMap<Integer, String> locations = new LinkedHashMap<>();
+        locations.put(2, "Bergen");
+        locations.put(4, "Bodø");
+        locations.put(9, "Molde");
+        when(repository.getLocations(1, 3, "B")).thenReturn(locations);
+
+        // Act
+        MachinePage page = service.getVendMachPage(1, 2, " B ");
+
+        // Assert
+        assertEquals(List.of(new MachineSummary(2, "Bergen"), new MachineSummary(4, "Bodø")), page.machines());
+        assertEquals(4, page.next());
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#getVendMachPage(Integer, int, String)} method of the {@link MachineTrackerService} class
+     * when the last page is reached or the page size is out of range.
+     * Verifies that the last page has no cursor, and that invalid page sizes are rejected.
+     */
+    @Test
+    public void getVendMachPage_lastPageAndInvalidSize() {
+        LinkedHashMap<Integer, String> locations = new LinkedHashMap<>();
+        locations.put(1, "Oslo");
+        when(repository.getLocations(Integer.MIN_VALUE, MachineTrackerService.DEFAULT_PAGE_SIZE + 1, null))
+                .thenReturn(locations);
+
+        MachinePage page = service.getVendMachPage(null, MachineTrackerService.DEFAULT_PAGE_SIZE, "");
+
+        assertEquals(List.of(new MachineSummary(1, "Oslo")), page.machines());
+        assertNull(page.next());
+        assertThrows(IllegalInputException.class, () -> service.getVendMachPage(null, 0, null));
+        assertThrows(IllegalInputException.class,
+                () -> service.getVendMachPage(null, MachineTrackerService.MAX_PAGE_SIZE + 1, null));
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#findByLocation(String, String)} method of the {@link MachineTrackerService} class.
+     * Verifies that machines are looked up by exact location or by prefix, and that exactly one of them has to be
+     * given.
+     */
+    @Test
+    public void findByLocation_locationOrPrefix_returnsMachines() {
+        when(repository.getMachinesAt("Oslo")).thenReturn(new TreeMap<>(Map.of(1, "Oslo")));
+        when(repository.getMachinesWithLocationPrefix("O")).thenReturn(new TreeMap<>(Map.of(4, "Orkanger", 1, "Oslo")));
+
+        assertEquals(List.of(new MachineSummary(1, "Oslo")), service.findByLocation(" Oslo ", null));
+        assertEquals(List.of(new MachineSummary(1, "Oslo"), new MachineSummary(4, "Orkanger")),
+                service.findByLocation(null, "O"));
+        assertThrows(IllegalInputException.class, () -> service.findByLocation(null, null));
+        assertThrows(IllegalInputException.class, () -> service.findByLocation("Oslo", "O"));
+        assertThrows(IllegalInputException.class, () -> service.findByLocation(null, " "));
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#countByLocation(String)} method of the {@link MachineTrackerService} class
+     * when the tracker can't be loaded.
+     * Verifies that a {@link ResourceNotFoundException} is thrown.
+     */
+    @Test
+    public void countByLocation_noTracker_throwsResourceNotFoundException() {
+        when(repository.countByLocation("")).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class, () -> service.countByLocation(null));
+    }
+
+    /**
+     * Test case for the item queries of the {@link MachineTrackerService} class.
+     * Verifies that the machines stocking an item, the total quantity and the top machines are returned from the item
+     * index, and that blank item names and invalid numbers of machines are rejected.
+     */
+    @Test
+    public void itemQueries_returnIndexedStock() {
+        LinkedHashMap<Integer, Integer> top = new LinkedHashMap<>();
+        top.put(4, 9);
+        top.put(1, 2);
+        when(repository.getMachinesStocking("Cola")).thenReturn(new TreeMap<>(Map.of(4, 9, 1, 2)));
+        when(repository.getTotalQuantity("Cola")).thenReturn(11L);
+        when(repository.getTopMachines("Cola", 2)).thenReturn(top);
+        when(repository.getMachinesStocking("Fanta")).thenReturn(null);
+
+        assertEquals(List.of(new ItemStock(1, 2), new ItemStock(4, 9)), service.getMachinesStocking("Cola"));
+        assertEquals(11, service.getTotalQuantity("Cola"));
+        assertEquals(List.of(new ItemStock(4, 9), new ItemStock(1, 2)), service.getTopMachines("Cola", 2));
+        assertThrows(IllegalInputException.class, () -> service.getTotalQuantity(" "));
+        assertThrows(IllegalInputException.class, () -> service.getTopMachines("Cola", 0));
+        assertThrows(IllegalInputException.class,
+                () -> service.getTopMachines("Cola", MachineTrackerService.MAX_PAGE_SIZE + 1));
+        assertThrows(ResourceNotFoundException.class, () -> service.getMachinesStocking("Fanta"));
+    }
+
+    /**
+     * Test case for the stock thresholds of the {@link MachineTrackerService} class.
+     * Verifies that the low items are returned from the repository, that invalid thresholds and unknown machines are
+     * rejected, and that the alerts of the repository are published as events.
+     */
+    @Test
+    public void stockThresholds_returnLowStock() {
+        when(repository.getLowStock()).thenReturn(List.of(new StockAlert(1, "Cola", 2, 3, true)));
+        when(repository.setMachineThreshold(1, 5)).thenReturn(true);
+
+        assertEquals(List.of(new LowStock(1, "Cola", 2, 3)), service.setItemThreshold("Cola", 3));
+        assertEquals(List.of(new LowStock(1, "Cola", 2, 3)), service.setMachineThreshold(1, 5));
+        verify(repository).setItemThreshold("Cola", 3);
+        assertThrows(IllegalInputException.class, () -> service.setItemThreshold("Cola", -1));
+        assertThrows(IllegalInputException.class, () -> service.setItemThreshold(" ", 1));
+        assertThrows(ResourceNotFoundException.class, () -> service.setMachineThreshold(2, 5));
+        verify(repository).addStockListener(any());
+    }
+
+    /**
+     * Test case for the brief variants of the methods changing the fleet.
+     * Verifies that only the affected machine is returned, and that the whole tracker is never copied.
+     */
+    @Test
+    public void briefMutations_returnOnlyAffectedMachine() {
+        when(repository.getVendMach(1)).thenReturn(machine);
+        when(repository.getVendMach(2)).thenReturn(null);
+        when(repository.addMachine(2, "Bergen")).thenReturn(new VendingMachine());
+        when(repository.changeLocation(1, "Molde")).thenReturn(machine);
+        when(repository.removeMachine(1)).thenReturn(true);
+
+        assertEquals(new MachineSummary(2, "Bergen"), service.addVendMachBrief(2, "Bergen"));
+        assertEquals(new MachineSummary(1, "Molde"), service.changeLocationBrief(1, "Molde"));
+        assertEquals(new MachineSummary(1, "Oslo"), service.removeVendMachBrief(1));
+        verify(repository).addMachine(2, "Bergen");
+        verify(repository).removeMachine(1);
+        verify(repository, never()).getAllLocations();
+    }
+
+    /**
+     * Test case for the methods changing a {@code Vending Machine} when the machine is removed, or another machine
+     * with the same ID is added, by another request after it was looked up.
+     * Verifies that the change is rejected with a {@link ResourceNotFoundException} or an
+     * {@link IllegalInputException} instead of failing, and that no event is published.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the repository to find machine 1, but to find nothing when changing it, and to
+     *   find machine 2 taken when adding it.</li>
+     *   <li>Act & Assert: Verify that adding items, moving and removing machine 1 throw a
+     *   {@link ResourceNotFoundException}, and that adding machine 2 throws an {@link IllegalInputException}.</li>
+     *   <li>Assert: Verify that no event was published.</li>
+     * </ol>
+     */
+    @Test
+    public void changes_machineChangedConcurrently_areRejected() {
+        // Arrange
+        when(repository.getVendMach(1)).thenReturn(machine);
+        when(repository.addItem(1, "Cola", 5)).thenReturn(null);
+        when(repository.changeLocation(1, "Molde")).thenReturn(null);
+        when(repository.removeMachine(1)).thenReturn(false);
+        when(repository.addMachine(2, "Bergen")).thenReturn(null);
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> service.addItem(1, "Cola", 5));
+        assertThrows(ResourceNotFoundException.class, () -> service.changeLocationBrief(1, "Molde"));
+        assertThrows(ResourceNotFoundException.class, () -> service.removeVendMachBrief(1));
+        assertThrows(IllegalInputException.class, () -> service.addVendMachBrief(2, "Bergen"));
+
+        // Assert
+        verifyNoInteractions(events);
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#addItem(int, String, int)} method of the {@link MachineTrackerService} class
+     * when items are added.
+     * Verifies that the inventory after the change is published to the subscribers of the event stream.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Configure the repository to return the machine with the updated inventory.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#addItem(int, String, int)} method.</li>
+     *   <li>Assert: Verify that an inventory event with the updated inventory is published.</li>
+     * </ol>
+     */
+    @Test
+    public void addItem_validInput_publishesInventoryEvent() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 5);
+        VendingMachine updatedMachine = new VendingMachine(1, inventory, "Oslo");
+        when(repository.getVendMach(1)).thenReturn(machine);
+        when(repository.addItem(1, "Cola", 5)).thenReturn(updatedMachine);
+
+        // Act
+        service.addItem(1, "Cola", 5);
+
+        // Assert
+        verify(events).inventoryChanged(1, inventory);
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#removeItem(int, String, int)} method of the {@link MachineTrackerService} class
+     * when the removal is rejected.
+     * Verifies that no event is published for a change that wasn't applied.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Stock the machine with fewer items than will be removed.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#removeItem(int, String, int)} method.</li>
+     *   <li>Assert: Verify that the removal is rejected and that nothing is published.</li>
+     * </ol>
+     */
+    @Test
+    public void removeItem_removalRejected_publishesNothing() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 2);
+        machine.setStatus(inventory);
+        when(repository.getVendMach(1)).thenReturn(machine);
+
+        // Act
+        assertThrows(IllegalInputException.class, () -> service.removeItem(1, "Cola", 5));
+
+        // Assert
+        verifyNoInteractions(events);
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#streamEvents(int)} method of the {@link MachineTrackerService} class
+     * when no machine has the given ID.
+     * Verifies that a {@link ResourceNotFoundException} is thrown instead of opening a stream that never has events.
+     */
+    @Test
+    public void streamEvents_invalidId_throwsResourceNotFoundException() {
+        when(repository.getVendMach(99)).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class, () -> service.streamEvents(99));
+        verifyNoInteractions(events);
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#applyBatch(List, boolean)} method of the {@link MachineTrackerService} class
+     * when some operations can't be applied.
+     * Verifies that the valid operations are still applied, and that each operation gets its own result.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Stock the machine with "Cola", and create a batch with a valid addition, a removal of an item the machine doesn't hold,
+     *   an invalid item name, and an operation on a machine that doesn't exist.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#applyBatch(List, boolean)} method without the all-or-nothing option.</li>
+     *   <li>Assert: Verify the status of every result, and that only the valid addition was passed on to the repository.</li>
+     * </ol>
+     */
+    @Test
+    public void applyBatch_someInvalidOperations_appliesTheRest() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 2);
+        machine.setStatus(inventory);
+        when(repository.getVendMach(1)).thenReturn(machine);
+        List<InventoryOperation> operations = List.of(new InventoryOperation(1, "Cola", 3),
+                new InventoryOperation(1, "Fanta", -1), new InventoryOperation(1, " ", 1),
+                new InventoryOperation(2, "Cola", 1));
+
+        // Act
+        List<InventoryOperationResult> results = service.applyBatch(operations, false);
+
+        // Assert
+        assertEquals(4, results.size());
+        assertEquals(InventoryOperationResult.Status.APPLIED, results.get(0).status());
+        assertEquals(5, results.get(0).quantity());
+        assertEquals(InventoryOperationResult.Status.REJECTED, results.get(1).status());
+        assertEquals(InventoryOperationResult.Status.REJECTED, results.get(2).status());
+        assertEquals(InventoryOperationResult.Status.REJECTED, results.get(3).status());
+        assertEquals("No such Vending Machine with ID: 2", results.get(3).error());
+        verify(repository).applyItemChanges(1, List.of(Map.entry("Cola", 3)));
+        verify(repository, never()).applyItemChanges(eq(2), any());
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#applyBatch(List, boolean)} method of the {@link MachineTrackerService} class
+     * with the all-or-nothing option.
+     * Verifies that a rejected operation rolls back the other operations on the same machine, but not on other machines.
+     *
+     * <p>
+     * Test Steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Stock two machines with "Cola", and create a batch where one of the removals from machine 1 is larger than the stock.</li>
+     *   <li>Act: Call the {@link MachineTrackerService#applyBatch(List, boolean)} method with the all-or-nothing option.</li>
+     *   <li>Assert: Verify that the operations on machine 1 were rolled back or rejected, and that the operation on machine 2 was applied.</li>
+     * </ol>
+     */
+    @Test
+    public void applyBatch_atomic_rollsBackRejectedMachine() {
+        // Arrange
+        HashMap<String, Integer> inventory = new HashMap<>();
+        inventory.put("Cola", 2);
+        machine.setStatus(inventory);
+        VendingMachine other = new VendingMachine(2, inventory, "Bergen");
+        when(repository.getVendMach(1)).thenReturn(machine);
+        when(repository.getVendMach(2)).thenReturn(other);
+        List<InventoryOperation> operations = List.of(new InventoryOperation(1, "Cola", -1),
+                new InventoryOperation(2, "Cola", -2), new InventoryOperation(1, "Cola", -5));
+
+        // Act
+        List<InventoryOperationResult> results = service.applyBatch(operations, true);
+
+        // Assert
+        assertEquals(InventoryOperationResult.Status.ROLLED_BACK, results.get(0).status());
+        assertEquals(InventoryOperationResult.Status.APPLIED, results.get(1).status());
+        assertEquals(0, results.get(1).quantity());
+        assertEquals(InventoryOperationResult.Status.REJECTED, results.get(2).status());
+        verify(repository, never()).applyItemChanges(eq(1), any());
+        verify(repository).applyItemChanges(2, List.of(Map.entry("Cola", -2)));
+    }
+
+    /**
+     * Test case for the {@link MachineTrackerService#applyBatch(List, boolean)} method of the {@link MachineTrackerService} class
+     * with an empty batch.
+     * Verifies that the method throws an {@link IllegalInputException}.
+     */
+    @Test
+    public void applyBatch_emptyBatch_throwsIllegalInputException() {
+        assertThrows(IllegalInputException.class, () -> service.applyBatch(List.of(), false));
+    }
+
 }
@@ -14,6 +14,10 @@ import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
  * The AccessService class provides access to the MachineTracker system either
  * through a remote server or a local file,
  * based on the provided URI and file name.
+ * <p>
+ * Remote access is cached by {@link MachineTrackerAccessCached}, so that views
+ * shown one after another don't fetch the same data from the server again. Local
+ * access already keeps the tracker in memory.
  */
 public class AccessService {
 
@@ -35,14 +39,14 @@ public class AccessService {
 
         try {
             if (checkServerHealth(endpointUri)) {
-                newAccess = new MachineTrackerAccessRemote(endpointUri);
+                newAccess = new MachineTrackerAccessCached(new MachineTrackerAccessRemote(endpointUri));
                 System.out.println("Using remote access");
             } else {
-                newAccess = new MachineTrackerAccessLocal(new VendmachtrackPersistence(fileName));
+                newAccess = new MachineTrackerAccessLocal(VendmachtrackPersistence.cached(fileName));
                 System.out.println("Using local access");
             }
         } catch (IOException | InterruptedException e) {
-            newAccess = new MachineTrackerAccessLocal(new VendmachtrackPersistence(fileName));
+            newAccess = new MachineTrackerAccessLocal(VendmachtrackPersistence.cached(fileName));
             System.out.println("Using local access");
         }
 
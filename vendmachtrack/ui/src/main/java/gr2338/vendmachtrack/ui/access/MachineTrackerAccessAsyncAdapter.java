@@ -0,0 +1,125 @@
+package gr2338.vendmachtrack.ui.access;
+
+import java.net.ConnectException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous view of a {@link MachineTrackerAccessible} that only has blocking
+ * methods, like {@link MachineTrackerAccessLocal}. The methods are called on a
+ * small pool of daemon threads shared by all adapters, so that at most
+ * {@value #THREADS} calls run at once and the rest wait their turn.
+ * Cancelling a future interrupts its call if it has started, and skips it if it
+ * hasn't.
+ */
+final class MachineTrackerAccessAsyncAdapter implements MachineTrackerAccessibleAsync {
+
+    /**
+     * Number of threads calling the blocking methods.
+     */
+    static final int THREADS = 4;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "vendmachtrack-access");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MachineTrackerAccessible access;
+
+    /**
+     * A blocking call to the access.
+     *
+     * @param <T> The type of the answer
+     */
+    @FunctionalInterface
+    private interface Call<T> {
+
+        /**
+         * Makes the call.
+         *
+         * @return The answer
+         * @throws ConnectException If connection to server is lost
+         */
+        T call() throws ConnectException;
+    }
+
+    /**
+     * Constructor. Requires the blocking access to call.
+     *
+     * @param access The access
+     */
+    MachineTrackerAccessAsyncAdapter(final MachineTrackerAccessible access) {
+        this.access = access;
+    }
+
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> getVendMachListAsync() {
+        return submit(access::getVendMachList);
+    }
+
+    @Override
+    public CompletableFuture<String> getVendMachLocationAsync(final int id) {
+        return submit(() -> access.getVendMachLocation(id));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> getInventoryAsync(final int id) {
+        return submit(() -> access.getInventory(id));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> addItemAsync(final int id, final String item,
+                                                                    final int quantity) {
+        return submit(() -> access.addItem(id, item, quantity));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> removeItemAsync(final int id, final String item,
+                                                                       final int quantity) {
+        return submit(() -> access.removeItem(id, item, quantity));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> addVendMachAsync(final int id, final String location) {
+        return submit(() -> access.addVendMach(id, location));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> removeVendMachAsync(final int id) {
+        return submit(() -> access.removeVendMach(id));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> changeLocationAsync(final int id, final String location) {
+        return submit(() -> access.changeLocation(id, location));
+    }
+
+    /**
+     * Internal method for making a call on the pool, and linking the cancellation
+     * of the returned future to the call.
+     *
+     * @param call The call
+     * @param <T>  The type of the answer
+     * @return Future of the answer
+     */
+    private static <T> CompletableFuture<T> submit(final Call<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = EXECUTOR.submit(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((answer, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,595 @@
+package gr2338.vendmachtrack.ui.access;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Class for accessing Vending Machine Tracker through another access, keeping
+ * what was read so that the views of the application don't fetch again what
+ * another view fetched a moment ago.
+ * <p>
+ * The list of vending machines and the inventory of each machine are kept for a
+ * while, {@link #DEFAULT_TTL} unless given, and reads within that time are
+ * answered without asking the access. The location of a machine is read from
+ * the kept list. Changes made through this class replace what is kept with the
+ * answer to the change, so the next read sees them without asking. A read that
+ * is made while the same data is being fetched shares the fetch in flight.
+ * Cancelling the future of a read only stops waiting for it, since the fetch may
+ * be shared.
+ * <p>
+ * If the access is a {@link MachineTrackerAccessRemote}, the changes the server
+ * reports whenever the list is brought up to date are used as well. The
+ * inventories of the machines that changed are replaced by those sent along,
+ * and the kept inventories of the other machines are known to be current as of
+ * that moment. An inventory that is no longer fresh is therefore checked by
+ * bringing the list up to date, which is one request for all the kept
+ * inventories instead of one each. The server's stream of events is subscribed
+ * to as well, so changes made by others replace the kept inventories as they
+ * happen, and drop the kept list if they change it. If events were missed, all
+ * that is kept is dropped.
+ */
+public class MachineTrackerAccessCached implements MachineTrackerAccessible, MachineTrackerAccessibleAsync {
+
+    /**
+     * Default time that what was read is kept.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(5);
+
+    private final MachineTrackerAccessible access;
+    private final MachineTrackerAccessibleAsync asyncAccess;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final boolean changeFeed;
+
+    /**
+     * The kept list and inventories, and when the server last reported the changes
+     * to the inventories. Guarded by {@link #lock}.
+     */
+    private Entry<HashMap<Integer, String>> list;
+    private final Map<Integer, Entry<HashMap<String, Integer>>> inventories = new HashMap<>();
+    private long changesReportedNanos;
+    private boolean changesReported;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Data that was read or is being fetched.
+     *
+     * @param value       Future of the data, which isn't done while it is fetched
+     * @param loadedNanos When the data was read, by {@link #clock}
+     * @param <T>         The type of the data
+     */
+    private record Entry<T>(CompletableFuture<T> value, long loadedNanos) {
+    }
+
+    /**
+     * Constructor. Requires the access to read through. What was read is kept for
+     * {@link #DEFAULT_TTL}.
+     *
+     * @param access The access
+     */
+    public MachineTrackerAccessCached(final MachineTrackerAccessible access) {
+        this(access, DEFAULT_TTL, System::nanoTime);
+    }
+
+    /**
+     * Constructor. Requires the access to read through, how long what was read is
+     * kept, and the clock measuring it.
+     *
+     * @param access The access
+     * @param ttl    How long what was read is kept
+     * @param clock  The clock, in nanoseconds
+     */
+    MachineTrackerAccessCached(final MachineTrackerAccessible access, final Duration ttl,
+                               final LongSupplier clock) {
+        this.access = access;
+        this.asyncAccess = MachineTrackerAccessibleAsync.of(access);
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        if (access instanceof MachineTrackerAccessRemote remote) {
+            remote.addChangeListener(this::applyChanges);
+            remote.subscribeToEvents();
+            this.changeFeed = true;
+        } else {
+            this.changeFeed = false;
+        }
+    }
+
+    /**
+     * Retrieves the access that is read through.
+     *
+     * @return The access
+     */
+    public MachineTrackerAccessible getAccess() {
+        return access;
+    }
+
+    /**
+     * Access method for the list of vending machines
+     *
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> getVendMachList() throws ConnectException {
+        return MachineTrackerAccessRemote.await(getVendMachListAsync());
+    }
+
+    /**
+     * Access method for the location of a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return Location of vending machine
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public String getVendMachLocation(final int id) throws ConnectException {
+        return MachineTrackerAccessRemote.await(getVendMachLocationAsync(id));
+    }
+
+    /**
+     * Access method for inventory
+     *
+     * @param id The ID of the vending machine
+     * @return HashMap of inventory with item as key and quantity as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<String, Integer> getInventory(final int id) throws ConnectException {
+        return MachineTrackerAccessRemote.await(getInventoryAsync(id));
+    }
+
+    /**
+     * Access method for adding item to vending machine's inventory
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item name to be added
+     * @param quantity The quantity of the item to be added
+     * @return HashMap of inventory with item as key and quantity as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<String, Integer> addItem(final int id, final String item, final int quantity)
+            throws ConnectException {
+        return MachineTrackerAccessRemote.await(addItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for removing a quantity of an item
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item to be removed
+     * @param quantity The quantity to be removed from the item
+     * @return HashMap of inventory with item as key and quantity as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<String, Integer> removeItem(final int id, final String item, final int quantity)
+            throws ConnectException {
+        return MachineTrackerAccessRemote.await(removeItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for adding a new vending machine
+     *
+     * @param id       The ID of the new vending machine
+     * @param location The location of the new vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> addVendMach(final int id, final String location) throws ConnectException {
+        return MachineTrackerAccessRemote.await(addVendMachAsync(id, location));
+    }
+
+    /**
+     * Access method for removing a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> removeVendMach(final int id) throws ConnectException {
+        return MachineTrackerAccessRemote.await(removeVendMachAsync(id));
+    }
+
+    /**
+     * Access method for changing the location of a vending machine
+     *
+     * @param id       The ID of the vending machine
+     * @param location The new location of the vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> changeLocation(final int id, final String location) throws ConnectException {
+        return MachineTrackerAccessRemote.await(changeLocationAsync(id, location));
+    }
+
+    /**
+     * Access method for the list of vending machines, answered from the kept list
+     * if it is fresh.
+     *
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> getVendMachListAsync() {
+        lock.lock();
+        try {
+            if (list != null && isFresh(list, list.loadedNanos())) {
+                return list.value().thenApply(HashMap::new);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loadVendMachList().thenApply(HashMap::new);
+    }
+
+    /**
+     * Access method for the location of a vending machine, answered from the kept
+     * list if it is fresh and holds the machine.
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the location of the vending machine
+     */
+    @Override
+    public CompletableFuture<String> getVendMachLocationAsync(final int id) {
+        lock.lock();
+        try {
+            if (list != null && list.value().isDone() && !list.value().isCompletedExceptionally()
+                    && isFresh(list, list.loadedNanos())) {
+                HashMap<Integer, String> vendMachList = list.value().join();
+                if (vendMachList.containsKey(id)) {
+                    return CompletableFuture.completedFuture(vendMachList.get(id));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return asyncAccess.getVendMachLocationAsync(id);
+    }
+
+    /**
+     * Access method for inventory, answered from the kept inventory if it is
+     * fresh. If the server reports changes, an inventory that is no longer fresh
+     * is checked by bringing the list up to date first.
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> getInventoryAsync(final int id) {
+        boolean checkChanges;
+        lock.lock();
+        try {
+            Entry<HashMap<String, Integer>> entry = inventories.get(id);
+            if (entry != null && isFresh(entry, inventoryCheckedNanos(entry))) {
+                return entry.value().thenApply(HashMap::new);
+            }
+            checkChanges = entry != null && changeFeed;
+        } finally {
+            lock.unlock();
+        }
+        if (!checkChanges) {
+            return loadInventory(id).thenApply(HashMap::new);
+        }
+        return loadVendMachList()
+                .handle((vendMachList, e) -> null)
+                .thenCompose(ignored -> {
+                    lock.lock();
+                    try {
+                        Entry<HashMap<String, Integer>> entry = inventories.get(id);
+                        if (entry != null && isFresh(entry, inventoryCheckedNanos(entry))) {
+                            return entry.value();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    return loadInventory(id);
+                })
+                .thenApply(HashMap::new);
+    }
+
+    /**
+     * Access method for adding item to vending machine's inventory. The inventory
+     * answered is kept.
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item name to be added
+     * @param quantity The quantity of the item to be added
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> addItemAsync(final int id, final String item,
+                                                                    final int quantity) {
+        return changeInventory(id, () -> asyncAccess.addItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for removing a quantity of an item. The inventory answered is
+     * kept.
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item to be removed
+     * @param quantity The quantity to be removed from the item
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> removeItemAsync(final int id, final String item,
+                                                                       final int quantity) {
+        return changeInventory(id, () -> asyncAccess.removeItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for adding a new vending machine. The list answered is kept.
+     *
+     * @param id       The ID of the new vending machine
+     * @param location The location of the new vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> addVendMachAsync(final int id, final String location) {
+        return changeVendMachList(id, () -> asyncAccess.addVendMachAsync(id, location));
+    }
+
+    /**
+     * Access method for removing a vending machine. The list answered is kept, and
+     * the inventory of the machine is dropped.
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> removeVendMachAsync(final int id) {
+        return changeVendMachList(id, () -> asyncAccess.removeVendMachAsync(id));
+    }
+
+    /**
+     * Access method for changing the location of a vending machine. The list
+     * answered is kept.
+     *
+     * @param id       The ID of the vending machine
+     * @param location The new location of the vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> changeLocationAsync(final int id, final String location) {
+        return changeVendMachList(id, () -> asyncAccess.changeLocationAsync(id, location));
+    }
+
+    /**
+     * Internal method for fetching the list of vending machines and keeping it,
+     * unless it is being fetched already.
+     *
+     * @return Future of the kept list
+     */
+    private CompletableFuture<HashMap<Integer, String>> loadVendMachList() {
+        CompletableFuture<HashMap<Integer, String>> load = new CompletableFuture<>();
+        Entry<HashMap<Integer, String>> entry;
+        lock.lock();
+        try {
+            if (list != null && !list.value().isDone()) {
+                return list.value();
+            }
+            entry = new Entry<>(load, clock.getAsLong());
+            list = entry;
+        } finally {
+            lock.unlock();
+        }
+        // The access is called outside the lock, since a remote access may report changes while it is held.
+        fetchInto(asyncAccess::getVendMachListAsync, load, () -> {
+            if (list == entry) {
+                list = null;
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Internal method for fetching the inventory of a vending machine and keeping
+     * it, unless it is being fetched already.
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the kept inventory
+     */
+    private CompletableFuture<HashMap<String, Integer>> loadInventory(final int id) {
+        CompletableFuture<HashMap<String, Integer>> load = new CompletableFuture<>();
+        Entry<HashMap<String, Integer>> entry;
+        lock.lock();
+        try {
+            Entry<HashMap<String, Integer>> current = inventories.get(id);
+            if (current != null && !current.value().isDone()) {
+                return current.value();
+            }
+            entry = new Entry<>(load, clock.getAsLong());
+            inventories.put(id, entry);
+        } finally {
+            lock.unlock();
+        }
+        fetchInto(() -> asyncAccess.getInventoryAsync(id), load, () -> inventories.remove(id, entry));
+        return load;
+    }
+
+    /**
+     * Internal method for making a change to the inventory of a vending machine,
+     * and keeping the inventory answered. The kept inventory is dropped while the
+     * change is made, and if it fails.
+     *
+     * @param id     The ID of the vending machine
+     * @param change The change
+     * @return Future of the inventory
+     */
+    private CompletableFuture<HashMap<String, Integer>> changeInventory(
+            final int id, final Supplier<CompletableFuture<HashMap<String, Integer>>> change) {
+        lock.lock();
+        try {
+            inventories.remove(id);
+        } finally {
+            lock.unlock();
+        }
+        return change.get().whenComplete((inventory, e) -> {
+            lock.lock();
+            try {
+                if (e == null) {
+                    inventories.put(id, new Entry<>(CompletableFuture.completedFuture(new HashMap<>(inventory)),
+                            clock.getAsLong()));
+                } else {
+                    inventories.remove(id);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Internal method for making a change to the list of vending machines, and
+     * keeping the list answered. The kept list, and the kept inventory of the
+     * machine, are dropped while the change is made, and if it fails. The
+     * inventory is dropped if the machine is no longer in the list.
+     *
+     * @param id     The ID of the vending machine changed
+     * @param change The change
+     * @return Future of the list
+     */
+    private CompletableFuture<HashMap<Integer, String>> changeVendMachList(
+            final int id, final Supplier<CompletableFuture<HashMap<Integer, String>>> change) {
+        lock.lock();
+        try {
+            list = null;
+        } finally {
+            lock.unlock();
+        }
+        return change.get().whenComplete((vendMachList, e) -> {
+            lock.lock();
+            try {
+                if (e == null) {
+                    list = new Entry<>(CompletableFuture.completedFuture(new HashMap<>(vendMachList)),
+                            clock.getAsLong());
+                    if (!vendMachList.containsKey(id)) {
+                        inventories.remove(id);
+                    }
+                } else {
+                    list = null;
+                    inventories.remove(id);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Internal method for applying the changes reported by the server to the kept
+     * inventories, see {@link MachineTrackerAccessRemote.ChangeListener}.
+     *
+     * @param full             Whether the changes hold the whole fleet
+     * @param changedInventories The inventory of each machine added or changed, or
+     *                         null if it wasn't sent
+     * @param removed          The IDs of the machines removed
+     * @param listChanged      Whether the list changed without being fetched, in
+     *                         which case the kept list is dropped
+     */
+    private void applyChanges(final boolean full, final Map<Integer, HashMap<String, Integer>> changedInventories,
+                              final Set<Integer> removed, final boolean listChanged) {
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            if (listChanged) {
+                list = null;
+            }
+            if (full) {
+                inventories.clear();
+            }
+            for (Integer id : removed) {
+                inventories.remove(id);
+            }
+            changedInventories.forEach((id, inventory) -> {
+                if (inventory == null) {
+                    inventories.remove(id);
+                } else {
+                    inventories.put(id, new Entry<>(CompletableFuture.completedFuture(inventory), now));
+                }
+            });
+            changesReportedNanos = now;
+            changesReported = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Internal method for finding when a kept inventory was last known to be
+     * current, which is when the server last reported changes if that was after
+     * it was read. Must be called while holding the lock.
+     *
+     * @param entry The kept inventory
+     * @return When it was last known to be current, by {@link #clock}
+     */
+    private long inventoryCheckedNanos(final Entry<HashMap<String, Integer>> entry) {
+        if (changesReported && changesReportedNanos - entry.loadedNanos() > 0) {
+            return changesReportedNanos;
+        }
+        return entry.loadedNanos();
+    }
+
+    /**
+     * Internal method for checking whether kept data can be used. Data that is
+     * being fetched can always be used, by waiting for it.
+     *
+     * @param entry        The kept data
+     * @param checkedNanos When the data was last known to be current
+     * @return True if the data can be used without fetching it again
+     */
+    private boolean isFresh(final Entry<?> entry, final long checkedNanos) {
+        return !entry.value().isDone() || clock.getAsLong() - checkedNanos < ttlNanos;
+    }
+
+    /**
+     * Internal method for completing the future of kept data with what a fetch
+     * answers, and running a clean-up while holding the lock if it fails, so that
+     * the failure isn't kept.
+     *
+     * @param fetch   The fetch
+     * @param load    The future of the kept data
+     * @param onError The clean-up
+     * @param <T>     The type of the data
+     */
+    private <T> void fetchInto(final Supplier<CompletableFuture<T>> fetch, final CompletableFuture<T> load,
+                               final Runnable onError) {
+        CompletableFuture<T> fetched;
+        try {
+            fetched = fetch.get();
+        } catch (RuntimeException e) {
+            fetched = CompletableFuture.failedFuture(e);
+        }
+        fetched.whenComplete((value, e) -> {
+            if (e != null) {
+                lock.lock();
+                try {
+                    onError.run();
+                } finally {
+                    lock.unlock();
+                }
+                load.completeExceptionally(e);
+            } else {
+                load.complete(value);
+            }
+        });
+    }
+}
@@ -9,9 +9,10 @@ import java.util.Optional;
 import java.util.regex.Pattern;
 
 /**
- * Class for accessing Vending Machine Tracker through REST API.
- * Accesses the Spring Boot REST API server by following the documentation on
- * possible requests to perform against the API.
+ * Class for accessing Vending Machine Tracker through a local file.
+ * Changes are made to the latest tracker in the file while holding its lock, see
+ * {@link VendmachtrackPersistence#update(java.util.function.Function)}, so
+ * clients sharing the file don't overwrite each other's changes.
  */
 public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
 
@@ -35,13 +36,7 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      */
     @Override
     public HashMap<Integer, String> getVendMachList() {
-        HashMap<Integer, String> vendMachList = new HashMap<>();
-
-        for (VendingMachine vendMach : getMachtrack().getMachines()) {
-            vendMachList.put(vendMach.getId(), vendMach.getLocation());
-        }
-
-        return vendMachList;
+        return toVendMachList(getMachtrack());
     }
 
     /**
@@ -52,10 +47,10 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      */
     @Override
     public String getVendMachLocation(final int id) {
-        HashMap<Integer, String> vendMachList = getVendMachList();
+        VendingMachine vendMach = getMachtrack().getMachine(id);
 
-        if (vendMachList.containsKey(id)) {
-            return vendMachList.get(id);
+        if (vendMach != null) {
+            return vendMach.getLocation();
         } else {
             throw new RuntimeException("No such Vending Machine with ID: " + id);
         }
@@ -85,17 +80,16 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
         validateItem(item);
         validateQuantity(quantity);
 
-        MachineTracker machtrack = getMachtrack();
+        return persistence.update(latest -> {
+            VendingMachine vendMach = requireMachtrack(latest).getMachine(id);
 
-        for (VendingMachine vendMach : machtrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                vendMach.addItem(item, quantity);
-                persistence.saveVendmachtrack(machtrack);
-                return vendMach.getStatus();
+            if (vendMach == null) {
+                throw new RuntimeException("No such Vending Machine with ID: " + id);
             }
-        }
 
-        throw new RuntimeException("No such Vending Machine with ID: " + id);
+            vendMach.addItem(item, quantity);
+            return vendMach.getStatus();
+        });
     }
 
     /**
@@ -113,27 +107,20 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
         validateItem(item);
         validateQuantity(quantity);
 
-        VendingMachine vendMach = getVendMach(id);
-
-        if (!vendMach.getStatus().containsKey(item)) {
-            throw new IllegalArgumentException("The vending machine's inventory does not contain this item");
-        } else if (quantity > vendMach.getStatus().get(item)) {
-            throw new IllegalArgumentException(
-                    "The vending machine's inventory contains less than the given quantity to remove of item: "
-                            + item);
-        } else {
-            MachineTracker machTrack = getMachtrack();
-
-            for (VendingMachine v : machTrack.getMachines()) {
-                if (v.getId() == id) {
-                    v.removeItem(item, quantity);
-                    persistence.saveVendmachtrack(machTrack);
-                    return v.getStatus();
-                }
+        return persistence.update(latest -> {
+            VendingMachine vendMach = getVendMach(requireMachtrack(latest), id);
+
+            if (!vendMach.getStatusView().containsKey(item)) {
+                throw new IllegalArgumentException("The vending machine's inventory does not contain this item");
+            } else if (quantity > vendMach.getQuantity(item)) {
+                throw new IllegalArgumentException(
+                        "The vending machine's inventory contains less than the given quantity to remove of item: "
+                                + item);
+            } else {
+                vendMach.removeItem(item, quantity);
+                return vendMach.getStatus();
             }
-
-            return null;
-        }
+        });
     }
 
     /**
@@ -146,18 +133,20 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      */
     @Override
     public HashMap<Integer, String> addVendMach(final int id, final String location) {
-        validateNewVendMachId(id);
-        validateLocation(location);
+        return persistence.update(latest -> {
+            MachineTracker machTrack = requireMachtrack(latest);
+
+            validateNewVendMachId(machTrack, id);
+            validateLocation(location);
 
-        MachineTracker machTrack = getMachtrack();
-        VendingMachine vendMach = new VendingMachine();
+            VendingMachine vendMach = new VendingMachine();
 
-        vendMach.setId(id);
-        vendMach.setLocation(location);
-        machTrack.addVendingMachine(vendMach);
-        persistence.saveVendmachtrack(machTrack);
+            vendMach.setId(id);
+            vendMach.setLocation(location);
+            machTrack.addVendingMachine(vendMach);
 
-        return getVendMachList();
+            return toVendMachList(machTrack);
+        });
     }
 
     /**
@@ -169,18 +158,14 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      */
     @Override
     public HashMap<Integer, String> removeVendMach(final int id) {
-        validateVendMachId(id);
-
-        MachineTracker machTrack = getMachtrack();
+        return persistence.update(latest -> {
+            MachineTracker machTrack = requireMachtrack(latest);
 
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                machTrack.removeVendingMachine(vendMach);
-                persistence.saveVendmachtrack(machTrack);
-            }
-        }
+            validateVendMachId(machTrack, id);
+            machTrack.removeVendingMachine(id);
 
-        return getVendMachList();
+            return toVendMachList(machTrack);
+        });
     }
 
     /**
@@ -194,18 +179,15 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
     @Override
     public HashMap<Integer, String> changeLocation(final int id, final String location) {
         validateLocation(location);
-        validateVendMachId(id);
 
-        MachineTracker machTrack = getMachtrack();
+        return persistence.update(latest -> {
+            MachineTracker machTrack = requireMachtrack(latest);
 
-        for (VendingMachine vendMach : machTrack.getMachines()) {
-            if (vendMach.getId() == id) {
-                vendMach.setLocation(location);
-                persistence.saveVendmachtrack(machTrack);
-            }
-        }
+            validateVendMachId(machTrack, id);
+            machTrack.getMachine(id).setLocation(location);
 
-        return getVendMachList();
+            return toVendMachList(machTrack);
+        });
     }
 
     /**
@@ -247,34 +229,30 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
     /**
      * Internal method for validating if the vending machine with given ID exists.
      *
-     * @param id The ID of the vending machine to be validated.
+     * @param machTrack The vending machine tracker to look in
+     * @param id        The ID of the vending machine to be validated.
      * @throws IllegalArgumentException if no vending machine with given ID exists.
      */
-    private void validateVendMachId(final int id) {
-        for (VendingMachine vendMach : getMachtrack().getMachines()) {
-            if (vendMach.getId() == id) {
-                return;
-            }
+    private void validateVendMachId(final MachineTracker machTrack, final int id) {
+        if (!machTrack.containsMachine(id)) {
+            throw new IllegalArgumentException("No such Vending Machine with ID: " + id);
         }
-
-        throw new IllegalArgumentException("No such Vending Machine with ID: " + id);
     }
 
     /**
      * Internal method for validating new ID for vending machine.
      *
-     * @param id The ID to be validated
+     * @param machTrack The vending machine tracker to look in
+     * @param id        The ID to be validated
      * @throws IllegalArgumentException if new ID is not valid or already existing.
      */
-    private void validateNewVendMachId(final int id) {
+    private void validateNewVendMachId(final MachineTracker machTrack, final int id) {
         if (!Pattern.compile("\\d+").matcher(String.valueOf(id)).matches()) {
             throw new IllegalArgumentException("Id not valid");
         }
 
-        for (VendingMachine vendMach : getMachtrack().getMachines()) {
-            if (vendMach.getId() == id) {
-                throw new IllegalArgumentException("A vending machine with id " + id + " already exists");
-            }
+        if (machTrack.containsMachine(id)) {
+            throw new IllegalArgumentException("A vending machine with id " + id + " already exists");
         }
     }
 
@@ -286,13 +264,41 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      * @throws IllegalArgumentException if no vending machine with given ID exists.
      */
     private VendingMachine getVendMach(final int id) {
-        return getMachtrack().getMachines()
-                .stream()
-                .filter(vendMach -> vendMach.getId() == id)
-                .findFirst()
+        return getVendMach(getMachtrack(), id);
+    }
+
+    /**
+     * Internal method for retrieving a vending machine based on ID from an already
+     * loaded vending machine tracker.
+     *
+     * @param machTrack The vending machine tracker to look in
+     * @param id        The ID of the vending machine
+     * @return Vending Machine with given ID
+     * @throws IllegalArgumentException if no vending machine with given ID exists.
+     */
+    private VendingMachine getVendMach(final MachineTracker machTrack, final int id) {
+        return Optional.ofNullable(machTrack.getMachine(id))
                 .orElseThrow(() -> new IllegalArgumentException("No such Vending Machine with ID: " + id));
     }
 
+    /**
+     * Internal method for building the list of vending machines from an already
+     * loaded vending machine tracker.
+     *
+     * @param machTrack The vending machine tracker
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     */
+    private HashMap<Integer, String> toVendMachList(final MachineTracker machTrack) {
+        HashMap<Integer, String> vendMachList = new HashMap<>();
+
+        for (VendingMachine vendMach : machTrack.getMachinesView()) {
+            vendMachList.put(vendMach.getId(), vendMach.getLocation());
+        }
+
+        return vendMachList;
+    }
+
     /**
      * Internal method for retrieving vending machine tracker.
      *
@@ -300,7 +306,18 @@ public class MachineTrackerAccessLocal implements MachineTrackerAccessible {
      * @throws RuntimeException if no vending machine tracker could be found
      */
     private MachineTracker getMachtrack() {
-        return Optional.ofNullable(persistence.getVendmachtrack())
+        return requireMachtrack(persistence.getVendmachtrack());
+    }
+
+    /**
+     * Internal method for checking that a vending machine tracker could be read.
+     *
+     * @param machTrack The vending machine tracker, or null
+     * @return The same vending machine tracker
+     * @throws RuntimeException if no vending machine tracker could be found
+     */
+    private MachineTracker requireMachtrack(final MachineTracker machTrack) {
+        return Optional.ofNullable(machTrack)
                 .orElseThrow(() -> new RuntimeException("Vending Machine Tracker not found"));
     }
 }
@@ -3,6 +3,7 @@ package gr2338.vendmachtrack.ui.access;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 
@@ -15,39 +16,293 @@ import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class for accessing Vending Machine Tracker through REST API.
  * Accesses the Spring Boot REST API server by following the documentation on
  * possible requests to perform against the API.
+ * <p>
+ * The list of vending machines is kept as a local copy, which is brought up to
+ * date by fetching only the machines added, changed and removed since the last
+ * time. Fetching the list therefore costs as much as the changes, not the whole
+ * fleet. If the server doesn't support fetching changes, the whole list is
+ * fetched every time instead.
+ * <p>
+ * For the other reads, the last body and ETag the server sent for each URL are
+ * kept, and the ETag is sent with the next request for the URL. If the data
+ * hasn't changed, the server answers {@code 304 Not Modified} without a body,
+ * and the kept body is used.
+ * <p>
+ * Requests are sent with {@link HttpClient#sendAsync}, and both the blocking
+ * methods of {@link MachineTrackerAccessible} and the methods of
+ * {@link MachineTrackerAccessibleAsync} go through the same path, the blocking
+ * ones simply waiting for the answer. At most a fixed number of requests are in
+ * flight at once, and the rest wait for one of them to complete, so that a burst
+ * of requests doesn't open a connection each. Every request times out on its
+ * own, and the timeout counts from when it is sent, not from when it starts
+ * waiting.
+ * <p>
+ * Once {@link #subscribeToEvents()} is called, the server's stream of changes to
+ * the vending machines is read as well, and every change is passed on to the
+ * change listeners as it happens. The stream is reopened whenever it ends, after
+ * a delay that doubles with every failed attempt. Since events may be missed
+ * while it is closed, or when the server drops them for a slow reader, the
+ * listeners are told that everything may have changed whenever the stream opens
+ * and whenever the sequence numbers of the events skip. The local copy of the
+ * list is only brought up to date by fetching changes, so that an answer sent
+ * before an event and read after it can't undo the event.
  */
-public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
+public class MachineTrackerAccessRemote implements MachineTrackerAccessible, MachineTrackerAccessibleAsync {
 
     private final URI endpointBaseUri;
     private final Gson gson;
     private final HttpClient httpClient;
 
+    /**
+     * Local copy of the list of vending machines, up to date with {@link #version}.
+     * Guarded by {@link #listLock}.
+     */
+    private final HashMap<Integer, String> vendMachList = new HashMap<>();
+    private long version;
+    private boolean changesSupported = true;
+    private CompletableFuture<HashMap<Integer, String>> lastListFetch = CompletableFuture.completedFuture(null);
+    private final ReentrantLock listLock = new ReentrantLock();
+
+    /**
+     * Listener for the changes to the vending machines that the server reports
+     * whenever the list of vending machines is brought up to date, or pushes on
+     * its stream of events.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+
+        /**
+         * Called with the changes since the list was last brought up to date, or
+         * with a change pushed by the server, on the thread that received them.
+         * Machines in neither of the arguments are unchanged, unless {@code full}
+         * is set.
+         *
+         * @param full        Whether the changes hold the whole fleet, so that
+         *                    machines missing from them no longer exist
+         * @param inventories The inventory of each machine added or changed, or null
+         *                    for a machine whose inventory wasn't sent
+         * @param removed     The IDs of the machines removed
+         * @param listChanged Whether the list of vending machines changed without
+         *                    being fetched, so that a copy of it is out of date
+         */
+        void onChanges(boolean full, Map<Integer, HashMap<String, Integer>> inventories, Set<Integer> removed,
+                       boolean listChanged);
+    }
+
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Default maximum number of requests in flight at once.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * Default time to wait for the answer to a request.
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final int maxInFlight;
+    private final Duration timeout;
+
+    /**
+     * Number of requests in flight, and the requests waiting to be sent, oldest
+     * first. Guarded by {@link #sendLock}.
+     */
+    private int inFlight;
+    private final Queue<Pending> waiting = new ArrayDeque<>();
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    /**
+     * A request together with the future of its response.
+     *
+     * @param request  The request.
+     * @param response The future of the response.
+     */
+    private record Pending(HttpRequest request, CompletableFuture<HttpResponse<String>> response) {
+    }
+
+    /**
+     * Maximum number of URLs whose last body is kept.
+     */
+    private static final int MAX_CACHED_BODIES = 1024;
+
+    /**
+     * Last body and ETag of each URL, least recently used first.
+     */
+    private final Map<URI, CachedBody> cachedBodies = Collections.synchronizedMap(
+            new LinkedHashMap<>(MAX_CACHED_BODIES, 1.0f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<URI, CachedBody> eldest) {
+                    return size() > MAX_CACHED_BODIES;
+                }
+            });
+
+    /**
+     * A response body together with the ETag the server sent for it.
+     *
+     * @param etag The ETag.
+     * @param body The body.
+     */
+    private record CachedBody(String etag, String body) {
+    }
+
     /**
      * Endpoint directory for the Vending Machine Tracker server.
      */
     private static final String ENDPOINT_DIRECTORY = "vendmachtrack";
 
+    /**
+     * Endpoint of the stream of changes to the vending machines.
+     */
+    private static final String EVENTS_ENDPOINT = ENDPOINT_DIRECTORY + "/events";
+
+    /**
+     * Default delay before the stream of events is reopened after it ended.
+     */
+    public static final Duration DEFAULT_RECONNECT_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Longest delay before the stream of events is reopened, however often it
+     * failed to open.
+     */
+    public static final Duration MAX_RECONNECT_DELAY = Duration.ofSeconds(30);
+
+    /**
+     * The stream of events being read, whether it should be kept open, and the
+     * delay before it is reopened. Guarded by {@link #eventsLock}.
+     */
+    private EventStream eventStream;
+    private boolean eventsSubscribed;
+    private Duration minReconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private Duration maxReconnectDelay = MAX_RECONNECT_DELAY;
+    private Duration reconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private final ReentrantLock eventsLock = new ReentrantLock();
+
     private static final Type TYPE_HASHMAP_INTEGER_STRING = new TypeToken<HashMap<Integer, String>>() {
     }.getType();
     private static final Type TYPE_HASHMAP_STRING_INTEGER = new TypeToken<HashMap<String, Integer>>() {
     }.getType();
 
     /**
-     * Constructor. Requires a base URI for the REST API endpoint.
+     * Constructor. Requires a base URI for the REST API endpoint. At most
+     * {@value #DEFAULT_MAX_IN_FLIGHT} requests are in flight at once, and each
+     * times out after {@link #DEFAULT_TIMEOUT}.
      *
      * @param endpointBaseUri The base URI of the REST API endpoint
      */
     public MachineTrackerAccessRemote(final URI endpointBaseUri) {
+        this(endpointBaseUri, DEFAULT_MAX_IN_FLIGHT, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructor. Requires a base URI for the REST API endpoint, the maximum
+     * number of requests in flight at once and the timeout of each request.
+     *
+     * @param endpointBaseUri The base URI of the REST API endpoint
+     * @param maxInFlight     The maximum number of requests in flight at once
+     * @param timeout         The time to wait for the answer to a request
+     * @throws IllegalArgumentException If the maximum is less than one or the
+     *                                  timeout isn't positive
+     */
+    public MachineTrackerAccessRemote(final URI endpointBaseUri, final int maxInFlight, final Duration timeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight");
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
         this.endpointBaseUri = endpointBaseUri; // Use 'this' to refer to the class field
         this.gson = new Gson();
         this.httpClient = HttpClient.newBuilder().build();
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds a listener for the changes to the vending machines, which is told about
+     * every change the server reports from then on. Nothing is reported if the
+     * server doesn't support fetching changes, and nothing is pushed unless the
+     * stream of events is subscribed to.
+     *
+     * @param listener The listener
+     */
+    public void addChangeListener(final ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Starts reading the server's stream of changes to the vending machines, and
+     * passing them on to the change listeners. The stream is kept open until
+     * {@link #unsubscribeFromEvents()} is called. Does nothing if it is already
+     * being read.
+     */
+    public void subscribeToEvents() {
+        subscribeToEvents(DEFAULT_RECONNECT_DELAY, MAX_RECONNECT_DELAY);
+    }
+
+    /**
+     * Starts reading the server's stream of changes, reopening it after the given
+     * delays. Used by tests, which can't wait for the default delays.
+     *
+     * @param minDelay The delay before the stream is reopened after it was open
+     * @param maxDelay The longest delay, reached by doubling it after every
+     *                 failed attempt
+     */
+    void subscribeToEvents(final Duration minDelay, final Duration maxDelay) {
+        eventsLock.lock();
+        try {
+            if (eventsSubscribed) {
+                return;
+            }
+            eventsSubscribed = true;
+            minReconnectDelay = minDelay;
+            maxReconnectDelay = maxDelay;
+            reconnectDelay = minDelay;
+        } finally {
+            eventsLock.unlock();
+        }
+        openEvents();
+    }
+
+    /**
+     * Stops reading the server's stream of changes, and closes it.
+     */
+    public void unsubscribeFromEvents() {
+        EventStream stream;
+        eventsLock.lock();
+        try {
+            eventsSubscribed = false;
+            stream = eventStream;
+            eventStream = null;
+        } finally {
+            eventsLock.unlock();
+        }
+        if (stream != null) {
+            stream.close();
+        }
     }
 
     /**
@@ -59,14 +314,7 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      */
     @Override
     public HashMap<Integer, String> getVendMachList() throws ConnectException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve("vendmachtrack"))
-                .build();
-
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_INTEGER_STRING);
+        return await(getVendMachListAsync());
     }
 
     /**
@@ -78,14 +326,7 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      */
     @Override
     public String getVendMachLocation(final int id) throws ConnectException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve("vendmachtrack/" + id + "/name"))
-                .build();
-
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), String.class);
+        return await(getVendMachLocationAsync(id));
     }
 
     /**
@@ -97,14 +338,7 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      */
     @Override
     public HashMap<String, Integer> getInventory(final int id) throws ConnectException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve("vendmachtrack/" + id))
-                .build();
-
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_STRING_INTEGER);
+        return await(getInventoryAsync(id));
     }
 
     /**
@@ -119,19 +353,130 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
     @Override
     public HashMap<String, Integer> addItem(final int id, final String item, final int quantity)
             throws ConnectException {
+        return await(addItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for removing a quantity of an item
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item to be removed
+     * @param quantity The quantity to be removed from the item
+     * @return HashMap of inventory with item as key and quantity as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<String, Integer> removeItem(final int id, final String item, final int quantity)
+            throws ConnectException {
+        return await(removeItemAsync(id, item, quantity));
+    }
+
+    /**
+     * Access method for adding a new vending machine
+     *
+     * @param id       The ID of the new vending machine
+     * @param location The location of the new vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> addVendMach(final int id, final String location) throws ConnectException {
+        return await(addVendMachAsync(id, location));
+    }
+
+    /**
+     * Access method for removing a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> removeVendMach(final int id) throws ConnectException {
+        return await(removeVendMachAsync(id));
+    }
+
+    /**
+     * Access method for changing the location of a vending machine
+     *
+     * @param id       The ID of the vending machine
+     * @param location The new location of the vending machine
+     * @return HashMap of vending machine list with vending machine ID as key and
+     * location as value
+     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     */
+    @Override
+    public HashMap<Integer, String> changeLocation(final int id, final String location) throws ConnectException {
+        return await(changeLocationAsync(id, location));
+    }
+
+    /**
+     * Access method for the list of vending machines. Fetches of the list are
+     * made one after the other, since each one continues from the version the
+     * previous one got to. Cancelling the future therefore only stops waiting
+     * for the list, and the fetch still brings the local copy up to date.
+     *
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    @Override
+    public CompletableFuture<HashMap<Integer, String>> getVendMachListAsync() {
+        listLock.lock();
+        try {
+            CompletableFuture<HashMap<Integer, String>> fetch = lastListFetch
+                    .handle((list, e) -> null)
+                    .thenCompose(ignored -> fetchVendMachList());
+            lastListFetch = fetch;
+            return fetch.copy();
+        } finally {
+            listLock.unlock();
+        }
+    }
+
+    /**
+     * Access method for the location of a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the location of the vending machine
+     */
+    @Override
+    public CompletableFuture<String> getVendMachLocationAsync(final int id) {
+        return getBody(endpointBaseUri.resolve("vendmachtrack/" + id + "/name"), String.class);
+    }
+
+    /**
+     * Access method for inventory
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> getInventoryAsync(final int id) {
+        return getBody(endpointBaseUri.resolve("vendmachtrack/" + id), TYPE_HASHMAP_STRING_INTEGER);
+    }
+
+    /**
+     * Access method for adding item to vending machine's inventory
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item name to be added
+     * @param quantity The quantity of the item to be added
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    @Override
+    public CompletableFuture<HashMap<String, Integer>> addItemAsync(final int id, final String item,
+                                                                    final int quantity) {
 
         String endpointQuery = buildEndpointWithParams(ENDPOINT_DIRECTORY + "/" + id + "/add",
                 "item", item, "quantity", String.valueOf(quantity));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve(endpointQuery))
+        HttpRequest request = newRequest(endpointBaseUri.resolve(endpointQuery))
                 .PUT(HttpRequest.BodyPublishers.noBody())
                 .build();
 
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_STRING_INTEGER);
+        return fetch(request, TYPE_HASHMAP_STRING_INTEGER);
     }
 
     /**
@@ -140,25 +485,20 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      * @param id       The ID of the vending machine
      * @param item     The item to be removed
      * @param quantity The quantity to be removed from the item
-     * @return HashMap of inventory with item as key and quantity as value
-     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     * @return Future of the inventory with item as key and quantity as value
      */
     @Override
-    public HashMap<String, Integer> removeItem(final int id, final String item, final int quantity)
-            throws ConnectException {
+    public CompletableFuture<HashMap<String, Integer>> removeItemAsync(final int id, final String item,
+                                                                       final int quantity) {
 
         String endpointQuery = buildEndpointWithParams(ENDPOINT_DIRECTORY + "/" + id + "/remove",
                 "item", item, "quantity", String.valueOf(quantity));
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve(endpointQuery))
+        HttpRequest request = newRequest(endpointBaseUri.resolve(endpointQuery))
                 .PUT(HttpRequest.BodyPublishers.noBody())
                 .build();
 
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_STRING_INTEGER);
+        return fetch(request, TYPE_HASHMAP_STRING_INTEGER);
     }
 
     /**
@@ -166,47 +506,37 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      *
      * @param id       The ID of the new vending machine
      * @param location The location of the new vending machine
-     * @return HashMap of vending machine list with vending machine ID as key and
-     * location as value
-     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
      */
     @Override
-    public HashMap<Integer, String> addVendMach(final int id, final String location) throws ConnectException {
+    public CompletableFuture<HashMap<Integer, String>> addVendMachAsync(final int id, final String location) {
 
         String endpointQuery = buildEndpointWithParams(ENDPOINT_DIRECTORY + "/add",
                 "id", String.valueOf(id), "location", location);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve(endpointQuery))
+        HttpRequest request = newRequest(endpointBaseUri.resolve(endpointQuery))
                 .POST(HttpRequest.BodyPublishers.noBody())
                 .build();
 
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_INTEGER_STRING);
+        return fetch(request, TYPE_HASHMAP_INTEGER_STRING);
     }
 
     /**
      * Access method for removing a vending machine
      *
      * @param id The ID of the vending machine
-     * @return HashMap of vending machine list with vending machine ID as key and
-     * location as value
-     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
      */
     @Override
-    public HashMap<Integer, String> removeVendMach(final int id) throws ConnectException {
+    public CompletableFuture<HashMap<Integer, String>> removeVendMachAsync(final int id) {
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve("vendmachtrack/" + id))
+        HttpRequest request = newRequest(endpointBaseUri.resolve("vendmachtrack/" + id))
                 .DELETE()
                 .build();
 
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
-
-        return gson.fromJson(response.body(), TYPE_HASHMAP_INTEGER_STRING);
+        return fetch(request, TYPE_HASHMAP_INTEGER_STRING);
     }
 
     /**
@@ -214,24 +544,338 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
      *
      * @param id       The ID of the vending machine
      * @param location The new location of the vending machine
-     * @return HashMap of vending machine list with vending machine ID as key and
-     * location as value
-     * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
      */
     @Override
-    public HashMap<Integer, String> changeLocation(final int id, final String location) throws ConnectException {
+    public CompletableFuture<HashMap<Integer, String>> changeLocationAsync(final int id, final String location) {
 
         String endpointQuery = buildEndpointWithParams(ENDPOINT_DIRECTORY + "/" + id, "location", location);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(endpointBaseUri.resolve(endpointQuery))
+        HttpRequest request = newRequest(endpointBaseUri.resolve(endpointQuery))
                 .PUT(HttpRequest.BodyPublishers.noBody())
                 .build();
 
-        HttpResponse<String> response = getResponse(request);
-        checkError(response);
+        return fetch(request, TYPE_HASHMAP_INTEGER_STRING);
+    }
+
+    /**
+     * Internal method for fetching the list of vending machines, by fetching the
+     * changes since the version of the local copy. If the server doesn't support
+     * fetching changes, the whole list is fetched instead, now and from then on.
+     * Must only be called once the previous fetch of the list has completed.
+     *
+     * @return Future of the vending machine list
+     */
+    private CompletableFuture<HashMap<Integer, String>> fetchVendMachList() {
+        long since;
+        listLock.lock();
+        try {
+            since = changesSupported ? version : -1;
+        } finally {
+            listLock.unlock();
+        }
+        if (since < 0) {
+            return fetchWholeVendMachList();
+        }
+
+        HttpRequest request = newRequest(endpointBaseUri.resolve(ENDPOINT_DIRECTORY + "?since=" + since)).build();
+        return send(request).thenCompose(response -> {
+            JsonObject changes = parseChanges(response);
+            HashMap<Integer, String> list = null;
+            listLock.lock();
+            try {
+                if (changes != null) {
+                    applyChanges(changes);
+                    list = new HashMap<>(vendMachList);
+                } else {
+                    changesSupported = false;
+                }
+            } finally {
+                listLock.unlock();
+            }
+            if (list == null) {
+                return fetchWholeVendMachList();
+            }
+            // Outside the lock, so that listeners may take locks of their own.
+            notifyChangeListeners(changes);
+            return CompletableFuture.completedFuture(list);
+        });
+    }
+
+    /**
+     * Internal method for fetching the whole list of vending machines.
+     *
+     * @return Future of the vending machine list
+     */
+    private CompletableFuture<HashMap<Integer, String>> fetchWholeVendMachList() {
+        return getBody(endpointBaseUri.resolve(ENDPOINT_DIRECTORY), TYPE_HASHMAP_INTEGER_STRING);
+    }
+
+    /**
+     * Internal method for reading the changes to the list of vending machines from
+     * a response.
+     *
+     * @param response HttpResponse to a request for the changes since a version
+     * @return The changes, or null if the server doesn't support fetching changes
+     * and answered with something else
+     */
+    private JsonObject parseChanges(final HttpResponse<String> response) {
+        JsonElement rootElement;
+        try {
+            rootElement = JsonParser.parseString(response.body());
+        } catch (JsonParseException e) {
+            return null;
+        }
+        if (!rootElement.isJsonObject()) {
+            return null;
+        }
+        JsonObject rootObject = rootElement.getAsJsonObject();
+        if (rootObject.has("error")) {
+            checkError(response);
+        }
+        if (response.statusCode() != HttpURLConnection.HTTP_OK
+                || !rootObject.has("version") || !rootObject.has("machines")) {
+            return null;
+        }
+        return rootObject;
+    }
+
+    /**
+     * Internal method for applying changes to the local copy of the list of
+     * vending machines. If the changes hold the whole fleet, the copy is replaced.
+     *
+     * @param changes The changes, as returned by the server
+     */
+    private void applyChanges(final JsonObject changes) {
+        if (changes.get("full").getAsBoolean()) {
+            vendMachList.clear();
+        }
+        JsonObject machines = changes.getAsJsonObject("machines");
+        for (String id : machines.keySet()) {
+            JsonElement location = machines.getAsJsonObject(id).get("location");
+            vendMachList.put(Integer.parseInt(id), location.isJsonNull() ? null : location.getAsString());
+        }
+        for (JsonElement id : changes.getAsJsonArray("removed")) {
+            vendMachList.remove(id.getAsInt());
+        }
+        version = changes.get("version").getAsLong();
+    }
+
+    /**
+     * Internal method for telling the change listeners about changes to the list of
+     * vending machines.
+     *
+     * @param changes The changes, as returned by the server
+     */
+    private void notifyChangeListeners(final JsonObject changes) {
+        if (changeListeners.isEmpty()) {
+            return;
+        }
+        boolean full = changes.get("full").getAsBoolean();
+        Map<Integer, HashMap<String, Integer>> inventories = new HashMap<>();
+        JsonObject machines = changes.getAsJsonObject("machines");
+        for (String id : machines.keySet()) {
+            JsonElement inventory = machines.getAsJsonObject(id).get("inventory");
+            inventories.put(Integer.parseInt(id), inventory == null || inventory.isJsonNull()
+                    ? null : gson.fromJson(inventory, TYPE_HASHMAP_STRING_INTEGER));
+        }
+        Set<Integer> removed = new HashSet<>();
+        for (JsonElement id : changes.getAsJsonArray("removed")) {
+            removed.add(id.getAsInt());
+        }
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanges(full, inventories, removed, false);
+        }
+    }
+
+    /**
+     * Internal method for opening the stream of events, unless it is no longer
+     * subscribed to. When the stream ends or fails to open, it is reopened after
+     * a delay.
+     */
+    private void openEvents() {
+        EventStream stream = new EventStream();
+        eventsLock.lock();
+        try {
+            if (!eventsSubscribed) {
+                return;
+            }
+            eventStream = stream;
+        } finally {
+            eventsLock.unlock();
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(endpointBaseUri.resolve(EVENTS_ENDPOINT))
+                .header("Accept", "text/event-stream")
+                .build();
+        httpClient.sendAsync(request, responseInfo -> {
+            if (responseInfo.statusCode() != HttpURLConnection.HTTP_OK) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            eventsOpened();
+            return HttpResponse.BodySubscribers.fromLineSubscriber(stream);
+        }).whenComplete((response, e) -> eventsClosed(stream));
+    }
+
+    /**
+     * Internal method for handling that the stream of events opened. Events may
+     * have been missed before it did, so the listeners are told that everything
+     * may have changed.
+     */
+    private void eventsOpened() {
+        eventsLock.lock();
+        try {
+            reconnectDelay = minReconnectDelay;
+        } finally {
+            eventsLock.unlock();
+        }
+        notifyEventsMissed();
+    }
 
-        return gson.fromJson(response.body(), TYPE_HASHMAP_INTEGER_STRING);
+    /**
+     * Internal method for handling that a stream of events ended or failed to
+     * open, by reopening it after a delay if it is still the one subscribed to.
+     * The delay doubles until the stream opens again.
+     *
+     * @param stream The stream that ended
+     */
+    private void eventsClosed(final EventStream stream) {
+        Duration delay;
+        eventsLock.lock();
+        try {
+            if (!eventsSubscribed || eventStream != stream) {
+                return;
+            }
+            delay = reconnectDelay;
+            Duration doubled = delay.multipliedBy(2);
+            reconnectDelay = doubled.compareTo(maxReconnectDelay) > 0 ? maxReconnectDelay : doubled;
+        } finally {
+            eventsLock.unlock();
+        }
+        CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS).execute(this::openEvents);
+    }
+
+    /**
+     * Internal method for telling the change listeners that events may have been
+     * missed, so that anything may have changed.
+     */
+    private void notifyEventsMissed() {
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanges(true, Map.of(), Set.of(), true);
+        }
+    }
+
+    /**
+     * Internal method for telling the change listeners about an event read from
+     * the stream. Stock alerts are left out, since the inventory change that
+     * caused them is an event of its own.
+     *
+     * @param event The data of the event, as sent by the server
+     */
+    private void notifyEvent(final JsonObject event) {
+        String type = event.get("type").getAsString();
+        int id = event.get("id").getAsInt();
+        JsonElement inventory = event.get("inventory");
+        Map<Integer, HashMap<String, Integer>> inventories = new HashMap<>();
+        Set<Integer> removed = new HashSet<>();
+        if ("INVENTORY".equals(type) || "ADDED".equals(type)) {
+            inventories.put(id, inventory == null || inventory.isJsonNull()
+                    ? null : gson.fromJson(inventory, TYPE_HASHMAP_STRING_INTEGER));
+        } else if ("REMOVED".equals(type)) {
+            removed.add(id);
+        } else if (!"LOCATION".equals(type)) {
+            return;
+        }
+        boolean listChanged = !"INVENTORY".equals(type);
+        for (ChangeListener listener : changeListeners) {
+            listener.onChanges(false, inventories, removed, listChanged);
+        }
+    }
+
+    /**
+     * Reader of one opening of the stream of events, which is sent as
+     * Server-Sent Events, one line at a time. The data of an event is a JSON
+     * object with its sequence number, type, the ID of the machine, and its
+     * location or inventory after the change.
+     */
+    private final class EventStream implements Flow.Subscriber<String> {
+
+        private final StringBuilder data = new StringBuilder();
+        private long lastSequence;
+        private Flow.Subscription subscription;
+        private boolean closed;
+
+        @Override
+        public synchronized void onSubscribe(final Flow.Subscription newSubscription) {
+            subscription = newSubscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(final String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? "data: ".length() : "data:".length(), line.length());
+            }
+            // Comments, which are heartbeats, and the other fields are ignored, since the data holds it all.
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            // Reopening is handled when the response completes.
+        }
+
+        @Override
+        public void onComplete() {
+            // Reopening is handled when the response completes.
+        }
+
+        /**
+         * Stops reading the stream and closes the connection.
+         */
+        synchronized void close() {
+            closed = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        /**
+         * Passes on the event whose data was read, once the blank line ending it is
+         * read. If events were skipped before it, the listeners are first told that
+         * anything may have changed. Events that can't be read are skipped.
+         */
+        private void dispatch() {
+            if (data.isEmpty()) {
+                return;
+            }
+            JsonObject event;
+            try {
+                event = JsonParser.parseString(data.toString()).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                return;
+            } finally {
+                data.setLength(0);
+            }
+            if (!event.has("sequence") || !event.has("type") || !event.has("id")) {
+                return;
+            }
+            long sequence = event.get("sequence").getAsLong();
+            if (lastSequence != 0 && sequence != lastSequence + 1) {
+                notifyEventsMissed();
+            }
+            lastSequence = sequence;
+            notifyEvent(event);
+        }
     }
 
     /**
@@ -251,19 +895,201 @@ public class MachineTrackerAccessRemote implements MachineTrackerAccessible {
     }
 
     /**
-     * Internal method for sending the request and returning the response.
+     * Internal method for fetching and reading the body of a URL. The ETag of the
+     * body kept from the last request for the URL is sent along, and the kept body
+     * is read if the server answers that it is still current.
+     *
+     * @param uri  URI to fetch
+     * @param type The type of the body
+     * @param <T>  The type of the body
+     * @return Future of the current body
+     */
+    private <T> CompletableFuture<T> getBody(final URI uri, final Type type) {
+        CachedBody cached = cachedBodies.get(uri);
+        HttpRequest.Builder request = newRequest(uri);
+        if (cached != null) {
+            request.header("If-None-Match", cached.etag());
+        }
+
+        CompletableFuture<HttpResponse<String>> sent = send(request.build());
+        return cancelling(sent.thenApply(response -> {
+            if (cached != null && response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return gson.<T>fromJson(cached.body(), type);
+            }
+            checkError(response);
+
+            String body = response.body();
+            response.headers().firstValue("ETag").ifPresentOrElse(
+                    etag -> cachedBodies.put(uri, new CachedBody(etag, body)),
+                    () -> cachedBodies.remove(uri));
+            return gson.<T>fromJson(body, type);
+        }), sent);
+    }
+
+    /**
+     * Internal method for sending a request that changes the data, and reading
+     * the answer.
      *
      * @param request HttpRequest to be sent
-     * @return HttpResponse from the request sent
+     * @param type    The type of the answer
+     * @param <T>     The type of the answer
+     * @return Future of the answer
+     */
+    private <T> CompletableFuture<T> fetch(final HttpRequest request, final Type type) {
+        CompletableFuture<HttpResponse<String>> sent = send(request);
+        return cancelling(sent.thenApply(response -> {
+            checkError(response);
+            return gson.fromJson(response.body(), type);
+        }), sent);
+    }
+
+    /**
+     * Internal method for starting a request to the server with the timeout.
+     *
+     * @param uri URI of the request
+     * @return Builder of the request
+     */
+    private HttpRequest.Builder newRequest(final URI uri) {
+        return HttpRequest.newBuilder().uri(uri).timeout(timeout);
+    }
+
+    /**
+     * Internal method for sending the request. It is sent at once if fewer than
+     * the maximum number of requests are in flight, and otherwise waits until an
+     * earlier one completes. Cancelling the returned future cancels the request,
+     * or drops it if it is still waiting.
+     *
+     * @param request HttpRequest to be sent
+     * @return Future of the response, which completes exceptionally with a
+     * {@link ConnectException} if connection to server is lost
+     */
+    private CompletableFuture<HttpResponse<String>> send(final HttpRequest request) {
+        Pending pending = new Pending(request, new CompletableFuture<>());
+        boolean sendNow;
+        sendLock.lock();
+        try {
+            sendNow = inFlight < maxInFlight;
+            if (sendNow) {
+                inFlight++;
+            } else {
+                waiting.add(pending);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+        if (sendNow) {
+            start(pending);
+        }
+        return pending.response();
+    }
+
+    /**
+     * Internal method for sending a request that has been given a place among the
+     * requests in flight. The place is handed on when the exchange completes.
+     *
+     * @param pending The request
+     */
+    private void start(final Pending pending) {
+        CompletableFuture<HttpResponse<String>> exchange;
+        try {
+            exchange = httpClient.sendAsync(pending.request(), HttpResponse.BodyHandlers.ofString());
+        } catch (RuntimeException e) {
+            pending.response().completeExceptionally(e);
+            startNext();
+            return;
+        }
+        exchange.whenComplete((response, e) -> {
+            startNext();
+            if (e == null) {
+                pending.response().complete(response);
+            } else {
+                pending.response().completeExceptionally(toConnectException(e));
+            }
+        });
+        cancelling(pending.response(), exchange);
+    }
+
+    /**
+     * Internal method for handing the place of a completed request on to the
+     * next waiting request that hasn't been cancelled, if any.
+     */
+    private void startNext() {
+        Pending next;
+        sendLock.lock();
+        try {
+            do {
+                next = waiting.poll();
+            } while (next != null && next.response().isDone());
+            if (next == null) {
+                inFlight--;
+            }
+        } finally {
+            sendLock.unlock();
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * Internal method for cancelling the future a future depends on when the
+     * future is cancelled, which {@link CompletableFuture} doesn't do by itself.
+     *
+     * @param future  The future
+     * @param source  The future it depends on
+     * @param <T>     The type of the future
+     * @return The future
+     */
+    private static <T> CompletableFuture<T> cancelling(final CompletableFuture<T> future,
+                                                       final CompletableFuture<?> source) {
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Internal method for translating the failure of an exchange with the server
+     * into the exception thrown by the access methods.
+     *
+     * @param e The failure
+     * @return {@link ConnectException} if the connection was lost or timed out,
+     * otherwise the failure itself
+     */
+    private static Throwable toConnectException(final Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof HttpTimeoutException) {
+            return new ConnectException("Server did not answer in time.");
+        }
+        if (cause instanceof IOException) {
+            return new ConnectException("Lost connection to server.");
+        }
+        return cause;
+    }
+
+    /**
+     * Internal method for waiting for the answer to a request, and throwing what
+     * it failed with. Also used by {@link MachineTrackerAccessCached}.
+     *
+     * @param future Future of the answer
+     * @param <T>    The type of the answer
+     * @return The answer
      * @throws ConnectException Throws {@link ConnectException} if connection to server is lost
      */
-    private HttpResponse<String> getResponse(final HttpRequest request) throws ConnectException {
+    static <T> T await(final CompletableFuture<T> future) throws ConnectException {
         try {
-            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new ConnectException("Lost connection to server.");
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectException connectException) {
+                throw connectException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause);
         }
     }
 
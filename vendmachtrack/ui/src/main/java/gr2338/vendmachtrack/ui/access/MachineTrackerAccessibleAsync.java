@@ -0,0 +1,108 @@
+package gr2338.vendmachtrack.ui.access;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for accessing Vending Machine Tracker without waiting for the answer.
+ * Every method returns at once with a future that completes when the answer
+ * arrives, so several requests can be in flight at the same time, for instance
+ * the location and the inventory of the same vending machine.
+ * <p>
+ * A future completes exceptionally with a {@link java.net.ConnectException} if the
+ * connection to the server is lost or the request timed out, and with a
+ * {@link RuntimeException} holding the error message if the request was
+ * rejected, like the methods of {@link MachineTrackerAccessible} throw them.
+ * Cancelling a future, for instance when its answer is no longer needed,
+ * cancels the request if it hasn't completed yet.
+ */
+public interface MachineTrackerAccessibleAsync {
+
+    /**
+     * Retrieves an asynchronous view of an access, which is the access itself if it
+     * already is asynchronous. Otherwise its methods are called on a background
+     * thread.
+     *
+     * @param access The access
+     * @return The asynchronous access
+     */
+    static MachineTrackerAccessibleAsync of(final MachineTrackerAccessible access) {
+        if (access instanceof MachineTrackerAccessibleAsync async) {
+            return async;
+        }
+        return new MachineTrackerAccessAsyncAdapter(access);
+    }
+
+    /**
+     * Access method for the list of vending machines
+     *
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    CompletableFuture<HashMap<Integer, String>> getVendMachListAsync();
+
+    /**
+     * Access method for the location of a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the location of the vending machine
+     */
+    CompletableFuture<String> getVendMachLocationAsync(int id);
+
+    /**
+     * Access method for inventory
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    CompletableFuture<HashMap<String, Integer>> getInventoryAsync(int id);
+
+    /**
+     * Access method for adding item to vending machine's inventory
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item name to be added
+     * @param quantity The quantity of the item to be added
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    CompletableFuture<HashMap<String, Integer>> addItemAsync(int id, String item, int quantity);
+
+    /**
+     * Access method for removing a quantity of an item
+     *
+     * @param id       The ID of the vending machine
+     * @param item     The item to be removed
+     * @param quantity The quantity to be removed from the item
+     * @return Future of the inventory with item as key and quantity as value
+     */
+    CompletableFuture<HashMap<String, Integer>> removeItemAsync(int id, String item, int quantity);
+
+    /**
+     * Access method for adding a new vending machine
+     *
+     * @param id       The ID of the new vending machine
+     * @param location The location of the new vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    CompletableFuture<HashMap<Integer, String>> addVendMachAsync(int id, String location);
+
+    /**
+     * Access method for removing a vending machine
+     *
+     * @param id The ID of the vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    CompletableFuture<HashMap<Integer, String>> removeVendMachAsync(int id);
+
+    /**
+     * Access method for changing the location of a vending machine
+     *
+     * @param id       The ID of the vending machine
+     * @param location The new location of the vending machine
+     * @return Future of the vending machine list with vending machine ID as key
+     * and location as value
+     */
+    CompletableFuture<HashMap<Integer, String>> changeLocationAsync(int id, String location);
+}
@@ -0,0 +1,224 @@
+package gr2338.vendmachtrack.ui.controller;
+
+import gr2338.vendmachtrack.ui.access.MachineTrackerAccessible;
+import gr2338.vendmachtrack.ui.access.MachineTrackerAccessibleAsync;
+import javafx.application.Platform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the requests of a controller to the Vending Machine Tracker off the JavaFX
+ * application thread, and hands their results back to it, so that a slow server
+ * or a large file never holds up drawing the next frame.
+ * <p>
+ * Every request belongs to a slot, such as the inventory shown by a view, and
+ * only the result of the newest request in a slot is applied. Loading data that
+ * is already being loaded in the slot doesn't send another request, but lets the
+ * new callbacks take over the one in flight, so repeated selections of the same
+ * machine cost one request. Loading other data cancels the load it supersedes.
+ * Changes are never cancelled, since they may already have been made, but their
+ * result isn't applied either once something newer was requested in the slot.
+ * </p>
+ * <p>
+ * Requests may be made from any thread, while callbacks are always run on the
+ * JavaFX application thread.
+ * </p>
+ */
+final class AccessTaskRunner {
+
+    private final MachineTrackerAccessibleAsync access;
+    private final Executor fxExecutor;
+
+    /**
+     * The newest request of each slot, until its result is applied. Guarded by
+     * {@link #lock}.
+     */
+    private final Map<String, Task<?>> slots = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * A request in flight, with the callbacks that will get its result. The
+     * callbacks are guarded by {@link #lock}, since loading the same data again
+     * replaces them.
+     *
+     * @param <T> The type of the result
+     */
+    private static final class Task<T> {
+
+        private final Object argument;
+        private final boolean change;
+        private final CompletableFuture<T> future;
+        private Consumer<? super T> onSuccess;
+        private Consumer<? super Throwable> onFailure;
+
+        /**
+         * Creates a task.
+         *
+         * @param argument  What is loaded, or null for a change
+         * @param change    Whether the request changes data
+         * @param future    Future of the result
+         * @param onSuccess Callback for the result
+         * @param onFailure Callback for the failure
+         */
+        private Task(final Object argument, final boolean change, final CompletableFuture<T> future,
+                     final Consumer<? super T> onSuccess, final Consumer<? super Throwable> onFailure) {
+            this.argument = argument;
+            this.change = change;
+            this.future = future;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+
+    /**
+     * Creates a runner for an access, whose results are applied on the JavaFX
+     * application thread.
+     *
+     * @param access The access, which is called on a background thread if it
+     *               only has blocking methods
+     */
+    AccessTaskRunner(final MachineTrackerAccessible access) {
+        this(MachineTrackerAccessibleAsync.of(access), Platform::runLater);
+    }
+
+    /**
+     * Creates a runner for an access, whose results are applied by an executor.
+     *
+     * @param access     The access
+     * @param fxExecutor The executor applying the results, which must run them one
+     *                   at a time on the JavaFX application thread
+     */
+    AccessTaskRunner(final MachineTrackerAccessibleAsync access, final Executor fxExecutor) {
+        this.access = access;
+        this.fxExecutor = fxExecutor;
+    }
+
+    /**
+     * Loads data into a slot, superseding what was requested in it before. If the
+     * same data is already being loaded in the slot, the request in flight is kept
+     * and gets the new callbacks instead.
+     *
+     * @param slot      The slot
+     * @param argument  What is loaded, for instance the ID of a vending machine. Two
+     *                  loads in a slot with equal arguments must load the same data.
+     * @param request   The request, made with the asynchronous access
+     * @param onSuccess Callback for the result, run on the JavaFX application thread
+     * @param onFailure Callback for what the request failed with, run on the JavaFX
+     *                  application thread
+     * @param <T>       The type of the result
+     */
+    <T> void load(final String slot, final Object argument,
+                  final Function<MachineTrackerAccessibleAsync, CompletableFuture<T>> request,
+                  final Consumer<? super T> onSuccess, final Consumer<? super Throwable> onFailure) {
+        lock.lock();
+        try {
+            Task<?> current = slots.get(slot);
+            if (current != null && !current.change && Objects.equals(current.argument, argument)) {
+                @SuppressWarnings("unchecked") // Equal arguments in a slot load the same data, see above.
+                Task<T> same = (Task<T>) current;
+                same.onSuccess = onSuccess;
+                same.onFailure = onFailure;
+                return;
+            }
+            start(slot, argument, false, request, onSuccess, onFailure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes data shown in a slot, superseding what was requested in it before.
+     * The change is always made, even if something else is requested in the slot
+     * before it completes, but its result is then not applied.
+     *
+     * @param slot      The slot
+     * @param request   The request, made with the asynchronous access
+     * @param onSuccess Callback for the result, run on the JavaFX application thread
+     * @param onFailure Callback for what the request failed with, run on the JavaFX
+     *                  application thread
+     * @param <T>       The type of the result
+     */
+    <T> void change(final String slot, final Function<MachineTrackerAccessibleAsync, CompletableFuture<T>> request,
+                    final Consumer<? super T> onSuccess, final Consumer<? super Throwable> onFailure) {
+        lock.lock();
+        try {
+            start(slot, null, true, request, onSuccess, onFailure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes a request and makes it the newest in its slot, cancelling the load it
+     * supersedes. Must be called while holding the lock.
+     *
+     * @param slot      The slot
+     * @param argument  What is loaded, or null for a change
+     * @param change    Whether the request changes data
+     * @param request   The request
+     * @param onSuccess Callback for the result
+     * @param onFailure Callback for the failure
+     * @param <T>       The type of the result
+     */
+    private <T> void start(final String slot, final Object argument, final boolean change,
+                           final Function<MachineTrackerAccessibleAsync, CompletableFuture<T>> request,
+                           final Consumer<? super T> onSuccess, final Consumer<? super Throwable> onFailure) {
+        // Removed before cancelling, so that the cancellation is not applied as its result.
+        Task<?> superseded = slots.remove(slot);
+        if (superseded != null && !superseded.change) {
+            superseded.future.cancel(true);
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = request.apply(access);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        Task<T> task = new Task<>(argument, change, future, onSuccess, onFailure);
+        slots.put(slot, task);
+        future.whenComplete((result, failure) -> fxExecutor.execute(() -> finish(slot, task, result, failure)));
+    }
+
+    /**
+     * Applies the result of a request, unless a newer request was made in its slot.
+     * Runs on the JavaFX application thread.
+     *
+     * @param slot    The slot
+     * @param task    The request
+     * @param result  The result, if it succeeded
+     * @param failure What it failed with, or null if it succeeded
+     * @param <T>     The type of the result
+     */
+    private <T> void finish(final String slot, final Task<T> task, final T result, final Throwable failure) {
+        Consumer<? super T> onSuccess;
+        Consumer<? super Throwable> onFailure;
+        lock.lock();
+        try {
+            if (slots.get(slot) != task) {
+                return;
+            }
+            slots.remove(slot);
+            onSuccess = task.onSuccess;
+            onFailure = task.onFailure;
+        } finally {
+            lock.unlock();
+        }
+
+        if (failure == null) {
+            onSuccess.accept(result);
+        } else if (failure instanceof CompletionException && failure.getCause() != null) {
+            onFailure.accept(failure.getCause());
+        } else {
+            onFailure.accept(failure);
+        }
+    }
+}
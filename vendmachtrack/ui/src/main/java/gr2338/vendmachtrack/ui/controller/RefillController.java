@@ -9,11 +9,8 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 
 import gr2338.vendmachtrack.ui.access.AccessService;
-import gr2338.vendmachtrack.ui.access.MachineTrackerAccessible;
 
 import java.io.IOException;
-import java.net.ConnectException;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -45,7 +42,12 @@ public class RefillController {
     @FXML
     private Label answerText;
 
-    private MachineTrackerAccessible access;
+    private AccessTaskRunner tasks;
+
+    /**
+     * Slot of the requests made by this controller, see {@link AccessTaskRunner}.
+     */
+    private static final String INVENTORY_SLOT = "inventory";
 
     private App mainApp;
     private int selectedMachineID;
@@ -60,14 +62,15 @@ public class RefillController {
     }
 
     /**
-     * Sets the ID of the selected vending machine.
+     * Sets the ID of the selected vending machine, and shows its inventory once it
+     * has been fetched off the JavaFX application thread.
      *
      * @param machineID The ID of the selected vending machine.
-     * @throws ConnectException
      */
-    public void setSelectedMachineID(final int machineID) throws ConnectException {
+    public void setSelectedMachineID(final int machineID) {
         this.selectedMachineID = machineID;
-        setInventory(access.getInventory(machineID));
+        tasks.load(INVENTORY_SLOT, machineID, access -> access.getInventoryAsync(machineID),
+                this::setInventory, e -> textArea.setText(e.getMessage()));
         updateTitle(machineID);
     }
 
@@ -77,7 +80,7 @@ public class RefillController {
      * @param service The AccessService instance.
      */
     public void setAccessService(final AccessService service) {
-        this.access = service.getAccess();
+        this.tasks = new AccessTaskRunner(service.getAccess());
     }
 
     /**
@@ -85,7 +88,7 @@ public class RefillController {
      *
      * @param inventory The inventory to display.
      */
-    public void setInventory(final Map<String, Integer> inventory) throws ConnectException {
+    public void setInventory(final Map<String, Integer> inventory) {
         try {
             StringBuilder formattedStatus = new StringBuilder("Inventory:\n");
             inventory.forEach(
@@ -106,26 +109,32 @@ public class RefillController {
     }
 
     /**
-     * Refills the vending machine item based on user input, updates the inventory
-     * display,
-     * and handles exceptions if any occur during the refill process.
+     * Refills the vending machine item based on user input, and updates the
+     * inventory display once the refill is done off the JavaFX application thread.
      */
     @FXML
     private void refillItem() {
-        Map<String, Integer> updatedInventory = new HashMap<>();
         if (!refillNumber.getText().matches("-?\\d+") || refillItem.getText().trim().isEmpty()
                 || Integer.parseInt(refillNumber.getText()) < 1) {
             answerText.setText("Invalid input: Please enter a valid number and item");
             return;
         }
 
-        try {
-            updatedInventory = access.addItem(selectedMachineID, refillItem.getText(),
-                    Integer.parseInt(refillNumber.getText()));
-            answerText.setText("");
-        } catch (Exception e) {
-            answerText.setText(e.getMessage());
-        }
+        int machineID = selectedMachineID;
+        String item = refillItem.getText();
+        int quantity = Integer.parseInt(refillNumber.getText());
+        tasks.change(INVENTORY_SLOT, access -> access.addItemAsync(machineID, item, quantity),
+                this::showRefilledInventory, e -> showRefilledInventory(Map.of()));
+    }
+
+    /**
+     * Shows the inventory after a refill, or that the refill failed if the
+     * inventory is empty.
+     *
+     * @param updatedInventory The inventory after the refill, or an empty map if it
+     *                         failed.
+     */
+    private void showRefilledInventory(final Map<String, Integer> updatedInventory) {
         try {
             if (updatedInventory.isEmpty()) {
                 textArea.setText(null);
@@ -16,10 +16,8 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import gr2338.vendmachtrack.ui.access.AccessService;
-import gr2338.vendmachtrack.ui.access.MachineTrackerAccessible;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -57,7 +55,7 @@ public class UserController {
     private App mainApp;
     private int selectedMachineID;
     private AccessService service;
-    private MachineTrackerAccessible access;
+    private AccessTaskRunner tasks;
     private Stage stage;
     private Scene scene;
 
@@ -66,6 +64,12 @@ public class UserController {
     private static final double BUTTON_WIDTH = 100;
     private static final double BUTTON_HEIGHT = 120;
 
+    /**
+     * Slots of the requests made by this controller, see {@link AccessTaskRunner}.
+     */
+    private static final String TITLE_SLOT = "title";
+    private static final String INVENTORY_SLOT = "inventory";
+
     /**
      * Sets the AccessService instance to interact with vending machine data.
      *
@@ -74,7 +78,7 @@ public class UserController {
     public void setAccessService(final AccessService service) {
         try {
             this.service = service;
-            this.access = service.getAccess();
+            this.tasks = new AccessTaskRunner(service.getAccess());
         } catch (Exception e) {
             label.setText(e.getMessage());
         }
@@ -139,10 +143,15 @@ public class UserController {
     @FXML
     private void removeItem() {
         try {
-            HashMap<String, Integer> newInventory = access.removeItem(selectedMachineID, chosenItem.getText(), 1);
-            updateButtons(selectedMachineID, newInventory);
-            chosenItem.clear();
-            label.setText(null);
+            int machineID = selectedMachineID;
+            String item = chosenItem.getText();
+            tasks.change(INVENTORY_SLOT, access -> access.removeItemAsync(machineID, item, 1),
+                    newInventory -> {
+                        updateButtons(machineID, newInventory);
+                        chosenItem.clear();
+                        label.setText(null);
+                    },
+                    e -> label.setText(e.getMessage()));
         } catch (Exception e) {
             label.setText(e.getMessage());
         }
@@ -151,26 +160,26 @@ public class UserController {
     /**
      * Updates the title label based on the selected vending machine.
      *
-     * @param machineID The ID of the selected vending machine.
+     * @param location The location of the selected vending machine.
      */
-    private void updateTitle(final int machineID) {
-        try {
-            mylabel.setText("Vending machine: " + access.getVendMachLocation(machineID));
-        } catch (Exception e) {
-            label.setText(e.getMessage());
-        }
+    private void updateTitle(final String location) {
+        mylabel.setText("Vending machine: " + location);
     }
 
     /**
-     * Sets the selected vending machine ID and updates the user interface.
+     * Sets the selected vending machine ID and updates the user interface once the
+     * location and inventory of the machine have been fetched, which is done in
+     * parallel and off the JavaFX application thread.
      *
      * @param machineID The ID of the selected vending machine.
      */
     public void setSelectedMachineID(final int machineID) {
         try {
             this.selectedMachineID = machineID;
-            updateTitle(selectedMachineID);
-            updateButtons(selectedMachineID, access.getInventory(selectedMachineID));
+            tasks.load(TITLE_SLOT, machineID, access -> access.getVendMachLocationAsync(machineID),
+                    this::updateTitle, e -> label.setText(e.getMessage()));
+            tasks.load(INVENTORY_SLOT, machineID, access -> access.getInventoryAsync(machineID),
+                    inventory -> updateButtons(machineID, inventory), e -> label.setText(e.getMessage()));
         } catch (Exception e) {
             label.setText(e.getMessage());
         }
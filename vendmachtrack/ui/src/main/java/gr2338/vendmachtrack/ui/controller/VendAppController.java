@@ -15,12 +15,11 @@ import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 import gr2338.vendmachtrack.ui.App;
 import gr2338.vendmachtrack.ui.access.AccessService;
-import gr2338.vendmachtrack.ui.access.MachineTrackerAccessible;
+import gr2338.vendmachtrack.ui.access.MachineTrackerAccessibleAsync;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -69,10 +68,16 @@ public class VendAppController implements Initializable {
 
     private App mainApp;
 
-    private MachineTrackerAccessible access;
+    private AccessTaskRunner tasks;
 
     private AccessService service;
 
+    /**
+     * Slots of the requests made by this controller, see {@link AccessTaskRunner}.
+     */
+    private static final String LIST_SLOT = "list";
+    private static final String INVENTORY_SLOT = "inventory";
+
     /**
      * Sets the AccessService instance to interact with vending machine data.
      *
@@ -81,7 +86,7 @@ public class VendAppController implements Initializable {
     public void setAccessService(final AccessService service) {
         try {
             this.service = service;
-            this.access = service.getAccess();
+            this.tasks = new AccessTaskRunner(service.getAccess());
         } catch (Exception e) {
             outputText.setText(e.getMessage());
         }
@@ -110,18 +115,13 @@ public class VendAppController implements Initializable {
     }
 
     /**
-     * Updates the list of vending machines in the menu bar.
+     * Updates the list of vending machines in the menu bar, once it has been
+     * fetched off the JavaFX application thread.
      */
     public void updateVendMachList() {
         try {
-            HashMap<Integer, String> vendingMachines = access.getVendMachList();
-            List<String> machines = new ArrayList<>();
-            for (Map.Entry<Integer, String> entry : vendingMachines.entrySet()) {
-                machines.add("id: " + entry.getKey() + " (" + entry.getValue() + ")");
-            }
-
-            menuBar.getItems().setAll(machines);
-
+            tasks.load(LIST_SLOT, null, MachineTrackerAccessibleAsync::getVendMachListAsync,
+                    this::setVendMachList, e -> textArea.setText(e.getMessage()));
         } catch (Exception e) {
             textArea.setText(e.getMessage());
         }
@@ -129,18 +129,22 @@ public class VendAppController implements Initializable {
     }
 
     /**
-     * Updates the displayed inventory based on the selected vending machine.
+     * Updates the displayed inventory based on the selected vending machine, once
+     * it has been fetched off the JavaFX application thread.
      *
      * @param machineID The ID of the selected vending machine.
      */
     public void updateInventory(final int machineID) {
         try {
-            Map<String, Integer> statusMap = access.getInventory(machineID);
-            StringBuilder formattedStatus = new StringBuilder("Inventory:\n");
-            for (Map.Entry<String, Integer> entry : statusMap.entrySet()) {
-                formattedStatus.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
-            }
-            textArea.setText(formattedStatus.toString());
+            tasks.load(INVENTORY_SLOT, machineID, access -> access.getInventoryAsync(machineID),
+                    statusMap -> {
+                        StringBuilder formattedStatus = new StringBuilder("Inventory:\n");
+                        for (Map.Entry<String, Integer> entry : statusMap.entrySet()) {
+                            formattedStatus.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+                        }
+                        textArea.setText(formattedStatus.toString());
+                    },
+                    e -> textArea.setText(e.getMessage()));
         } catch (Exception e) {
             textArea.setText(e.getMessage());
 
@@ -157,15 +161,26 @@ public class VendAppController implements Initializable {
         try {
             int machineId = Integer.parseInt(idTextFieldAdd.getText());
             String location = locationTextField.getText();
-            access.addVendMach(machineId, location);
-            updateVendMachList();
-            textArea.clear();
-            menuBar.setValue(null);
-            idTextFieldAdd.clear();
-            locationTextField.clear();
-            outputText.getStyleClass().removeAll("success-text", "error-text");
-            outputText.getStyleClass().add("success-text");
-            outputText.setText("The machine " + machineId + " was successfully added to your tracker ");
+            tasks.change(LIST_SLOT, access -> access.addVendMachAsync(machineId, location),
+                    vendingMachines -> {
+                        setVendMachList(vendingMachines);
+                        textArea.clear();
+                        menuBar.setValue(null);
+                        idTextFieldAdd.clear();
+                        locationTextField.clear();
+                        outputText.getStyleClass().removeAll("success-text", "error-text");
+                        outputText.getStyleClass().add("success-text");
+                        outputText.setText("The machine " + machineId + " was successfully added to your tracker ");
+                    },
+                    e -> {
+                        textArea.clear();
+                        menuBar.setValue(null);
+                        idTextFieldAdd.clear();
+                        locationTextField.clear();
+                        outputText.getStyleClass().removeAll("success-text", "error-text");
+                        outputText.getStyleClass().add("error-text");
+                        outputText.setText(e.getMessage());
+                    });
 
         } catch (NumberFormatException e) {
             textArea.clear();
@@ -196,14 +211,24 @@ public class VendAppController implements Initializable {
     private void handleRemoveButton(final ActionEvent event) {
         try {
             int machineId = Integer.parseInt(idTextFieldRemove.getText());
-            access.removeVendMach(machineId);
-            updateVendMachList();
-            textArea.clear();
-            menuBar.setValue(null);
-            idTextFieldRemove.clear();
-            outputText.getStyleClass().removeAll("success-text", "error-text");
-            outputText.getStyleClass().add("success-text");
-            outputText.setText("The machine " + machineId + " was successfully removed from your tracker");
+            tasks.change(LIST_SLOT, access -> access.removeVendMachAsync(machineId),
+                    vendingMachines -> {
+                        setVendMachList(vendingMachines);
+                        textArea.clear();
+                        menuBar.setValue(null);
+                        idTextFieldRemove.clear();
+                        outputText.getStyleClass().removeAll("success-text", "error-text");
+                        outputText.getStyleClass().add("success-text");
+                        outputText.setText("The machine " + machineId + " was successfully removed from your tracker");
+                    },
+                    e -> {
+                        textArea.clear();
+                        menuBar.setValue(null);
+                        idTextFieldRemove.clear();
+                        outputText.getStyleClass().removeAll("success-text", "error-text");
+                        outputText.getStyleClass().add("error-text");
+                        outputText.setText(e.getMessage());
+                    });
 
         } catch (NumberFormatException e) {
             textArea.clear();
@@ -241,25 +266,47 @@ public class VendAppController implements Initializable {
     }
 
     /**
-     * Sets the selected vending machine ID to the ChoiceBox menuBar.
+     * Sets the selected vending machine ID to the ChoiceBox menuBar, once the list
+     * of vending machines has been fetched off the JavaFX application thread. The
+     * list in the menu bar is updated as well, so that a call to
+     * {@link #updateVendMachList()} still in flight is answered by the same request.
      *
      * @param machineID The ID of the vending machine to be set in the menuBar.
      */
     public void setIdToChoiceBox(final int machineID) {
         try {
-            HashMap<Integer, String> vendingMachines = access.getVendMachList();
-            for (Map.Entry<Integer, String> entry : vendingMachines.entrySet()) {
-                if (entry.getKey() == machineID) {
-                    menuBar.setValue("id: " + entry.getKey() + " (" + entry.getValue() + ")");
-
-                }
-            }
+            tasks.load(LIST_SLOT, null, MachineTrackerAccessibleAsync::getVendMachListAsync,
+                    vendingMachines -> {
+                        setVendMachList(vendingMachines);
+                        for (Map.Entry<Integer, String> entry : vendingMachines.entrySet()) {
+                            if (entry.getKey() == machineID) {
+                                menuBar.setValue("id: " + entry.getKey() + " (" + entry.getValue() + ")");
+
+                            }
+                        }
+                    },
+                    e -> textArea.setText(e.getMessage()));
         } catch (Exception e) {
             textArea.setText(e.getMessage());
         }
 
     }
 
+    /**
+     * Shows a list of vending machines in the menu bar.
+     *
+     * @param vendingMachines The vending machines, with ID as key and location as
+     *                        value.
+     */
+    private void setVendMachList(final Map<Integer, String> vendingMachines) {
+        List<String> machines = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : vendingMachines.entrySet()) {
+            machines.add("id: " + entry.getKey() + " (" + entry.getValue() + ")");
+        }
+
+        menuBar.getItems().setAll(machines);
+    }
+
     /**
      * Retrieves the ID of the selected vending machine from the menuBar ChoiceBox.
      *
@@ -82,7 +82,7 @@ public class AccessServiceTest {
      * <ol>
      *   <li>Arrange: Create an URI object for the remote server (mockedServerUri).</li>
      *   <li>Act: Initialize a new AccessService object with mockedServerUri as URI and an arbitrary string as a filename </li>
-     *   <li>Assert: Assert that the AccessService initialices the {@link MachinetrackerAccessRemote} object</li>
+     *   <li>Assert: Assert that the AccessService initialices the {@link MachinetrackerAccessRemote} object, behind a cache</li>
      * </ol>
      */
     @Test
@@ -94,7 +94,9 @@ public class AccessServiceTest {
         AccessService accessService = new AccessService(mockedServerUri, "FileNameNotMatter");
 
         //Assert
-        assertTrue(accessService.getAccess() instanceof MachineTrackerAccessRemote, "Expected remote access");
+        assertTrue(accessService.getAccess() instanceof MachineTrackerAccessCached, "Expected cached access");
+        assertTrue(((MachineTrackerAccessCached) accessService.getAccess()).getAccess() instanceof MachineTrackerAccessRemote,
+                "Expected remote access");
     }
 
     /**
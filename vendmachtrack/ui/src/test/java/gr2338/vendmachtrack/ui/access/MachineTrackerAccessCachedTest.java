@@ -0,0 +1,345 @@
+package gr2338.vendmachtrack.ui.access;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class contains JUnit tests for the {@link MachineTrackerAccessCached} class. It tests that reads
+ * within the time data is kept don't reach the access, that changes made through the cache are kept, that
+ * failures aren't kept, and that the changes reported by the server keep the inventories current.
+ *
+ * <p>
+ * The remote access is mocked, and time is given by a clock the tests move forward, so nothing waits.
+ * </p>
+ */
+public class MachineTrackerAccessCachedTest {
+
+    private static final Duration TTL = Duration.ofSeconds(5);
+
+    @Mock
+    private MachineTrackerAccessRemote mockRemote;
+
+    private long now;
+    private MachineTrackerAccessCached cached;
+    private MachineTrackerAccessRemote.ChangeListener listener;
+
+    /**
+     * Initializes the mocks, mocks one vending machine in Oslo with 5 Cola, and creates the cache with the
+     * change listener it registered captured.
+     */
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mockRemote.getVendMachListAsync())
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new HashMap<>(Map.of(1, "Oslo"))));
+        when(mockRemote.getInventoryAsync(1))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new HashMap<>(Map.of("Cola", 5))));
+        cached = new MachineTrackerAccessCached(mockRemote, TTL, () -> now);
+
+        ArgumentCaptor<MachineTrackerAccessRemote.ChangeListener> captor =
+                ArgumentCaptor.forClass(MachineTrackerAccessRemote.ChangeListener.class);
+        verify(mockRemote).addChangeListener(captor.capture());
+        verify(mockRemote).subscribeToEvents();
+        listener = captor.getValue();
+    }
+
+    /**
+     * Tests that showing a machine again, as switching between views does, fetches nothing from the server
+     * while the data is fresh, and that the location is read from the kept list.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the list and the inventory of machine 1 once.</li>
+     *   <li>Act: Read the list, the location and the inventory twice more.</li>
+     *   <li>Assert: Ensure that the list and the inventory were fetched once, the location never, and that
+     *   the answers are right.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_Reads_FetchOnceWhileFresh() throws ConnectException {
+        // Arrange
+        cached.getVendMachList();
+        cached.getInventory(1);
+
+        // Act
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Map.of(1, "Oslo"), cached.getVendMachList());
+            assertEquals("Oslo", cached.getVendMachLocation(1));
+            assertEquals(Map.of("Cola", 5), cached.getInventory(1));
+        }
+
+        // Assert
+        verify(mockRemote, times(1)).getVendMachListAsync();
+        verify(mockRemote, times(1)).getInventoryAsync(1);
+        verify(mockRemote, never()).getVendMachLocationAsync(1);
+    }
+
+    /**
+     * Tests that a kept answer can't be changed through the map it was returned in.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the inventory of machine 1 and change the returned map.</li>
+     *   <li>Act: Read the inventory again.</li>
+     *   <li>Assert: Ensure that the inventory is unchanged.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_Reads_ReturnCopies() throws ConnectException {
+        // Arrange
+        cached.getInventory(1).put("Cola", 0);
+
+        // Act
+        HashMap<String, Integer> inventory = cached.getInventory(1);
+
+        // Assert
+        assertEquals(Map.of("Cola", 5), inventory);
+    }
+
+    /**
+     * Tests that the list is fetched again once it is no longer fresh.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the list once.</li>
+     *   <li>Act: Move the clock past the time data is kept, and read the list again.</li>
+     *   <li>Assert: Ensure that the list was fetched twice.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_GetVendMachList_FetchesAgainWhenStale() throws ConnectException {
+        // Arrange
+        cached.getVendMachList();
+
+        // Act
+        now += TTL.toNanos();
+        cached.getVendMachList();
+
+        // Assert
+        verify(mockRemote, times(2)).getVendMachListAsync();
+    }
+
+    /**
+     * Tests that the inventory answered by a change is kept, so that showing it again fetches nothing.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the inventory of machine 1, and mock removing a Cola.</li>
+     *   <li>Act: Remove a Cola, and read the inventory.</li>
+     *   <li>Assert: Ensure that the inventory read is the one answered by the change, and that it was
+     *   fetched only once.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_RemoveItem_KeepsAnsweredInventory() throws ConnectException {
+        // Arrange
+        cached.getInventory(1);
+        when(mockRemote.removeItemAsync(1, "Cola", 1))
+                .thenReturn(CompletableFuture.completedFuture(new HashMap<>(Map.of("Cola", 4))));
+
+        // Act
+        cached.removeItem(1, "Cola", 1);
+        HashMap<String, Integer> inventory = cached.getInventory(1);
+
+        // Assert
+        assertEquals(Map.of("Cola", 4), inventory);
+        verify(mockRemote, times(1)).getInventoryAsync(1);
+    }
+
+    /**
+     * Tests that removing a machine keeps the answered list and drops the inventory of the machine.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the list and the inventory of machine 1, and mock removing it.</li>
+     *   <li>Act: Remove machine 1, then read the list and its inventory.</li>
+     *   <li>Assert: Ensure that the list is empty without fetching it again, and that the inventory was
+     *   fetched again.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_RemoveVendMach_DropsInventory() throws ConnectException {
+        // Arrange
+        cached.getVendMachList();
+        cached.getInventory(1);
+        when(mockRemote.removeVendMachAsync(1)).thenReturn(CompletableFuture.completedFuture(new HashMap<>()));
+
+        // Act
+        cached.removeVendMach(1);
+        HashMap<Integer, String> list = cached.getVendMachList();
+        cached.getInventory(1);
+
+        // Assert
+        assertTrue(list.isEmpty());
+        verify(mockRemote, times(1)).getVendMachListAsync();
+        verify(mockRemote, times(2)).getInventoryAsync(1);
+    }
+
+    /**
+     * Tests that a failed fetch is not kept, so that the next read asks the server again.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the first fetch of the inventory failing with a lost connection.</li>
+     *   <li>Act: Read the inventory twice.</li>
+     *   <li>Assert: Ensure that the first read throws the {@link ConnectException}, and the second gets the
+     *   inventory.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_GetInventory_DoesNotKeepFailure() throws ConnectException {
+        // Arrange
+        when(mockRemote.getInventoryAsync(1))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Lost connection to server.")))
+                .thenReturn(CompletableFuture.completedFuture(new HashMap<>(Map.of("Cola", 5))));
+
+        // Act and Assert
+        assertThrows(ConnectException.class, () -> cached.getInventory(1));
+        assertEquals(Map.of("Cola", 5), cached.getInventory(1));
+    }
+
+    /**
+     * Tests that reads made while the same data is being fetched share the fetch.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the inventory of machine 1 with a future completed by the test.</li>
+     *   <li>Act: Read the inventory twice, cancel the first read, and complete the fetch.</li>
+     *   <li>Assert: Ensure that it was fetched once, and that the second read got the inventory.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_GetInventoryAsync_SharesFetchInFlight() {
+        // Arrange
+        CompletableFuture<HashMap<String, Integer>> fetch = new CompletableFuture<>();
+        when(mockRemote.getInventoryAsync(1)).thenReturn(fetch);
+
+        // Act
+        CompletableFuture<HashMap<String, Integer>> first = cached.getInventoryAsync(1);
+        CompletableFuture<HashMap<String, Integer>> second = cached.getInventoryAsync(1);
+        first.cancel(true);
+        fetch.complete(new HashMap<>(Map.of("Cola", 5)));
+
+        // Assert
+        verify(mockRemote, times(1)).getInventoryAsync(1);
+        assertFalse(fetch.isCancelled());
+        assertEquals(Map.of("Cola", 5), second.join());
+    }
+
+    /**
+     * Tests that a stale inventory is checked by bringing the list up to date, and is not fetched again if
+     * the server reports no change to it.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the inventory of machine 1, move the clock past the time data is kept, and mock
+     *   the list fetch reporting that nothing changed.</li>
+     *   <li>Act: Read the inventory.</li>
+     *   <li>Assert: Ensure that the list was fetched and the inventory was not fetched again.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_GetInventory_ChecksStaleByChanges() throws ConnectException {
+        // Arrange
+        cached.getInventory(1);
+        now += TTL.toNanos();
+        when(mockRemote.getVendMachListAsync()).thenAnswer(invocation -> {
+            listener.onChanges(false, Map.of(), Set.of(), false);
+            return CompletableFuture.completedFuture(new HashMap<>(Map.of(1, "Oslo")));
+        });
+
+        // Act
+        HashMap<String, Integer> inventory = cached.getInventory(1);
+
+        // Assert
+        assertEquals(Map.of("Cola", 5), inventory);
+        verify(mockRemote, times(1)).getVendMachListAsync();
+        verify(mockRemote, times(1)).getInventoryAsync(1);
+    }
+
+    /**
+     * Tests that the inventories reported by the server replace the kept ones, and that removed machines
+     * are dropped.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the inventory of machine 1.</li>
+     *   <li>Act: Report a changed inventory for machine 1, read it, then report machine 1 removed and read
+     *   it again.</li>
+     *   <li>Assert: Ensure that the first read got the reported inventory without fetching it, and that
+     *   the second read fetched it.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_ChangeListener_ReplacesAndDropsInventories() throws ConnectException {
+        // Arrange
+        cached.getInventory(1);
+
+        // Act
+        listener.onChanges(false, Map.of(1, new HashMap<>(Map.of("Cola", 2))), Set.of(), false);
+        HashMap<String, Integer> reported = cached.getInventory(1);
+        listener.onChanges(false, Map.of(), Set.of(1), false);
+        cached.getInventory(1);
+
+        // Assert
+        assertEquals(Map.of("Cola", 2), reported);
+        verify(mockRemote, times(2)).getInventoryAsync(1);
+    }
+
+    /**
+     * Tests that a change to the list pushed by the server drops the kept list, and that missed events drop
+     * the kept inventories as well.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Read the list and the inventory of machine 1.</li>
+     *   <li>Act: Push a location change and read the list, then report missed events and read the list and
+     *   the inventory.</li>
+     *   <li>Assert: Ensure that each read of the list fetched it again, and that the inventory was fetched
+     *   again after the missed events.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessCached_ChangeListener_DropsChangedList() throws ConnectException {
+        // Arrange
+        cached.getVendMachList();
+        cached.getInventory(1);
+
+        // Act
+        listener.onChanges(false, Map.of(), Set.of(), true);
+        cached.getVendMachList();
+        listener.onChanges(true, Map.of(), Set.of(), true);
+        cached.getVendMachList();
+        cached.getInventory(1);
+
+        // Assert
+        verify(mockRemote, times(3)).getVendMachListAsync();
+        verify(mockRemote, times(2)).getInventoryAsync(1);
+    }
+}
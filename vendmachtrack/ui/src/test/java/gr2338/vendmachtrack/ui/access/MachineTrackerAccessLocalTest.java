@@ -13,8 +13,11 @@ import gr2338.vendmachtrack.jsonio.VendmachtrackPersistence;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 /**
@@ -64,11 +67,14 @@ public class MachineTrackerAccessLocalTest {
     /**
      * This method is run before each test. It initializes the mocks and the {@link MachineTrackerAccessLocal} instance to be tested.
      * <p>
-     * It also sets up a {@link MachineTracker} instance with a single {@link VendingMachine} for use in the tests.
+     * It also sets up a {@link MachineTracker} instance with a single {@link VendingMachine} for use in the tests,
+     * and lets the mocked persistence apply updates to the tracker returned by {@code getVendmachtrack}.
      */
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(mockPersistence.update(any())).thenAnswer(invocation ->
+                invocation.<Function<MachineTracker, ?>>getArgument(0).apply(mockPersistence.getVendmachtrack()));
         List<VendingMachine> machines = new ArrayList<>();
         machine.setId(1);
         machine.setLocation("Oslo");
@@ -895,4 +901,37 @@ public class MachineTrackerAccessLocalTest {
             accessLocal.changeLocation(existingId, invalidLocation);
         }, "Location name not valid");
     }
+
+    /**
+     * Tests the asynchronous view of {@link MachineTrackerAccessLocal} returned by
+     * {@link MachineTrackerAccessibleAsync#of(MachineTrackerAccessible)}, to ensure it answers like the blocking
+     * methods and fails with the exceptions they throw.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the persistence layer to return a predefined machine tracker instance, and get the
+     *   asynchronous view.</li>
+     *   <li>Act: Request the location of the existing vending machine and of a missing one.</li>
+     *   <li>Assert: Verify that the first is "Oslo", and that the second fails with a RuntimeException.</li>
+     * </ol>
+     *
+     * @throws Exception if the location of the existing vending machine can't be fetched
+     */
+    @Test
+    public void MachineTrackerAccessLocal_async_answersLikeBlockingMethods() throws Exception {
+        // Arrange
+        when(mockPersistence.getVendmachtrack()).thenReturn(machineTracker);
+        MachineTrackerAccessibleAsync asyncAccess = MachineTrackerAccessibleAsync.of(accessLocal);
+
+        // Act
+        String location = asyncAccess.getVendMachLocationAsync(1).get();
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> asyncAccess.getVendMachLocationAsync(2).get());
+
+        // Assert
+        assertEquals("Oslo", location);
+        assertInstanceOf(RuntimeException.class, exception.getCause());
+        assertEquals("No such Vending Machine with ID: 2", exception.getCause().getMessage());
+    }
 }
@@ -3,6 +3,8 @@ package gr2338.vendmachtrack.ui.access;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 import gr2338.vendmachtrack.ui.access.MachineTrackerAccessRemote;
@@ -14,7 +16,18 @@ import java.net.ConnectException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -157,6 +170,185 @@ public class MachineTrackerAccessRemoteTest {
         assertTrue(exception.getMessage().contains("Bad Request"));
     }
 
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#getVendMachList()} method to
+     * ensure it only fetches the changes since the previous call, and applies them
+     * to the list it got before.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the first request for changes to return the whole fleet
+     * at version 5, and the request for changes since version 5 to return a moved,
+     * an added and a removed machine.</li>
+     * <li>Act: Invoke the getVendMachList() method twice.</li>
+     * <li>Assert: Verify that the second list is the first one with the changes
+     * applied, and that the whole list was never fetched.</li>
+     * </ol>
+     *
+     * @throws ConnectException
+     */
+    @Test
+    public void MachineTrackerAccessRemote_getVendMachList_appliesChangesSinceLastCall() throws ConnectException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack?since=0"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"version\":5,\"full\":true,\"machines\":{"
+                                + "\"1\":{\"location\":\"Oslo\",\"inventory\":{}},"
+                                + "\"2\":{\"location\":\"Trondheim\",\"inventory\":{\"Cola\":1}}},"
+                                + "\"removed\":[]}")));
+        stubFor(get(urlEqualTo("/vendmachtrack?since=5"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"version\":8,\"full\":false,\"machines\":{"
+                                + "\"1\":{\"location\":\"Bergen\",\"inventory\":{}},"
+                                + "\"3\":{\"location\":\"Tromsø\",\"inventory\":{}}},"
+                                + "\"removed\":[2]}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+
+        // Act
+        HashMap<Integer, String> first = accessRemote.getVendMachList();
+        HashMap<Integer, String> second = accessRemote.getVendMachList();
+
+        // Assert
+        HashMap<Integer, String> expectedFirst = new HashMap<>();
+        expectedFirst.put(1, "Oslo");
+        expectedFirst.put(2, "Trondheim");
+        HashMap<Integer, String> expectedSecond = new HashMap<>();
+        expectedSecond.put(1, "Bergen");
+        expectedSecond.put(3, "Tromsø");
+        assertEquals(expectedFirst, first);
+        assertEquals(expectedSecond, second);
+        verify(0, getRequestedFor(urlEqualTo("/vendmachtrack")));
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#addChangeListener} method to
+     * ensure the listeners are told about the changes the server reports,
+     * including the inventories sent along.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the request for changes to return a changed machine with
+     * its inventory and a removed machine, and add a listener.</li>
+     * <li>Act: Invoke the getVendMachList() method.</li>
+     * <li>Assert: Verify that the listener got the inventory and the removed
+     * machine.</li>
+     * </ol>
+     *
+     * @throws ConnectException
+     */
+    @Test
+    public void MachineTrackerAccessRemote_addChangeListener_reportsChanges() throws ConnectException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack?since=0"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"version\":3,\"full\":false,\"machines\":{"
+                                + "\"1\":{\"location\":\"Oslo\",\"inventory\":{\"Cola\":2}}},"
+                                + "\"removed\":[2]}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+        List<Map<Integer, HashMap<String, Integer>>> inventories = new ArrayList<>();
+        List<Set<Integer>> removed = new ArrayList<>();
+        accessRemote.addChangeListener((full, changedInventories, removedIds, listChanged) -> {
+            inventories.add(changedInventories);
+            removed.add(removedIds);
+        });
+
+        // Act
+        accessRemote.getVendMachList();
+
+        // Assert
+        HashMap<String, Integer> expectedInventory = new HashMap<>();
+        expectedInventory.put("Cola", 2);
+        assertEquals(List.of(Map.of(1, expectedInventory)), inventories);
+        assertEquals(List.of(Set.of(2)), removed);
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#getVendMachList()} method to
+     * ensure it falls back to fetching the whole list from a server that doesn't
+     * support fetching changes, and ignores the parameter.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub every request for the list to return the whole list.</li>
+     * <li>Act: Invoke the getVendMachList() method twice.</li>
+     * <li>Assert: Verify that both calls return the list, and that changes were
+     * only asked for once.</li>
+     * </ol>
+     *
+     * @throws ConnectException
+     */
+    @Test
+    public void MachineTrackerAccessRemote_getVendMachList_changesNotSupported() throws ConnectException {
+
+        // Arrange
+        stubFor(get(urlPathEqualTo("/vendmachtrack"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"1\":\"Oslo\"}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+
+        // Act
+        HashMap<Integer, String> first = accessRemote.getVendMachList();
+        HashMap<Integer, String> second = accessRemote.getVendMachList();
+
+        // Assert
+        assertEquals("Oslo", first.get(1));
+        assertEquals(first, second);
+        verify(1, getRequestedFor(urlEqualTo("/vendmachtrack?since=0")));
+        verify(2, getRequestedFor(urlEqualTo("/vendmachtrack")));
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#getInventory(int)} method to
+     * ensure it sends the ETag it got last time, and uses the body it got last time
+     * when the server answers 304 Not Modified.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the inventory to be returned with an ETag, and to be
+     * answered with 304 Not Modified when the ETag is sent.</li>
+     * <li>Act: Invoke the getInventory() method twice.</li>
+     * <li>Assert: Verify that both calls return the inventory, and that the second
+     * request sent the ETag.</li>
+     * </ol>
+     *
+     * @throws ConnectException
+     */
+    @Test
+    public void MachineTrackerAccessRemote_getInventory_notModifiedUsesKeptBody() throws ConnectException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"7\"")
+                        .withBody("{\"Cola\":3}")));
+        stubFor(get(urlEqualTo("/vendmachtrack/1"))
+                .withHeader("If-None-Match", equalTo("\"7\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"7\"")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+
+        // Act
+        HashMap<String, Integer> first = accessRemote.getInventory(1);
+        HashMap<String, Integer> second = accessRemote.getInventory(1);
+
+        // Assert
+        assertEquals(3, first.get("Cola"));
+        assertEquals(first, second);
+        verify(1, getRequestedFor(urlEqualTo("/vendmachtrack/1")).withHeader("If-None-Match", equalTo("\"7\"")));
+    }
+
     /**
      * Tests the {@link MachineTrackerAccessRemote#getVendMachLocation(int)} method
      * to ensure it returns the location of a vending machine for a valid ID.
@@ -799,6 +991,299 @@ public class MachineTrackerAccessRemoteTest {
         assertTrue(exception.getMessage().contains("Bad Request"));
     }
 
+    /**
+     * Tests that {@link MachineTrackerAccessRemote#getVendMachLocationAsync(int)}
+     * and {@link MachineTrackerAccessRemote#getInventoryAsync(int)} are in flight
+     * at the same time, so that fetching both takes as long as the slower one.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the location and the inventory of machine 1 to be answered
+     * after one second each.</li>
+     * <li>Act: Request both, then wait for both.</li>
+     * <li>Assert: Verify the answers, and that waiting took less than two
+     * seconds.</li>
+     * </ol>
+     *
+     * @throws Exception if a request fails
+     */
+    @Test
+    public void MachineTrackerAccessRemote_async_locationAndInventoryInParallel() throws Exception {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/1/name"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("\"Oslo\"")));
+        stubFor(get(urlEqualTo("/vendmachtrack/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("{\"Cola\":3}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+
+        // Act
+        long start = System.nanoTime();
+        CompletableFuture<String> location = accessRemote.getVendMachLocationAsync(1);
+        CompletableFuture<HashMap<String, Integer>> inventory = accessRemote.getInventoryAsync(1);
+        CompletableFuture.allOf(location, inventory).get();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert
+        assertEquals("Oslo", location.get());
+        assertEquals(3, inventory.get().get("Cola"));
+        assertTrue(elapsedMillis < 1900, "Took " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Tests that a request the server doesn't answer in time fails with a
+     * {@link ConnectException}, both through the future and the blocking method.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the inventory of machine 1 to be answered after two
+     * seconds, and create an access with a timeout of 200 ms.</li>
+     * <li>Act: Request the inventory asynchronously and blocking.</li>
+     * <li>Assert: Verify that both fail with a {@link ConnectException}.</li>
+     * </ol>
+     */
+    @Test
+    public void MachineTrackerAccessRemote_async_timesOut() {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(2000)
+                        .withBody("{\"Cola\":3}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(
+                URI.create("http://localhost:8080/"), 4, Duration.ofMillis(200));
+
+        // Act & Assert
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> accessRemote.getInventoryAsync(1).get());
+        assertInstanceOf(ConnectException.class, exception.getCause());
+        assertThrows(ConnectException.class, () -> accessRemote.getInventory(1));
+    }
+
+    /**
+     * Tests that no more than the maximum number of requests are in flight, and
+     * that a waiting request that is cancelled is never sent.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the inventory of machine 1 to be answered after one
+     * second, and create an access allowing one request in flight.</li>
+     * <li>Act: Request the inventories of machines 1 and 2, cancel the second
+     * while the first is in flight, then request the inventory of machine 3 once
+     * the first is answered.</li>
+     * <li>Assert: Verify that the second request was never sent, and that the
+     * third was answered.</li>
+     * </ol>
+     *
+     * @throws Exception if a request fails
+     */
+    @Test
+    public void MachineTrackerAccessRemote_async_boundsInFlightAndCancelsWaiting() throws Exception {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("{\"Cola\":3}")));
+        stubFor(get(urlEqualTo("/vendmachtrack/2"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"Fanta\":1}")));
+        stubFor(get(urlEqualTo("/vendmachtrack/3"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"Pepsi\":2}")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(
+                URI.create("http://localhost:8080/"), 1, Duration.ofSeconds(10));
+
+        // Act
+        CompletableFuture<HashMap<String, Integer>> first = accessRemote.getInventoryAsync(1);
+        CompletableFuture<HashMap<String, Integer>> second = accessRemote.getInventoryAsync(2);
+        Thread.sleep(300);
+        verify(0, getRequestedFor(urlEqualTo("/vendmachtrack/2")));
+        second.cancel(true);
+        HashMap<String, Integer> firstInventory = first.get();
+        HashMap<String, Integer> thirdInventory = accessRemote.getInventory(3);
+
+        // Assert
+        assertEquals(3, firstInventory.get("Cola"));
+        assertEquals(2, thirdInventory.get("Pepsi"));
+        assertTrue(second.isCancelled());
+        verify(0, getRequestedFor(urlEqualTo("/vendmachtrack/2")));
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#subscribeToEvents} method to
+     * ensure the events the server pushes are passed on to the listeners, and
+     * that they are first told that events may have been missed before the
+     * stream opened.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the stream of events with a heartbeat, an inventory
+     * change, a removed machine, a moved machine and a stock alert, and add a
+     * listener.</li>
+     * <li>Act: Subscribe to the events.</li>
+     * <li>Assert: Verify that the listener was told that anything may have
+     * changed, then about the three changes, and not about the stock alert.</li>
+     * </ol>
+     *
+     * @throws InterruptedException if interrupted while waiting for the events
+     */
+    @Test
+    public void MachineTrackerAccessRemote_subscribeToEvents_reportsPushedChanges() throws InterruptedException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/events"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/event-stream")
+                        .withBody(":heartbeat\n\n"
+                                + event(1, "INVENTORY", 1, null, "{\"Cola\":2}")
+                                + event(2, "REMOVED", 2, null, null)
+                                + event(3, "LOCATION", 3, "\"Bergen\"", null)
+                                + event(4, "LOW_STOCK", 1, null, "{\"Cola\":2}"))));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+        BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        accessRemote.addChangeListener((full, inventories, removed, listChanged) ->
+                changes.add(full + " " + inventories + " " + removed + " " + listChanged));
+
+        // Act
+        accessRemote.subscribeToEvents(Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        // Assert
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            received.add(changes.poll(5, TimeUnit.SECONDS));
+        }
+        accessRemote.unsubscribeFromEvents();
+        assertEquals(List.of("true {} [] true", "false {1={Cola=2}} [] false", "false {} [2] true",
+                "false {} [] true"), received);
+        assertNull(changes.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#subscribeToEvents} method to
+     * ensure the listeners are told that anything may have changed when the
+     * sequence numbers of the events skip.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the stream of events with the events numbered 1 and 3,
+     * and add a listener.</li>
+     * <li>Act: Subscribe to the events.</li>
+     * <li>Assert: Verify that the listener was told that anything may have
+     * changed between the two events.</li>
+     * </ol>
+     *
+     * @throws InterruptedException if interrupted while waiting for the events
+     */
+    @Test
+    public void MachineTrackerAccessRemote_subscribeToEvents_reportsMissedEvents() throws InterruptedException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/events"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/event-stream")
+                        .withBody(event(1, "INVENTORY", 1, null, "{\"Cola\":2}")
+                                + event(3, "INVENTORY", 1, null, "{\"Cola\":1}"))));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+        BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        accessRemote.addChangeListener((full, inventories, removed, listChanged) ->
+                changes.add(full + " " + inventories));
+
+        // Act
+        accessRemote.subscribeToEvents(Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+        // Assert
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            received.add(changes.poll(5, TimeUnit.SECONDS));
+        }
+        accessRemote.unsubscribeFromEvents();
+        assertEquals(List.of("true {}", "false {1={Cola=2}}", "true {}", "false {1={Cola=1}}"), received);
+    }
+
+    /**
+     * Tests the {@link MachineTrackerAccessRemote#subscribeToEvents} method to
+     * ensure the stream is reopened when it ends or fails to open, until it is
+     * unsubscribed from.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     * <li>Arrange: Stub the stream of events to fail, then to end at once.</li>
+     * <li>Act: Subscribe to the events, wait for the stream to be opened twice,
+     * and unsubscribe.</li>
+     * <li>Assert: Verify that the stream was requested again after failing, and
+     * not after unsubscribing.</li>
+     * </ol>
+     *
+     * @throws InterruptedException if interrupted while waiting for the stream
+     */
+    @Test
+    public void MachineTrackerAccessRemote_subscribeToEvents_reopensEndedStream() throws InterruptedException {
+
+        // Arrange
+        stubFor(get(urlEqualTo("/vendmachtrack/events"))
+                .inScenario("events").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("available"));
+        stubFor(get(urlEqualTo("/vendmachtrack/events"))
+                .inScenario("events").whenScenarioStateIs("available")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/event-stream")
+                        .withBody(":heartbeat\n\n")));
+        MachineTrackerAccessRemote accessRemote = new MachineTrackerAccessRemote(URI.create("http://localhost:8080/"));
+        CountDownLatch opened = new CountDownLatch(2);
+        accessRemote.addChangeListener((full, inventories, removed, listChanged) -> opened.countDown());
+
+        // Act
+        accessRemote.subscribeToEvents(Duration.ofMillis(10), Duration.ofMillis(20));
+        boolean reopened = opened.await(5, TimeUnit.SECONDS);
+        accessRemote.unsubscribeFromEvents();
+        Thread.sleep(200);
+        int requests = findAll(getRequestedFor(urlEqualTo("/vendmachtrack/events"))).size();
+        Thread.sleep(200);
+
+        // Assert
+        assertTrue(reopened);
+        assertTrue(requests >= 3);
+        verify(requests, getRequestedFor(urlEqualTo("/vendmachtrack/events")));
+    }
+
+    /**
+     * Formats an event of the server's stream of events.
+     *
+     * @param sequence  The sequence number
+     * @param type      The type of the change
+     * @param id        The ID of the vending machine
+     * @param location  The location as JSON, or null
+     * @param inventory The inventory as JSON, or null
+     * @return The event as sent on the stream
+     */
+    private static String event(final long sequence, final String type, final int id, final String location,
+                                final String inventory) {
+        return "id:" + sequence + "\nevent:" + type.toLowerCase() + "\ndata:{\"sequence\":" + sequence
+                + ",\"type\":\"" + type + "\",\"id\":" + id + ",\"location\":" + location
+                + ",\"inventory\":" + inventory + "}\n\n";
+    }
+
     /**
      * After each test case, this method is responsible for stopping the WireMock
      * server.
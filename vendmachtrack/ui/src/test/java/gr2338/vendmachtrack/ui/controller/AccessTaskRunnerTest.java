@@ -0,0 +1,192 @@
+package gr2338.vendmachtrack.ui.controller;
+
+import gr2338.vendmachtrack.ui.access.MachineTrackerAccessibleAsync;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class contains JUnit tests for the {@link AccessTaskRunner} class. It tests that only the newest
+ * request in a slot gets its result applied, that superseded loads are cancelled, that repeated loads of
+ * the same data share one request, and that changes are never cancelled.
+ *
+ * <p>
+ * The asynchronous access is mocked with futures completed by the tests, and the results are applied by
+ * an executor that queues them until the test runs them, like {@code Platform.runLater} does, so no
+ * JavaFX toolkit is needed.
+ * </p>
+ */
+public class AccessTaskRunnerTest {
+
+    @Mock
+    private MachineTrackerAccessibleAsync mockAccess;
+
+    private final List<Runnable> fxQueue = new ArrayList<>();
+    private final List<String> applied = new ArrayList<>();
+    private AccessTaskRunner tasks;
+
+    /**
+     * Initializes the mocks and creates a runner applying the results through {@link #fxQueue}.
+     */
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        tasks = new AccessTaskRunner(mockAccess, fxQueue::add);
+    }
+
+    /**
+     * Tests that a load superseded by a load of other data is cancelled, and that only the newest result is
+     * applied even if the old one arrives last.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the locations of machines 1 and 2 with futures completed by the test.</li>
+     *   <li>Act: Load the location of machine 1, then of machine 2, complete both, and run the queued
+     *   callbacks.</li>
+     *   <li>Assert: Ensure that the first load was cancelled and that only the second location was
+     *   applied.</li>
+     * </ol>
+     */
+    @Test
+    public void AccessTaskRunner_Load_AppliesNewestOnly() {
+        // Arrange
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        when(mockAccess.getVendMachLocationAsync(1)).thenReturn(first);
+        when(mockAccess.getVendMachLocationAsync(2)).thenReturn(second);
+
+        // Act
+        tasks.load("title", 1, access -> access.getVendMachLocationAsync(1), applied::add,
+                e -> applied.add("failed"));
+        tasks.load("title", 2, access -> access.getVendMachLocationAsync(2), applied::add,
+                e -> applied.add("failed"));
+        second.complete("Trondheim");
+        first.complete("Oslo");
+        runFxQueue();
+
+        // Assert
+        assertTrue(first.isCancelled());
+        assertEquals(List.of("Trondheim"), applied);
+    }
+
+    /**
+     * Tests that loading the same data again while it is loading doesn't send another request, and that the
+     * result goes to the newest callbacks.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the inventory of machine 1 with a future completed by the test.</li>
+     *   <li>Act: Load the inventory of machine 1 three times, complete it, and run the queued callbacks.</li>
+     *   <li>Assert: Ensure that it was requested once and applied once, by the last callbacks.</li>
+     * </ol>
+     */
+    @Test
+    public void AccessTaskRunner_Load_CoalescesSameData() {
+        // Arrange
+        CompletableFuture<HashMap<String, Integer>> inventory = new CompletableFuture<>();
+        when(mockAccess.getInventoryAsync(1)).thenReturn(inventory);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            String name = "load " + i;
+            tasks.load("inventory", 1, access -> access.getInventoryAsync(1), result -> applied.add(name),
+                    e -> applied.add("failed"));
+        }
+        inventory.complete(new HashMap<>());
+        runFxQueue();
+
+        // Assert
+        verify(mockAccess, times(1)).getInventoryAsync(1);
+        assertEquals(List.of("load 2"), applied);
+    }
+
+    /**
+     * Tests that a change is not cancelled by a later load in its slot, and that only the load is applied.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock removing an item and loading the inventory with futures completed by the test.</li>
+     *   <li>Act: Remove the item, load the inventory, complete both, and run the queued callbacks.</li>
+     *   <li>Assert: Ensure that the change was not cancelled and that only the load was applied.</li>
+     * </ol>
+     */
+    @Test
+    public void AccessTaskRunner_Change_IsNotCancelled() {
+        // Arrange
+        CompletableFuture<HashMap<String, Integer>> removed = new CompletableFuture<>();
+        CompletableFuture<HashMap<String, Integer>> loaded = new CompletableFuture<>();
+        when(mockAccess.removeItemAsync(1, "Cola", 1)).thenReturn(removed);
+        when(mockAccess.getInventoryAsync(1)).thenReturn(loaded);
+
+        // Act
+        tasks.change("inventory", access -> access.removeItemAsync(1, "Cola", 1), result -> applied.add("removed"),
+                e -> applied.add("failed"));
+        tasks.load("inventory", 1, access -> access.getInventoryAsync(1), result -> applied.add("loaded"),
+                e -> applied.add("failed"));
+        removed.complete(new HashMap<>());
+        loaded.complete(new HashMap<>());
+        runFxQueue();
+
+        // Assert
+        assertFalse(removed.isCancelled());
+        assertEquals(List.of("loaded"), applied);
+    }
+
+    /**
+     * Tests that a failed request hands its cause to the failure callback, and only once the callbacks are
+     * run on the application thread.
+     * <p>
+     * To conduct this test, we perform the following steps:
+     * </p>
+     * <ol>
+     *   <li>Arrange: Mock the list of vending machines with a future failed by a lost connection.</li>
+     *   <li>Act: Load the list, then run the queued callbacks.</li>
+     *   <li>Assert: Ensure that nothing was applied before the queue was run, and that the failure callback
+     *   got the {@link ConnectException}.</li>
+     * </ol>
+     */
+    @Test
+    public void AccessTaskRunner_Load_AppliesFailureOnApplicationThread() {
+        // Arrange
+        ConnectException lost = new ConnectException("Lost connection to server.");
+        when(mockAccess.getVendMachListAsync())
+                .thenReturn(CompletableFuture.failedFuture(new CompletionException(lost)));
+        List<Throwable> failures = new ArrayList<>();
+
+        // Act
+        tasks.load("list", null, MachineTrackerAccessibleAsync::getVendMachListAsync,
+                result -> applied.add("loaded"), failures::add);
+        boolean appliedEarly = !failures.isEmpty();
+        runFxQueue();
+
+        // Assert
+        assertFalse(appliedEarly);
+        assertTrue(applied.isEmpty());
+        assertEquals(List.of(lost), failures);
+    }
+
+    /**
+     * Runs the callbacks queued for the application thread, in order.
+     */
+    private void runFxQueue() {
+        List<Runnable> queued = new ArrayList<>(fxQueue);
+        fxQueue.clear();
+        queued.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,35 @@
+package gr2338.vendmachtrack.ui.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testfx.util.WaitForAsyncUtils;
+
+/**
+ * Lets the UI tests wait for requests the controllers make off the JavaFX application thread, see
+ * {@link AccessTaskRunner}. A request is done once its result has been applied on the JavaFX application
+ * thread, which the tests tell by the state they expect to see.
+ */
+final class FxRequests {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private FxRequests() {
+    }
+
+    /**
+     * Waits until a condition holds on the JavaFX application thread, for at most five seconds. If it never
+     * does, the method returns anyway, so that the assertions after it report the state that was found.
+     *
+     * @param applied Whether the result of the request has been applied
+     */
+    static void awaitApplied(final Callable<Boolean> applied) {
+        try {
+            WaitForAsyncUtils.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                    () -> WaitForAsyncUtils.asyncFx(applied).get());
+        } catch (TimeoutException e) {
+            // Left to the assertions, which tell what was found instead.
+        }
+    }
+}
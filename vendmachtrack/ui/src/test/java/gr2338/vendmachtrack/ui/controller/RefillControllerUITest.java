@@ -126,6 +126,7 @@ public class RefillControllerUITest extends ApplicationTest {
         clickOn("#refillNumber").write("1");
         clickOn("#refillItem").write("Cola");
         clickOn("#refilllButton");
+        FxRequests.awaitApplied(() -> lookup("#textArea").queryAs(TextArea.class).getText().contains("Cola: 2"));
         TextArea textArea = lookup("#textArea").queryAs(TextArea.class);
         Label textField = lookup("#answerText").queryAs(Label.class);
 
@@ -239,6 +240,7 @@ public class RefillControllerUITest extends ApplicationTest {
         clickOn("#refillNumber").write("1");
         clickOn("#refillItem").write("Fanta");
         clickOn("#refilllButton");
+        FxRequests.awaitApplied(() -> lookup("#textArea").queryAs(TextArea.class).getText().contains("Fanta"));
         TextArea textArea = lookup("#textArea").queryAs(TextArea.class);
         Label textField = lookup("#answerText").queryAs(Label.class);
 
@@ -160,6 +160,7 @@ public class VendAppControllerUITest extends ApplicationTest {
         interact(() -> choiceBox.getSelectionModel().select(0));
 
         clickOn("#okButton");
+        FxRequests.awaitApplied(() -> lookup("#textArea").queryAs(TextArea.class).getText().startsWith("Inventory"));
 
         // Assert
         TextArea textArea = lookup("#textArea").queryAs(TextArea.class);
@@ -269,6 +270,7 @@ public class VendAppControllerUITest extends ApplicationTest {
         clickOn("#idTextFieldAdd").write("3");  // Add an ID for the new vending machine
         clickOn("#locationTextField").write("Bergen");  // Add a location for the new vending machine
         clickOn("#addButton");  // Click the add button to add the vending machine
+        FxRequests.awaitApplied(() -> lookup("#menuBar").queryAs(ChoiceBox.class).getItems().size() == 3);
         ChoiceBox<String> menuBar = lookup("#menuBar").query();
         Label outputTextLabel = lookup("#outputText").query();
 
@@ -306,6 +308,7 @@ public class VendAppControllerUITest extends ApplicationTest {
         clickOn("#idTextFieldAdd").write("2");  // Use the ID for the existing vending machine
         clickOn("#locationTextField").write("Random Location");  // Add a different location for testing
         clickOn("#addButton");  // Click the add button to attempt adding the vending machine
+        FxRequests.awaitApplied(() -> !lookup("#outputText").queryAs(Label.class).getText().isEmpty());
         Label outputTextLabel = lookup("#outputText").query();
 
         // Assert
@@ -456,6 +459,7 @@ public class VendAppControllerUITest extends ApplicationTest {
         // Act
         clickOn("#idTextFieldRemove").write("1");  // Use the ID for the existing vending machine
         clickOn("#removeButton");  // Click the remove button to attempt removing the vending machine
+        FxRequests.awaitApplied(() -> !lookup("#outputText").queryAs(Label.class).getText().isEmpty());
         Label outputTextLabel = lookup("#outputText").query();
         ChoiceBox<String> menuBar = lookup("#menuBar").query();
 
@@ -489,6 +493,7 @@ public class VendAppControllerUITest extends ApplicationTest {
         // Act
         clickOn("#idTextFieldRemove").write("5");  // Use the ID for the existing vending machine
         clickOn("#removeButton");  // Click the remove button to attempt removing the vending machine
+        FxRequests.awaitApplied(() -> !lookup("#outputText").queryAs(Label.class).getText().isEmpty());
         Label outputTextLabel = lookup("#outputText").query();
 
         // Assert